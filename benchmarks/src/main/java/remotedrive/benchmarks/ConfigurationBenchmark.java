@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import remotedrive.core.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the configuration reads done at runtime: the scoped map lookups against the compiled snapshot.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigurationBenchmark
+{
+    /**
+     * The configuration.
+     */
+    private Configuration configuration;
+
+    /**
+     * Builds a typical drive configuration.
+     */
+    @Setup
+    public void setup()
+    {
+        configuration = new Configuration();
+        configuration.writeString("mounting-point", "J");
+        configuration.writeString("name", "Drive name");
+        configuration.writeString("factory-name", "GoogleDrive");
+        configuration.writeBoolean("caching", true);
+        configuration.writeBoolean("enabled", true);
+        configuration.writeString("username", "user@example.com");
+    }
+
+    /**
+     * Reads a string through the map.
+     * @return The value.
+     */
+    @Benchmark
+    public String readString()
+    {
+        return configuration.readString("name");
+    }
+
+    /**
+     * Reads a boolean through the map.
+     * @return The value.
+     */
+    @Benchmark
+    public boolean readBoolean()
+    {
+        return configuration.readBoolean("caching");
+    }
+
+    /**
+     * Reads a string from the snapshot.
+     * @return The value.
+     */
+    @Benchmark
+    public String snapshotString()
+    {
+        return configuration.getSnapshot().getName();
+    }
+
+    /**
+     * Reads a boolean from the snapshot.
+     * @return The value.
+     */
+    @Benchmark
+    public boolean snapshotBoolean()
+    {
+        return configuration.getSnapshot().isCaching();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import remotedrive.client.googledrive.DownloadBenchmark;
+
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Runs the download benchmarks with the GC profiler, then prints for each download path and content size its
+ * throughput and allocation per downloaded byte. A sized download allocates about one byte per byte, its result.
+ * Usage: DownloadRunner
+ */
+public class DownloadRunner
+{
+    /**
+     * Runs the benchmarks.
+     * @param args Unused.
+     * @throws RunnerException If a benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException
+    {
+        // Run with the GC profiler
+        Options options = new OptionsBuilder()
+                .include(DownloadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        // Print the allocation report
+        System.out.println();
+        System.out.println("Download allocation report");
+        for(RunResult result : results)
+        {
+            int size = Integer.parseInt(result.getParams().getParam("size"));
+            Result primary = result.getPrimaryResult();
+            Result allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            double allocatedBytes = null == allocation ? Double.NaN : allocation.getScore();
+            System.out.println(String.format(Locale.US, "%-60s size=%9d: %10.1f MiB/s, %6.2f B allocated per downloaded byte",
+                    result.getParams().getBenchmark(),
+                    size,
+                    primary.getScore() * size / (1024 * 1024),
+                    allocatedBytes / size));
+        }
+    }
+}
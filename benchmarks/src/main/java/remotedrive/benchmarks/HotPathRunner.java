@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs the hot path benchmarks at increasing thread counts with the GC profiler, then prints for each benchmark its
+ * throughput and allocation per operation by thread count.
+ * Usage: HotPathRunner [benchmark regular expression]
+ */
+public class HotPathRunner
+{
+    /**
+     * Runs the benchmarks.
+     * @param args The optional benchmark regular expression.
+     * @throws RunnerException If a benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException
+    {
+        // Thread counts up to the available processors
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        int processors = Runtime.getRuntime().availableProcessors();
+        for(int threads = 1; threads < processors; threads *= 2)
+        {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(processors);
+
+        // Run each thread count
+        String include = 0 == args.length ? ".*" : args[0];
+        Map<String, StringBuilder> report = new TreeMap<String, StringBuilder>();
+        for(int threads : threadCounts)
+        {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .exclude(StartupBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            Collection<RunResult> results = new Runner(options).run();
+            for(RunResult result : results)
+            {
+                StringBuilder name = new StringBuilder(result.getParams().getBenchmark());
+                for(String key : result.getParams().getParamsKeys())
+                {
+                    name.append(String.format(Locale.US, " %s=%s", key, result.getParams().getParam(key)));
+                }
+                StringBuilder line = report.get(name.toString());
+                if (null == line)
+                {
+                    line = new StringBuilder();
+                    report.put(name.toString(), line);
+                }
+                Result primary = result.getPrimaryResult();
+                Result allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+                line.append(String.format(Locale.US, "  %3d threads: %14.3f %s, %10.1f B/op%n",
+                        threads,
+                        primary.getScore(),
+                        primary.getScoreUnit(),
+                        null == allocation ? Double.NaN : allocation.getScore()));
+            }
+        }
+
+        // Print the scaling report
+        System.out.println();
+        System.out.println("Hot path scaling report");
+        for(Map.Entry<String, StringBuilder> entry : report.entrySet())
+        {
+            System.out.println(entry.getKey());
+            System.out.print(entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.benchmarks;
+
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import remotedrive.core.ClientFactoryDescriptor;
+import remotedrive.core.ExtensionLoader;
+import remotedrive.core.spi.ClientFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the client factory discovery done at startup, from a cold JVM.
+ * Both benchmarks list the factories names and read their icons, which is what the GUI needs to show the drives.
+ * Each measurement runs in a fresh fork so class loading is part of the result, run with "-prof cl" to also get the
+ * number of loaded classes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Benchmark)
+public class StartupBenchmark
+{
+    /**
+     * Initializes logging before the measurement, the application always has it initialized before discovery.
+     */
+    @Setup
+    public void setup()
+    {
+        Logger.getRootLogger();
+    }
+
+    /**
+     * Discovers the factories from the build time index, without loading them.
+     * @return The read bytes.
+     * @throws IOException If an icon is not readable.
+     */
+    @Benchmark
+    public long indexedDiscovery() throws IOException
+    {
+        long bytes = 0;
+        for(ClientFactoryDescriptor descriptor : new ExtensionLoader().loadClientFactoryIndex())
+        {
+            bytes += descriptor.getName().length() + drain(descriptor.getImageAsStream());
+        }
+        return bytes;
+    }
+
+    /**
+     * Discovers the factories by instantiating them through ServiceLoader.
+     * @return The read bytes.
+     * @throws IOException If an icon is not readable.
+     */
+    @Benchmark
+    public long serviceLoaderDiscovery() throws IOException
+    {
+        long bytes = 0;
+        Iterator<ClientFactory> clientFactories = new ExtensionLoader().load(ClientFactory.class);
+        while (clientFactories.hasNext())
+        {
+            ClientFactory clientFactory = clientFactories.next();
+            bytes += clientFactory.getName().length() + drain(clientFactory.getImageAsStream());
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a stream until its end.
+     * @param stream The stream.
+     * @return The read bytes.
+     * @throws IOException If the stream is not readable.
+     */
+    static long drain(InputStream stream) throws IOException
+    {
+        if (null == stream)
+        {
+            return 0;
+        }
+
+        try
+        {
+            long bytes = 0;
+            byte[] buffer = new byte[8192];
+            for(int read = stream.read(buffer); -1 != read; read = stream.read(buffer))
+            {
+                bytes += read;
+            }
+            return bytes;
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+}
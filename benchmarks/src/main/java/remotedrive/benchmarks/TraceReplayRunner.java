@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.benchmarks;
+
+import remotedrive.client.synthetic.SyntheticClient;
+import remotedrive.client.synthetic.SyntheticSettings;
+import remotedrive.core.Configuration;
+import remotedrive.core.ConfigurationSchema;
+import remotedrive.core.fs.DriveOperations;
+import remotedrive.core.fs.trace.TraceEvent;
+import remotedrive.core.fs.trace.TraceReader;
+import remotedrive.core.fs.trace.TraceReplayReport;
+import remotedrive.core.fs.trace.TraceReplayer;
+import remotedrive.core.fs.trace.TreePathMapping;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.InstrumentedClient;
+import remotedrive.core.metrics.MetricsRegistry;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays a recorded trace against the file system callbacks on top of a synthetic drive with the default synthetic
+ * settings, then prints the callbacks latency and the backend requests.
+ * Usage: TraceReplayRunner trace-file[,fast]
+ * The trace is replayed at its recorded pace unless ",fast" is appended.
+ */
+public class TraceReplayRunner
+{
+    /**
+     * Replays the trace.
+     * @param args The trace file and the optional ",fast" suffix.
+     * @throws Exception If the trace cannot be read or the replay is interrupted.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        // Check input
+        if (1 != args.length)
+        {
+            throw new IllegalArgumentException("Usage: TraceReplayRunner trace-file[,fast]");
+        }
+        boolean fast = args[0].endsWith(",fast");
+        String traceFile = fast ? args[0].substring(0, args[0].length() - ",fast".length()) : args[0];
+        List<TraceEvent> events = TraceReader.readAll(Paths.get(traceFile));
+
+        // Map the trace onto the synthetic tree through an instant client
+        Configuration mappingConfiguration = new Configuration();
+        SyntheticSettings.LATENCY.write(mappingConfiguration, 0);
+        SyntheticSettings.JITTER.write(mappingConfiguration, 0);
+        SyntheticSettings.BANDWIDTH.write(mappingConfiguration, 0);
+        SyntheticClient mappingClient = new SyntheticClient(mappingConfiguration);
+        mappingClient.authenticate("trace-replay", null);
+
+        // Build the measured stack
+        Configuration configuration = new Configuration();
+        ConfigurationSchema.NAME.write(configuration, "trace-replay");
+        DriveMetrics metrics = MetricsRegistry.getInstance().forDrive(configuration);
+        InstrumentedClient client = new InstrumentedClient(new SyntheticClient(configuration), metrics);
+        client.authenticate("trace-replay", null);
+
+        // Replay and report
+        System.out.println(String.format(Locale.US, "Replaying %d events from %s %s", events.size(), traceFile, fast ? "as fast as possible" : "at the recorded pace"));
+        TraceReplayer replayer = new TraceReplayer(new DriveOperations(client, configuration), new TreePathMapping(mappingClient), metrics);
+        TraceReplayReport report = replayer.replay(events, !fast);
+        System.out.print(report.format());
+    }
+}
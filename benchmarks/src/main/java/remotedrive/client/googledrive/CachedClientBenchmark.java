@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.client.googledrive;
+
+import com.google.common.cache.Cache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import remotedrive.core.Configuration;
+import remotedrive.core.File;
+
+import java.lang.reflect.Field;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CachedGoogleDriveClient hit paths, which serve most of the Dokan callbacks once a folder is browsed.
+ * The caches are filled directly so that no authentication nor remote call is needed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CachedClientBenchmark
+{
+    /**
+     * Number of cached files.
+     */
+    private static final int FILES = 500;
+
+    /**
+     * The client.
+     */
+    private CachedGoogleDriveClient client;
+
+    /**
+     * The cached file paths.
+     */
+    private String[] paths;
+
+    /**
+     * Fills the caches with a folder listing, its files and their content.
+     * @throws ReflectiveOperationException If the caches are not reachable.
+     */
+    @Setup
+    public void setup() throws ReflectiveOperationException
+    {
+        client = new CachedGoogleDriveClient(new Configuration());
+        Cache<String, File[]> childrenCache = cache("childrenCache");
+        Cache<String, File> fileCache = cache("fileCache");
+        Cache<String, byte[]> contentCache = cache("contentCache");
+
+        File[] children = new File[FILES];
+        paths = new String[FILES];
+        for(int i = 0; i < FILES; ++i)
+        {
+            String title = String.format(Locale.US, "document %d.txt", i);
+            paths[i] = "folder/" + title;
+            children[i] = new File(Integer.toString(i), title, paths[i], false, 4096, null, 1400000000000L);
+            fileCache.put(paths[i], children[i]);
+            contentCache.put(paths[i] + "-content", new byte[4096]);
+        }
+        childrenCache.put("folder", children);
+    }
+
+    /**
+     * Lists the cached folder.
+     * @return The children.
+     */
+    @Benchmark
+    public File[] retrieveChildren()
+    {
+        return client.retrieveChildren("folder");
+    }
+
+    /**
+     * Filters the cached folder by title prefix.
+     * @return The matching children.
+     */
+    @Benchmark
+    public File[] retrieveChildrenByTitlePrefix()
+    {
+        return client.retrieveChildrenByTitlePrefix("folder", "document 4");
+    }
+
+    /**
+     * Gets a cached file.
+     * @param cursor The thread cursor.
+     * @return The file.
+     */
+    @Benchmark
+    public File retrieveDriveFile(Cursor cursor)
+    {
+        return client.retrieveDriveFile(paths[cursor.next(FILES)]);
+    }
+
+    /**
+     * Gets a cached file content.
+     * @param cursor The thread cursor.
+     * @return The content.
+     */
+    @Benchmark
+    public byte[] retrieveDriveFileContent(Cursor cursor)
+    {
+        return client.retrieveDriveFileContent(paths[cursor.next(FILES)]);
+    }
+
+    /**
+     * Gets a cache of the client.
+     * @param name The cache field name.
+     * @param <V> The value type.
+     * @return The cache.
+     * @throws ReflectiveOperationException If the cache is not reachable.
+     */
+    @SuppressWarnings("unchecked")
+    private <V> Cache<String, V> cache(String name) throws ReflectiveOperationException
+    {
+        Field field = CachedGoogleDriveClient.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return (Cache<String, V>) field.get(client);
+    }
+
+    /**
+     * Per thread position in the files.
+     */
+    @State(Scope.Thread)
+    public static class Cursor
+    {
+        /**
+         * The position.
+         */
+        private int position;
+
+        /**
+         * Moves to the next position.
+         * @param length The number of positions.
+         * @return The position.
+         */
+        int next(int length)
+        {
+            position = position + 1 == length ? 0 : position + 1;
+            return position;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.client.googledrive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the content download path from a stream handing out network sized chunks: the sized path reading straight
+ * into the result, the unsized path going through a pooled buffer, and the former copy through a growing buffer.
+ * Run with the GC profiler, or with DownloadRunner which reports the allocation per downloaded byte.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DownloadBenchmark
+{
+    /**
+     * The largest number of bytes handed out by a read, as a socket would.
+     */
+    private static final int NETWORK_CHUNK = 16 * 1024;
+
+    /**
+     * The content size.
+     */
+    @Param({"65536", "1048576", "16777216"})
+    public int size;
+
+    /**
+     * The content.
+     */
+    private byte[] content;
+
+    /**
+     * Generates the content.
+     */
+    @Setup
+    public void setup()
+    {
+        content = new byte[size];
+        new Random(size).nextBytes(content);
+    }
+
+    /**
+     * Downloads with the announced size.
+     * @return The content.
+     * @throws IOException Never.
+     */
+    @Benchmark
+    public byte[] sizedDownload() throws IOException
+    {
+        return ContentDownloader.download(new NetworkStream(content), size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Downloads without announced size.
+     * @return The content.
+     * @throws IOException Never.
+     */
+    @Benchmark
+    public byte[] unsizedDownload() throws IOException
+    {
+        return ContentDownloader.download(new NetworkStream(content), -1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Downloads the former way, through a new small buffer into a growing one copied at the end.
+     * @return The content.
+     * @throws IOException Never.
+     */
+    @Benchmark
+    public byte[] streamCopy() throws IOException
+    {
+        InputStream is = new NetworkStream(content);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] data = new byte[8192];
+        int nRead;
+        while ((nRead = is.read(data, 0, data.length)) != -1)
+        {
+            buffer.write(data, 0, nRead);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Stream handing out a content in network sized chunks.
+     */
+    private static class NetworkStream extends InputStream
+    {
+        /**
+         * The content.
+         */
+        private final byte[] content;
+
+        /**
+         * The read position.
+         */
+        private int position;
+
+        /**
+         * Initializes the stream.
+         * @param content The content.
+         */
+        private NetworkStream(byte[] content)
+        {
+            this.content = content;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read()
+        {
+            return position < content.length ? content[position++] & 0xff : -1;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (position == content.length)
+            {
+                return -1;
+            }
+            int count = Math.min(Math.min(len, NETWORK_CHUNK), content.length - position);
+            System.arraycopy(content, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
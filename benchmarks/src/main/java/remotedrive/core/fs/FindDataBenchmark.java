@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs;
+
+import net.decasdev.dokan.Win32FindData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import remotedrive.core.File;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the folder listing conversion served to Dokan: the File[] to Win32FindData[] conversion, and the
+ * FindDataCache lookup that avoids it while the listing doesn't change.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindDataBenchmark
+{
+    /**
+     * The number of files in the folder.
+     */
+    @Param({"100", "5000"})
+    public int files;
+
+    /**
+     * The listing.
+     */
+    private File[] listing;
+
+    /**
+     * The converted listings cache, holding the listing.
+     */
+    private FindDataCache findDataCache;
+
+    /**
+     * Builds the listing and caches its conversion.
+     */
+    @Setup
+    public void setup()
+    {
+        listing = new File[files];
+        for(int i = 0; i < files; ++i)
+        {
+            String title = String.format(Locale.US, "document %d.txt", i);
+            listing[i] = new File(Integer.toString(i), title, "folder/" + title, 0 == i % 10, i * 1024L, null, 1400000000000L + i);
+        }
+        findDataCache = new FindDataCache();
+        findDataCache.get("folder", listing);
+    }
+
+    /**
+     * Converts the whole listing.
+     * @return The converted listing.
+     */
+    @Benchmark
+    public Win32FindData[] convert()
+    {
+        return FindDataCache.convert(listing);
+    }
+
+    /**
+     * Looks up the converted listing of an unchanged folder.
+     * @return The converted listing.
+     */
+    @Benchmark
+    public Win32FindData[] cachedConversion()
+    {
+        return findDataCache.get("folder", listing);
+    }
+}
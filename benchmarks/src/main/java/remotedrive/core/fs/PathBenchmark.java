@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per callback path handling: Dokan to client path normalisation, the paths to ids index lookup done by
+ * GoogleDriveClient for each call, and the index key building done for each listed child.
+ * The index is a HashMap filled the same way GoogleDriveClient.listChildren fills its pathsToIdsIndex.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathBenchmark
+{
+    /**
+     * Number of indexed paths.
+     */
+    private static final int PATHS = 10000;
+
+    /**
+     * The Dokan paths.
+     */
+    private String[] dokanPaths;
+
+    /**
+     * The paths to ids index.
+     */
+    private Map<String, String> pathsToIdsIndex;
+
+    /**
+     * Builds the paths and the index.
+     */
+    @Setup
+    public void setup()
+    {
+        dokanPaths = new String[PATHS];
+        pathsToIdsIndex = new HashMap<String, String>();
+        for(int i = 0; i < PATHS; ++i)
+        {
+            String clientPath = String.format(Locale.US, "folder%d/sub folder%d/document %d.txt", i % 50, i % 7, i);
+            dokanPaths[i] = "\\" + clientPath.replace("/", "\\");
+            pathsToIdsIndex.put(clientPath, "0B" + Integer.toHexString(clientPath.hashCode()));
+        }
+    }
+
+    /**
+     * Normalizes a Dokan path.
+     * @param cursor The thread cursor.
+     * @return The client path.
+     */
+    @Benchmark
+    public String toClientPath(Cursor cursor)
+    {
+        return DriveOperations.toClientPath(dokanPaths[cursor.next(PATHS)]);
+    }
+
+    /**
+     * Normalizes a Dokan path and looks up its id.
+     * @param cursor The thread cursor.
+     * @return The id.
+     */
+    @Benchmark
+    public String indexLookup(Cursor cursor)
+    {
+        return pathsToIdsIndex.get(DriveOperations.toClientPath(dokanPaths[cursor.next(PATHS)]));
+    }
+
+    /**
+     * Builds a child index key the way listChildren does.
+     * @param cursor The thread cursor.
+     * @return The child path.
+     */
+    @Benchmark
+    public String indexKeyBuild(Cursor cursor)
+    {
+        int i = cursor.next(PATHS);
+        return String.format("%s/%s", "folder12/sub folder3", dokanPaths[i]);
+    }
+
+    /**
+     * Per thread position in the paths.
+     */
+    @State(Scope.Thread)
+    public static class Cursor
+    {
+        /**
+         * The position.
+         */
+        private int position;
+
+        /**
+         * Moves to the next position.
+         * @param length The number of positions.
+         * @return The position.
+         */
+        int next(int length)
+        {
+            position = position + 1 == length ? 0 : position + 1;
+            return position;
+        }
+    }
+}
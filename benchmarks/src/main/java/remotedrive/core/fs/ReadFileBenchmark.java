@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import remotedrive.core.Configuration;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.spi.Client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the onReadFile copy path with an in memory client, isolating the callback cost from the remote system.
+ * Each thread reads through its own direct buffer, sized like the Dokan read requests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadFileBenchmark
+{
+    /**
+     * The file size.
+     */
+    private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The read offset.
+     */
+    @Param({"0", "2097152"})
+    public long offset;
+
+    /**
+     * The read size.
+     */
+    @Param({"4096", "65536"})
+    public int readSize;
+
+    /**
+     * The callbacks.
+     */
+    private DriveOperations operations;
+
+    /**
+     * Builds the callbacks over an in memory file.
+     */
+    @Setup
+    public void setup()
+    {
+        operations = new DriveOperations(new MemoryClient(new byte[FILE_SIZE]), new Configuration());
+    }
+
+    /**
+     * Reads a block.
+     * @param buffer The thread buffer.
+     * @return The read size.
+     */
+    @Benchmark
+    public int onReadFile(ReadBuffer buffer)
+    {
+        buffer.buffer.clear();
+        return operations.onReadFile("\\folder\\file.bin", buffer.buffer, offset, null);
+    }
+
+    /**
+     * Per thread Dokan buffer.
+     */
+    @State(Scope.Thread)
+    public static class ReadBuffer
+    {
+        /**
+         * The buffer.
+         */
+        private ByteBuffer buffer;
+
+        /**
+         * Allocates the buffer.
+         * @param benchmark The benchmark state.
+         */
+        @Setup
+        public void setup(ReadFileBenchmark benchmark)
+        {
+            buffer = ByteBuffer.allocateDirect(benchmark.readSize);
+        }
+    }
+
+    /**
+     * Client serving a single in memory content for any path.
+     */
+    static class MemoryClient implements Client
+    {
+        /**
+         * The content.
+         */
+        private final byte[] content;
+
+        /**
+         * Initializes the client.
+         * @param content The content.
+         */
+        MemoryClient(byte[] content)
+        {
+            this.content = content;
+        }
+
+        @Override
+        public void authenticate(String username, char[] password)
+        {
+        }
+
+        @Override
+        public Drive retrieveDiskInformation()
+        {
+            return new Drive(content.length, content.length);
+        }
+
+        @Override
+        public File[] retrieveChildren(String parentPath)
+        {
+            return new File[0];
+        }
+
+        @Override
+        public File retrieveDriveFile(String filePath)
+        {
+            return new File(filePath, filePath, filePath, false, content.length, null, 0);
+        }
+
+        @Override
+        public byte[] retrieveDriveFileContent(String filePath)
+        {
+            return content;
+        }
+    }
+}
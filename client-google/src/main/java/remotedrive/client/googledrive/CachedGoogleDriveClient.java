@@ -21,67 +21,393 @@ package remotedrive.client.googledrive;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import remotedrive.core.Configuration;
+import remotedrive.core.ConfigurationSnapshot;
+import remotedrive.core.ContentRange;
 import remotedrive.core.File;
+import remotedrive.core.cache.CompressedContent;
 import remotedrive.core.exception.ClientRequestException;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.Gauge;
+import remotedrive.core.metrics.MetricsSampler;
+import remotedrive.core.schedule.RequestPriority;
+import remotedrive.core.schedule.RequestTicket;
+import remotedrive.core.spi.MemoryReclaimable;
+import remotedrive.core.spi.Tunable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Specialize GoogleDriveClient to handle internal caching.
+ * Cache budgets and time to live come from the tuning entries of the configuration and can be changed while mounted.
+ * Cached contents don't expire: once older than their time to live they are revalidated with a metadata request and
+ * only downloaded again if their revision changed. They are compressed in memory when they compress well, and can be
+ * bounded by their stored size so that the same memory budget holds more of them.
+ * The headers of the files, as read by the Explorer thumbnail and property handlers, are downloaded with range
+ * requests and cached apart from the whole contents.
  */
-public class CachedGoogleDriveClient extends GoogleDriveClient
+public class CachedGoogleDriveClient extends GoogleDriveClient implements Tunable, MemoryReclaimable
 {
+    /**
+     * Orders the content cache entries from the least to the most recently validated.
+     */
+    private static final Comparator<CachedContent> CONTENT_RECENCY = new Comparator<CachedContent>()
+    {
+        @Override
+        public int compare(CachedContent first, CachedContent second)
+        {
+            return Long.signum(first.validated - second.validated);
+        }
+    };
+
     /**
      * Children cache.
      */
-    private Cache<String, File[]> childrenCache;
+    private volatile Cache<String, CachedValue<File[]>> childrenCache;
 
     /**
      * File cache.
      */
-    private Cache<String, File> fileCache;
+    private volatile Cache<String, CachedValue<File>> fileCache;
 
     /**
      * File content cache.
      */
-    private Cache<String, byte[]> contentCache;
+    private volatile Cache<String, CachedContent> contentCache;
 
     /**
-     * Initialize a new instance Cached google drive client.
+     * File header cache.
+     */
+    private volatile Cache<String, CachedValue<byte[]>> headerCache;
+
+    /**
+     * The snapshot the caches are built from.
+     */
+    private volatile ConfigurationSnapshot tuning;
+
+    /**
+     * The share of the configured content and header budgets kept under memory pressure, written under the client lock.
+     */
+    private volatile double contentScale;
+
+    /**
+     * The share of the configured children and file budgets kept under memory pressure, guarded by the client.
+     */
+    private double metadataScale;
+
+    /**
+     * Children cache metrics.
+     */
+    private final CacheMetrics childrenMetrics;
+
+    /**
+     * File cache metrics.
+     */
+    private final CacheMetrics fileMetrics;
+
+    /**
+     * File content cache metrics.
+     */
+    private final CacheMetrics contentMetrics;
+
+    /**
+     * File header cache metrics.
+     */
+    private final CacheMetrics headerMetrics;
+
+    /**
+     * The file content bytes loaded in the cache.
+     */
+    private final Counter contentBytesLoaded;
+
+    /**
+     * The outdated contents found unchanged by a metadata request.
+     */
+    private final Counter contentRevalidations;
+
+    /**
+     * The outdated contents downloaded again because their revision changed.
+     */
+    private final Counter contentRefreshes;
+
+    /**
+     * The bytes of the cached contents.
+     */
+    private final Gauge contentRawBytes;
+
+    /**
+     * The bytes held in memory by the cached contents, once compressed.
+     */
+    private final Gauge contentStoredBytes;
+
+    /**
+     * Initialize a new instance Cached google drive client with the default tuning.
      */
     public CachedGoogleDriveClient()
     {
-        this.childrenCache = CacheBuilder
-            .newBuilder()
-            .maximumSize(1000)
-            .expireAfterWrite(10, TimeUnit.MINUTES)
-            .build();
-        this.fileCache = CacheBuilder
+        this(new Configuration());
+    }
+
+    /**
+     * Initialize a new instance Cached google drive client.
+     * @param configuration The configuration.
+     */
+    public CachedGoogleDriveClient(Configuration configuration)
+    {
+        super(configuration);
+
+        // Resolve the cache metrics
+        DriveMetrics metrics = getMetrics();
+        this.childrenMetrics = new CacheMetrics(metrics, "cache.children");
+        this.fileMetrics = new CacheMetrics(metrics, "cache.file");
+        this.contentMetrics = new CacheMetrics(metrics, "cache.content");
+        this.headerMetrics = new CacheMetrics(metrics, "cache.header");
+        this.contentBytesLoaded = metrics.counter("cache.content.bytes-loaded");
+        this.contentRevalidations = metrics.counter("cache.content.revalidations");
+        this.contentRefreshes = metrics.counter("cache.content.refreshes");
+        this.contentRawBytes = metrics.gauge(MetricsSampler.CACHE_RAW_BYTES);
+        this.contentStoredBytes = metrics.gauge(MetricsSampler.CACHE_STORED_BYTES);
+
+        // Build the caches
+        this.tuning = configuration.getSnapshot();
+        this.contentScale = 1;
+        this.metadataScale = 1;
+        this.childrenCache = buildCache(tuning.getChildrenCacheSize(), tuning.getChildrenCacheTtl(), childrenMetrics);
+        this.fileCache = buildCache(tuning.getFileCacheSize(), tuning.getFileCacheTtl(), fileMetrics);
+        this.contentCache = buildContentCache(tuning, contentScale);
+        this.headerCache = buildCache(tuning.getHeaderCacheSize(), tuning.getContentCacheTtl(), headerMetrics);
+    }
+
+    /**
+     * Rebuilds the caches which budget or time to live changed, and applies the logging entries. The entries are kept
+     * up to the new budget unless their time to live changed. The content time to live applies right away to the next revalidations, the
+     * compression switch to the next downloaded contents.
+     * @param configuration The configuration of the mounted drive.
+     */
+    @Override
+    public synchronized void tune(Configuration configuration)
+    {
+        rebuildCaches(configuration.getSnapshot(), contentScale, metadataScale);
+        getLogger().tune(configuration);
+    }
+
+    /**
+     * Rebuilds the caches with scaled budgets, keeping their most recent entries up to the new budgets. The contents
+     * and the headers are only all dropped once the content scale reaches 0, the header cache following the content
+     * scale.
+     * @param contentScale The share of the configured content budgets kept, from 0 to drop the contents to 1.
+     * @param metadataScale The share of the configured metadata budgets kept, from 0 to 1.
+     */
+    @Override
+    public synchronized void scaleCaches(double contentScale, double metadataScale)
+    {
+        rebuildCaches(tuning, contentScale, metadataScale);
+    }
+
+    /**
+     * Rebuilds the caches which scaled budget or time to live changed, guarded by the client.
+     * @param snapshot The new tuning.
+     * @param newContentScale The new content scale.
+     * @param newMetadataScale The new metadata scale.
+     */
+    private void rebuildCaches(ConfigurationSnapshot snapshot, double newContentScale, double newMetadataScale)
+    {
+        if (scale(snapshot.getChildrenCacheSize(), newMetadataScale) != scale(tuning.getChildrenCacheSize(), metadataScale)
+            || snapshot.getChildrenCacheTtl() != tuning.getChildrenCacheTtl())
+        {
+            childrenCache = replaceCache(childrenCache, CachedGoogleDriveClient.<File[]>buildCache(scale(snapshot.getChildrenCacheSize(), newMetadataScale), snapshot.getChildrenCacheTtl(), childrenMetrics),
+                snapshot.getChildrenCacheTtl() == tuning.getChildrenCacheTtl(), CachedValue.RECENCY);
+        }
+        if (scale(snapshot.getFileCacheSize(), newMetadataScale) != scale(tuning.getFileCacheSize(), metadataScale)
+            || snapshot.getFileCacheTtl() != tuning.getFileCacheTtl())
+        {
+            fileCache = replaceCache(fileCache, CachedGoogleDriveClient.<File>buildCache(scale(snapshot.getFileCacheSize(), newMetadataScale), snapshot.getFileCacheTtl(), fileMetrics),
+                snapshot.getFileCacheTtl() == tuning.getFileCacheTtl(), CachedValue.RECENCY);
+        }
+        if (scale(snapshot.getContentCacheSize(), newContentScale) != scale(tuning.getContentCacheSize(), contentScale)
+            || snapshot.getContentCacheMemory() * newContentScale != tuning.getContentCacheMemory() * contentScale)
+        {
+            contentCache = replaceCache(contentCache, buildContentCache(snapshot, newContentScale), 0 < newContentScale, CONTENT_RECENCY);
+        }
+        if (snapshot.getPrefetchHeaderSize() != tuning.getPrefetchHeaderSize()
+            || scale(snapshot.getHeaderCacheSize(), newContentScale) != scale(tuning.getHeaderCacheSize(), contentScale)
+            || snapshot.getContentCacheTtl() != tuning.getContentCacheTtl())
+        {
+            headerCache = replaceCache(headerCache, CachedGoogleDriveClient.<byte[]>buildCache(scale(snapshot.getHeaderCacheSize(), newContentScale), snapshot.getContentCacheTtl(), headerMetrics),
+                0 < newContentScale && snapshot.getPrefetchHeaderSize() == tuning.getPrefetchHeaderSize() && snapshot.getContentCacheTtl() == tuning.getContentCacheTtl(), CachedValue.RECENCY);
+        }
+        tuning = snapshot;
+        contentScale = newContentScale;
+        metadataScale = newMetadataScale;
+    }
+
+    /**
+     * Scales a cache budget.
+     * @param size The configured budget.
+     * @param scale The share kept.
+     * @return The scaled budget.
+     */
+    private static int scale(int size, double scale)
+    {
+        return (int) (size * scale);
+    }
+
+    /**
+     * Builds a cache of values stamped with their write time, counting its evictions. The values copied from a previous
+     * cache keep their write time, so the time to live is also checked when reading them.
+     * @param maximumSize The maximum number of entries.
+     * @param ttlSeconds The time to live in seconds.
+     * @param cacheMetrics The cache metrics.
+     * @param <V> The value type.
+     * @return The cache.
+     */
+    private static <V> Cache<String, CachedValue<V>> buildCache(int maximumSize, int ttlSeconds, final CacheMetrics cacheMetrics)
+    {
+        return CacheBuilder
             .newBuilder()
-            .maximumSize(1000)
-            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(maximumSize)
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .removalListener(new RemovalListener<String, CachedValue<V>>()
+            {
+                @Override
+                public void onRemoval(RemovalNotification<String, CachedValue<V>> notification)
+                {
+                    if (notification.wasEvicted())
+                    {
+                        cacheMetrics.evictions.increment();
+                    }
+                }
+            })
             .build();
-        this.contentCache = CacheBuilder
-            .newBuilder()
-            .maximumSize(1000)
-            .expireAfterWrite(1, TimeUnit.MINUTES)
+    }
+
+    /**
+     * Builds the content cache, which entries don't expire, bounded by their stored size if a memory budget is set
+     * or by their number otherwise, counting its evictions and the memory held.
+     * @param snapshot The tuning.
+     * @param scale The share of the configured budget kept.
+     * @return The cache.
+     */
+    private Cache<String, CachedContent> buildContentCache(ConfigurationSnapshot snapshot, double scale)
+    {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (0 != snapshot.getContentCacheMemory())
+        {
+            builder
+                .maximumWeight((long) (snapshot.getContentCacheMemory() * 1024L * 1024L * scale))
+                .weigher(new Weigher<String, CachedContent>()
+                {
+                    @Override
+                    public int weigh(String key, CachedContent value)
+                    {
+                        return (int) Math.min(Integer.MAX_VALUE, value.content.getStoredSize());
+                    }
+                });
+        }
+        else
+        {
+            builder.maximumSize(scale(snapshot.getContentCacheSize(), scale));
+        }
+        return builder
+            .removalListener(new RemovalListener<String, CachedContent>()
+            {
+                @Override
+                public void onRemoval(RemovalNotification<String, CachedContent> notification)
+                {
+                    if (notification.wasEvicted())
+                    {
+                        contentMetrics.evictions.increment();
+                    }
+                    CachedContent removed = notification.getValue();
+                    if (null != removed)
+                    {
+                        contentRawBytes.add(-removed.content.getLength());
+                        contentStoredBytes.add(-removed.content.getStoredSize());
+                    }
+                }
+            })
             .build();
     }
 
+    /**
+     * Replaces a cache by a cache built with new settings.
+     * The entries of the previous cache are copied from the least to the most recent one, so that a smaller new cache
+     * evicts the least recent ones, or dropped if they no longer apply.
+     * @param previous The previous cache.
+     * @param cache The new cache.
+     * @param keepEntries true to copy the entries, false to drop them.
+     * @param recency The order of the entries, from the least to the most recent one.
+     * @param <V> The value type.
+     * @return The new cache.
+     */
+    static <V> Cache<String, V> replaceCache(Cache<String, V> previous, Cache<String, V> cache, boolean keepEntries, final Comparator<? super V> recency)
+    {
+        // Drop the entries
+        if (!keepEntries)
+        {
+            previous.invalidateAll();
+            return cache;
+        }
+
+        // Otherwise copy them, the most recent ones last
+        List<Map.Entry<String, V>> entries = new ArrayList<Map.Entry<String, V>>(previous.asMap().entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, V>>()
+        {
+            @Override
+            public int compare(Map.Entry<String, V> first, Map.Entry<String, V> second)
+            {
+                return recency.compare(first.getValue(), second.getValue());
+            }
+        });
+        for(Map.Entry<String, V> entry : entries)
+        {
+            cache.put(entry.getKey(), entry.getValue());
+        }
+        return cache;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public File[] retrieveChildren(final String parentPath)
     {
+        // List the pinned folders being synchronised from the drive, refreshing the caches with the result
+        if (isSync())
+        {
+            File[] children = super.retrieveChildren(parentPath);
+            if (null == children)
+            {
+                childrenCache.invalidate(parentPath);
+                return null;
+            }
+            for(File child : children)
+            {
+                fileCache.put(child.getAbsolutePath(), new CachedValue<File>(child));
+            }
+            childrenCache.put(parentPath, new CachedValue<File[]>(children));
+            return children;
+        }
+
         try
         {
-            return childrenCache.get(parentPath, new Callable<File[]>()
+            return lookup(childrenCache, parentPath, tuning.getChildrenCacheTtl(), childrenMetrics, new CountingLoader<File[]>()
             {
                 @Override
-                public File[] call()
+                protected File[] load()
                 {
                     // Call the super type implementation
                     File[] children = CachedGoogleDriveClient.super.retrieveChildren(parentPath);
@@ -89,7 +415,7 @@ public class CachedGoogleDriveClient extends GoogleDriveClient
                     // For each child, put it in the cache
                     for(File child : children)
                     {
-                        fileCache.put(child.getAbsolutePath(), child);
+                        fileCache.put(child.getAbsolutePath(), new CachedValue<File>(child));
                     }
 
                     // Return the children
@@ -105,18 +431,72 @@ public class CachedGoogleDriveClient extends GoogleDriveClient
         }
     }
 
+    /**
+     * Filters the cached children when the folder is already known, otherwise queries the matching children only.
+     * The partial result is not stored as folder children but each retrieved file is cached.
+     * @param parentPath The parent file.
+     * @param titlePrefix The title prefix.
+     * @return The matching children.
+     */
+    @Override
+    public File[] retrieveChildrenByTitlePrefix(final String parentPath, final String titlePrefix)
+    {
+        // Filter the cached children locally if available, unless synchronising the pinned folders
+        File[] cachedChildren = isSync() ? null : getIfPresent(childrenCache, parentPath, tuning.getChildrenCacheTtl());
+        (null == cachedChildren ? childrenMetrics.misses : childrenMetrics.hits).increment();
+        if (null != cachedChildren)
+        {
+            List<File> matchingChildren = new ArrayList<File>();
+            for(File child : cachedChildren)
+            {
+                if (child.getTitle().regionMatches(true, 0, titlePrefix, 0, titlePrefix.length()))
+                {
+                    matchingChildren.add(child);
+                }
+            }
+            return matchingChildren.toArray(new File[matchingChildren.size()]);
+        }
+
+        // Otherwise call the super type implementation
+        File[] children = super.retrieveChildrenByTitlePrefix(parentPath, titlePrefix);
+        if (null != children)
+        {
+            // For each child, put it in the cache
+            for(File child : children)
+            {
+                fileCache.put(child.getAbsolutePath(), new CachedValue<File>(child));
+            }
+        }
+        return children;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public File retrieveDriveFile(final String filePath)
     {
+        // Resolve the pinned files being synchronised from the drive, refreshing the cache with the result
+        if (isSync())
+        {
+            File file = super.retrieveDriveFile(filePath);
+            if (null == file)
+            {
+                fileCache.invalidate(filePath);
+            }
+            else
+            {
+                fileCache.put(filePath, new CachedValue<File>(file));
+            }
+            return file;
+        }
+
         try
         {
-            return fileCache.get(filePath, new Callable<File>()
+            return lookup(fileCache, filePath, tuning.getFileCacheTtl(), fileMetrics, new CountingLoader<File>()
             {
                 @Override
-                public File call()
+                protected File load()
                 {
                     // Call the super type implementation
                     // TODO: Handle caching
@@ -133,23 +513,88 @@ public class CachedGoogleDriveClient extends GoogleDriveClient
     }
 
     /**
-     * {@inheritDoc}
+     * Retrieves a file content, keyed by its MD5 checksum when known so that copies, renamed and moved files share a
+     * single cached content and a single download.
+     * A cached content older than its time to live is revalidated against the current revision of the file, and only
+     * downloaded again if the revision changed. The contents synchronised into the pinned store aren't cached.
+     * @param filePath The absolute file.
+     * @return The content, null if the file doesn't exist.
      */
     @Override
     public byte[] retrieveDriveFileContent(final String filePath)
     {
+        // Resolve the metadata, usually cached since the file system always asks for it before reading
+        File file = retrieveDriveFile(filePath);
+        if (null == file)
+        {
+            return null;
+        }
+
+        // Serve the cached content if recent enough or still the current revision
+        CachedContent cached = contentCache.getIfPresent(contentKey(file));
+        if (null != cached)
+        {
+            if (cached.isFresh(tuning.getContentCacheTtl()))
+            {
+                contentMetrics.hits.increment();
+                return cached.content.toByteArray();
+            }
+            file = super.retrieveDriveFile(filePath);
+            if (null == file)
+            {
+                fileCache.invalidate(filePath);
+                return null;
+            }
+            fileCache.put(filePath, new CachedValue<File>(file));
+            if (cached.file.isSameRevision(file))
+            {
+                cached.validated = System.nanoTime();
+                contentRevalidations.increment();
+                contentMetrics.hits.increment();
+                return cached.content.toByteArray();
+            }
+
+            // A checksum keyed content remains valid for other files, only drop a path keyed one
+            contentRefreshes.increment();
+            if (contentKey(cached.file).equals(contentKey(file)))
+            {
+                contentCache.invalidate(contentKey(file));
+            }
+        }
+
+        // Download the synchronised contents of the pinned folders without caching them, the pinned store keeps them
+        if (isSync())
+        {
+            return super.retrieveDriveFileContent(filePath);
+        }
+
+        // Otherwise download it, handing out the downloaded array rather than decompressing it again
+        final File loadedFile = file;
+        final byte[][] downloaded = new byte[1][];
         try
         {
-            return contentCache.get(filePath + "-content", new Callable<byte[]>()
+            CachedContent loaded = lookup(contentCache, contentKey(file), contentMetrics, new CountingLoader<CachedContent>()
             {
                 @Override
-                public byte[] call()
+                protected CachedContent load()
                 {
                     // Call the super type implementation
-                    // TODO: Handle caching
-                    return CachedGoogleDriveClient.super.retrieveDriveFileContent(filePath);
+                    byte[] content = CachedGoogleDriveClient.super.retrieveDriveFileContent(filePath);
+                    if (null == content)
+                    {
+                        return null;
+                    }
+                    contentBytesLoaded.add(content.length);
+                    downloaded[0] = content;
+
+                    // Compress it if enabled and worth it
+                    CompressedContent stored = tuning.isContentCacheCompression() ? CompressedContent.compress(content) : CompressedContent.wrap(content);
+                    contentRawBytes.add(stored.getLength());
+                    contentStoredBytes.add(stored.getStoredSize());
+                    return new CachedContent(loadedFile, stored);
                 }
             });
+            return null != downloaded[0] ? downloaded[0] : loaded.content.toByteArray();
         }
 
         // Rethrow exception is occur
@@ -158,4 +603,356 @@ public class CachedGoogleDriveClient extends GoogleDriveClient
             throw new ClientRequestException(e.getMessage(), e);
         }
     }
+
+    /**
+     * Retrieves a range of a file content.
+     * The range is read from the cached content if recent enough, otherwise ranges within the file header are served
+     * from the header cache, loaded with a single range request, and the other ranges from the whole content. The
+     * range alone is downloaded when the content doesn't fit the content cache budget.
+     * @param filePath The absolute file.
+     * @param offset The position of the first byte.
+     * @param length The maximum number of bytes.
+     * @return The bytes, null if the file doesn't exist.
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(final String filePath, long offset, int length)
+    {
+        // Resolve the metadata
+        File file = retrieveDriveFile(filePath);
+        if (null == file)
+        {
+            return null;
+        }
+
+        // Read the cached content if recent enough
+        CachedContent cached = contentCache.getIfPresent(contentKey(file));
+        if (null != cached && cached.isFresh(tuning.getContentCacheTtl()))
+        {
+            contentMetrics.hits.increment();
+            byte[] range = new byte[(int) Math.max(0, Math.min(length, cached.content.getLength() - offset))];
+            cached.content.read(offset, range, 0, range.length);
+            return range;
+        }
+
+        // Serve the header ranges of larger files from the header cache
+        final int headerSize = tuning.getPrefetchHeaderSize() * 1024;
+        if (null == cached && offset + length <= headerSize && file.getSize() > headerSize)
+        {
+            try
+            {
+                byte[] header = lookup(headerCache, contentKey(file), tuning.getContentCacheTtl(), headerMetrics, new CountingLoader<byte[]>()
+                {
+                    @Override
+                    protected byte[] load()
+                    {
+                        // Call the super type implementation
+                        byte[] header = CachedGoogleDriveClient.super.retrieveDriveFileContent(filePath, 0, headerSize);
+                        if (null == header)
+                        {
+                            return null;
+                        }
+                        contentBytesLoaded.add(header.length);
+                        return header;
+                    }
+                });
+                return ContentRange.slice(header, offset, length);
+            }
+
+            // Rethrow exception is occur
+            catch (ExecutionException e)
+            {
+                throw new ClientRequestException(e.getMessage(), e);
+            }
+        }
+
+        // Read the range only if the whole content can't be kept
+        if (null == cached && !isCacheable(file))
+        {
+            return super.retrieveDriveFileContent(filePath, offset, length);
+        }
+
+        // Otherwise read the whole content
+        return ContentRange.slice(retrieveDriveFileContent(filePath), offset, length);
+    }
+
+    /**
+     * Checks whether the content of a file fits the scaled content cache budget.
+     * @param file The file.
+     * @return true if the content can be cached, false if the budget is empty or smaller than the file.
+     */
+    private boolean isCacheable(File file)
+    {
+        ConfigurationSnapshot snapshot = tuning;
+        double scale = contentScale;
+        if (0 != snapshot.getContentCacheMemory())
+        {
+            return file.getSize() <= (long) (snapshot.getContentCacheMemory() * 1024L * 1024L * scale);
+        }
+        return 0 != scale(snapshot.getContentCacheSize(), scale);
+    }
+
+    /**
+     * Builds the content cache key of a file.
+     * @param file The file.
+     * @return The content checksum if known, otherwise a key derived from the path.
+     */
+    private static String contentKey(File file)
+    {
+        if (null != file.getMd5Checksum())
+        {
+            return "md5:" + file.getMd5Checksum().toLowerCase(Locale.US);
+        }
+        return file.getAbsolutePath() + "-content";
+    }
+
+    /**
+     * Checks whether the current thread synchronises the pinned folders, which must see the drive as it is now rather
+     * than the cached metadata.
+     * @return true if the ticket attached to the thread has the sync priority, false otherwise.
+     */
+    private static boolean isSync()
+    {
+        RequestTicket ticket = RequestTicket.current();
+        return null != ticket && RequestPriority.SYNC == ticket.getPriority();
+    }
+
+    /**
+     * Gets a value stamped with its write time if present and not older than its time to live.
+     * @param cache The cache.
+     * @param key The key.
+     * @param ttlSeconds The time to live in seconds.
+     * @param <V> The value type.
+     * @return The value, null if absent or outdated.
+     */
+    private static <V> V getIfPresent(Cache<String, CachedValue<V>> cache, String key, int ttlSeconds)
+    {
+        CachedValue<V> cached = cache.getIfPresent(key);
+        if (null == cached)
+        {
+            return null;
+        }
+        if (!cached.isFresh(ttlSeconds))
+        {
+            cache.asMap().remove(key, cached);
+            return null;
+        }
+        return cached.value;
+    }
+
+    /**
+     * Looks up a cache of values stamped with their write time, loading the value on miss or once older than its
+     * time to live, and counts the hit or the miss.
+     * @param cache The cache.
+     * @param key The key.
+     * @param ttlSeconds The time to live in seconds.
+     * @param cacheMetrics The cache metrics.
+     * @param loader The loader.
+     * @param <V> The value type.
+     * @return The value.
+     * @throws ExecutionException If the loading fails.
+     */
+    private static <V> V lookup(Cache<String, CachedValue<V>> cache, String key, int ttlSeconds, CacheMetrics cacheMetrics, final CountingLoader<V> loader) throws ExecutionException
+    {
+        // Drop the value if outdated, only possible once copied from a previous cache
+        CachedValue<V> cached = cache.getIfPresent(key);
+        if (null != cached && !cached.isFresh(ttlSeconds))
+        {
+            cache.asMap().remove(key, cached);
+        }
+
+        // Look it up, stamping the loaded value
+        return lookup(cache, key, cacheMetrics, new CountingLoader<CachedValue<V>>()
+        {
+            @Override
+            protected CachedValue<V> load()
+            {
+                V value = loader.load();
+                return null == value ? null : new CachedValue<V>(value);
+            }
+        }).value;
+    }
+
+    /**
+     * Looks up a cache, loading the value on miss, and counts the hit or the miss.
+     * @param cache The cache.
+     * @param key The key.
+     * @param cacheMetrics The cache metrics.
+     * @param loader The loader.
+     * @param <V> The value type.
+     * @return The value.
+     * @throws ExecutionException If the loading fails.
+     */
+    private static <V> V lookup(Cache<String, V> cache, String key, CacheMetrics cacheMetrics, CountingLoader<V> loader) throws ExecutionException
+    {
+        V value;
+        try
+        {
+            value = cache.get(key, loader);
+        }
+
+        // Rethrow the unchecked failures of the loader as is, the cancellation of a request in particular
+        catch (UncheckedExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        (loader.loaded ? cacheMetrics.misses : cacheMetrics.hits).increment();
+        return value;
+    }
+
+    /**
+     * Cache loader remembering whether it has been called.
+     * @param <V> The value type.
+     */
+    private abstract static class CountingLoader<V> implements Callable<V>
+    {
+        /**
+         * True once the value has been loaded.
+         */
+        private boolean loaded;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public V call()
+        {
+            loaded = true;
+            return load();
+        }
+
+        /**
+         * Loads the value.
+         * @return The value.
+         */
+        protected abstract V load();
+    }
+
+    /**
+     * A cached value along with the time it was written.
+     * @param <V> The value type.
+     */
+    private static final class CachedValue<V>
+    {
+        /**
+         * Orders the cached values from the least to the most recently written.
+         */
+        private static final Comparator<CachedValue<?>> RECENCY = new Comparator<CachedValue<?>>()
+        {
+            @Override
+            public int compare(CachedValue<?> first, CachedValue<?> second)
+            {
+                return Long.signum(first.written - second.written);
+            }
+        };
+
+        /**
+         * The value.
+         */
+        private final V value;
+
+        /**
+         * The time the value was written, from System.nanoTime.
+         */
+        private final long written;
+
+        /**
+         * Initializes a cached value written now.
+         * @param value The value.
+         */
+        private CachedValue(V value)
+        {
+            this.value = value;
+            this.written = System.nanoTime();
+        }
+
+        /**
+         * Checks whether the value has been written recently enough.
+         * @param ttlSeconds The time to live in seconds.
+         * @return true if the value can be served, false otherwise.
+         */
+        private boolean isFresh(int ttlSeconds)
+        {
+            return System.nanoTime() - written < TimeUnit.SECONDS.toNanos(ttlSeconds);
+        }
+    }
+
+    /**
+     * A cached content, compressed or not, along with the metadata of the revision it was downloaded for.
+     */
+    private static class CachedContent
+    {
+        /**
+         * The file metadata.
+         */
+        private final File file;
+
+        /**
+         * The content.
+         */
+        private final CompressedContent content;
+
+        /**
+         * The time the revision was last checked, from System.nanoTime.
+         */
+        private volatile long validated;
+
+        /**
+         * Initializes a cached content.
+         * @param file The file metadata.
+         * @param content The content.
+         */
+        private CachedContent(File file, CompressedContent content)
+        {
+            this.file = file;
+            this.content = content;
+            this.validated = System.nanoTime();
+        }
+
+        /**
+         * Checks whether the revision has been checked recently enough.
+         * @param ttlSeconds The time to live in seconds.
+         * @return true if the content can be served without revalidation, false otherwise.
+         */
+        private boolean isFresh(int ttlSeconds)
+        {
+            return System.nanoTime() - validated < TimeUnit.SECONDS.toNanos(ttlSeconds);
+        }
+    }
+
+    /**
+     * Hit, miss and eviction counters of a cache.
+     */
+    private static class CacheMetrics
+    {
+        /**
+         * The lookups served from the cache.
+         */
+        private final Counter hits;
+
+        /**
+         * The lookups that had to load the value.
+         */
+        private final Counter misses;
+
+        /**
+         * The entries evicted because of the size budget or the time to live.
+         */
+        private final Counter evictions;
+
+        /**
+         * Resolves the counters.
+         * @param metrics The drive metrics.
+         * @param prefix The counters name prefix.
+         */
+        private CacheMetrics(DriveMetrics metrics, String prefix)
+        {
+            this.hits = metrics.counter(prefix + ".hits");
+            this.misses = metrics.counter(prefix + ".misses");
+            this.evictions = metrics.counter(prefix + ".evictions");
+        }
+    }
 }
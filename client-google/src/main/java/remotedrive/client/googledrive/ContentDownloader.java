@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.client.googledrive;
+
+import remotedrive.core.cache.BufferPool;
+import remotedrive.core.exception.ClientRequestException;
+import remotedrive.core.schedule.BandwidthThrottle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reads downloaded contents into byte arrays.
+ * When the size of the content is announced, the bytes are read straight into an array of that size, so the download
+ * allocates nothing but its result. Otherwise the bytes go through a pooled buffer into a growing one. The bytes read
+ * are reported to the bandwidth throttle of the drive chunk by chunk. Contents larger than an array are rejected.
+ */
+final class ContentDownloader
+{
+    /**
+     * The largest number of bytes read at once, bounding the bursts seen by the bandwidth throttle.
+     */
+    static final int CHUNK_SIZE = BufferPool.BUFFER_SIZE;
+
+    /**
+     * The largest array the virtual machines reliably allocate.
+     */
+    static final int MAX_CONTENT_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Not instantiable.
+     */
+    private ContentDownloader()
+    {
+    }
+
+    /**
+     * Reads a downloaded content and closes its stream.
+     * @param is The content stream.
+     * @param expectedSize The announced size of the content, negative if unknown.
+     * @param length The maximum number of bytes read.
+     * @return The bytes.
+     * @throws IOException If the download fails.
+     * @throws ClientRequestException If the content doesn't fit in an array.
+     */
+    static byte[] download(InputStream is, long expectedSize, int length) throws IOException
+    {
+        try
+        {
+            // Reject the contents that can't fit in an array before allocating anything
+            if (MAX_CONTENT_SIZE < Math.min(expectedSize, length))
+            {
+                throw new ClientRequestException(String.format(Locale.US, "The content of %d bytes exceeds the maximum of %d bytes.", expectedSize, MAX_CONTENT_SIZE));
+            }
+            if (0 > expectedSize)
+            {
+                return copy(is, new ByteArrayOutputStream(CHUNK_SIZE), length);
+            }
+
+            // Read straight into the result, shortened if the content ends early
+            byte[] content = new byte[(int) Math.min(expectedSize, length)];
+            int count = 0;
+            int read = 0;
+            while (count < content.length && -1 != (read = is.read(content, count, Math.min(CHUNK_SIZE, content.length - count))))
+            {
+                count += read;
+                BandwidthThrottle.consume(read);
+            }
+            if (count < content.length)
+            {
+                return Arrays.copyOf(content, count);
+            }
+
+            // Go on into a growing buffer if the content is longer than announced
+            int next = content.length == length ? -1 : is.read();
+            if (-1 == next)
+            {
+                return content;
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length + CHUNK_SIZE);
+            buffer.write(content, 0, content.length);
+            buffer.write(next);
+            BandwidthThrottle.consume(1);
+            return copy(is, buffer, length);
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    /**
+     * Copies a stream into a growing buffer through a pooled buffer.
+     * @param is The content stream.
+     * @param buffer The growing buffer.
+     * @param length The maximum number of bytes in the growing buffer.
+     * @return The bytes of the growing buffer.
+     * @throws IOException If the download fails.
+     * @throws ClientRequestException If the content doesn't fit in an array.
+     */
+    private static byte[] copy(InputStream is, ByteArrayOutputStream buffer, int length) throws IOException
+    {
+        BufferPool pool = BufferPool.getInstance();
+        byte[] data = pool.acquire();
+        try
+        {
+            int limit = Math.min(length, MAX_CONTENT_SIZE);
+            int read;
+            while (buffer.size() < limit && -1 != (read = is.read(data, 0, Math.min(data.length, limit - buffer.size()))))
+            {
+                buffer.write(data, 0, read);
+                BandwidthThrottle.consume(read);
+            }
+
+            // Reject the contents that keep going past the largest array
+            if (limit < length && buffer.size() == limit && -1 != is.read())
+            {
+                throw new ClientRequestException(String.format(Locale.US, "The content exceeds the maximum of %d bytes.", MAX_CONTENT_SIZE));
+            }
+            return buffer.toByteArray();
+        }
+        finally
+        {
+            pool.release(data);
+        }
+    }
+}
@@ -25,20 +25,32 @@ import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.services.drive.DriveScopes;
 import com.google.api.services.drive.model.About;
 import com.google.api.services.drive.model.FileList;
+import remotedrive.core.Configuration;
 import remotedrive.core.Drive;
 import remotedrive.core.File;
 import remotedrive.core.exception.ClientAuthenticationException;
 import remotedrive.core.exception.ClientRequestException;
+import remotedrive.core.logging.DriveLogger;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.MetricsRegistry;
+import remotedrive.core.schedule.RequestScheduler;
 import remotedrive.core.spi.Client;
+import remotedrive.core.spi.RangeReadable;
+import remotedrive.core.spi.SelfAdmitting;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -46,6 +58,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -53,10 +66,30 @@ import java.util.Map;
  * Google drive FS structure is represented as a graph that is incompatible with a regular hierarchical FS structure.
  * In order to provide acceptable performances, this implementation has to maintain a matching between paths and ids.
  * However it's not necessary to manage caching in this implementation and focus on naive execution where all call are
- * independent.
+ * independent. Each request is admitted through the request scheduler of the drive right before being sent.
  */
-public class GoogleDriveClient implements Client
+public class GoogleDriveClient implements Client, RangeReadable, SelfAdmitting
 {
+    /**
+     * The status of answered range requests.
+     */
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+
+    /**
+     * The status of range requests starting past the end of the content.
+     */
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * The file fields requested, keeping metadata responses down to a few hundred bytes.
+     */
+    private static final String FILE_FIELDS = "id,title,mimeType,fileSize,downloadUrl,createdDate,modifiedDate,md5Checksum,headRevisionId,version";
+
+    /**
+     * Logger of the drive.
+     */
+    private final DriveLogger log;
+
     /**
      * Google drive service.
      */
@@ -81,9 +114,52 @@ public class GoogleDriveClient implements Client
      */
     private Map<String, String> pathsToIdsIndex;
 
+    /**
+     * The drive metrics.
+     */
+    private final DriveMetrics metrics;
+
+    /**
+     * The retried requests.
+     */
+    private final Counter retries;
+
+    /**
+     * Initializes a client recording in the default drive metrics.
+     */
     public GoogleDriveClient()
+    {
+        this(new Configuration());
+    }
+
+    /**
+     * Initializes a client recording in the metrics of its drive.
+     * @param configuration The configuration.
+     */
+    public GoogleDriveClient(Configuration configuration)
     {
         pathsToIdsIndex = new HashMap<String, String>();
+        metrics = MetricsRegistry.getInstance().forDrive(configuration);
+        retries = metrics.counter("client.retries");
+        log = new DriveLogger(GoogleDriveClient.class, configuration);
+    }
+
+    /**
+     * Gets the metrics of the drive served by this client.
+     * @return The drive metrics.
+     */
+    protected DriveMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Gets the logger of the drive.
+     * @return The drive logger.
+     */
+    protected DriveLogger getLogger()
+    {
+        return log;
     }
 
     /**
@@ -124,11 +200,35 @@ public class GoogleDriveClient implements Client
             // Initialize the credentials for installed application
             credential = new AuthorizationCodeInstalledApp(flow, new LocalServerReceiver()).authorize(username);
 
-            // Initialize the drive service
+            // Initialize the drive service, counting the requests retried by the credentials
             driveService = new com.google.api.services.drive.Drive.Builder(
                 httpTransport,
                 jsonFactory,
-                credential)
+                new HttpRequestInitializer()
+                {
+                    @Override
+                    public void initialize(HttpRequest request) throws IOException
+                    {
+                        credential.initialize(request);
+                        final HttpUnsuccessfulResponseHandler handler = request.getUnsuccessfulResponseHandler();
+                        if (null != handler)
+                        {
+                            request.setUnsuccessfulResponseHandler(new HttpUnsuccessfulResponseHandler()
+                            {
+                                @Override
+                                public boolean handleResponse(HttpRequest request, HttpResponse response, boolean supportsRetry) throws IOException
+                                {
+                                    boolean retry = handler.handleResponse(request, response, supportsRetry);
+                                    if (retry)
+                                    {
+                                        retries.increment();
+                                    }
+                                    return retry;
+                                }
+                            });
+                        }
+                    }
+                })
                 .setApplicationName("CloudStorage")
                 .build();
 
@@ -169,6 +269,35 @@ public class GoogleDriveClient implements Client
      * @return The children.
      */
     public File[] retrieveChildren(String parentPath)
+    {
+        return listChildren(parentPath, null);
+    }
+
+    /**
+     * Retrieve the children which title starts with a given prefix.
+     * Google drive evaluates "title contains" as a case insensitive prefix matching.
+     * @param parentPath The parent file.
+     * @param titlePrefix The title prefix.
+     * @return The matching children.
+     */
+    public File[] retrieveChildrenByTitlePrefix(String parentPath, String titlePrefix)
+    {
+        // Arguments validation
+        if (null == titlePrefix)
+        {
+            throw new IllegalArgumentException("Title prefix has to be provided");
+        }
+
+        return listChildren(parentPath, String.format("title contains '%s'", escapeQueryValue(titlePrefix)));
+    }
+
+    /**
+     * Lists the non trashed children of a folder, following all the result pages.
+     * @param parentPath The parent file.
+     * @param extraQuery An extra query criteria, null if none.
+     * @return The children.
+     */
+    private File[] listChildren(String parentPath, String extraQuery)
     {
         // Check current state
         ensureAuthenticated();
@@ -185,24 +314,25 @@ public class GoogleDriveClient implements Client
 
             // Retrieve the non trashed children
             com.google.api.services.drive.Drive.Files.List list = driveService.files().list();
-            list.setQ(String.format("trashed = false and '%s' in parents", parentId));
+            String query = String.format("trashed = false and '%s' in parents", parentId);
+            list.setQ(null == extraQuery ? query : String.format("%s and %s", query, extraQuery));
+            list.setFields(String.format("nextPageToken,items(%s)", FILE_FIELDS));
 
-            // Execute and wrap response
-            FileList fileList = list.execute();
+            // Execute and wrap response, page by page
+            RequestScheduler.admit();
             List<File> files = new ArrayList<File>();
-            for(com.google.api.services.drive.model.File file : fileList.getItems())
+            do
             {
-                String fullPath = 0 == parentPath.length() ? file.getTitle() : String.format("%s/%s", parentPath, file.getTitle());
-                pathsToIdsIndex.put(fullPath, file.getId());
-                files.add(new File(
-                    file.getId(),
-                    file.getTitle(),
-                    fullPath,
-                    file.getMimeType().equals("application/vnd.google-apps.folder"),
-                    null != file.getFileSize() ? file.getFileSize() : 0,
-                    file.getDownloadUrl(),
-                    file.getCreatedDate().getValue()));
+                FileList fileList = list.execute();
+                for(com.google.api.services.drive.model.File file : fileList.getItems())
+                {
+                    String fullPath = 0 == parentPath.length() ? file.getTitle() : String.format("%s/%s", parentPath, file.getTitle());
+                    pathsToIdsIndex.put(fullPath, file.getId());
+                    files.add(toFile(file, fullPath));
+                }
+                list.setPageToken(fileList.getNextPageToken());
             }
+            while (null != list.getPageToken() && 0 != list.getPageToken().length());
 
             // Return the response
             return files.toArray(new File[files.size()]);
@@ -235,17 +365,11 @@ public class GoogleDriveClient implements Client
 
             // Build the request
             com.google.api.services.drive.Drive.Files.Get get = driveService.files().get(fileId);
+            get.setFields(FILE_FIELDS);
 
             // Execute and wrap the request asynchronously
-            com.google.api.services.drive.model.File file = get.execute();
-            return new File(
-                    file.getId(),
-                    file.getTitle(),
-                    filePath,
-                    file.getMimeType().equals("application/vnd.google-apps.folder"),
-                    null != file.getFileSize() ? file.getFileSize() : 0,
-                    file.getDownloadUrl(),
-                    file.getCreatedDate().getValue());
+            RequestScheduler.admit();
+            return toFile(get.execute(), filePath);
         }
         catch (IOException e)
         {
@@ -269,24 +393,95 @@ public class GoogleDriveClient implements Client
                 return null;
             }
 
-            System.out.println("Load " + filePath);
+            if (log.isOperationLogged())
+            {
+                log.debug("Load {}", filePath);
+            }
 
             com.google.api.services.drive.Drive.Files.Get get = driveService.files().get(fileId);
-            InputStream is = get.executeMediaAsInputStream();
-
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            RequestScheduler.admit();
+            HttpResponse response = get.executeMedia();
+            return ContentDownloader.download(response.getContent(), getContentLength(response), Integer.MAX_VALUE);
+        }
+        catch (IOException e)
+        {
+            throw new ClientRequestException("An error happened during data recuperation", e);
+        }
+    }
 
-            int nRead;
-            byte[] data = new byte[1024];
+    /**
+     * Retrieves a range of a file content with a range request, so that reading a file header doesn't download the
+     * whole file.
+     * @param filePath The absolute file.
+     * @param offset The position of the first byte.
+     * @param length The maximum number of bytes.
+     * @return The bytes, null if the file doesn't exist.
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath, long offset, int length)
+    {
+        // Check current state
+        ensureAuthenticated();
 
-            while ((nRead = is.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
+        try
+        {
+            // Lookup the file id from a path
+            String fileId = pathsToIdsIndex.get(filePath);
+            if (null == fileId)
+            {
+                return null;
+            }
+            if (0 == length)
+            {
+                return new byte[0];
             }
 
-            buffer.flush();
+            if (log.isOperationLogged())
+            {
+                log.debug("Load {} from {} ({} bytes)", filePath, offset, length);
+            }
 
-            return buffer.toByteArray();
+            // Request the range
+            com.google.api.services.drive.Drive.Files.Get get = driveService.files().get(fileId);
+            get.getRequestHeaders().setRange(String.format(Locale.US, "bytes=%d-%d", offset, offset + length - 1));
+            RequestScheduler.admit();
+            HttpResponse response;
+            try
+            {
+                response = get.executeMedia();
+            }
+            catch (HttpResponseException e)
+            {
+                // Starting past the end of the content
+                if (HTTP_RANGE_NOT_SATISFIABLE == e.getStatusCode())
+                {
+                    return new byte[0];
+                }
+                throw e;
+            }
 
+            // Skip the beginning if the range was ignored and the whole content is sent
+            InputStream is = response.getContent();
+            long contentLength = getContentLength(response);
+            if (HTTP_PARTIAL_CONTENT != response.getStatusCode())
+            {
+                long skipped = 0;
+                while (skipped < offset)
+                {
+                    long count = is.skip(offset - skipped);
+                    if (0 >= count)
+                    {
+                        if (-1 == is.read())
+                        {
+                            break;
+                        }
+                        count = 1;
+                    }
+                    skipped += count;
+                }
+                contentLength = 0 > contentLength ? contentLength : Math.max(0, contentLength - skipped);
+            }
+            return ContentDownloader.download(is, contentLength, length);
         }
         catch (IOException e)
         {
@@ -294,6 +489,59 @@ public class GoogleDriveClient implements Client
         }
     }
 
+    /**
+     * Gets the size of a downloaded content announced by its response.
+     * The length of an encoded content is the one of the encoded bytes, which then doesn't tell the content size.
+     * @param response The response.
+     * @return The size, negative if unknown.
+     */
+    private static long getContentLength(HttpResponse response)
+    {
+        Long contentLength = response.getHeaders().getContentLength();
+        if (null == contentLength || null != response.getContentEncoding())
+        {
+            return -1;
+        }
+        return contentLength;
+    }
+
+    /**
+     * Converts a drive file.
+     * Native documents have no head revision, their version is used instead.
+     * @param file The drive file.
+     * @param filePath The absolute path.
+     * @return The file.
+     */
+    private static File toFile(com.google.api.services.drive.model.File file, String filePath)
+    {
+        String revision = file.getHeadRevisionId();
+        if (null == revision && null != file.getVersion())
+        {
+            revision = "v" + file.getVersion();
+        }
+        return new File(
+                file.getId(),
+                file.getTitle(),
+                filePath,
+                file.getMimeType().equals("application/vnd.google-apps.folder"),
+                null != file.getFileSize() ? file.getFileSize() : 0,
+                file.getDownloadUrl(),
+                file.getCreatedDate().getValue(),
+                null != file.getModifiedDate() ? file.getModifiedDate().getValue() : file.getCreatedDate().getValue(),
+                file.getMd5Checksum(),
+                revision);
+    }
+
+    /**
+     * Escapes a value in order to use it as a string literal in a drive query.
+     * @param value The value.
+     * @return The escaped value.
+     */
+    private static String escapeQueryValue(String value)
+    {
+        return value.replace("\\", "\\\\").replace("'", "\\'");
+    }
+
     /**
      * Ensure that the client is authenticated.
      */
@@ -22,12 +22,14 @@ package remotedrive.client.googledrive;
 import remotedrive.core.Configuration;
 import remotedrive.core.spi.Client;
 import remotedrive.core.spi.ClientFactory;
+import remotedrive.core.spi.ClientFactoryDefinition;
 
 import java.io.InputStream;
 
 /**
  * Implements ClientFactory for google drive.
  */
+@ClientFactoryDefinition(name = "GoogleDrive", icon = "/img/google-drive.png")
 public class GoogleDriveClientFactory implements ClientFactory {
 
     /**
@@ -55,8 +57,8 @@ public class GoogleDriveClientFactory implements ClientFactory {
      */
     @Override
     public Client createClient(Configuration configuration) {
-        return configuration.readBoolean("caching") ?
-                new CachedGoogleDriveClient() :
-                new GoogleDriveClient();
+        return configuration.getSnapshot().isCaching() ?
+                new CachedGoogleDriveClient(configuration) :
+                new GoogleDriveClient(configuration);
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.client.googledrive;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.Comparator;
+
+/**
+ * Tests the cached google drive client.
+ */
+public class CachedGoogleDriveClientTest
+{
+    private static final Comparator<Integer> RECENCY = new Comparator<Integer>()
+    {
+        @Override
+        public int compare(Integer first, Integer second)
+        {
+            return first.compareTo(second);
+        }
+    };
+
+    @Test
+    public void replaceCache_growKeepsEntries()
+    {
+        Cache<String, Integer> previous = CacheBuilder.newBuilder().maximumSize(4).build();
+        for(int i = 0; i < 4; i++)
+        {
+            previous.put("file" + i, i);
+        }
+
+        Cache<String, Integer> cache = CachedGoogleDriveClient.replaceCache(previous, CacheBuilder.newBuilder().maximumSize(8).<String, Integer>build(), true, RECENCY);
+
+        TestCase.assertEquals(4, cache.size());
+        for(int i = 0; i < 4; i++)
+        {
+            TestCase.assertEquals(Integer.valueOf(i), cache.getIfPresent("file" + i));
+        }
+    }
+
+    @Test
+    public void replaceCache_shrinkKeepsMostRecentEntries()
+    {
+        Cache<String, Integer> previous = CacheBuilder.newBuilder().maximumSize(8).build();
+        for(int i = 7; i >= 0; i--)
+        {
+            previous.put("file" + i, i);
+        }
+
+        Cache<String, Integer> cache = CachedGoogleDriveClient.replaceCache(previous, CacheBuilder.newBuilder().concurrencyLevel(1).maximumSize(4).<String, Integer>build(), true, RECENCY);
+
+        TestCase.assertEquals(4, cache.size());
+        for(int i = 4; i < 8; i++)
+        {
+            TestCase.assertEquals(Integer.valueOf(i), cache.getIfPresent("file" + i));
+        }
+    }
+
+    @Test
+    public void replaceCache_dropEntries()
+    {
+        Cache<String, Integer> previous = CacheBuilder.newBuilder().maximumSize(4).build();
+        previous.put("file", 1);
+
+        Cache<String, Integer> cache = CachedGoogleDriveClient.replaceCache(previous, CacheBuilder.newBuilder().maximumSize(4).<String, Integer>build(), false, RECENCY);
+
+        TestCase.assertEquals(0, cache.size());
+        TestCase.assertEquals(0, previous.size());
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.client.synthetic;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ContentRange;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.exception.ClientRequestException;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.RangeReadable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory client serving a generated tree with the behavior of a remote system.
+ * Each call waits for the configured latency plus or minus the jitter, transfers its payload through a bandwidth
+ * shared by all the calls of the drive and fails with the configured probability. Jitter and failures are drawn from
+ * the call sequence number, so that a single threaded run always sees the same delays and the same failing calls.
+ */
+public class SyntheticClient implements Client, RangeReadable
+{
+    /**
+     * The nominal size of the generated drive.
+     */
+    private static final long BYTES_TOTAL = 1L << 40;
+
+    /**
+     * The settings.
+     */
+    private final SyntheticSettings settings;
+
+    /**
+     * The generated tree.
+     */
+    private final SyntheticTree tree;
+
+    /**
+     * The call sequence number.
+     */
+    private final AtomicLong calls;
+
+    /**
+     * The time when the shared link is available again, guarded by this.
+     */
+    private long linkAvailableNanos;
+
+    /**
+     * The disk information, null prior to authentication.
+     */
+    private volatile Drive drive;
+
+    /**
+     * Initializes a client from the synthetic entries of a configuration.
+     * @param configuration The configuration.
+     */
+    public SyntheticClient(Configuration configuration)
+    {
+        this(SyntheticSettings.read(configuration));
+    }
+
+    /**
+     * Initializes a client.
+     * @param settings The settings.
+     */
+    public SyntheticClient(SyntheticSettings settings)
+    {
+        // Check input
+        if (null == settings)
+        {
+            throw new IllegalArgumentException("The settings cannot be null.");
+        }
+
+        // Initialize
+        this.settings = settings;
+        this.tree = new SyntheticTree(settings);
+        this.calls = new AtomicLong();
+        this.linkAvailableNanos = System.nanoTime();
+    }
+
+    /**
+     * Authenticates any user.
+     * @param username The username.
+     * @param password The password.
+     */
+    @Override
+    public void authenticate(String username, char[] password)
+    {
+        simulateCall(0);
+        long bytesUsed = (long) Math.min(BYTES_TOTAL, (double) tree.getFileCount() * settings.getFileSizeMedian());
+        drive = new Drive(Math.max(BYTES_TOTAL, bytesUsed), bytesUsed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Drive retrieveDiskInformation()
+    {
+        // Check current state
+        ensureAuthenticated();
+
+        // Return disk information
+        return drive;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildren(String parentPath)
+    {
+        // Check current state
+        ensureAuthenticated();
+
+        // Generate the listing and pay for it
+        File[] children = tree.list(parentPath);
+        simulateCall(null == children ? 0 : children.length * 256L);
+        return children;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildrenByTitlePrefix(String parentPath, String titlePrefix)
+    {
+        // Arguments validation
+        if (null == titlePrefix)
+        {
+            throw new IllegalArgumentException("Title prefix has to be provided");
+        }
+
+        // Check current state
+        ensureAuthenticated();
+
+        // Filter the listing as a remote query would and only pay for the matches
+        File[] children = tree.list(parentPath);
+        if (null == children)
+        {
+            simulateCall(0);
+            return null;
+        }
+        List<File> matchingChildren = new ArrayList<File>();
+        for(File child : children)
+        {
+            if (child.getTitle().regionMatches(true, 0, titlePrefix, 0, titlePrefix.length()))
+            {
+                matchingChildren.add(child);
+            }
+        }
+        simulateCall(matchingChildren.size() * 256L);
+        return matchingChildren.toArray(new File[matchingChildren.size()]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File retrieveDriveFile(String filePath)
+    {
+        // Check current state
+        ensureAuthenticated();
+
+        // Generate the file and pay for it
+        File file = tree.resolve(filePath);
+        simulateCall(null == file ? 0 : 256);
+        return file;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath)
+    {
+        // Check current state
+        ensureAuthenticated();
+
+        // Generate the content and pay for it
+        byte[] content = tree.content(filePath);
+        simulateCall(null == content ? 0 : content.length);
+        return content;
+    }
+
+    /**
+     * Retrieves a range of a file content, only paying for the range.
+     * @param filePath The absolute file.
+     * @param offset The position of the first byte.
+     * @param length The maximum number of bytes.
+     * @return The bytes, null if the file doesn't exist.
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath, long offset, int length)
+    {
+        // Check current state
+        ensureAuthenticated();
+
+        // Generate the content and pay for the range
+        byte[] range = ContentRange.slice(tree.content(filePath), offset, length);
+        simulateCall(null == range ? 0 : range.length);
+        return range;
+    }
+
+    /**
+     * Applies the latency, the bandwidth and the failure injection to a call.
+     * @param bytes The payload size.
+     * @throws ClientRequestException If the call is selected to fail or is interrupted.
+     */
+    private void simulateCall(long bytes)
+    {
+        // Draw the jitter and the failure from the call sequence number
+        long call = calls.incrementAndGet();
+        long random = SyntheticTree.mix64(settings.getSeed() ^ SyntheticTree.mix64(call));
+        long latencyNanos = TimeUnit.MILLISECONDS.toNanos(settings.getLatency())
+            + (long) ((2.0 * SyntheticTree.unit(random) - 1.0) * TimeUnit.MILLISECONDS.toNanos(settings.getJitter()));
+        boolean failure = SyntheticTree.unit(SyntheticTree.mix64(random)) < settings.getFailureRate();
+
+        // Failed calls only pay for the latency
+        if (failure)
+        {
+            sleep(latencyNanos);
+            throw new ClientRequestException(String.format(Locale.US, "Synthetic failure of call %d", call));
+        }
+
+        // Reserve the shared link after the latency, the transfer waiting for the previous ones
+        long waitNanos = latencyNanos;
+        if (0 < bytes && 0 < settings.getBandwidth())
+        {
+            long transferNanos = (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1) / settings.getBandwidth());
+            synchronized (this)
+            {
+                long now = System.nanoTime();
+                long start = Math.max(now + Math.max(0, latencyNanos), linkAvailableNanos);
+                linkAvailableNanos = start + transferNanos;
+                waitNanos = linkAvailableNanos - now;
+            }
+        }
+        sleep(waitNanos);
+    }
+
+    /**
+     * Sleeps, reporting interruptions as failed requests.
+     * @param nanos The duration in nanoseconds.
+     * @throws ClientRequestException If interrupted.
+     */
+    private static void sleep(long nanos)
+    {
+        if (0 >= nanos)
+        {
+            return;
+        }
+
+        try
+        {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ClientRequestException("Interrupted while simulating a call", e);
+        }
+    }
+
+    /**
+     * Ensures that the client is authenticated.
+     */
+    private void ensureAuthenticated()
+    {
+        // Check authentication
+        if (null == drive)
+        {
+            throw new IllegalStateException("Cannot retrieve disk information prior to authentication");
+        }
+    }
+}
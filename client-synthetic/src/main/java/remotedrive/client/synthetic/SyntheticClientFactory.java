@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.client.synthetic;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.ClientFactory;
+import remotedrive.core.spi.ClientFactoryDefinition;
+
+import java.io.InputStream;
+
+/**
+ * Implements ClientFactory for synthetic drives, generated in memory for load testing.
+ * The tree shape and the remote behavior are read from the "synthetic" scope of the drive configuration, see
+ * SyntheticSettings.
+ */
+@ClientFactoryDefinition(name = "Synthetic", icon = "/img/synthetic.png")
+public class SyntheticClientFactory implements ClientFactory
+{
+    /**
+     * Gets synthetic factory name.
+     * @return "Synthetic"
+     */
+    @Override
+    public String getName()
+    {
+        return "Synthetic";
+    }
+
+    /**
+     * Gets synthetic icon as stream.
+     * @return Synthetic icon as stream
+     */
+    @Override
+    public InputStream getImageAsStream()
+    {
+        return getClass().getResourceAsStream("/img/synthetic.png");
+    }
+
+    /**
+     * Creates a new instance of synthetic client.
+     * @param configuration The configuration.
+     * @return The new instance of client.
+     */
+    @Override
+    public Client createClient(Configuration configuration)
+    {
+        return new SyntheticClient(configuration);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.client.synthetic;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ConfigurationKey;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Settings of a synthetic drive, read from the "synthetic" scope of the drive configuration.
+ * Every entry is optional, the defaults describe a tree of about a million files served by a 50ms remote with a
+ * 10MB/s link.
+ */
+public final class SyntheticSettings
+{
+    /**
+     * The synthetic drive scope.
+     */
+    public static final String SCOPE = "synthetic";
+
+    /**
+     * The seed of the generated tree, two drives with the same seed and shape serve the same files.
+     */
+    public static final ConfigurationKey<Integer> SEED = ConfigurationKey.intKey(SCOPE, "seed", 42, Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    /**
+     * The number of sub folders of each folder above the maximum depth.
+     */
+    public static final ConfigurationKey<Integer> FOLDERS_PER_FOLDER = ConfigurationKey.intKey(SCOPE, "folders-per-folder", 10, 0, 100000);
+
+    /**
+     * The number of files of each folder.
+     */
+    public static final ConfigurationKey<Integer> FILES_PER_FOLDER = ConfigurationKey.intKey(SCOPE, "files-per-folder", 100, 0, 1000000);
+
+    /**
+     * The depth of the deepest folders, the root being at depth 0.
+     */
+    public static final ConfigurationKey<Integer> DEPTH = ConfigurationKey.intKey(SCOPE, "depth", 4, 0, 32);
+
+    /**
+     * The median file size in bytes.
+     */
+    public static final ConfigurationKey<Integer> FILE_SIZE_MEDIAN = ConfigurationKey.intKey(SCOPE, "file-size-median", 64 * 1024, 0, Integer.MAX_VALUE);
+
+    /**
+     * The spread of the log-normal file size distribution, 0 giving the median size to every file.
+     */
+    public static final ConfigurationKey<Double> FILE_SIZE_SIGMA = ConfigurationKey.doubleKey(SCOPE, "file-size-sigma", 1.5, 0, 10);
+
+    /**
+     * The maximum file size in bytes.
+     */
+    public static final ConfigurationKey<Integer> FILE_SIZE_MAX = ConfigurationKey.intKey(SCOPE, "file-size-max", 64 * 1024 * 1024, 0, Integer.MAX_VALUE - 8);
+
+    /**
+     * The latency added to every call in milliseconds.
+     */
+    public static final ConfigurationKey<Integer> LATENCY = ConfigurationKey.intKey(SCOPE, "latency", 50, 0, 600000);
+
+    /**
+     * The maximum deviation from the latency in milliseconds, uniformly distributed.
+     */
+    public static final ConfigurationKey<Integer> JITTER = ConfigurationKey.intKey(SCOPE, "jitter", 20, 0, 600000);
+
+    /**
+     * The bandwidth shared by all the calls of the drive in bytes per second, 0 for unlimited.
+     */
+    public static final ConfigurationKey<Integer> BANDWIDTH = ConfigurationKey.intKey(SCOPE, "bandwidth", 10 * 1024 * 1024, 0, Integer.MAX_VALUE);
+
+    /**
+     * The probability of a call to fail.
+     */
+    public static final ConfigurationKey<Double> FAILURE_RATE = ConfigurationKey.doubleKey(SCOPE, "failure-rate", 0, 0, 1);
+
+    /**
+     * All the synthetic drive keys.
+     */
+    public static final List<ConfigurationKey<?>> KEYS = Collections.unmodifiableList(Arrays.<ConfigurationKey<?>>asList(
+        SEED, FOLDERS_PER_FOLDER, FILES_PER_FOLDER, DEPTH, FILE_SIZE_MEDIAN, FILE_SIZE_SIGMA, FILE_SIZE_MAX,
+        LATENCY, JITTER, BANDWIDTH, FAILURE_RATE));
+
+    /**
+     * The seed.
+     */
+    private final int seed;
+
+    /**
+     * The number of sub folders of each folder.
+     */
+    private final int foldersPerFolder;
+
+    /**
+     * The number of files of each folder.
+     */
+    private final int filesPerFolder;
+
+    /**
+     * The depth of the deepest folders.
+     */
+    private final int depth;
+
+    /**
+     * The median file size.
+     */
+    private final int fileSizeMedian;
+
+    /**
+     * The spread of the file size distribution.
+     */
+    private final double fileSizeSigma;
+
+    /**
+     * The maximum file size.
+     */
+    private final int fileSizeMax;
+
+    /**
+     * The latency in milliseconds.
+     */
+    private final int latency;
+
+    /**
+     * The jitter in milliseconds.
+     */
+    private final int jitter;
+
+    /**
+     * The bandwidth in bytes per second.
+     */
+    private final int bandwidth;
+
+    /**
+     * The failure probability.
+     */
+    private final double failureRate;
+
+    /**
+     * Reads the settings.
+     * @param configuration The configuration.
+     */
+    private SyntheticSettings(Configuration configuration)
+    {
+        this.seed = SEED.read(configuration);
+        this.foldersPerFolder = FOLDERS_PER_FOLDER.read(configuration);
+        this.filesPerFolder = FILES_PER_FOLDER.read(configuration);
+        this.depth = DEPTH.read(configuration);
+        this.fileSizeMedian = FILE_SIZE_MEDIAN.read(configuration);
+        this.fileSizeSigma = FILE_SIZE_SIGMA.read(configuration);
+        this.fileSizeMax = FILE_SIZE_MAX.read(configuration);
+        this.latency = LATENCY.read(configuration);
+        this.jitter = JITTER.read(configuration);
+        this.bandwidth = BANDWIDTH.read(configuration);
+        this.failureRate = FAILURE_RATE.read(configuration);
+    }
+
+    /**
+     * Reads and validates the settings of a drive.
+     * @param configuration The configuration.
+     * @return The settings.
+     * @throws remotedrive.core.exception.ConfigurationException If an entry is invalid.
+     */
+    public static SyntheticSettings read(Configuration configuration)
+    {
+        // Check input
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+
+        return new SyntheticSettings(configuration);
+    }
+
+    /**
+     * Gets the seed.
+     * @return The seed.
+     */
+    public int getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Gets the number of sub folders of each folder.
+     * @return The number of sub folders.
+     */
+    public int getFoldersPerFolder()
+    {
+        return foldersPerFolder;
+    }
+
+    /**
+     * Gets the number of files of each folder.
+     * @return The number of files.
+     */
+    public int getFilesPerFolder()
+    {
+        return filesPerFolder;
+    }
+
+    /**
+     * Gets the depth of the deepest folders.
+     * @return The depth.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Gets the median file size.
+     * @return The median size in bytes.
+     */
+    public int getFileSizeMedian()
+    {
+        return fileSizeMedian;
+    }
+
+    /**
+     * Gets the spread of the log-normal file size distribution.
+     * @return The sigma.
+     */
+    public double getFileSizeSigma()
+    {
+        return fileSizeSigma;
+    }
+
+    /**
+     * Gets the maximum file size.
+     * @return The maximum size in bytes.
+     */
+    public int getFileSizeMax()
+    {
+        return fileSizeMax;
+    }
+
+    /**
+     * Gets the latency of every call.
+     * @return The latency in milliseconds.
+     */
+    public int getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * Gets the maximum deviation from the latency.
+     * @return The jitter in milliseconds.
+     */
+    public int getJitter()
+    {
+        return jitter;
+    }
+
+    /**
+     * Gets the bandwidth shared by all the calls.
+     * @return The bandwidth in bytes per second, 0 if unlimited.
+     */
+    public int getBandwidth()
+    {
+        return bandwidth;
+    }
+
+    /**
+     * Gets the probability of a call to fail.
+     * @return The failure rate.
+     */
+    public double getFailureRate()
+    {
+        return failureRate;
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.client.synthetic;
+
+import remotedrive.core.File;
+
+/**
+ * Deterministic tree generated on demand from its settings.
+ * Nothing is stored: every entry is derived from the hash of its parent and its index, so that any path of a tree of
+ * millions of entries can be resolved, listed or read in time proportional to its depth and its folder size, always
+ * with the same result for the same seed.
+ * Folders are named "folder-N" and files "file-N.ext", the indexes being contiguous from 0.
+ */
+final class SyntheticTree
+{
+    /**
+     * The folder title prefix.
+     */
+    private static final String FOLDER_PREFIX = "folder-";
+
+    /**
+     * The file title prefix.
+     */
+    private static final String FILE_PREFIX = "file-";
+
+    /**
+     * The generated file extensions, the first ones having a text content.
+     */
+    private static final String[] EXTENSIONS = { "txt", "csv", "log", "jpg", "pdf", "docx", "zip", "bin" };
+
+    /**
+     * The number of extensions having a text content.
+     */
+    private static final int TEXT_EXTENSIONS = 3;
+
+    /**
+     * The characters of the text contents.
+     */
+    private static final byte[] TEXT_ALPHABET = "etaoinshrdlucmfwypvbgkqjxz  .,\r\n".getBytes();
+
+    /**
+     * The oldest creation time, 2014-01-01T00:00:00Z.
+     */
+    private static final long EPOCH = 1388534400000L;
+
+    /**
+     * The creation times range, about five years.
+     */
+    private static final long TIME_SPAN = 5L * 365 * 24 * 3600 * 1000;
+
+    /**
+     * The golden ratio increment spreading the child indexes.
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The tree settings.
+     */
+    private final SyntheticSettings settings;
+
+    /**
+     * The root folder.
+     */
+    private final Node root;
+
+    /**
+     * Initializes a tree.
+     * @param settings The settings.
+     */
+    SyntheticTree(SyntheticSettings settings)
+    {
+        this.settings = settings;
+        this.root = new Node(mix64(settings.getSeed()), "", "", 0, true);
+    }
+
+    /**
+     * Resolves a file.
+     * @param path The absolute path.
+     * @return The file, null if the path doesn't exist.
+     */
+    File resolve(String path)
+    {
+        Node node = locate(path);
+        return null == node ? null : toFile(node);
+    }
+
+    /**
+     * Lists the children of a folder.
+     * @param path The folder absolute path.
+     * @return The children, null if the path doesn't exist or isn't a folder.
+     */
+    File[] list(String path)
+    {
+        // Lookup the folder
+        Node node = locate(path);
+        if (null == node || !node.directory)
+        {
+            return null;
+        }
+
+        // Generate the sub folders then the files
+        int folders = node.depth < settings.getDepth() ? settings.getFoldersPerFolder() : 0;
+        File[] children = new File[folders + settings.getFilesPerFolder()];
+        for(int i = 0; i < folders; ++i)
+        {
+            children[i] = toFile(folder(node, i));
+        }
+        for(int i = 0; i < settings.getFilesPerFolder(); ++i)
+        {
+            children[folders + i] = toFile(file(node, i));
+        }
+        return children;
+    }
+
+    /**
+     * Generates the content of a file.
+     * Text files get a compressible content, other files get random bytes.
+     * @param path The file absolute path.
+     * @return The content, null if the path doesn't exist or isn't a file.
+     */
+    byte[] content(String path)
+    {
+        // Lookup the file
+        Node node = locate(path);
+        if (null == node || node.directory)
+        {
+            return null;
+        }
+
+        // Fill the content from a xorshift generator seeded by the file hash
+        byte[] content = new byte[(int) size(node)];
+        boolean text = extension(node.hash) < TEXT_EXTENSIONS;
+        long state = node.hash | 1;
+        for(int i = 0; i < content.length; i += 8)
+        {
+            state ^= state >>> 12;
+            state ^= state << 25;
+            state ^= state >>> 27;
+            long random = state * 0x2545F4914F6CDD1DL;
+            for(int j = 0; j < 8 && i + j < content.length; ++j)
+            {
+                byte value = (byte) (random >>> (j * 8));
+                content[i + j] = text ? TEXT_ALPHABET[value & 31] : value;
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Gets the number of files of the tree.
+     * @return The number of files.
+     */
+    long getFileCount()
+    {
+        double folders = 0;
+        for(int depth = 0; depth <= settings.getDepth(); ++depth)
+        {
+            folders += Math.pow(settings.getFoldersPerFolder(), depth);
+        }
+        return (long) Math.min(Long.MAX_VALUE, folders * settings.getFilesPerFolder());
+    }
+
+    /**
+     * Locates an entry from its path.
+     * @param path The absolute path.
+     * @return The entry, null if the path doesn't exist.
+     */
+    private Node locate(String path)
+    {
+        // Check input
+        if (null == path)
+        {
+            throw new IllegalArgumentException("The path cannot be null.");
+        }
+
+        // Walk down the path segments
+        Node node = root;
+        int start = 0;
+        while (start < path.length())
+        {
+            if (!node.directory)
+            {
+                return null;
+            }
+            int end = path.indexOf('/', start);
+            end = -1 == end ? path.length() : end;
+            node = child(node, path.substring(start, end));
+            if (null == node)
+            {
+                return null;
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Resolves the child of a folder from its title.
+     * @param parent The parent folder.
+     * @param title The child title.
+     * @return The child, null if the parent has no such child.
+     */
+    private Node child(Node parent, String title)
+    {
+        Node child = null;
+        if (title.regionMatches(true, 0, FOLDER_PREFIX, 0, FOLDER_PREFIX.length()))
+        {
+            int index = parseIndex(title, FOLDER_PREFIX.length(), title.length());
+            if (0 <= index && index < settings.getFoldersPerFolder() && parent.depth < settings.getDepth())
+            {
+                child = folder(parent, index);
+            }
+        }
+        else if (title.regionMatches(true, 0, FILE_PREFIX, 0, FILE_PREFIX.length()))
+        {
+            int dot = title.indexOf('.', FILE_PREFIX.length());
+            int index = parseIndex(title, FILE_PREFIX.length(), -1 == dot ? title.length() : dot);
+            if (0 <= index && index < settings.getFilesPerFolder())
+            {
+                child = file(parent, index);
+            }
+        }
+
+        // Reject the aliases such as leading zeros or another extension
+        return null != child && child.title.equalsIgnoreCase(title) ? child : null;
+    }
+
+    /**
+     * Generates a sub folder.
+     * @param parent The parent folder.
+     * @param index The folder index.
+     * @return The folder.
+     */
+    private static Node folder(Node parent, int index)
+    {
+        long hash = mix64(parent.hash + (2L * index + 1) * GOLDEN_GAMMA);
+        return new Node(hash, FOLDER_PREFIX + index, parent, true);
+    }
+
+    /**
+     * Generates a file.
+     * @param parent The parent folder.
+     * @param index The file index.
+     * @return The file.
+     */
+    private static Node file(Node parent, int index)
+    {
+        long hash = mix64(parent.hash + (2L * index + 2) * GOLDEN_GAMMA);
+        return new Node(hash, FILE_PREFIX + index + "." + EXTENSIONS[extension(hash)], parent, false);
+    }
+
+    /**
+     * Converts an entry into a file representation.
+     * @param node The entry.
+     * @return The file.
+     */
+    private File toFile(Node node)
+    {
+        return new File(
+            Long.toHexString(node.hash),
+            node.title,
+            node.path,
+            node.directory,
+            size(node),
+            null,
+            EPOCH + Math.abs(mix64(node.hash ^ 3) % TIME_SPAN));
+    }
+
+    /**
+     * Draws the size of an entry from a log-normal distribution around the median.
+     * @param node The entry.
+     * @return The size in bytes, 0 for folders.
+     */
+    private long size(Node node)
+    {
+        if (node.directory)
+        {
+            return 0;
+        }
+
+        // Box-Muller transform of two uniform draws
+        double u1 = 1.0 - unit(mix64(node.hash ^ 1));
+        double u2 = unit(mix64(node.hash ^ 2));
+        double normal = Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
+        double size = settings.getFileSizeMedian() * Math.exp(settings.getFileSizeSigma() * normal);
+        return (long) Math.min(settings.getFileSizeMax(), Math.round(size));
+    }
+
+    /**
+     * Picks the extension index of a file.
+     * @param hash The file hash.
+     * @return The extension index.
+     */
+    private static int extension(long hash)
+    {
+        return (int) ((hash >>> 32) % EXTENSIONS.length);
+    }
+
+    /**
+     * Parses a decimal index without sign nor leading zeros.
+     * @param value The string.
+     * @param start The index start.
+     * @param end The index end.
+     * @return The index, -1 if invalid.
+     */
+    private static int parseIndex(String value, int start, int end)
+    {
+        if (start >= end || end - start > 9 || ('0' == value.charAt(start) && end - start > 1))
+        {
+            return -1;
+        }
+        int index = 0;
+        for(int i = start; i < end; ++i)
+        {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+            {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    /**
+     * Converts a hash into a uniform double.
+     * @param hash The hash.
+     * @return A value in [0, 1).
+     */
+    static double unit(long hash)
+    {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Mixes the bits of a value (SplitMix64 finalizer).
+     * @param value The value.
+     * @return The hash.
+     */
+    static long mix64(long value)
+    {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * A generated entry.
+     */
+    private static final class Node
+    {
+        /**
+         * The entry hash, source of all its generated attributes.
+         */
+        private final long hash;
+
+        /**
+         * The title.
+         */
+        private final String title;
+
+        /**
+         * The absolute path.
+         */
+        private final String path;
+
+        /**
+         * The depth, 0 for the root.
+         */
+        private final int depth;
+
+        /**
+         * Is directory.
+         */
+        private final boolean directory;
+
+        /**
+         * Initializes an entry.
+         * @param hash The hash.
+         * @param title The title.
+         * @param path The absolute path.
+         * @param depth The depth.
+         * @param directory Is directory.
+         */
+        private Node(long hash, String title, String path, int depth, boolean directory)
+        {
+            this.hash = hash;
+            this.title = title;
+            this.path = path;
+            this.depth = depth;
+            this.directory = directory;
+        }
+
+        /**
+         * Initializes a child entry.
+         * @param hash The hash.
+         * @param title The title.
+         * @param parent The parent folder.
+         * @param directory Is directory.
+         */
+        private Node(long hash, String title, Node parent, boolean directory)
+        {
+            this(hash, title, 0 == parent.path.length() ? title : parent.path + "/" + title, parent.depth + 1, directory);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import org.apache.log4j.Logger;
+import remotedrive.core.exception.BootstrapException;
+import remotedrive.core.spi.ClientFactory;
+
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+
+/**
+ * Describes an available client factory without loading it.
+ * The factory class, and therefore its whole client stack, is only loaded the first time the factory is requested.
+ */
+public class ClientFactoryDescriptor
+{
+    /**
+     * Logger.
+     */
+    private static Logger log = Logger.getLogger(ClientFactoryDescriptor.class);
+
+    /**
+     * The factory name.
+     */
+    private final String name;
+
+    /**
+     * The factory class name.
+     */
+    private final String className;
+
+    /**
+     * The drive image classpath location.
+     */
+    private final String icon;
+
+    /**
+     * The class loader providing the factory.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * The factory, null until loaded.
+     */
+    private volatile ClientFactory factory;
+
+    /**
+     * Initializes an indexed factory descriptor.
+     * @param name The factory name.
+     * @param className The factory class name.
+     * @param icon The drive image classpath location.
+     * @param classLoader The class loader providing the factory.
+     */
+    public ClientFactoryDescriptor(String name, String className, String icon, ClassLoader classLoader)
+    {
+        // Check input
+        if (null == name)
+        {
+            throw new IllegalArgumentException("The name cannot be null.");
+        }
+        if (null == className)
+        {
+            throw new IllegalArgumentException("The class name cannot be null.");
+        }
+        if (null == classLoader)
+        {
+            throw new IllegalArgumentException("The class loader cannot be null.");
+        }
+
+        // Initialize
+        this.name = name;
+        this.className = className;
+        this.icon = null == icon || 0 == icon.length() ? null : icon;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Initializes a descriptor from an already loaded factory.
+     * @param factory The factory.
+     */
+    public ClientFactoryDescriptor(ClientFactory factory)
+    {
+        // Check input
+        if (null == factory)
+        {
+            throw new IllegalArgumentException("The factory cannot be null.");
+        }
+
+        // Initialize
+        this.name = factory.getName();
+        this.className = factory.getClass().getName();
+        this.icon = null;
+        this.classLoader = factory.getClass().getClassLoader();
+        this.factory = factory;
+    }
+
+    /**
+     * Loads a factory missing from the index, which has to be instantiated to know its name.
+     * @param className The factory class name.
+     * @param classLoader The class loader providing the factory.
+     * @return The descriptor of the loaded factory.
+     * @throws BootstrapException If the factory cannot be loaded.
+     */
+    public static ClientFactoryDescriptor load(String className, ClassLoader classLoader)
+    {
+        try
+        {
+            ClientFactoryDescriptor descriptor = new ClientFactoryDescriptor(newFactory(className, classLoader));
+            log.info(String.format(Locale.US, "Client successfully loaded: %s (%s)", className, descriptor.getName()));
+            return descriptor;
+        }
+        catch (Exception exception)
+        {
+            BootstrapException bootstrapException = new BootstrapException(
+                    String.format(Locale.US, "Unable to load the client factory %s.", className),
+                    exception);
+            log.error(bootstrapException.getMessage(), exception);
+            throw bootstrapException;
+        }
+    }
+
+    /**
+     * Gets the factory name.
+     * @return The factory name.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Gets the factory class name.
+     * @return The factory class name.
+     */
+    public String getClassName()
+    {
+        return className;
+    }
+
+    /**
+     * Is the factory loaded.
+     * @return true if the factory class is loaded, false otherwise.
+     */
+    public boolean isLoaded()
+    {
+        return null != factory;
+    }
+
+    /**
+     * Gets the drive image as a stream, without loading the factory when the image is indexed.
+     * @return The image as a stream, null if not available.
+     */
+    public InputStream getImageAsStream()
+    {
+        if (null != icon)
+        {
+            return classLoader.getResourceAsStream(icon.startsWith("/") ? icon.substring(1) : icon);
+        }
+        return getFactory().getImageAsStream();
+    }
+
+    /**
+     * Gets the factory, loading it if needed.
+     * @return The factory.
+     */
+    public ClientFactory getFactory()
+    {
+        ClientFactory loadedFactory = factory;
+        if (null == loadedFactory)
+        {
+            synchronized (this)
+            {
+                loadedFactory = factory;
+                if (null == loadedFactory)
+                {
+                    loadedFactory = factory = instantiate();
+                }
+            }
+        }
+        return loadedFactory;
+    }
+
+    /**
+     * Loads and instantiates the factory.
+     * @return The factory.
+     */
+    private ClientFactory instantiate()
+    {
+        try
+        {
+            ClientFactory newFactory = newFactory(className, classLoader);
+            if (!name.equals(newFactory.getName()))
+            {
+                log.warn(String.format(Locale.US, "Client factory %s is indexed as %s but named %s", className, name, newFactory.getName()));
+            }
+            log.info(String.format(Locale.US, "Client successfully loaded: %s (%s)", className, name));
+            return newFactory;
+        }
+        catch (Exception exception)
+        {
+            BootstrapException bootstrapException = new BootstrapException(
+                    String.format(Locale.US, "Unable to load the client factory %s (%s).", className, name),
+                    exception);
+            log.error(bootstrapException.getMessage(), exception);
+            throw bootstrapException;
+        }
+    }
+
+    /**
+     * Instantiates a factory class with its public constructor without parameter.
+     * @param className The factory class name.
+     * @param classLoader The class loader providing the factory.
+     * @return The factory.
+     * @throws Exception If the class cannot be loaded or instantiated, the constructor failure being unwrapped.
+     */
+    private static ClientFactory newFactory(String className, ClassLoader classLoader) throws Exception
+    {
+        try
+        {
+            return Class.forName(className, true, classLoader).asSubclass(ClientFactory.class).getDeclaredConstructor().newInstance();
+        }
+        catch (InvocationTargetException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof Exception)
+            {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw exception;
+        }
+    }
+}
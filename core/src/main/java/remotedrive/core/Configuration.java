@@ -19,20 +19,61 @@
 
 package remotedrive.core;
 
+import remotedrive.core.exception.ConfigurationException;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Represents a drive configuration.
  * It extends HashMap in order to base the persisted representation on a key/value collection.
  * It's technically possible to use HashMap members but we encourage using the Configuration member in order to respect the scoping.
+ * Runtime paths should read the compiled snapshot instead, which is rebuilt on the first read following a change.
+ * Every mutator drops the snapshot, and the key, value and entry views are read only so that no change bypasses them.
  */
 public class Configuration extends HashMap<String, String>
 {
     /**
      * The default scope.
      */
-    private static final String DEFAULT_SCOPE = "global";
+    private static final String DEFAULT_SCOPE = ConfigurationSchema.GLOBAL_SCOPE;
+
+    /**
+     * The compiled snapshot, null until compiled or after a change.
+     */
+    private transient volatile ConfigurationSnapshot snapshot;
+
+    /**
+     * Gets the compiled snapshot of this configuration, compiling it if the configuration changed since last call.
+     * A change swaps the whole snapshot so readers never see a partially updated one.
+     * @return The snapshot.
+     * @throws ConfigurationException If an entry is invalid.
+     */
+    public ConfigurationSnapshot getSnapshot()
+    {
+        // Fast path, no lock
+        ConfigurationSnapshot current = snapshot;
+        if (null != current)
+        {
+            return current;
+        }
+
+        // Compile under the lock writers take so that a concurrent change can't be lost
+        synchronized (this)
+        {
+            if (null == snapshot)
+            {
+                snapshot = ConfigurationSchema.compile(this);
+            }
+            return snapshot;
+        }
+    }
 
     /**
      * Reads a string configuration value in the default scope.
@@ -131,6 +172,174 @@ public class Configuration extends HashMap<String, String>
      * @return The configuration key.
      */
     protected String buildKey(String scope, String key) {
-        return String.format(Locale.US, "[%s]%s", scope, key);
+        return "[" + scope + "]" + key;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String put(String key, String value)
+    {
+        snapshot = null;
+        return super.put(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void putAll(Map<? extends String, ? extends String> map)
+    {
+        snapshot = null;
+        super.putAll(map);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String remove(Object key)
+    {
+        snapshot = null;
+        return super.remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean remove(Object key, Object value)
+    {
+        snapshot = null;
+        return super.remove(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void clear()
+    {
+        snapshot = null;
+        super.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String putIfAbsent(String key, String value)
+    {
+        snapshot = null;
+        return super.putIfAbsent(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String replace(String key, String value)
+    {
+        snapshot = null;
+        return super.replace(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean replace(String key, String oldValue, String newValue)
+    {
+        snapshot = null;
+        return super.replace(key, oldValue, newValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void replaceAll(BiFunction<? super String, ? super String, ? extends String> function)
+    {
+        snapshot = null;
+        super.replaceAll(function);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String computeIfAbsent(String key, Function<? super String, ? extends String> mappingFunction)
+    {
+        snapshot = null;
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String computeIfPresent(String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction)
+    {
+        snapshot = null;
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String compute(String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction)
+    {
+        snapshot = null;
+        return super.compute(key, remappingFunction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String merge(String key, String value, BiFunction<? super String, ? super String, ? extends String> remappingFunction)
+    {
+        snapshot = null;
+        return super.merge(key, value, remappingFunction);
+    }
+
+    /**
+     * Gets a read only view of the keys.
+     * @return The keys.
+     */
+    @Override
+    public Set<String> keySet()
+    {
+        return Collections.unmodifiableSet(super.keySet());
+    }
+
+    /**
+     * Gets a read only view of the values.
+     * @return The values.
+     */
+    @Override
+    public Collection<String> values()
+    {
+        return Collections.unmodifiableCollection(super.values());
+    }
+
+    /**
+     * Gets a read only view of the entries, which values can't be set either.
+     * @return The entries.
+     */
+    @Override
+    public Set<Map.Entry<String, String>> entrySet()
+    {
+        final Set<Map.Entry<String, String>> entries = super.entrySet();
+        return Collections.unmodifiableMap(new AbstractMap<String, String>()
+        {
+            @Override
+            public Set<Map.Entry<String, String>> entrySet()
+            {
+                return entries;
+            }
+        }).entrySet();
     }
 }
@@ -0,0 +1,427 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import remotedrive.core.exception.ConfigurationException;
+import remotedrive.core.schedule.DailyHours;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Describes a typed configuration entry: its scope, its name, its default value and how its persisted string value
+ * is parsed and validated.
+ * @param <T> The value type.
+ */
+public abstract class ConfigurationKey<T>
+{
+    /**
+     * The configuration scope.
+     */
+    private final String scope;
+
+    /**
+     * The configuration key.
+     */
+    private final String name;
+
+    /**
+     * The value used when the entry is missing.
+     */
+    private final T defaultValue;
+
+    /**
+     * Initializes a key.
+     * @param scope The configuration scope.
+     * @param name The configuration key.
+     * @param defaultValue The default value.
+     */
+    protected ConfigurationKey(String scope, String name, T defaultValue)
+    {
+        // Check input
+        if (null == scope)
+        {
+            throw new IllegalArgumentException("The scope cannot be null.");
+        }
+        if (null == name)
+        {
+            throw new IllegalArgumentException("The name cannot be null.");
+        }
+
+        // Initialize
+        this.scope = scope;
+        this.name = name;
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Creates a string key.
+     * @param scope The configuration scope.
+     * @param name The configuration key.
+     * @param defaultValue The default value.
+     * @return The key.
+     */
+    public static ConfigurationKey<String> stringKey(String scope, String name, String defaultValue)
+    {
+        return new ConfigurationKey<String>(scope, name, defaultValue)
+        {
+            @Override
+            protected String parse(String value)
+            {
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Creates a boolean key, only accepting "true" and "false".
+     * @param scope The configuration scope.
+     * @param name The configuration key.
+     * @param defaultValue The default value.
+     * @return The key.
+     */
+    public static ConfigurationKey<Boolean> booleanKey(String scope, String name, boolean defaultValue)
+    {
+        return new ConfigurationKey<Boolean>(scope, name, defaultValue)
+        {
+            @Override
+            protected Boolean parse(String value)
+            {
+                if ("true".equalsIgnoreCase(value))
+                {
+                    return Boolean.TRUE;
+                }
+                if ("false".equalsIgnoreCase(value))
+                {
+                    return Boolean.FALSE;
+                }
+                throw invalid(value, "a boolean is expected");
+            }
+        };
+    }
+
+    /**
+     * Creates an integer key bounded by an inclusive range.
+     * @param scope The configuration scope.
+     * @param name The configuration key.
+     * @param defaultValue The default value.
+     * @param min The minimum value.
+     * @param max The maximum value.
+     * @return The key.
+     */
+    public static ConfigurationKey<Integer> intKey(String scope, String name, int defaultValue, final int min, final int max)
+    {
+        return new ConfigurationKey<Integer>(scope, name, defaultValue)
+        {
+            @Override
+            protected Integer parse(String value)
+            {
+                int parsed;
+                try
+                {
+                    parsed = Integer.parseInt(value.trim());
+                }
+                catch (NumberFormatException e)
+                {
+                    throw invalid(value, "an integer is expected");
+                }
+                if (parsed < min || parsed > max)
+                {
+                    throw invalid(value, String.format(Locale.US, "the value must be between %d and %d", min, max));
+                }
+                return parsed;
+            }
+        };
+    }
+
+    /**
+     * Creates a decimal key bounded by an inclusive range.
+     * @param scope The configuration scope.
+     * @param name The configuration key.
+     * @param defaultValue The default value.
+     * @param min The minimum value.
+     * @param max The maximum value.
+     * @return The key.
+     */
+    public static ConfigurationKey<Double> doubleKey(String scope, String name, double defaultValue, final double min, final double max)
+    {
+        return new ConfigurationKey<Double>(scope, name, defaultValue)
+        {
+            @Override
+            protected Double parse(String value)
+            {
+                double parsed;
+                try
+                {
+                    parsed = Double.parseDouble(value.trim());
+                }
+                catch (NumberFormatException e)
+                {
+                    throw invalid(value, "a decimal is expected");
+                }
+                if (Double.isNaN(parsed) || parsed < min || parsed > max)
+                {
+                    throw invalid(value, String.format(Locale.US, "the value must be between %s and %s", min, max));
+                }
+                return parsed;
+            }
+        };
+    }
+
+    /**
+     * Creates a key holding drive relative folder paths separated by '|', which Windows doesn't allow in paths.
+     * Backslashes are turned into slashes, leading and trailing slashes as well as empty paths are dropped.
+     * @param scope The configuration scope.
+     * @param name The configuration key.
+     * @return The key, its default value being an empty list.
+     */
+    public static ConfigurationKey<List<String>> pathListKey(String scope, String name)
+    {
+        return new ConfigurationKey<List<String>>(scope, name, Collections.<String>emptyList())
+        {
+            @Override
+            protected List<String> parse(String value)
+            {
+                List<String> paths = new ArrayList<String>();
+                for(String path : value.split("\\|"))
+                {
+                    String normalizedPath = path.trim().replace('\\', '/');
+                    while (normalizedPath.startsWith("/"))
+                    {
+                        normalizedPath = normalizedPath.substring(1);
+                    }
+                    while (normalizedPath.endsWith("/"))
+                    {
+                        normalizedPath = normalizedPath.substring(0, normalizedPath.length() - 1);
+                    }
+                    if (0 != normalizedPath.length() && !paths.contains(normalizedPath))
+                    {
+                        paths.add(normalizedPath);
+                    }
+                }
+                return Collections.unmodifiableList(paths);
+            }
+
+            @Override
+            protected String format(List<String> value)
+            {
+                StringBuilder builder = new StringBuilder();
+                for(String path : value)
+                {
+                    if (0 != builder.length())
+                    {
+                        builder.append('|');
+                    }
+                    builder.append(path);
+                }
+                return builder.toString();
+            }
+        };
+    }
+
+    /**
+     * Creates a key holding file extensions separated by commas, lower cased and stripped of their leading dot.
+     * @param scope The configuration scope.
+     * @param name The configuration key.
+     * @param defaultValues The default extensions.
+     * @return The key.
+     */
+    public static ConfigurationKey<List<String>> extensionListKey(String scope, String name, String... defaultValues)
+    {
+        return new ConfigurationKey<List<String>>(scope, name, Collections.unmodifiableList(Arrays.asList(defaultValues)))
+        {
+            @Override
+            protected List<String> parse(String value)
+            {
+                List<String> extensions = new ArrayList<String>();
+                for(String extension : value.split(","))
+                {
+                    String normalizedExtension = extension.trim().toLowerCase(Locale.US);
+                    while (normalizedExtension.startsWith("."))
+                    {
+                        normalizedExtension = normalizedExtension.substring(1);
+                    }
+                    if (0 != normalizedExtension.length() && !extensions.contains(normalizedExtension))
+                    {
+                        extensions.add(normalizedExtension);
+                    }
+                }
+                return Collections.unmodifiableList(extensions);
+            }
+
+            @Override
+            protected String format(List<String> value)
+            {
+                StringBuilder builder = new StringBuilder();
+                for(String extension : value)
+                {
+                    if (0 != builder.length())
+                    {
+                        builder.append(',');
+                    }
+                    builder.append(extension);
+                }
+                return builder.toString();
+            }
+        };
+    }
+
+    /**
+     * Creates a key holding daily time ranges such as "08:00-18:00", separated by commas.
+     * @param scope The configuration scope.
+     * @param name The configuration key.
+     * @return The key, its default value being the whole day.
+     */
+    public static ConfigurationKey<DailyHours> hoursKey(String scope, String name)
+    {
+        return new ConfigurationKey<DailyHours>(scope, name, DailyHours.ALWAYS)
+        {
+            @Override
+            protected DailyHours parse(String value)
+            {
+                try
+                {
+                    return DailyHours.parse(value);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw invalid(value, "time ranges such as 08:00-18:00 are expected");
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a key accepting a single drive letter, upper cased when parsed.
+     * @param scope The configuration scope.
+     * @param name The configuration key.
+     * @return The key.
+     */
+    public static ConfigurationKey<String> driveLetterKey(String scope, String name)
+    {
+        return new ConfigurationKey<String>(scope, name, null)
+        {
+            @Override
+            protected String parse(String value)
+            {
+                if (1 != value.length() || !Character.isLetter(value.charAt(0)))
+                {
+                    throw invalid(value, "a drive letter is expected");
+                }
+                return value.toUpperCase(Locale.US);
+            }
+        };
+    }
+
+    /**
+     * Gets the configuration scope.
+     * @return The configuration scope.
+     */
+    public String getScope()
+    {
+        return scope;
+    }
+
+    /**
+     * Gets the configuration key.
+     * @return The configuration key.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Gets the value used when the entry is missing.
+     * @return The default value.
+     */
+    public T getDefaultValue()
+    {
+        return defaultValue;
+    }
+
+    /**
+     * Reads, parses and validates the value from a configuration.
+     * @param configuration The configuration.
+     * @return The value, or the default value if the entry is missing.
+     * @throws ConfigurationException If the value is invalid.
+     */
+    public T read(Configuration configuration)
+    {
+        String value = configuration.readString(scope, name);
+        if (null == value)
+        {
+            return defaultValue;
+        }
+
+        return parse(value);
+    }
+
+    /**
+     * Writes a value to a configuration.
+     * @param configuration The configuration.
+     * @param value The value.
+     */
+    public void write(Configuration configuration, T value)
+    {
+        configuration.writeString(scope, name, null == value ? null : format(value));
+    }
+
+    /**
+     * Formats a value into its persisted form.
+     * @param value The value, never null.
+     * @return The persisted value.
+     */
+    protected String format(T value)
+    {
+        return String.valueOf(value);
+    }
+
+    /**
+     * Parses and validates a persisted value.
+     * @param value The persisted value, never null.
+     * @return The value.
+     * @throws ConfigurationException If the value is invalid.
+     */
+    protected abstract T parse(String value);
+
+    /**
+     * Builds the exception reported for an invalid value.
+     * @param value The invalid value.
+     * @param reason The reason.
+     * @return The exception.
+     */
+    protected ConfigurationException invalid(String value, String reason)
+    {
+        return new ConfigurationException(String.format(Locale.US, "Invalid value '%s' for [%s]%s: %s.", value, scope, name, reason));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "[" + scope + "]" + name;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import remotedrive.core.exception.ConfigurationException;
+import remotedrive.core.schedule.DailyHours;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Declares the known drive configuration entries and compiles configurations into snapshots.
+ */
+public final class ConfigurationSchema
+{
+    /**
+     * The default scope.
+     */
+    public static final String GLOBAL_SCOPE = "global";
+
+    /**
+     * The scope of the tuning entries, which are applied to mounted drives without remounting them.
+     * Entries of any other scope define the mount and are only read when mounting.
+     */
+    public static final String TUNING_SCOPE = "tuning";
+
+    /**
+     * The drive name, also used as volume name.
+     */
+    public static final ConfigurationKey<String> NAME = ConfigurationKey.stringKey(GLOBAL_SCOPE, "name", null);
+
+    /**
+     * The drive letter.
+     */
+    public static final ConfigurationKey<String> MOUNTING_POINT = ConfigurationKey.driveLetterKey(GLOBAL_SCOPE, "mounting-point");
+
+    /**
+     * The client factory name.
+     */
+    public static final ConfigurationKey<String> FACTORY_NAME = ConfigurationKey.stringKey(GLOBAL_SCOPE, "factory-name", null);
+
+    /**
+     * The remote account.
+     */
+    public static final ConfigurationKey<String> USERNAME = ConfigurationKey.stringKey(GLOBAL_SCOPE, "username", null);
+
+    /**
+     * Is the client caching remote data.
+     */
+    public static final ConfigurationKey<Boolean> CACHING = ConfigurationKey.booleanKey(GLOBAL_SCOPE, "caching", false);
+
+    /**
+     * Is the drive mounted at startup.
+     */
+    public static final ConfigurationKey<Boolean> ENABLED = ConfigurationKey.booleanKey(GLOBAL_SCOPE, "enabled", false);
+
+    /**
+     * The file recording the file system operations trace, no trace is recorded when missing.
+     */
+    public static final ConfigurationKey<String> TRACE_FILE = ConfigurationKey.stringKey(GLOBAL_SCOPE, "trace-file", null);
+
+    /**
+     * Are the path segments hashed in the recorded trace.
+     */
+    public static final ConfigurationKey<Boolean> TRACE_ANONYMIZED = ConfigurationKey.booleanKey(GLOBAL_SCOPE, "trace-anonymized", true);
+
+    /**
+     * The folders kept available offline, separated by '|'.
+     */
+    public static final ConfigurationKey<List<String>> PINNED_FOLDERS = ConfigurationKey.pathListKey(GLOBAL_SCOPE, "pinned-folders");
+
+    /**
+     * The directory of the local disk cache, a directory next to the configuration file when missing.
+     */
+    public static final ConfigurationKey<String> CACHE_DIRECTORY = ConfigurationKey.stringKey(GLOBAL_SCOPE, "cache-directory", null);
+
+    /**
+     * Maximum number of cached folder listings.
+     */
+    public static final ConfigurationKey<Integer> CHILDREN_CACHE_SIZE = ConfigurationKey.intKey(TUNING_SCOPE, "children-cache-size", 1000, 0, 1000000);
+
+    /**
+     * Time to live of the cached folder listings, in seconds.
+     */
+    public static final ConfigurationKey<Integer> CHILDREN_CACHE_TTL = ConfigurationKey.intKey(TUNING_SCOPE, "children-cache-ttl", 600, 0, 86400);
+
+    /**
+     * Maximum number of cached file metadata.
+     */
+    public static final ConfigurationKey<Integer> FILE_CACHE_SIZE = ConfigurationKey.intKey(TUNING_SCOPE, "file-cache-size", 1000, 0, 1000000);
+
+    /**
+     * Time to live of the cached file metadata, in seconds.
+     */
+    public static final ConfigurationKey<Integer> FILE_CACHE_TTL = ConfigurationKey.intKey(TUNING_SCOPE, "file-cache-ttl", 600, 0, 86400);
+
+    /**
+     * Maximum number of cached file contents.
+     */
+    public static final ConfigurationKey<Integer> CONTENT_CACHE_SIZE = ConfigurationKey.intKey(TUNING_SCOPE, "content-cache-size", 1000, 0, 1000000);
+
+    /**
+     * Time to live of the cached file contents, in seconds, after which their revision is checked before serving them.
+     */
+    public static final ConfigurationKey<Integer> CONTENT_CACHE_TTL = ConfigurationKey.intKey(TUNING_SCOPE, "content-cache-ttl", 60, 0, 86400);
+
+    /**
+     * Memory budget of the cached file contents as stored, in MiB, 0 to only bound the number of contents.
+     */
+    public static final ConfigurationKey<Integer> CONTENT_CACHE_MEMORY = ConfigurationKey.intKey(TUNING_SCOPE, "content-cache-memory", 0, 0, 65536);
+
+    /**
+     * Are the cached file contents compressed in memory when they compress well.
+     */
+    public static final ConfigurationKey<Boolean> CONTENT_CACHE_COMPRESSION = ConfigurationKey.booleanKey(TUNING_SCOPE, "content-cache-compression", true);
+
+    /**
+     * Maximum number of cached file headers.
+     */
+    public static final ConfigurationKey<Integer> HEADER_CACHE_SIZE = ConfigurationKey.intKey(TUNING_SCOPE, "header-cache-size", 4096, 0, 1000000);
+
+    /**
+     * Size of the file headers prefetched when a folder is enumerated, in KiB, 0 to disable the prefetching.
+     */
+    public static final ConfigurationKey<Integer> PREFETCH_HEADER_SIZE = ConfigurationKey.intKey(TUNING_SCOPE, "prefetch-header-size", 64, 0, 1024);
+
+    /**
+     * Maximum number of file headers prefetched at once.
+     */
+    public static final ConfigurationKey<Integer> PREFETCH_PARALLELISM = ConfigurationKey.intKey(TUNING_SCOPE, "prefetch-parallelism", 4, 1, 64);
+
+    /**
+     * Maximum number of file headers prefetched per enumerated folder.
+     */
+    public static final ConfigurationKey<Integer> PREFETCH_MAX_FILES = ConfigurationKey.intKey(TUNING_SCOPE, "prefetch-max-files", 256, 1, 100000);
+
+    /**
+     * Extensions of the files whose header is prefetched, those read by the thumbnail and property handlers.
+     */
+    public static final ConfigurationKey<List<String>> PREFETCH_EXTENSIONS = ConfigurationKey.extensionListKey(TUNING_SCOPE, "prefetch-extensions",
+            "jpg", "jpeg", "png", "gif", "bmp", "tif", "tiff", "heic", "webp", "cr2", "nef", "dng",
+            "mp4", "mov", "avi", "mkv", "wmv", "m4v",
+            "mp3", "m4a", "flac", "wma", "wav",
+            "doc", "docx", "xls", "xlsx", "ppt", "pptx", "pdf");
+
+    /**
+     * Bytes the access predictor may prefetch per minute, in MiB, 0 to only learn the accesses.
+     */
+    public static final ConfigurationKey<Integer> PREDICT_BUDGET = ConfigurationKey.intKey(TUNING_SCOPE, "predict-budget", 32, 0, 65536);
+
+    /**
+     * Minimum probability of a predicted access for the access predictor to prefetch it.
+     */
+    public static final ConfigurationKey<Double> PREDICT_CONFIDENCE = ConfigurationKey.doubleKey(TUNING_SCOPE, "predict-confidence", 0.3, 0.01, 1.0);
+
+    /**
+     * Maximum number of files and folders prefetched by the access predictor after an access.
+     */
+    public static final ConfigurationKey<Integer> PREDICT_MAX_FILES = ConfigurationKey.intKey(TUNING_SCOPE, "predict-max-files", 8, 1, 256);
+
+    /**
+     * Maximum number of backend requests of the drive in progress at once, background requests yielding to interactive ones.
+     */
+    public static final ConfigurationKey<Integer> IO_CONCURRENCY = ConfigurationKey.intKey(TUNING_SCOPE, "io-concurrency", 8, 1, 256);
+
+    /**
+     * Number of backend request slots background requests leave to interactive ones.
+     */
+    public static final ConfigurationKey<Integer> IO_INTERACTIVE_RESERVE = ConfigurationKey.intKey(TUNING_SCOPE, "io-interactive-reserve", 2, 0, 256);
+
+    /**
+     * Maximum number of read ahead requests in progress at once.
+     */
+    public static final ConfigurationKey<Integer> IO_READ_AHEAD_LIMIT = ConfigurationKey.intKey(TUNING_SCOPE, "io-read-ahead-limit", 2, 1, 256);
+
+    /**
+     * Maximum number of prefetch requests in progress at once.
+     */
+    public static final ConfigurationKey<Integer> IO_PREFETCH_LIMIT = ConfigurationKey.intKey(TUNING_SCOPE, "io-prefetch-limit", 4, 1, 256);
+
+    /**
+     * Maximum number of synchronisation requests in progress at once.
+     */
+    public static final ConfigurationKey<Integer> IO_SYNC_LIMIT = ConfigurationKey.intKey(TUNING_SCOPE, "io-sync-limit", 2, 1, 256);
+
+    /**
+     * Maximum number of maintenance requests in progress at once.
+     */
+    public static final ConfigurationKey<Integer> IO_MAINTENANCE_LIMIT = ConfigurationKey.intKey(TUNING_SCOPE, "io-maintenance-limit", 1, 1, 256);
+
+    /**
+     * Download rate of the interactive requests of the drive, in KiB per second, 0 for unlimited.
+     */
+    public static final ConfigurationKey<Integer> BANDWIDTH_INTERACTIVE_LIMIT = ConfigurationKey.intKey(TUNING_SCOPE, "bandwidth-interactive-limit", 0, 0, 10000000);
+
+    /**
+     * Download rate of the background requests of the drive, in KiB per second, 0 for unlimited.
+     */
+    public static final ConfigurationKey<Integer> BANDWIDTH_BACKGROUND_LIMIT = ConfigurationKey.intKey(TUNING_SCOPE, "bandwidth-background-limit", 0, 0, 10000000);
+
+    /**
+     * Download rate of the interactive requests of all the drives, in KiB per second, 0 for unlimited.
+     */
+    public static final ConfigurationKey<Integer> BANDWIDTH_GLOBAL_INTERACTIVE_LIMIT = ConfigurationKey.intKey(TUNING_SCOPE, "bandwidth-global-interactive-limit", 0, 0, 10000000);
+
+    /**
+     * Download rate of the background requests of all the drives, in KiB per second, 0 for unlimited.
+     */
+    public static final ConfigurationKey<Integer> BANDWIDTH_GLOBAL_BACKGROUND_LIMIT = ConfigurationKey.intKey(TUNING_SCOPE, "bandwidth-global-background-limit", 0, 0, 10000000);
+
+    /**
+     * Daily hours the bandwidth limits of the drive apply within, the whole day if empty.
+     */
+    public static final ConfigurationKey<DailyHours> BANDWIDTH_HOURS = ConfigurationKey.hoursKey(TUNING_SCOPE, "bandwidth-hours");
+
+    /**
+     * Maximum number of folder listings kept converted by the file system handler.
+     */
+    public static final ConfigurationKey<Integer> FIND_DATA_CACHE_SIZE = ConfigurationKey.intKey(TUNING_SCOPE, "find-data-cache-size", 512, 1, 1000000);
+
+    /**
+     * Are the debug messages of the drive logged whatever the logger level.
+     */
+    public static final ConfigurationKey<Boolean> DEBUG_LOGGING = ConfigurationKey.booleanKey(TUNING_SCOPE, "debug-logging", false);
+
+    /**
+     * One file system operation out of this number is logged.
+     */
+    public static final ConfigurationKey<Integer> LOG_SAMPLING = ConfigurationKey.intKey(TUNING_SCOPE, "log-sampling", 1, 1, 1000000);
+
+    /**
+     * Maximum number of messages logged per second for the drive, 0 for unlimited.
+     */
+    public static final ConfigurationKey<Integer> LOG_RATE_LIMIT = ConfigurationKey.intKey(TUNING_SCOPE, "log-rate-limit", 100, 0, 1000000);
+
+    /**
+     * Delay between two synchronisations of the pinned folders, in seconds.
+     */
+    public static final ConfigurationKey<Integer> SYNC_INTERVAL = ConfigurationKey.intKey(TUNING_SCOPE, "sync-interval", 300, 10, 86400);
+
+    /**
+     * Maximum number of pinned files downloaded at once.
+     */
+    public static final ConfigurationKey<Integer> SYNC_PARALLELISM = ConfigurationKey.intKey(TUNING_SCOPE, "sync-parallelism", 4, 1, 64);
+
+    /**
+     * Time without file system activity before the synchronisation downloads, in milliseconds.
+     */
+    public static final ConfigurationKey<Integer> SYNC_IDLE_DELAY = ConfigurationKey.intKey(TUNING_SCOPE, "sync-idle-delay", 2000, 0, 3600000);
+
+    /**
+     * All the declared keys.
+     */
+    public static final List<ConfigurationKey<?>> KEYS = Collections.unmodifiableList(Arrays.<ConfigurationKey<?>>asList(
+            NAME,
+            MOUNTING_POINT,
+            FACTORY_NAME,
+            USERNAME,
+            CACHING,
+            ENABLED,
+            TRACE_FILE,
+            TRACE_ANONYMIZED,
+            PINNED_FOLDERS,
+            CACHE_DIRECTORY,
+            CHILDREN_CACHE_SIZE,
+            CHILDREN_CACHE_TTL,
+            FILE_CACHE_SIZE,
+            FILE_CACHE_TTL,
+            CONTENT_CACHE_SIZE,
+            CONTENT_CACHE_TTL,
+            CONTENT_CACHE_MEMORY,
+            CONTENT_CACHE_COMPRESSION,
+            HEADER_CACHE_SIZE,
+            PREFETCH_HEADER_SIZE,
+            PREFETCH_PARALLELISM,
+            PREFETCH_MAX_FILES,
+            PREFETCH_EXTENSIONS,
+            PREDICT_BUDGET,
+            PREDICT_CONFIDENCE,
+            PREDICT_MAX_FILES,
+            IO_CONCURRENCY,
+            IO_INTERACTIVE_RESERVE,
+            IO_READ_AHEAD_LIMIT,
+            IO_PREFETCH_LIMIT,
+            IO_SYNC_LIMIT,
+            IO_MAINTENANCE_LIMIT,
+            BANDWIDTH_INTERACTIVE_LIMIT,
+            BANDWIDTH_BACKGROUND_LIMIT,
+            BANDWIDTH_GLOBAL_INTERACTIVE_LIMIT,
+            BANDWIDTH_GLOBAL_BACKGROUND_LIMIT,
+            BANDWIDTH_HOURS,
+            FIND_DATA_CACHE_SIZE,
+            DEBUG_LOGGING,
+            LOG_SAMPLING,
+            LOG_RATE_LIMIT,
+            SYNC_INTERVAL,
+            SYNC_PARALLELISM,
+            SYNC_IDLE_DELAY
+    ));
+
+    /**
+     * Not instantiable.
+     */
+    private ConfigurationSchema()
+    {
+    }
+
+    /**
+     * Parses and validates every declared entry of a configuration into a snapshot.
+     * @param configuration The configuration.
+     * @return The snapshot.
+     * @throws ConfigurationException If an entry is invalid.
+     */
+    public static ConfigurationSnapshot compile(Configuration configuration)
+    {
+        // Check input
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+
+        // Read every entry once
+        return new ConfigurationSnapshot(configuration);
+    }
+
+    /**
+     * Checks whether a persisted entry is a tuning entry.
+     * @param entryKey The persisted key, including its scope.
+     * @return true if the entry can be applied without remounting, false otherwise.
+     */
+    public static boolean isTuningEntry(String entryKey)
+    {
+        return null != entryKey && entryKey.startsWith("[" + TUNING_SCOPE + "]");
+    }
+}
@@ -0,0 +1,702 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import remotedrive.core.exception.ConfigurationException;
+import remotedrive.core.schedule.DailyHours;
+
+import java.util.List;
+
+/**
+ * Immutable, already parsed view of a configuration.
+ * Snapshots are compiled by ConfigurationSchema and are meant for the runtime paths (file system callbacks, clients)
+ * which then read plain fields instead of formatting keys and parsing values on each call.
+ */
+public final class ConfigurationSnapshot
+{
+    /**
+     * The drive name.
+     */
+    private final String name;
+
+    /**
+     * The drive letter.
+     */
+    private final String mountingPoint;
+
+    /**
+     * The client factory name.
+     */
+    private final String factoryName;
+
+    /**
+     * The remote account.
+     */
+    private final String username;
+
+    /**
+     * Is the client caching remote data.
+     */
+    private final boolean caching;
+
+    /**
+     * Is the drive mounted at startup.
+     */
+    private final boolean enabled;
+
+    /**
+     * The file recording the file system operations trace.
+     */
+    private final String traceFile;
+
+    /**
+     * Are the path segments hashed in the recorded trace.
+     */
+    private final boolean traceAnonymized;
+
+    /**
+     * The folders kept available offline.
+     */
+    private final List<String> pinnedFolders;
+
+    /**
+     * The directory of the local disk cache.
+     */
+    private final String cacheDirectory;
+
+    /**
+     * Maximum number of cached folder listings.
+     */
+    private final int childrenCacheSize;
+
+    /**
+     * Time to live of the cached folder listings, in seconds.
+     */
+    private final int childrenCacheTtl;
+
+    /**
+     * Maximum number of cached file metadata.
+     */
+    private final int fileCacheSize;
+
+    /**
+     * Time to live of the cached file metadata, in seconds.
+     */
+    private final int fileCacheTtl;
+
+    /**
+     * Maximum number of cached file contents.
+     */
+    private final int contentCacheSize;
+
+    /**
+     * Time to live of the cached file contents, in seconds, after which their revision is checked before serving them.
+     */
+    private final int contentCacheTtl;
+
+    /**
+     * Memory budget of the cached file contents as stored, in MiB, 0 to only bound the number of contents.
+     */
+    private final int contentCacheMemory;
+
+    /**
+     * Are the cached file contents compressed in memory when they compress well.
+     */
+    private final boolean contentCacheCompression;
+
+    /**
+     * Maximum number of cached file headers.
+     */
+    private final int headerCacheSize;
+
+    /**
+     * Size of the file headers prefetched when a folder is enumerated, in KiB, 0 to disable the prefetching.
+     */
+    private final int prefetchHeaderSize;
+
+    /**
+     * Maximum number of file headers prefetched at once.
+     */
+    private final int prefetchParallelism;
+
+    /**
+     * Maximum number of file headers prefetched per enumerated folder.
+     */
+    private final int prefetchMaxFiles;
+
+    /**
+     * Extensions of the files whose header is prefetched.
+     */
+    private final List<String> prefetchExtensions;
+
+    /**
+     * Bytes the access predictor may prefetch per minute, in MiB, 0 to only learn the accesses.
+     */
+    private final int predictBudget;
+
+    /**
+     * Minimum probability of a predicted access for the access predictor to prefetch it.
+     */
+    private final double predictConfidence;
+
+    /**
+     * Maximum number of files and folders prefetched by the access predictor after an access.
+     */
+    private final int predictMaxFiles;
+
+    /**
+     * Maximum number of backend requests of the drive in progress at once, background requests yielding to interactive ones.
+     */
+    private final int ioConcurrency;
+
+    /**
+     * Number of backend request slots background requests leave to interactive ones.
+     */
+    private final int ioInteractiveReserve;
+
+    /**
+     * Maximum number of read ahead requests in progress at once.
+     */
+    private final int ioReadAheadLimit;
+
+    /**
+     * Maximum number of prefetch requests in progress at once.
+     */
+    private final int ioPrefetchLimit;
+
+    /**
+     * Maximum number of synchronisation requests in progress at once.
+     */
+    private final int ioSyncLimit;
+
+    /**
+     * Maximum number of maintenance requests in progress at once.
+     */
+    private final int ioMaintenanceLimit;
+
+    /**
+     * Download rate of the interactive requests of the drive, in KiB per second, 0 for unlimited.
+     */
+    private final int bandwidthInteractiveLimit;
+
+    /**
+     * Download rate of the background requests of the drive, in KiB per second, 0 for unlimited.
+     */
+    private final int bandwidthBackgroundLimit;
+
+    /**
+     * Download rate of the interactive requests of all the drives, in KiB per second, 0 for unlimited.
+     */
+    private final int bandwidthGlobalInteractiveLimit;
+
+    /**
+     * Download rate of the background requests of all the drives, in KiB per second, 0 for unlimited.
+     */
+    private final int bandwidthGlobalBackgroundLimit;
+
+    /**
+     * Daily hours the bandwidth limits of the drive apply within.
+     */
+    private final DailyHours bandwidthHours;
+
+    /**
+     * Maximum number of folder listings kept converted by the file system handler.
+     */
+    private final int findDataCacheSize;
+
+    /**
+     * Are the debug messages of the drive logged whatever the logger level.
+     */
+    private final boolean debugLogging;
+
+    /**
+     * One file system operation out of this number is logged.
+     */
+    private final int logSampling;
+
+    /**
+     * Maximum number of messages logged per second for the drive, 0 for unlimited.
+     */
+    private final int logRateLimit;
+
+    /**
+     * Delay between two synchronisations of the pinned folders, in seconds.
+     */
+    private final int syncInterval;
+
+    /**
+     * Maximum number of pinned files downloaded at once.
+     */
+    private final int syncParallelism;
+
+    /**
+     * Time without file system activity before the synchronisation downloads, in milliseconds.
+     */
+    private final int syncIdleDelay;
+
+    /**
+     * Initializes a snapshot, parsing and validating every declared entry of a configuration once.
+     * @param configuration The configuration.
+     * @throws ConfigurationException If an entry is invalid.
+     */
+    ConfigurationSnapshot(Configuration configuration)
+    {
+        this.name = ConfigurationSchema.NAME.read(configuration);
+        this.mountingPoint = ConfigurationSchema.MOUNTING_POINT.read(configuration);
+        this.factoryName = ConfigurationSchema.FACTORY_NAME.read(configuration);
+        this.username = ConfigurationSchema.USERNAME.read(configuration);
+        this.caching = ConfigurationSchema.CACHING.read(configuration);
+        this.enabled = ConfigurationSchema.ENABLED.read(configuration);
+        this.traceFile = ConfigurationSchema.TRACE_FILE.read(configuration);
+        this.traceAnonymized = ConfigurationSchema.TRACE_ANONYMIZED.read(configuration);
+        this.pinnedFolders = ConfigurationSchema.PINNED_FOLDERS.read(configuration);
+        this.cacheDirectory = ConfigurationSchema.CACHE_DIRECTORY.read(configuration);
+        this.childrenCacheSize = ConfigurationSchema.CHILDREN_CACHE_SIZE.read(configuration);
+        this.childrenCacheTtl = ConfigurationSchema.CHILDREN_CACHE_TTL.read(configuration);
+        this.fileCacheSize = ConfigurationSchema.FILE_CACHE_SIZE.read(configuration);
+        this.fileCacheTtl = ConfigurationSchema.FILE_CACHE_TTL.read(configuration);
+        this.contentCacheSize = ConfigurationSchema.CONTENT_CACHE_SIZE.read(configuration);
+        this.contentCacheTtl = ConfigurationSchema.CONTENT_CACHE_TTL.read(configuration);
+        this.contentCacheMemory = ConfigurationSchema.CONTENT_CACHE_MEMORY.read(configuration);
+        this.contentCacheCompression = ConfigurationSchema.CONTENT_CACHE_COMPRESSION.read(configuration);
+        this.headerCacheSize = ConfigurationSchema.HEADER_CACHE_SIZE.read(configuration);
+        this.prefetchHeaderSize = ConfigurationSchema.PREFETCH_HEADER_SIZE.read(configuration);
+        this.prefetchParallelism = ConfigurationSchema.PREFETCH_PARALLELISM.read(configuration);
+        this.prefetchMaxFiles = ConfigurationSchema.PREFETCH_MAX_FILES.read(configuration);
+        this.prefetchExtensions = ConfigurationSchema.PREFETCH_EXTENSIONS.read(configuration);
+        this.predictBudget = ConfigurationSchema.PREDICT_BUDGET.read(configuration);
+        this.predictConfidence = ConfigurationSchema.PREDICT_CONFIDENCE.read(configuration);
+        this.predictMaxFiles = ConfigurationSchema.PREDICT_MAX_FILES.read(configuration);
+        this.ioConcurrency = ConfigurationSchema.IO_CONCURRENCY.read(configuration);
+        this.ioInteractiveReserve = ConfigurationSchema.IO_INTERACTIVE_RESERVE.read(configuration);
+        this.ioReadAheadLimit = ConfigurationSchema.IO_READ_AHEAD_LIMIT.read(configuration);
+        this.ioPrefetchLimit = ConfigurationSchema.IO_PREFETCH_LIMIT.read(configuration);
+        this.ioSyncLimit = ConfigurationSchema.IO_SYNC_LIMIT.read(configuration);
+        this.ioMaintenanceLimit = ConfigurationSchema.IO_MAINTENANCE_LIMIT.read(configuration);
+        this.bandwidthInteractiveLimit = ConfigurationSchema.BANDWIDTH_INTERACTIVE_LIMIT.read(configuration);
+        this.bandwidthBackgroundLimit = ConfigurationSchema.BANDWIDTH_BACKGROUND_LIMIT.read(configuration);
+        this.bandwidthGlobalInteractiveLimit = ConfigurationSchema.BANDWIDTH_GLOBAL_INTERACTIVE_LIMIT.read(configuration);
+        this.bandwidthGlobalBackgroundLimit = ConfigurationSchema.BANDWIDTH_GLOBAL_BACKGROUND_LIMIT.read(configuration);
+        this.bandwidthHours = ConfigurationSchema.BANDWIDTH_HOURS.read(configuration);
+        this.findDataCacheSize = ConfigurationSchema.FIND_DATA_CACHE_SIZE.read(configuration);
+        this.debugLogging = ConfigurationSchema.DEBUG_LOGGING.read(configuration);
+        this.logSampling = ConfigurationSchema.LOG_SAMPLING.read(configuration);
+        this.logRateLimit = ConfigurationSchema.LOG_RATE_LIMIT.read(configuration);
+        this.syncInterval = ConfigurationSchema.SYNC_INTERVAL.read(configuration);
+        this.syncParallelism = ConfigurationSchema.SYNC_PARALLELISM.read(configuration);
+        this.syncIdleDelay = ConfigurationSchema.SYNC_IDLE_DELAY.read(configuration);
+    }
+
+    /**
+     * Gets the drive name.
+     * @return The drive name.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Gets the drive letter.
+     * @return The drive letter, upper cased.
+     */
+    public String getMountingPoint()
+    {
+        return mountingPoint;
+    }
+
+    /**
+     * Gets the client factory name.
+     * @return The client factory name.
+     */
+    public String getFactoryName()
+    {
+        return factoryName;
+    }
+
+    /**
+     * Gets the remote account.
+     * @return The remote account.
+     */
+    public String getUsername()
+    {
+        return username;
+    }
+
+    /**
+     * Is the client caching remote data.
+     * @return true if caching, false otherwise.
+     */
+    public boolean isCaching()
+    {
+        return caching;
+    }
+
+    /**
+     * Is the drive mounted at startup.
+     * @return true if enabled, false otherwise.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Gets the file recording the file system operations trace.
+     * @return The trace file, null if no trace is recorded.
+     */
+    public String getTraceFile()
+    {
+        return traceFile;
+    }
+
+    /**
+     * Are the path segments hashed in the recorded trace.
+     * @return true if the trace is anonymized, false if it keeps the paths.
+     */
+    public boolean isTraceAnonymized()
+    {
+        return traceAnonymized;
+    }
+
+    /**
+     * Gets the folders kept available offline.
+     * @return The drive relative folder paths, unmodifiable.
+     */
+    public List<String> getPinnedFolders()
+    {
+        return pinnedFolders;
+    }
+
+    /**
+     * Gets the directory of the local disk cache.
+     * @return The directory, null for the default one.
+     */
+    public String getCacheDirectory()
+    {
+        return cacheDirectory;
+    }
+
+    /**
+     * Gets the maximum number of cached folder listings.
+     * @return The maximum number of cached folder listings.
+     */
+    public int getChildrenCacheSize()
+    {
+        return childrenCacheSize;
+    }
+
+    /**
+     * Gets the time to live of the cached folder listings, in seconds.
+     * @return The time to live of the cached folder listings, in seconds.
+     */
+    public int getChildrenCacheTtl()
+    {
+        return childrenCacheTtl;
+    }
+
+    /**
+     * Gets the maximum number of cached file metadata.
+     * @return The maximum number of cached file metadata.
+     */
+    public int getFileCacheSize()
+    {
+        return fileCacheSize;
+    }
+
+    /**
+     * Gets the time to live of the cached file metadata, in seconds.
+     * @return The time to live of the cached file metadata, in seconds.
+     */
+    public int getFileCacheTtl()
+    {
+        return fileCacheTtl;
+    }
+
+    /**
+     * Gets the maximum number of cached file contents.
+     * @return The maximum number of cached file contents.
+     */
+    public int getContentCacheSize()
+    {
+        return contentCacheSize;
+    }
+
+    /**
+     * Gets the time to live of the cached file contents, in seconds.
+     * @return The time to live of the cached file contents, in seconds.
+     */
+    public int getContentCacheTtl()
+    {
+        return contentCacheTtl;
+    }
+
+    /**
+     * Gets the memory budget of the cached file contents as stored.
+     * @return The budget in MiB, 0 to only bound the number of contents.
+     */
+    public int getContentCacheMemory()
+    {
+        return contentCacheMemory;
+    }
+
+    /**
+     * Are the cached file contents compressed in memory when they compress well.
+     * @return true if compressing, false otherwise.
+     */
+    public boolean isContentCacheCompression()
+    {
+        return contentCacheCompression;
+    }
+
+    /**
+     * Gets the maximum number of cached file headers.
+     * @return The maximum number of cached file headers.
+     */
+    public int getHeaderCacheSize()
+    {
+        return headerCacheSize;
+    }
+
+    /**
+     * Gets the size of the file headers prefetched when a folder is enumerated.
+     * @return The size in KiB, 0 if the prefetching is disabled.
+     */
+    public int getPrefetchHeaderSize()
+    {
+        return prefetchHeaderSize;
+    }
+
+    /**
+     * Gets the maximum number of file headers prefetched at once.
+     * @return The prefetch parallelism.
+     */
+    public int getPrefetchParallelism()
+    {
+        return prefetchParallelism;
+    }
+
+    /**
+     * Gets the maximum number of file headers prefetched per enumerated folder.
+     * @return The maximum number of files.
+     */
+    public int getPrefetchMaxFiles()
+    {
+        return prefetchMaxFiles;
+    }
+
+    /**
+     * Gets the extensions of the files whose header is prefetched.
+     * @return The lower cased extensions, without dot, unmodifiable.
+     */
+    public List<String> getPrefetchExtensions()
+    {
+        return prefetchExtensions;
+    }
+
+    /**
+     * Gets the bytes the access predictor may prefetch per minute.
+     * @return The budget in MiB, 0 to only learn the accesses.
+     */
+    public int getPredictBudget()
+    {
+        return predictBudget;
+    }
+
+    /**
+     * Gets the minimum probability of a predicted access for the access predictor to prefetch it.
+     * @return The probability, between 0 and 1.
+     */
+    public double getPredictConfidence()
+    {
+        return predictConfidence;
+    }
+
+    /**
+     * Gets the maximum number of files and folders prefetched by the access predictor after an access.
+     * @return The maximum number of paths.
+     */
+    public int getPredictMaxFiles()
+    {
+        return predictMaxFiles;
+    }
+
+    /**
+     * Gets the maximum number of backend requests of the drive in progress at once.
+     * @return The maximum number of requests.
+     */
+    public int getIoConcurrency()
+    {
+        return ioConcurrency;
+    }
+
+    /**
+     * Gets the number of backend request slots background requests leave to interactive ones.
+     * @return The number of reserved slots.
+     */
+    public int getIoInteractiveReserve()
+    {
+        return ioInteractiveReserve;
+    }
+
+    /**
+     * Gets the maximum number of read ahead requests in progress at once.
+     * @return The maximum number of requests.
+     */
+    public int getIoReadAheadLimit()
+    {
+        return ioReadAheadLimit;
+    }
+
+    /**
+     * Gets the maximum number of prefetch requests in progress at once.
+     * @return The maximum number of requests.
+     */
+    public int getIoPrefetchLimit()
+    {
+        return ioPrefetchLimit;
+    }
+
+    /**
+     * Gets the maximum number of synchronisation requests in progress at once.
+     * @return The maximum number of requests.
+     */
+    public int getIoSyncLimit()
+    {
+        return ioSyncLimit;
+    }
+
+    /**
+     * Gets the maximum number of maintenance requests in progress at once.
+     * @return The maximum number of requests.
+     */
+    public int getIoMaintenanceLimit()
+    {
+        return ioMaintenanceLimit;
+    }
+
+    /**
+     * Gets the download rate of the interactive requests of the drive.
+     * @return The rate in KiB per second, 0 for unlimited.
+     */
+    public int getBandwidthInteractiveLimit()
+    {
+        return bandwidthInteractiveLimit;
+    }
+
+    /**
+     * Gets the download rate of the background requests of the drive.
+     * @return The rate in KiB per second, 0 for unlimited.
+     */
+    public int getBandwidthBackgroundLimit()
+    {
+        return bandwidthBackgroundLimit;
+    }
+
+    /**
+     * Gets the download rate of the interactive requests of all the drives.
+     * @return The rate in KiB per second, 0 for unlimited.
+     */
+    public int getBandwidthGlobalInteractiveLimit()
+    {
+        return bandwidthGlobalInteractiveLimit;
+    }
+
+    /**
+     * Gets the download rate of the background requests of all the drives.
+     * @return The rate in KiB per second, 0 for unlimited.
+     */
+    public int getBandwidthGlobalBackgroundLimit()
+    {
+        return bandwidthGlobalBackgroundLimit;
+    }
+
+    /**
+     * Gets the daily hours the bandwidth limits of the drive apply within.
+     * @return The hours.
+     */
+    public DailyHours getBandwidthHours()
+    {
+        return bandwidthHours;
+    }
+
+    /**
+     * Gets the maximum number of folder listings kept converted by the file system handler.
+     * @return The maximum number of folder listings kept converted by the file system handler.
+     */
+    public int getFindDataCacheSize()
+    {
+        return findDataCacheSize;
+    }
+
+    /**
+     * Are the debug messages of the drive logged whatever the logger level.
+     * @return true if the drive debug switch is on, false otherwise.
+     */
+    public boolean isDebugLogging()
+    {
+        return debugLogging;
+    }
+
+    /**
+     * Gets the file system operations sampling rate of the drive logs.
+     * @return One operation out of this number is logged.
+     */
+    public int getLogSampling()
+    {
+        return logSampling;
+    }
+
+    /**
+     * Gets the maximum number of messages logged per second for the drive.
+     * @return The rate limit, 0 for unlimited.
+     */
+    public int getLogRateLimit()
+    {
+        return logRateLimit;
+    }
+
+    /**
+     * Gets the delay between two synchronisations of the pinned folders.
+     * @return The delay in seconds.
+     */
+    public int getSyncInterval()
+    {
+        return syncInterval;
+    }
+
+    /**
+     * Gets the maximum number of pinned files downloaded at once.
+     * @return The download parallelism.
+     */
+    public int getSyncParallelism()
+    {
+        return syncParallelism;
+    }
+
+    /**
+     * Gets the time without file system activity before the synchronisation downloads.
+     * @return The delay in milliseconds.
+     */
+    public int getSyncIdleDelay()
+    {
+        return syncIdleDelay;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.JavaType;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the configuration file and loads it again when it changes.
+ * The file is replaced by a move when saved, so both creations and modifications of its name are watched. Successive
+ * events are coalesced and an unreadable file, for instance while an editor is writing it, is simply skipped until
+ * the next change.
+ */
+public class ConfigurationWatcher
+{
+    /**
+     * Logger.
+     */
+    private static Logger log = Logger.getLogger(ConfigurationWatcher.class);
+
+    /**
+     * Time given to the writers to complete before reading the file, in milliseconds.
+     */
+    private static final long SETTLE_DELAY_MILLIS = 200;
+
+    /**
+     * The configuration path.
+     */
+    private final Path configurationPath;
+
+    /**
+     * The listener.
+     */
+    private final ConfigurationListener listener;
+
+    /**
+     * The watch service, null until started.
+     */
+    private WatchService watchService;
+
+    /**
+     * The watcher thread, null until started.
+     */
+    private Thread thread;
+
+    /**
+     * Initializes the watcher.
+     * @param configurationPath The configuration path.
+     * @param listener The listener.
+     */
+    public ConfigurationWatcher(Path configurationPath, ConfigurationListener listener)
+    {
+        // Check input
+        if (null == configurationPath)
+        {
+            throw new IllegalArgumentException("The configuration path cannot be null.");
+        }
+        if (null == listener)
+        {
+            throw new IllegalArgumentException("The listener cannot be null.");
+        }
+
+        // Initialize
+        this.configurationPath = configurationPath.toAbsolutePath();
+        this.listener = listener;
+    }
+
+    /**
+     * Starts watching the configuration file.
+     * @throws IOException If the configuration directory cannot be watched.
+     */
+    public synchronized void start() throws IOException
+    {
+        if (null != thread)
+        {
+            return;
+        }
+
+        // Watch the configuration directory
+        watchService = FileSystems.getDefault().newWatchService();
+        configurationPath.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        // Start the watcher thread
+        final WatchService service = watchService;
+        thread = new DaemonThreadFactory("configuration-watcher").newThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                watch(service);
+            }
+        });
+        thread.start();
+        log.info(String.format(Locale.US, "Watching configuration: %s", configurationPath));
+    }
+
+    /**
+     * Stops watching the configuration file.
+     */
+    public synchronized void close()
+    {
+        if (null == thread)
+        {
+            return;
+        }
+        try
+        {
+            watchService.close();
+        }
+        catch (IOException exception)
+        {
+            log.error(exception.getMessage(), exception);
+        }
+        thread.interrupt();
+        thread = null;
+        watchService = null;
+    }
+
+    /**
+     * Waits for the configuration file changes until the watch service is closed.
+     * @param service The watch service.
+     */
+    private void watch(WatchService service)
+    {
+        try
+        {
+            while (true)
+            {
+                // Wait for a change of the configuration file
+                WatchKey key = service.take();
+                boolean changed = drain(key);
+
+                // Coalesce the following events
+                while (null != (key = service.poll(SETTLE_DELAY_MILLIS, TimeUnit.MILLISECONDS)))
+                {
+                    changed |= drain(key);
+                }
+
+                if (changed)
+                {
+                    reload();
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ClosedWatchServiceException e)
+        {
+            // Watcher closed
+        }
+    }
+
+    /**
+     * Consumes the events of a watch key.
+     * @param key The watch key.
+     * @return true if the configuration file is concerned, false otherwise.
+     */
+    private boolean drain(WatchKey key)
+    {
+        boolean changed = false;
+        for(WatchEvent<?> event : key.pollEvents())
+        {
+            changed |= configurationPath.getFileName().equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Reads the configuration file and notifies the listener.
+     */
+    private void reload()
+    {
+        if (!Files.exists(configurationPath))
+        {
+            return;
+        }
+
+        // Read the configurations
+        List<Configuration> configurations;
+        try
+        {
+            ObjectMapper mapper = new ObjectMapper();
+            JavaType type = mapper.getTypeFactory().constructParametricType(List.class, Configuration.class);
+            configurations = mapper.readValue(configurationPath.toFile(), type);
+        }
+        catch (IOException exception)
+        {
+            log.warn(String.format(Locale.US, "Ignoring unreadable configuration: %s (%s)", configurationPath, exception.getMessage()));
+            return;
+        }
+
+        // Notify the listener
+        try
+        {
+            listener.onConfigurationLoaded(configurations);
+        }
+        catch (RuntimeException exception)
+        {
+            log.error(exception.getMessage(), exception);
+        }
+    }
+}
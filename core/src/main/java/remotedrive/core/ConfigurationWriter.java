@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.map.ObjectMapper;
+import remotedrive.core.exception.BootstrapException;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the configurations from a background thread.
+ * Changes are captured in memory by the caller and written after a quiet period, so that a burst of changes results
+ * in a single write. A burst that never quiets down is still written once the maximum delay elapsed. Each write goes
+ * to a temporary file which is synced then moved over the configuration file, so that a crash never leaves a
+ * truncated configuration.
+ */
+public class ConfigurationWriter
+{
+    /**
+     * Logger.
+     */
+    private static Logger log = Logger.getLogger(ConfigurationWriter.class);
+
+    /**
+     * The default quiet period before writing.
+     */
+    public static final long DEFAULT_DELAY_MILLIS = 500;
+
+    /**
+     * The default maximum delay between the first pending change and its write.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5000;
+
+    /**
+     * The configuration serializer, thread safe once configured.
+     */
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * The configuration path.
+     */
+    private final Path configurationPath;
+
+    /**
+     * The quiet period before writing, in milliseconds.
+     */
+    private final long delayMillis;
+
+    /**
+     * The maximum delay between the first pending change and its write, in milliseconds.
+     */
+    private final long maxDelayMillis;
+
+    /**
+     * The writer thread.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The latest captured configurations not written yet, null if nothing is pending.
+     */
+    private List<Map<String, String>> pending;
+
+    /**
+     * The scheduled write, null if none.
+     */
+    private Future<?> scheduledWrite;
+
+    /**
+     * The time of the first change not written yet, in nanoseconds.
+     */
+    private long firstPendingNanos;
+
+    /**
+     * Initializes the writer with the default quiet period.
+     * @param configurationPath The configuration path.
+     */
+    public ConfigurationWriter(Path configurationPath)
+    {
+        this(configurationPath, DEFAULT_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Initializes the writer.
+     * @param configurationPath The configuration path.
+     * @param delay The quiet period before writing.
+     * @param maxDelay The maximum delay between the first pending change and its write.
+     * @param unit The delays unit.
+     */
+    public ConfigurationWriter(Path configurationPath, long delay, long maxDelay, TimeUnit unit)
+    {
+        // Check input
+        if (null == configurationPath)
+        {
+            throw new IllegalArgumentException("The configuration path cannot be null.");
+        }
+        if (null == unit)
+        {
+            throw new IllegalArgumentException("The unit cannot be null.");
+        }
+
+        // Initialize
+        this.configurationPath = configurationPath;
+        this.delayMillis = unit.toMillis(delay);
+        this.maxDelayMillis = Math.max(delayMillis, unit.toMillis(maxDelay));
+        this.executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("configuration-writer"));
+    }
+
+    /**
+     * Captures the configurations and schedules their write after the quiet period, postponing the write already
+     * scheduled without exceeding the maximum delay.
+     * Only the in memory capture is done by the calling thread, which never waits for the disk.
+     * @param configurations The configurations.
+     */
+    public void schedule(List<Configuration> configurations)
+    {
+        List<Map<String, String>> capture = capture(configurations);
+        synchronized (this)
+        {
+            // Postpone the scheduled write, a write already running takes the new capture as well
+            long now = System.nanoTime();
+            if (null == pending)
+            {
+                firstPendingNanos = now;
+            }
+            pending = capture;
+            if (null != scheduledWrite)
+            {
+                scheduledWrite.cancel(false);
+            }
+
+            // Write after the quiet period, or when the maximum delay elapses
+            long remainingMillis = maxDelayMillis - TimeUnit.NANOSECONDS.toMillis(now - firstPendingNanos);
+            scheduledWrite = executor.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    writePending();
+                }
+            }, Math.max(0, Math.min(delayMillis, remainingMillis)), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Captures the configurations and writes them right away, waiting for the write to complete.
+     * @param configurations The configurations.
+     * @throws BootstrapException If the configurations are not writable.
+     */
+    public void write(List<Configuration> configurations)
+    {
+        List<Map<String, String>> capture = capture(configurations);
+        synchronized (this)
+        {
+            pending = capture;
+        }
+        flush();
+    }
+
+    /**
+     * Writes the pending configurations if any, waiting for the write to complete.
+     * @throws BootstrapException If the configurations are not writable.
+     */
+    public void flush()
+    {
+        Future<Boolean> write = executor.submit(new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call() throws IOException
+            {
+                List<Map<String, String>> capture = takePending();
+                if (null != capture)
+                {
+                    writeFile(capture);
+                }
+                return null != capture;
+            }
+        });
+
+        // Wait for the write
+        try
+        {
+            write.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new BootstrapException("Interrupted while saving configuration.", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new BootstrapException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Writes the pending configurations and stops the writer thread.
+     */
+    public void close()
+    {
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Takes the pending configurations, cancelling the scheduled write.
+     * @return The pending configurations, null if none.
+     */
+    private synchronized List<Map<String, String>> takePending()
+    {
+        if (null != scheduledWrite)
+        {
+            scheduledWrite.cancel(false);
+            scheduledWrite = null;
+        }
+        List<Map<String, String>> capture = pending;
+        pending = null;
+        return capture;
+    }
+
+    /**
+     * Writes the pending configurations from the scheduled task, logging failures.
+     */
+    private void writePending()
+    {
+        List<Map<String, String>> capture = takePending();
+        if (null == capture)
+        {
+            return;
+        }
+        try
+        {
+            writeFile(capture);
+        }
+        catch (IOException exception)
+        {
+            log.error(String.format(Locale.US, "Unable to save configuration: %s", configurationPath), exception);
+        }
+    }
+
+    /**
+     * Writes the configurations to a temporary file and moves it over the configuration file.
+     * @param capture The captured configurations.
+     * @throws IOException If the configurations are not writable.
+     */
+    private void writeFile(List<Map<String, String>> capture) throws IOException
+    {
+        // Write and sync a sibling temporary file
+        Path directory = configurationPath.toAbsolutePath().getParent();
+        Path temporaryPath = Files.createTempFile(directory, configurationPath.getFileName().toString(), ".tmp");
+        try
+        {
+            byte[] content = mapper.writeValueAsBytes(capture);
+            FileOutputStream stream = new FileOutputStream(temporaryPath.toFile());
+            try
+            {
+                stream.write(content);
+                stream.getFD().sync();
+            }
+            finally
+            {
+                stream.close();
+            }
+
+            // Replace the configuration file
+            try
+            {
+                Files.move(temporaryPath, configurationPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporaryPath, configurationPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.info(String.format(Locale.US, "Saved configuration: %s", configurationPath));
+        }
+        finally
+        {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    /**
+     * Copies the configurations, keeping their entries order.
+     * @param configurations The configurations.
+     * @return The copy.
+     */
+    private static List<Map<String, String>> capture(List<Configuration> configurations)
+    {
+        // Check input
+        if (null == configurations)
+        {
+            throw new IllegalArgumentException("The configurations cannot be null.");
+        }
+
+        // Copy each configuration under its lock
+        List<Map<String, String>> capture = new ArrayList<Map<String, String>>(configurations.size());
+        for(Configuration configuration : configurations)
+        {
+            synchronized (configuration)
+            {
+                capture.add(new LinkedHashMap<String, String>(configuration));
+            }
+        }
+        return capture;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.RangeReadable;
+
+import java.util.Arrays;
+
+/**
+ * Reads ranges of file contents from any client.
+ */
+public final class ContentRange
+{
+    /**
+     * Not instantiable.
+     */
+    private ContentRange()
+    {
+    }
+
+    /**
+     * Retrieves a range of a file content, through a range request if the client supports it, otherwise from the
+     * whole content.
+     * @param client The client.
+     * @param filePath The absolute file.
+     * @param offset The position of the first byte.
+     * @param length The maximum number of bytes.
+     * @return The bytes, fewer than requested at the end of the content, none past it, null if the file doesn't exist.
+     */
+    public static byte[] read(Client client, String filePath, long offset, int length)
+    {
+        if (client instanceof RangeReadable)
+        {
+            return ((RangeReadable) client).retrieveDriveFileContent(filePath, offset, length);
+        }
+        return slice(client.retrieveDriveFileContent(filePath), offset, length);
+    }
+
+    /**
+     * Extracts a range of a content.
+     * @param content The content, may be null.
+     * @param offset The position of the first byte.
+     * @param length The maximum number of bytes.
+     * @return The bytes, the content itself if the range covers it, null if the content is null.
+     */
+    public static byte[] slice(byte[] content, long offset, int length)
+    {
+        // Check input
+        if (offset < 0 || length < 0)
+        {
+            throw new IllegalArgumentException("The range cannot be negative.");
+        }
+        if (null == content)
+        {
+            return null;
+        }
+
+        // Share the content when covered whole
+        if (0 == offset && length >= content.length)
+        {
+            return content;
+        }
+        int start = (int) Math.min(offset, content.length);
+        return Arrays.copyOfRange(content, start, (int) Math.min(content.length, start + (long) length));
+    }
+}
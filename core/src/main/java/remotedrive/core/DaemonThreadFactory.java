@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads.
+ * Background work never has to prevent the application from exiting.
+ */
+public class DaemonThreadFactory implements ThreadFactory
+{
+    /**
+     * The thread name prefix.
+     */
+    private final String prefix;
+
+    /**
+     * The thread counter.
+     */
+    private final AtomicInteger counter;
+
+    /**
+     * Initializes the factory.
+     * @param prefix The thread name prefix.
+     */
+    public DaemonThreadFactory(String prefix)
+    {
+        // Check input
+        if (null == prefix)
+        {
+            throw new IllegalArgumentException("The prefix cannot be null.");
+        }
+
+        // Initialize
+        this.prefix = prefix;
+        this.counter = new AtomicInteger();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+        Thread thread = new Thread(runnable, String.format(Locale.US, "%s-%d", prefix, counter.incrementAndGet()));
+        thread.setDaemon(true);
+        return thread;
+    }
+}
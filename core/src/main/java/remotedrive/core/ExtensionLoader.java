@@ -19,14 +19,35 @@
 
 package remotedrive.core;
 
+import remotedrive.core.exception.BootstrapException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.List;
 import java.util.ServiceLoader;
 
 /**
  * Extension loader using service loader.
+ * Client factories can also be discovered from the build time index, which lists them without loading them.
  */
 public class ExtensionLoader
 {
+    /**
+     * The client factory index location, generated by ClientFactoryIndexProcessor.
+     */
+    public static final String CLIENT_FACTORY_INDEX = "META-INF/remotedrive/client-factories.index";
+
+    /**
+     * The ServiceLoader provider configuration directory.
+     */
+    private static final String SERVICES_DIRECTORY = "META-INF/services/";
+
     /**
      * Loads a given class.
      * @param clazz the class to load.
@@ -36,4 +57,142 @@ public class ExtensionLoader
     {
         return ServiceLoader.load(clazz).iterator();
     }
+
+    /**
+     * Loads a client factory from its class name, for the factories missing from the index.
+     * @param className The factory class name.
+     * @return The descriptor of the loaded factory.
+     */
+    public ClientFactoryDescriptor loadClientFactory(String className)
+    {
+        return ClientFactoryDescriptor.load(className, classLoader());
+    }
+
+    /**
+     * Lists the classes registered for ServiceLoader without loading them.
+     * @param clazz The service class.
+     * @return The registered class names, empty if none.
+     */
+    public List<String> loadServiceClassNames(Class<?> clazz)
+    {
+        ClassLoader classLoader = classLoader();
+
+        List<String> classNames = new ArrayList<String>();
+        try
+        {
+            Enumeration<URL> services = classLoader.getResources(SERVICES_DIRECTORY + clazz.getName());
+            while (services.hasMoreElements())
+            {
+                readServices(services.nextElement(), classNames);
+            }
+        }
+        catch (IOException exception)
+        {
+            throw new BootstrapException(String.format("Unable to read the %s services.", clazz.getName()), exception);
+        }
+        return classNames;
+    }
+
+    /**
+     * Loads the client factory descriptors from all the indexes available in the class path.
+     * @return The indexed client factories, empty if no index is available.
+     */
+    public List<ClientFactoryDescriptor> loadClientFactoryIndex()
+    {
+        ClassLoader classLoader = classLoader();
+
+        List<ClientFactoryDescriptor> descriptors = new ArrayList<ClientFactoryDescriptor>();
+        try
+        {
+            Enumeration<URL> indexes = classLoader.getResources(CLIENT_FACTORY_INDEX);
+            while (indexes.hasMoreElements())
+            {
+                readIndex(indexes.nextElement(), classLoader, descriptors);
+            }
+        }
+        catch (IOException exception)
+        {
+            throw new BootstrapException("Unable to read the client factory index.", exception);
+        }
+        return descriptors;
+    }
+
+    /**
+     * Reads a ServiceLoader provider configuration file.
+     * @param services The provider configuration file location.
+     * @param classNames The class names to fill.
+     * @throws IOException If the file is not readable.
+     */
+    private void readServices(URL services, List<String> classNames) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(services.openStream(), StandardCharsets.UTF_8));
+        try
+        {
+            String line;
+            while (null != (line = reader.readLine()))
+            {
+                // Strip comments and skip empty lines
+                int comment = line.indexOf('#');
+                String className = (-1 == comment ? line : line.substring(0, comment)).trim();
+                if (0 != className.length() && !classNames.contains(className))
+                {
+                    classNames.add(className);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads an index.
+     * @param index The index location.
+     * @param classLoader The class loader providing the factories.
+     * @param descriptors The descriptors to fill.
+     * @throws IOException If the index is not readable.
+     */
+    private void readIndex(URL index, ClassLoader classLoader, List<ClientFactoryDescriptor> descriptors) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8));
+        try
+        {
+            String line;
+            while (null != (line = reader.readLine()))
+            {
+                // Skip comments and empty lines
+                if (0 == line.trim().length() || line.startsWith("#"))
+                {
+                    continue;
+                }
+
+                // name TAB class name TAB icon
+                String[] fields = line.split("\t", -1);
+                if (2 > fields.length)
+                {
+                    throw new IOException(String.format("Invalid client factory index entry in %s: %s", index, line));
+                }
+                descriptors.add(new ClientFactoryDescriptor(fields[0], fields[1], 2 < fields.length ? fields[2] : null, classLoader));
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Gets the class loader providing the extensions.
+     * @return The context class loader, or the one of the loader if none.
+     */
+    private static ClassLoader classLoader()
+    {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (null == classLoader)
+        {
+            classLoader = ExtensionLoader.class.getClassLoader();
+        }
+        return classLoader;
+    }
 }
@@ -60,7 +60,22 @@ public class File
     public long creationTime;
 
     /**
-     * Initializes a file representation.
+     * File last modification time.
+     */
+    public long modifiedTime;
+
+    /**
+     * File content MD5 checksum, in hexadecimal.
+     */
+    public String md5Checksum;
+
+    /**
+     * File content revision.
+     */
+    public String revision;
+
+    /**
+     * Initializes a file representation without revision metadata, considered modified when created.
      * @param id The file id.
      * @param title The file title.
      * @param absolutePath The file absolute path.
@@ -77,6 +92,34 @@ public class File
             long size,
             String downloadUrl,
             long creationTime)
+    {
+        this(id, title, absolutePath, isDirectory, size, downloadUrl, creationTime, creationTime, null, null);
+    }
+
+    /**
+     * Initializes a file representation.
+     * @param id The file id.
+     * @param title The file title.
+     * @param absolutePath The file absolute path.
+     * @param isDirectory Is directory.
+     * @param size The file size.
+     * @param downloadUrl The download Url.
+     * @param creationTime The creation time.
+     * @param modifiedTime The last modification time.
+     * @param md5Checksum The content MD5 checksum in hexadecimal, null if unknown.
+     * @param revision The content revision, null if unknown.
+     */
+    public File(
+            String id,
+            String title,
+            String absolutePath,
+            boolean isDirectory,
+            long size,
+            String downloadUrl,
+            long creationTime,
+            long modifiedTime,
+            String md5Checksum,
+            String revision)
     {
         this.id = id;
         this.title = title;
@@ -85,6 +128,9 @@ public class File
         this.size = size;
         this.downloadUrl = downloadUrl;
         this.creationTime = creationTime;
+        this.modifiedTime = modifiedTime;
+        this.md5Checksum = md5Checksum;
+        this.revision = revision;
     }
 
     /**
@@ -148,4 +194,58 @@ public class File
     public long getCreationTime() {
         return creationTime;
     }
+
+    /**
+     * Gets the file last modification time.
+     * @return The file last modification time.
+     */
+    public long getModifiedTime()
+    {
+        return modifiedTime;
+    }
+
+    /**
+     * Gets the file content MD5 checksum.
+     * Files with the same checksum have the same content whatever their path or id.
+     * @return The checksum in hexadecimal, null if unknown (folders, native documents).
+     */
+    public String getMd5Checksum()
+    {
+        return md5Checksum;
+    }
+
+    /**
+     * Gets the file content revision, changing whenever the content changes.
+     * @return The revision, null if unknown.
+     */
+    public String getRevision()
+    {
+        return revision;
+    }
+
+    /**
+     * Checks whether another representation of the file has the same content.
+     * Checksums are compared when both are known, then revisions, then the id, size and times.
+     * @param other The other representation.
+     * @return true if the content is the same, false if it changed or can't be told.
+     */
+    public boolean isSameRevision(File other)
+    {
+        if (isDirectory != other.isDirectory)
+        {
+            return false;
+        }
+        if (null != md5Checksum && null != other.md5Checksum)
+        {
+            return md5Checksum.equalsIgnoreCase(other.md5Checksum);
+        }
+        if (null != revision && null != other.revision)
+        {
+            return revision.equals(other.revision) && (null == id ? null == other.id : id.equals(other.id));
+        }
+        return size == other.size
+            && creationTime == other.creationTime
+            && modifiedTime == other.modifiedTime
+            && (null == id ? null == other.id : id.equals(other.id));
+    }
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+/**
+ * Receives the drives mount progress.
+ * Events are raised from the mount threads, listeners have to switch thread themselves if needed.
+ */
+public interface MountListener
+{
+    /**
+     * Notifies a mount state change.
+     * @param configuration The drive configuration.
+     * @param state The new state.
+     * @param error The failure cause for FAILED and TIMED_OUT states, null otherwise.
+     */
+    void onMountStateChanged(Configuration configuration, MountState state, Throwable error);
+}
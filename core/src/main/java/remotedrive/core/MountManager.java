@@ -0,0 +1,679 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import org.apache.log4j.Logger;
+import remotedrive.core.cache.MemoryGovernor;
+import remotedrive.core.exception.BootstrapException;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.Gauge;
+import remotedrive.core.metrics.InstrumentedClient;
+import remotedrive.core.metrics.MetricsRegistry;
+import remotedrive.core.prefetch.PredictiveClient;
+import remotedrive.core.schedule.BandwidthThrottle;
+import remotedrive.core.schedule.GlobalBandwidth;
+import remotedrive.core.schedule.RequestScheduler;
+import remotedrive.core.schedule.ScheduledClient;
+import remotedrive.core.schedule.ThrottledClient;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.ClientFactory;
+import remotedrive.core.spi.FileSystemHandler;
+import remotedrive.core.spi.MemoryReclaimable;
+import remotedrive.core.spi.Tunable;
+import remotedrive.core.sync.PinnedClient;
+import remotedrive.core.sync.PinnedStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Authenticates and mounts drives concurrently.
+ * Each drive is authenticated and mounted in its own task so the overall time is driven by the slowest drive instead
+ * of the sum of all of them. Every task is bounded by a timeout and reports its progress to the mount listeners.
+ * Configurations are tracked by identity since two configurations can hold the same values.
+ */
+public class MountManager
+{
+    /**
+     * Logger.
+     */
+    private static Logger log = Logger.getLogger(MountManager.class);
+
+    /**
+     * Default per drive timeout in seconds, authentication can require a user interaction in a browser.
+     */
+    public static final long DEFAULT_TIMEOUT_SECONDS = 120;
+
+    /**
+     * The file of the access model in the drive cache directory.
+     */
+    private static final String ACCESS_MODEL_FILE = "access-model.json";
+
+    /**
+     * The bootstrap providing client factories and the file system handler.
+     */
+    private final RemoteDriveBootstrap bootstrap;
+
+    /**
+     * The per drive timeout in milliseconds.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Mount tasks executor.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Timeout watchdog.
+     */
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * The mount listeners.
+     */
+    private final List<MountListener> listeners;
+
+    /**
+     * The mount tasks by configuration.
+     */
+    private final Map<Configuration, MountTask> tasks;
+
+    /**
+     * The background unmounts by configuration, guarded by the tasks lock.
+     */
+    private final Map<Configuration, Future<?>> unmounts;
+
+    /**
+     * Initializes the mount manager with the default timeout.
+     * @param bootstrap The bootstrap.
+     */
+    public MountManager(RemoteDriveBootstrap bootstrap)
+    {
+        this(bootstrap, DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Initializes the mount manager.
+     * @param bootstrap The bootstrap.
+     * @param timeout The per drive timeout.
+     * @param unit The timeout unit.
+     */
+    public MountManager(RemoteDriveBootstrap bootstrap, long timeout, TimeUnit unit)
+    {
+        // Check input
+        if (null == bootstrap)
+        {
+            throw new IllegalArgumentException("The bootstrap cannot be null.");
+        }
+        if (0 >= timeout || null == unit)
+        {
+            throw new IllegalArgumentException("The timeout has to be positive.");
+        }
+
+        // Initialize
+        this.bootstrap = bootstrap;
+        this.timeoutMillis = unit.toMillis(timeout);
+        this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory("mount"));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("mount-watchdog"));
+        this.listeners = new CopyOnWriteArrayList<MountListener>();
+        this.tasks = new IdentityHashMap<Configuration, MountTask>();
+        this.unmounts = new IdentityHashMap<Configuration, Future<?>>();
+    }
+
+    /**
+     * Adds a mount listener.
+     * @param listener The listener.
+     */
+    public void addMountListener(MountListener listener)
+    {
+        if (null == listener)
+        {
+            throw new IllegalArgumentException("The listener cannot be null.");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a mount listener.
+     * @param listener The listener.
+     */
+    public void removeMountListener(MountListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Mounts all the enabled configurations concurrently.
+     * @param configurations The configurations.
+     * @return The mount results of the enabled configurations.
+     */
+    public List<Future<Client>> mountAll(Collection<Configuration> configurations)
+    {
+        List<Future<Client>> futures = new ArrayList<Future<Client>>();
+        for(Configuration configuration : configurations)
+        {
+            if (configuration.readBoolean("enabled"))
+            {
+                futures.add(mount(configuration));
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Authenticates and mounts a drive in background.
+     * Mounting an already mounting or mounted drive returns the existing mount result.
+     * @param configuration The configuration.
+     * @return The mount result, providing the mounted client decorated by an InstrumentedClient.
+     */
+    public Future<Client> mount(Configuration configuration)
+    {
+        // Check input
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+
+        // Reuse the active task if any
+        final MountTask task;
+        synchronized (tasks)
+        {
+            MountTask existingTask = tasks.get(configuration);
+            if (null != existingTask && existingTask.isActive())
+            {
+                return existingTask.future;
+            }
+            task = new MountTask(configuration, unmounts.remove(configuration));
+            tasks.put(configuration, task);
+        }
+
+        // Start the task and its watchdog
+        fire(configuration, MountState.PENDING, null);
+        task.queueDepth.add(1);
+        executor.execute(task.future);
+        watchdog.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                task.timeout();
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        return task.future;
+    }
+
+    /**
+     * Unmounts a drive, cancelling its mount if it's still in progress.
+     * @param configuration The configuration.
+     */
+    public void unmount(Configuration configuration)
+    {
+        MountTask task;
+        synchronized (tasks)
+        {
+            task = tasks.remove(configuration);
+        }
+        if (null != task)
+        {
+            task.unmount();
+        }
+    }
+
+    /**
+     * Unmounts a drive in background, cancelling its mount if it's still in progress.
+     * The listeners are notified once unmounted if the drive was mounting or mounted.
+     * @param configuration The configuration.
+     * @return The unmount result.
+     */
+    public Future<?> unmountInBackground(Configuration configuration)
+    {
+        // Check input
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+
+        // Detach the task right away, so that a new mount doesn't reuse it but waits for its unmount
+        final MountTask task;
+        FutureTask<Void> unmount;
+        synchronized (tasks)
+        {
+            task = tasks.remove(configuration);
+            unmount = new FutureTask<Void>(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (null != task)
+                    {
+                        task.unmount();
+                    }
+                }
+            }, null);
+            if (null != task)
+            {
+                unmounts.put(configuration, unmount);
+            }
+        }
+        executor.execute(unmount);
+        return unmount;
+    }
+
+    /**
+     * Unmounts all the drives.
+     */
+    public void unmountAll()
+    {
+        List<Configuration> configurations;
+        synchronized (tasks)
+        {
+            configurations = new ArrayList<Configuration>(tasks.keySet());
+        }
+        for(Configuration configuration : configurations)
+        {
+            unmount(configuration);
+        }
+    }
+
+    /**
+     * Gets the mount state of a drive.
+     * @param configuration The configuration.
+     * @return The mount state.
+     */
+    public MountState getState(Configuration configuration)
+    {
+        synchronized (tasks)
+        {
+            MountTask task = tasks.get(configuration);
+            return null == task ? MountState.UNMOUNTED : task.state;
+        }
+    }
+
+    /**
+     * Applies the tuning entries of a configuration to its mounted drive.
+     * The client and the file system handler are only notified if they are Tunable and the drive is mounted.
+     * @param configuration The configuration.
+     */
+    public void tune(Configuration configuration)
+    {
+        // Lookup the mounted client
+        Client client;
+        synchronized (tasks)
+        {
+            MountTask task = tasks.get(configuration);
+            if (null == task || MountState.MOUNTED != task.state)
+            {
+                return;
+            }
+            client = task.client;
+        }
+
+        // Notify the tunable components
+        try
+        {
+            if (client instanceof Tunable)
+            {
+                ((Tunable) client).tune(configuration);
+            }
+            FileSystemHandler fileSystemHandler = bootstrap.getFileSystemHandler();
+            if (fileSystemHandler instanceof Tunable)
+            {
+                ((Tunable) fileSystemHandler).tune(configuration);
+            }
+            log.info(String.format(Locale.US, "Drive tuned: %s", configuration.getSnapshot().getName()));
+        }
+        catch (RuntimeException exception)
+        {
+            log.error(String.format(Locale.US, "Unable to tune %s", configuration.readString("name")), exception);
+        }
+    }
+
+    /**
+     * Unmounts all the drives and stops the mount threads.
+     */
+    public void shutdown()
+    {
+        unmountAll();
+        watchdog.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Notifies the listeners.
+     * @param configuration The configuration.
+     * @param state The new state.
+     * @param error The error if any.
+     */
+    private void fire(Configuration configuration, MountState state, Throwable error)
+    {
+        for(MountListener listener : listeners)
+        {
+            try
+            {
+                listener.onMountStateChanged(configuration, state, error);
+            }
+            catch (RuntimeException exception)
+            {
+                log.error(exception.getMessage(), exception);
+            }
+        }
+    }
+
+    /**
+     * Authenticates and mounts a single drive.
+     */
+    private class MountTask implements Callable<Client>
+    {
+        /**
+         * The configuration.
+         */
+        private final Configuration configuration;
+
+        /**
+         * The task result.
+         */
+        private final FutureTask<Client> future;
+
+        /**
+         * The pending background tasks of the drive, counting this task until it's done.
+         */
+        private final Gauge queueDepth;
+
+        /**
+         * The background unmount of the previous task of the drive, null if none.
+         */
+        private final Future<?> previousUnmount;
+
+        /**
+         * The current state.
+         */
+        private volatile MountState state;
+
+        /**
+         * The mounted client.
+         */
+        private Client client;
+
+        /**
+         * The pinned folders decorator, null if no folder is pinned.
+         */
+        private volatile PinnedClient pinnedClient;
+
+        /**
+         * The access prediction decorator, null if the drive isn't caching.
+         */
+        private volatile PredictiveClient predictiveClient;
+
+        /**
+         * The bandwidth throttle, null once unmounted.
+         */
+        private volatile BandwidthThrottle bandwidthThrottle;
+
+        /**
+         * The client governed by the memory governor, null if its caches can't shrink.
+         */
+        private volatile MemoryReclaimable reclaimableClient;
+
+        /**
+         * Initializes the task.
+         * @param configuration The configuration.
+         * @param previousUnmount The background unmount of the previous task of the drive, null if none.
+         */
+        private MountTask(Configuration configuration, Future<?> previousUnmount)
+        {
+            this.configuration = configuration;
+            this.previousUnmount = previousUnmount;
+            this.state = MountState.PENDING;
+            this.queueDepth = MetricsRegistry.getInstance().forDrive(configuration).gauge(DriveMetrics.QUEUE_DEPTH);
+            this.future = new FutureTask<Client>(this)
+            {
+                @Override
+                protected void done()
+                {
+                    queueDepth.add(-1);
+                }
+            };
+        }
+
+        /**
+         * Is the task mounting or mounted.
+         * @return true if the task is still relevant, false otherwise.
+         */
+        private synchronized boolean isActive()
+        {
+            return MountState.FAILED != state && MountState.TIMED_OUT != state && MountState.UNMOUNTED != state;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Client call() throws Exception
+        {
+            try
+            {
+                // Wait for the drive to be released by its previous task
+                if (null != previousUnmount)
+                {
+                    previousUnmount.get();
+                }
+
+                // Validate the configuration and create the client from its factory
+                ConfigurationSnapshot snapshot = configuration.getSnapshot();
+                String factoryName = snapshot.getFactoryName();
+                ClientFactory clientFactory = bootstrap.lookupClientFactory(factoryName);
+                if (null == clientFactory)
+                {
+                    throw new BootstrapException(String.format(Locale.US, "No client factory found for %s.", factoryName));
+                }
+                DriveMetrics metrics = MetricsRegistry.getInstance().forDrive(snapshot.getName());
+                Client factoryClient = clientFactory.createClient(configuration);
+                Client remoteClient = factoryClient;
+                bandwidthThrottle = new BandwidthThrottle(configuration, metrics, GlobalBandwidth.getInstance());
+                if (snapshot.isCaching() || !snapshot.getPinnedFolders().isEmpty())
+                {
+                    remoteClient = new ScheduledClient(remoteClient, new RequestScheduler(configuration, metrics), bandwidthThrottle);
+                }
+                else
+                {
+                    remoteClient = new ThrottledClient(remoteClient, bandwidthThrottle);
+                }
+                if (!snapshot.getPinnedFolders().isEmpty())
+                {
+                    pinnedClient = new PinnedClient(remoteClient, new PinnedStore(bootstrap.getCacheDirectory(configuration)), configuration, metrics);
+                    remoteClient = pinnedClient;
+                }
+                if (snapshot.isCaching())
+                {
+                    predictiveClient = new PredictiveClient(remoteClient, bootstrap.getCacheDirectory(configuration).resolve(ACCESS_MODEL_FILE), configuration, metrics);
+                    remoteClient = predictiveClient;
+                }
+                InstrumentedClient newClient = new InstrumentedClient(remoteClient, metrics);
+                if (factoryClient instanceof MemoryReclaimable)
+                {
+                    reclaimableClient = (MemoryReclaimable) factoryClient;
+                    MemoryGovernor.getInstance().register(reclaimableClient, newClient, metrics);
+                }
+
+                // Authenticate unless the task has been given up meanwhile
+                if (!transition(MountState.AUTHENTICATING, null))
+                {
+                    throw new InterruptedException("Mount cancelled.");
+                }
+                newClient.authenticate(snapshot.getUsername(), null);
+
+                // Mount unless the task has been given up meanwhile
+                if (!transition(MountState.MOUNTING, null))
+                {
+                    throw new InterruptedException("Mount cancelled.");
+                }
+                FileSystemHandler fileSystemHandler = bootstrap.getFileSystemHandler();
+                fileSystemHandler.mount(newClient, configuration);
+
+                // Publish the client, or rollback if the task has been given up meanwhile
+                synchronized (this)
+                {
+                    if (MountState.MOUNTING != state)
+                    {
+                        fileSystemHandler.umount(configuration);
+                        throw new InterruptedException("Mount cancelled.");
+                    }
+                    client = newClient;
+                }
+                transition(MountState.MOUNTED, null);
+                log.info(String.format(Locale.US, "Drive mounted: %s", snapshot.getName()));
+
+                // Synchronise the pinned folders once mounted
+                PinnedClient startedClient = pinnedClient;
+                if (null != startedClient)
+                {
+                    startedClient.start();
+                }
+                return newClient;
+            }
+            catch (Exception exception)
+            {
+                closeDecorators();
+                if (transition(MountState.FAILED, exception))
+                {
+                    log.error(String.format(Locale.US, "Unable to mount %s", configuration.readString("name")), exception);
+                }
+                throw exception;
+            }
+        }
+
+        /**
+         * Gives up the task if it's still in progress.
+         */
+        private void timeout()
+        {
+            TimeoutException exception = new TimeoutException(String.format(Locale.US, "Mount timed out after %d ms.", timeoutMillis));
+            if (enter(MountState.TIMED_OUT))
+            {
+                future.cancel(true);
+                log.error(String.format(Locale.US, "Unable to mount %s", configuration.readString("name")), exception);
+                fire(configuration, MountState.TIMED_OUT, exception);
+            }
+        }
+
+        /**
+         * Unmounts the drive or cancels the mount in progress.
+         */
+        private void unmount()
+        {
+            Client mountedClient;
+            synchronized (this)
+            {
+                mountedClient = client;
+                client = null;
+            }
+            if (enter(MountState.UNMOUNTED))
+            {
+                future.cancel(true);
+                if (null != mountedClient)
+                {
+                    bootstrap.getFileSystemHandler().umount(configuration);
+                }
+                closeDecorators();
+                fire(configuration, MountState.UNMOUNTED, null);
+            }
+        }
+
+        /**
+         * Stops the access prediction and the synchronisation of the pinned folders if any, releases the share of the
+         * global bandwidth and stops governing the caches.
+         */
+        private void closeDecorators()
+        {
+            PredictiveClient closedPredictiveClient = predictiveClient;
+            predictiveClient = null;
+            if (null != closedPredictiveClient)
+            {
+                closedPredictiveClient.close();
+            }
+            PinnedClient closedClient = pinnedClient;
+            pinnedClient = null;
+            if (null != closedClient)
+            {
+                closedClient.close();
+            }
+            MemoryReclaimable closedReclaimableClient = reclaimableClient;
+            reclaimableClient = null;
+            if (null != closedReclaimableClient)
+            {
+                MemoryGovernor.getInstance().unregister(closedReclaimableClient);
+            }
+            BandwidthThrottle closedThrottle = bandwidthThrottle;
+            bandwidthThrottle = null;
+            if (null != closedThrottle)
+            {
+                closedThrottle.close();
+            }
+        }
+
+        /**
+         * Moves to a new state and notifies the listeners unless the task already reached a final state.
+         * @param newState The new state.
+         * @param error The error if any.
+         * @return true if the state changed, false otherwise.
+         */
+        private boolean transition(MountState newState, Throwable error)
+        {
+            if (!enter(newState))
+            {
+                return false;
+            }
+            fire(configuration, newState, error);
+            return true;
+        }
+
+        /**
+         * Moves to a new state unless the task already reached a final state.
+         * A mounted drive can only be unmounted.
+         * @param newState The new state.
+         * @return true if the state changed, false otherwise.
+         */
+        private synchronized boolean enter(MountState newState)
+        {
+            boolean finalState = MountState.FAILED == state || MountState.TIMED_OUT == state || MountState.UNMOUNTED == state;
+            boolean onlyUnmountable = MountState.MOUNTED == state && MountState.UNMOUNTED != newState;
+            if (finalState || onlyUnmountable)
+            {
+                return false;
+            }
+            state = newState;
+            return true;
+        }
+    }
+}
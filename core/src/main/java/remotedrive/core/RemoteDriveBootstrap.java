@@ -23,18 +23,22 @@ import org.apache.log4j.Logger;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.type.JavaType;
 import remotedrive.core.exception.BootstrapException;
+import remotedrive.core.exception.ConfigurationException;
 import remotedrive.core.spi.ClientFactory;
 import remotedrive.core.spi.FileSystemHandler;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -54,15 +58,25 @@ public class RemoteDriveBootstrap
     private List<Configuration> configuration;
 
     /**
-     * The loaded client factories.
+     * The available client factories, loaded on demand when indexed.
      */
-    private Map<String, ClientFactory> clientFactories;
+    private Map<String, ClientFactoryDescriptor> clientFactories;
 
     /**
      * The loaded file system handler.
      */
     private FileSystemHandler fileSystemHandler;
 
+    /**
+     * The configuration writer.
+     */
+    private ConfigurationWriter configurationWriter;
+
+    /**
+     * The configuration watcher, null until watching.
+     */
+    private ConfigurationWatcher configurationWatcher;
+
     /**
      * The extension loader.
      */
@@ -73,6 +87,11 @@ public class RemoteDriveBootstrap
      */
     private Path configurationPath;
 
+    /**
+     * The mount manager.
+     */
+    private MountManager mountManager;
+
     /**
      * Initializes the bootstrap with default extension loader.
      * @param configurationPath The configuration path.
@@ -100,9 +119,11 @@ public class RemoteDriveBootstrap
         }
 
         // Initialize
-        this.clientFactories = new HashMap<String, ClientFactory>();
+        this.clientFactories = new HashMap<String, ClientFactoryDescriptor>();
         this.extensionLoader = extensionLoader;
         this.configurationPath = configurationPath;
+        this.mountManager = new MountManager(this);
+        this.configurationWriter = new ConfigurationWriter(configurationPath);
     }
 
     /**
@@ -132,32 +153,94 @@ public class RemoteDriveBootstrap
     }
 
     /**
-     * Saves all the configurations.
-     * @throws IOException If the configurations are not writable.
+     * Saves all the configurations, waiting for the write to complete.
+     * @throws BootstrapException If the configurations are not writable.
      */
     public void saveConfiguration()
     {
         try
         {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.writeValue(configurationPath.toFile(), configuration);
-            log.info(String.format(Locale.US, "Saved configuration: %s", configurationPath));
+            configurationWriter.write(configuration);
         }
-        catch (IOException ioException)
+        catch (BootstrapException exception)
         {
             // Raise error
-            BootstrapException exception = new BootstrapException(ioException.getMessage());
             log.error(exception.getMessage(), exception);
             throw exception;
         }
     }
 
     /**
-     * Looks up a loaded client factory in order to provide possible callbacks.
+     * Schedules the save of all the configurations.
+     * The configurations are captured right away but written in background, after a quiet period coalescing
+     * successive changes, so that the caller never waits for the disk.
+     */
+    public void scheduleConfigurationSave()
+    {
+        configurationWriter.schedule(configuration);
+    }
+
+    /**
+     * Watches the configuration file in order to apply the tuning entries edited while the drives are mounted.
+     * @throws IOException If the configuration file cannot be watched.
+     */
+    public synchronized void watchConfiguration() throws IOException
+    {
+        if (null == configurationWatcher)
+        {
+            configurationWatcher = new ConfigurationWatcher(configurationPath, new ConfigurationListener()
+            {
+                @Override
+                public void onConfigurationLoaded(List<Configuration> configurations)
+                {
+                    applyConfigurationChanges(configurations);
+                }
+            });
+            configurationWatcher.start();
+        }
+    }
+
+    /**
+     * Releases the application resources: unmounts the drives and writes the pending configuration changes.
+     */
+    public void shutdown()
+    {
+        try
+        {
+            synchronized (this)
+            {
+                if (null != configurationWatcher)
+                {
+                    configurationWatcher.close();
+                    configurationWatcher = null;
+                }
+            }
+            mountManager.shutdown();
+        }
+        finally
+        {
+            configurationWriter.close();
+        }
+    }
+
+    /**
+     * Looks up a client factory in order to provide possible callbacks.
+     * An indexed factory is loaded by the first lookup.
      * @param name The client factory name.
      * @return The lookup factory.
      */
     public ClientFactory lookupClientFactory(String name)
+    {
+        ClientFactoryDescriptor descriptor = lookupClientFactoryDescriptor(name);
+        return null == descriptor ? null : descriptor.getFactory();
+    }
+
+    /**
+     * Looks up a client factory descriptor, which provides the factory details without loading it.
+     * @param name The client factory name.
+     * @return The lookup factory descriptor.
+     */
+    public ClientFactoryDescriptor lookupClientFactoryDescriptor(String name)
     {
         return clientFactories.getOrDefault(name, null);
     }
@@ -180,6 +263,147 @@ public class RemoteDriveBootstrap
         return fileSystemHandler;
     }
 
+    /**
+     * Gets the local disk cache directory of a drive.
+     * @param configuration The drive configuration.
+     * @return The configured directory, or a directory named after the drive next to the configuration file.
+     */
+    public Path getCacheDirectory(Configuration configuration)
+    {
+        // Check input
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+
+        // Use the configured directory if any
+        ConfigurationSnapshot snapshot = configuration.getSnapshot();
+        if (null != snapshot.getCacheDirectory())
+        {
+            return Paths.get(snapshot.getCacheDirectory());
+        }
+
+        // Otherwise name it after the drive
+        String name = null == snapshot.getName() ? "default" : snapshot.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        return configurationPath.resolveSibling(configurationPath.getFileName() + "-cache").resolve(name);
+    }
+
+    /**
+     * Gets the mount manager.
+     * @return The mount manager.
+     */
+    public MountManager getMountManager()
+    {
+        return mountManager;
+    }
+
+    /**
+     * Applies the tuning entries of configurations read from the file to the loaded configurations.
+     * Configurations are matched by mounting point. Tuning entries are validated then applied at once and
+     * forwarded to the mounted drive. Other entries define the mount: their changes are ignored and only reported,
+     * they require to remount the drive from the application.
+     * @param configurations The configurations read from the file.
+     */
+    void applyConfigurationChanges(List<Configuration> configurations)
+    {
+        for(Configuration loadedConfiguration : configurations)
+        {
+            // Lookup the matching loaded configuration
+            String mountingPoint = loadedConfiguration.readString("mounting-point");
+            Configuration currentConfiguration = null;
+            for(Configuration candidate : configuration)
+            {
+                if (null != mountingPoint && mountingPoint.equals(candidate.readString("mounting-point")))
+                {
+                    currentConfiguration = candidate;
+                    break;
+                }
+            }
+            if (null == currentConfiguration)
+            {
+                continue;
+            }
+
+            // Collect the changed entries
+            Map<String, String> tuningChanges = new HashMap<String, String>();
+            List<String> mountChanges = new ArrayList<String>();
+            Set<String> keys = new HashSet<String>(loadedConfiguration.keySet());
+            synchronized (currentConfiguration)
+            {
+                keys.addAll(currentConfiguration.keySet());
+                for(String key : keys)
+                {
+                    String value = loadedConfiguration.get(key);
+                    if (Objects.equals(value, currentConfiguration.get(key)))
+                    {
+                        continue;
+                    }
+                    if (ConfigurationSchema.isTuningEntry(key))
+                    {
+                        tuningChanges.put(key, value);
+                    }
+                    else
+                    {
+                        mountChanges.add(key);
+                    }
+                }
+            }
+            if (!mountChanges.isEmpty())
+            {
+                log.warn(String.format(Locale.US, "Ignoring changes of %s for drive %s: remount required.", mountChanges, mountingPoint));
+            }
+            if (tuningChanges.isEmpty())
+            {
+                continue;
+            }
+
+            // Validate the tuning changes before applying them
+            Configuration tunedConfiguration = new Configuration();
+            synchronized (currentConfiguration)
+            {
+                tunedConfiguration.putAll(currentConfiguration);
+            }
+            applyEntries(tunedConfiguration, tuningChanges);
+            try
+            {
+                tunedConfiguration.getSnapshot();
+            }
+            catch (ConfigurationException exception)
+            {
+                log.error(String.format(Locale.US, "Ignoring invalid tuning for drive %s: %s", mountingPoint, exception.getMessage()));
+                continue;
+            }
+
+            // Apply them at once and forward them to the mounted drive
+            synchronized (currentConfiguration)
+            {
+                applyEntries(currentConfiguration, tuningChanges);
+            }
+            log.info(String.format(Locale.US, "Tuning changed for drive %s: %s", mountingPoint, tuningChanges.keySet()));
+            mountManager.tune(currentConfiguration);
+        }
+    }
+
+    /**
+     * Puts or removes configuration entries.
+     * @param target The configuration.
+     * @param entries The entries, null values being removed.
+     */
+    private static void applyEntries(Configuration target, Map<String, String> entries)
+    {
+        for(Map.Entry<String, String> entry : entries.entrySet())
+        {
+            if (null == entry.getValue())
+            {
+                target.remove(entry.getKey());
+            }
+            else
+            {
+                target.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
     /**
      * Loads the file system handler.
      */
@@ -222,15 +446,50 @@ public class RemoteDriveBootstrap
 
     /**
      * Loads the clients.
+     * Indexed client factories are only registered, their classes are loaded when a drive needs them. The client
+     * factories missing from the index are loaded one by one from their ServiceLoader registration, and without index
+     * all the client factories are loaded using ServiceLoader.
      */
     void loadClients()
     {
+        // Lookup the indexed client factories
+        List<ClientFactoryDescriptor> descriptors = extensionLoader.loadClientFactoryIndex();
+        if (null != descriptors && !descriptors.isEmpty())
+        {
+            Set<String> indexedClassNames = new HashSet<String>();
+            for(ClientFactoryDescriptor descriptor : descriptors)
+            {
+                clientFactories.put(descriptor.getName(), descriptor);
+                indexedClassNames.add(descriptor.getClassName());
+                log.info(String.format(Locale.US, "Client successfully indexed: %s (%s)", descriptor.getClassName(), descriptor.getName()));
+            }
+
+            // Load only the registered client factories missing from the index
+            List<String> serviceClassNames = extensionLoader.loadServiceClassNames(ClientFactory.class);
+            if (null != serviceClassNames)
+            {
+                for(String className : serviceClassNames)
+                {
+                    if (indexedClassNames.contains(className))
+                    {
+                        continue;
+                    }
+                    ClientFactoryDescriptor descriptor = extensionLoader.loadClientFactory(className);
+                    if (!clientFactories.containsKey(descriptor.getName()))
+                    {
+                        clientFactories.put(descriptor.getName(), descriptor);
+                    }
+                }
+            }
+            return;
+        }
+
         // Lookup all client factories using ServiceLoader
         Iterator<ClientFactory> clientIterator = extensionLoader.load(ClientFactory.class);
         while(clientIterator.hasNext())
         {
             ClientFactory clientFactory = clientIterator.next();
-            clientFactories.put(clientFactory.getName(), clientFactory);
+            clientFactories.put(clientFactory.getName(), new ClientFactoryDescriptor(clientFactory));
             log.info(String.format(Locale.US, "Client successfully loaded: %s (%s)", clientFactory.getClass().getName(), clientFactory.getName()));
         }
     }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.cache;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Keeps a bounded number of equally sized transfer buffers for reuse, so that streaming a content doesn't allocate a
+ * new buffer per transfer. Buffers beyond the capacity are left to the garbage collector.
+ */
+public final class BufferPool
+{
+    /**
+     * The size of the buffers of the shared pool.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of buffers kept by the shared pool.
+     */
+    private static final int CAPACITY = 16;
+
+    /**
+     * The process wide pool.
+     */
+    private static final BufferPool instance = new BufferPool(BUFFER_SIZE, CAPACITY);
+
+    /**
+     * The buffer size.
+     */
+    private final int bufferSize;
+
+    /**
+     * The number of buffers kept.
+     */
+    private final int capacity;
+
+    /**
+     * The free buffers, guarded by the deque.
+     */
+    private final Deque<byte[]> buffers;
+
+    /**
+     * Initializes an empty pool.
+     * @param bufferSize The buffer size.
+     * @param capacity The number of buffers kept.
+     */
+    public BufferPool(int bufferSize, int capacity)
+    {
+        // Check input
+        if (0 >= bufferSize)
+        {
+            throw new IllegalArgumentException("The buffer size has to be positive.");
+        }
+        if (0 > capacity)
+        {
+            throw new IllegalArgumentException("The capacity cannot be negative.");
+        }
+
+        // Initialize
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.buffers = new ArrayDeque<byte[]>(capacity);
+    }
+
+    /**
+     * Gets the process wide pool.
+     * @return The pool.
+     */
+    public static BufferPool getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Takes a free buffer, allocating one if none is left.
+     * @return The buffer, to be given back with release.
+     */
+    public byte[] acquire()
+    {
+        byte[] buffer;
+        synchronized (buffers)
+        {
+            buffer = buffers.pollFirst();
+        }
+        return null == buffer ? new byte[bufferSize] : buffer;
+    }
+
+    /**
+     * Gives back a buffer taken with acquire.
+     * @param buffer The buffer, no longer used by the caller.
+     */
+    public void release(byte[] buffer)
+    {
+        if (null == buffer || bufferSize != buffer.length)
+        {
+            return;
+        }
+        synchronized (buffers)
+        {
+            if (buffers.size() < capacity)
+            {
+                buffers.addFirst(buffer);
+            }
+        }
+    }
+}
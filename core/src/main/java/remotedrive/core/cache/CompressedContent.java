@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.cache;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * File content held in memory as independently compressed blocks.
+ * Each block is compressed with the fastest deflate level and only kept compressed if it saves at least an eighth of
+ * its size. Contents which first blocks don't compress (media, archives) are kept as is without trying further, so
+ * incompressible data only costs the compression of a couple of blocks. Reads decompress the requested blocks
+ * straight into the caller buffer.
+ * Instances are immutable and thread safe.
+ */
+public final class CompressedContent
+{
+    /**
+     * The block size.
+     */
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The number of leading incompressible blocks after which the content is kept as is.
+     */
+    private static final int PROBE_BLOCKS = 2;
+
+    /**
+     * The deflaters of the compressing threads, reset between blocks.
+     */
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>()
+    {
+        @Override
+        protected Deflater initialValue()
+        {
+            return new Deflater(Deflater.BEST_SPEED, true);
+        }
+    };
+
+    /**
+     * The inflaters of the reading threads, reset between blocks.
+     */
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>()
+    {
+        @Override
+        protected Inflater initialValue()
+        {
+            return new Inflater(true);
+        }
+    };
+
+    /**
+     * The scratch blocks of the threads, holding a compressed block or a partially read one.
+     */
+    private static final ThreadLocal<byte[]> scratches = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[BLOCK_SIZE];
+        }
+    };
+
+    /**
+     * The content length.
+     */
+    private final int length;
+
+    /**
+     * The uncompressed content, null if stored as blocks.
+     */
+    private final byte[] raw;
+
+    /**
+     * The blocks, compressed or not, null if stored uncompressed.
+     */
+    private final byte[][] blocks;
+
+    /**
+     * Which blocks are compressed, null if stored uncompressed.
+     */
+    private final boolean[] compressed;
+
+    /**
+     * The stored size in bytes.
+     */
+    private final long storedSize;
+
+    /**
+     * Initializes an uncompressed content.
+     * @param raw The content.
+     */
+    private CompressedContent(byte[] raw)
+    {
+        this.length = raw.length;
+        this.raw = raw;
+        this.blocks = null;
+        this.compressed = null;
+        this.storedSize = raw.length;
+    }
+
+    /**
+     * Initializes a content stored as blocks.
+     * @param length The content length.
+     * @param blocks The blocks.
+     * @param compressed Which blocks are compressed.
+     */
+    private CompressedContent(int length, byte[][] blocks, boolean[] compressed)
+    {
+        this.length = length;
+        this.raw = null;
+        this.blocks = blocks;
+        this.compressed = compressed;
+        long size = 0;
+        for(byte[] block : blocks)
+        {
+            size += block.length;
+        }
+        this.storedSize = size;
+    }
+
+    /**
+     * Keeps a content uncompressed, without copy.
+     * @param content The content, which must not be modified anymore.
+     * @return The content.
+     */
+    public static CompressedContent wrap(byte[] content)
+    {
+        // Check input
+        if (null == content)
+        {
+            throw new IllegalArgumentException("The content cannot be null.");
+        }
+
+        return new CompressedContent(content);
+    }
+
+    /**
+     * Compresses a content if it compresses well, otherwise keeps it as is without copy.
+     * @param content The content, which must not be modified anymore.
+     * @return The content.
+     */
+    public static CompressedContent compress(byte[] content)
+    {
+        // Check input
+        if (null == content)
+        {
+            throw new IllegalArgumentException("The content cannot be null.");
+        }
+
+        // Compress block by block
+        int blockCount = (content.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        byte[][] blocks = new byte[blockCount][];
+        boolean[] compressed = new boolean[blockCount];
+        Deflater deflater = deflaters.get();
+        byte[] scratch = scratches.get();
+        int compressedCount = 0;
+        for(int i = 0; i < blockCount; ++i)
+        {
+            int offset = i * BLOCK_SIZE;
+            int blockLength = Math.min(BLOCK_SIZE, content.length - offset);
+
+            // Give up on contents which first blocks don't compress
+            if (PROBE_BLOCKS == i && 0 == compressedCount)
+            {
+                return wrap(content);
+            }
+
+            // Only keep the blocks saving at least an eighth
+            deflater.reset();
+            deflater.setInput(content, offset, blockLength);
+            deflater.finish();
+            int compressedLength = deflater.deflate(scratch, 0, blockLength - blockLength / 8);
+            if (deflater.finished())
+            {
+                blocks[i] = Arrays.copyOf(scratch, compressedLength);
+                compressed[i] = true;
+                ++compressedCount;
+            }
+            else
+            {
+                blocks[i] = Arrays.copyOfRange(content, offset, offset + blockLength);
+            }
+        }
+        return 0 == compressedCount ? wrap(content) : new CompressedContent(content.length, blocks, compressed);
+    }
+
+    /**
+     * Gets the content length.
+     * @return The length in bytes.
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Gets the memory held by the content.
+     * @return The stored size in bytes.
+     */
+    public long getStoredSize()
+    {
+        return storedSize;
+    }
+
+    /**
+     * Is any block compressed.
+     * @return true if compressed, false if stored as is.
+     */
+    public boolean isCompressed()
+    {
+        return null == raw;
+    }
+
+    /**
+     * Reads a range of the content into a buffer, decompressing the blocks it spans.
+     * @param position The position in the content.
+     * @param buffer The buffer.
+     * @param offset The offset in the buffer.
+     * @param count The maximum number of bytes read.
+     * @return The number of bytes read, 0 past the end of the content.
+     */
+    public int read(long position, byte[] buffer, int offset, int count)
+    {
+        // Check input
+        if (position < 0 || offset < 0 || count < 0 || offset + count > buffer.length)
+        {
+            throw new IndexOutOfBoundsException("The range is out of the buffer.");
+        }
+        if (position >= length)
+        {
+            return 0;
+        }
+        int readLength = (int) Math.min(count, length - position);
+        if (null != raw)
+        {
+            System.arraycopy(raw, (int) position, buffer, offset, readLength);
+            return readLength;
+        }
+
+        // Read the blocks, straight into the buffer when a block is read whole
+        int read = 0;
+        while (read < readLength)
+        {
+            int index = (int) ((position + read) / BLOCK_SIZE);
+            int blockOffset = (int) ((position + read) % BLOCK_SIZE);
+            int blockLength = Math.min(BLOCK_SIZE, length - index * BLOCK_SIZE);
+            int chunk = Math.min(blockLength - blockOffset, readLength - read);
+            if (!compressed[index])
+            {
+                System.arraycopy(blocks[index], blockOffset, buffer, offset + read, chunk);
+            }
+            else if (0 == blockOffset && chunk == blockLength)
+            {
+                inflate(blocks[index], buffer, offset + read, blockLength);
+            }
+            else
+            {
+                byte[] scratch = scratches.get();
+                inflate(blocks[index], scratch, 0, blockLength);
+                System.arraycopy(scratch, blockOffset, buffer, offset + read, chunk);
+            }
+            read += chunk;
+        }
+        return read;
+    }
+
+    /**
+     * Gets the whole content.
+     * @return The content, the wrapped array itself if stored as is.
+     */
+    public byte[] toByteArray()
+    {
+        if (null != raw)
+        {
+            return raw;
+        }
+        byte[] content = new byte[length];
+        read(0, content, 0, length);
+        return content;
+    }
+
+    /**
+     * Decompresses a block.
+     * @param block The compressed block.
+     * @param buffer The buffer.
+     * @param offset The offset in the buffer.
+     * @param blockLength The decompressed block length.
+     */
+    private static void inflate(byte[] block, byte[] buffer, int offset, int blockLength)
+    {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(block);
+        try
+        {
+            int inflated = 0;
+            while (inflated < blockLength && !inflater.finished())
+            {
+                int count = inflater.inflate(buffer, offset + inflated, blockLength - inflated);
+                if (0 == count && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != blockLength)
+            {
+                throw new IllegalStateException("Truncated compressed block.");
+            }
+        }
+        catch (DataFormatException exception)
+        {
+            throw new IllegalStateException("Corrupted compressed block.", exception);
+        }
+    }
+}
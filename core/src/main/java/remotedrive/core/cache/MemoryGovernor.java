@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.cache;
+
+import org.apache.log4j.Logger;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.InstrumentedClient;
+import remotedrive.core.spi.MemoryReclaimable;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Shrinks the caches of the mounted drives when the heap runs low and grows them back once the pressure eases, so
+ * that the process degrades to lower hit rates instead of running out of memory.
+ * The tenured heap pools get usage and collection usage thresholds, and their notifications as well as the garbage
+ * collection ones trigger an evaluation of the heap usage after collection. Each step under pressure halves one
+ * budget: the contents of the most idle drive first, then the contents of the other drives, then the metadata in the
+ * same order. Above the critical usage all the contents are dropped at once. Budgets grow back one step at a time,
+ * metadata first and for the most active drive first, once the usage stays low for a while.
+ */
+public final class MemoryGovernor implements NotificationListener
+{
+    /**
+     * Logger.
+     */
+    private static Logger log = Logger.getLogger(MemoryGovernor.class);
+
+    /**
+     * The share of a tenured pool above which the caches shrink.
+     */
+    static final double HIGH_USAGE = 0.75;
+
+    /**
+     * The share of a tenured pool above which all the contents are dropped.
+     */
+    static final double CRITICAL_USAGE = 0.9;
+
+    /**
+     * The share of a tenured pool below which the caches grow back.
+     */
+    static final double LOW_USAGE = 0.5;
+
+    /**
+     * The smallest metadata scale, listings being needed for the drive to stay usable.
+     */
+    static final double MIN_METADATA_SCALE = 0.25;
+
+    /**
+     * The smallest content scale before the contents are dropped.
+     */
+    private static final double MIN_CONTENT_SCALE = 0.25;
+
+    /**
+     * The shortest delay between two shrink steps, leaving time for a collection to reflect the previous one.
+     */
+    private static final long SHRINK_INTERVAL_MILLIS = 1000;
+
+    /**
+     * The shortest delay between a change and a grow step.
+     */
+    private static final long GROW_INTERVAL_MILLIS = 30000;
+
+    /**
+     * The process wide governor.
+     */
+    private static final MemoryGovernor instance = new MemoryGovernor(getTenuredPools());
+
+    /**
+     * The watched tenured heap pools.
+     */
+    private final List<MemoryPoolMXBean> pools;
+
+    /**
+     * The governed drives by their caches, guarded by the map.
+     */
+    private final Map<MemoryReclaimable, Governed> drives;
+
+    /**
+     * Are the thresholds and listeners set, guarded by the drives.
+     */
+    private boolean started;
+
+    /**
+     * The time of the last shrink or grow step, guarded by the drives.
+     */
+    private long lastChange;
+
+    /**
+     * Initializes a governor.
+     * @param pools The tenured heap pools to watch.
+     */
+    MemoryGovernor(List<MemoryPoolMXBean> pools)
+    {
+        this.pools = pools;
+        this.drives = new IdentityHashMap<MemoryReclaimable, Governed>();
+        this.lastChange = System.nanoTime() - GROW_INTERVAL_MILLIS * 1000000L;
+    }
+
+    /**
+     * Gets the process wide governor.
+     * @return The governor.
+     */
+    public static MemoryGovernor getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Governs the caches of a drive until unregistered, starting to watch the heap on the first drive.
+     * @param caches The drive caches.
+     * @param activity The mounted client, telling how long the drive has been idle.
+     * @param metrics The drive metrics.
+     */
+    public void register(MemoryReclaimable caches, InstrumentedClient activity, DriveMetrics metrics)
+    {
+        // Check input
+        if (null == caches)
+        {
+            throw new IllegalArgumentException("The caches cannot be null.");
+        }
+        if (null == activity)
+        {
+            throw new IllegalArgumentException("The activity cannot be null.");
+        }
+        if (null == metrics)
+        {
+            throw new IllegalArgumentException("The metrics cannot be null.");
+        }
+
+        // Register and watch the heap once
+        synchronized (drives)
+        {
+            drives.put(caches, new Governed(caches, activity, metrics));
+            if (!started)
+            {
+                start();
+                started = true;
+            }
+        }
+    }
+
+    /**
+     * Stops governing the caches of a drive.
+     * @param caches The drive caches.
+     */
+    public void unregister(MemoryReclaimable caches)
+    {
+        synchronized (drives)
+        {
+            drives.remove(caches);
+        }
+    }
+
+    /**
+     * Evaluates the heap usage on memory and garbage collection notifications.
+     * @param notification The notification.
+     * @param handback Unused.
+     */
+    @Override
+    public void handleNotification(Notification notification, Object handback)
+    {
+        try
+        {
+            evaluate(getUsage(MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(notification.getType())));
+        }
+        catch (RuntimeException exception)
+        {
+            log.error(exception.getMessage(), exception);
+        }
+    }
+
+    /**
+     * Shrinks or grows the caches for a heap usage.
+     * @param usage The share of the fullest tenured pool.
+     */
+    void evaluate(double usage)
+    {
+        synchronized (drives)
+        {
+            // Decide the new scales
+            List<Governed> changed = new ArrayList<Governed>();
+            long elapsedMillis = (System.nanoTime() - lastChange) / 1000000L;
+            if (CRITICAL_USAGE <= usage)
+            {
+                for(Governed drive : drives.values())
+                {
+                    if (0 < drive.contentScale)
+                    {
+                        drive.contentScale = 0;
+                        drive.shrinks.increment();
+                        changed.add(drive);
+                    }
+                }
+                if (changed.isEmpty())
+                {
+                    shrink(changed);
+                }
+            }
+            else if (HIGH_USAGE <= usage && SHRINK_INTERVAL_MILLIS <= elapsedMillis)
+            {
+                shrink(changed);
+            }
+            else if (LOW_USAGE > usage && GROW_INTERVAL_MILLIS <= elapsedMillis)
+            {
+                grow(changed);
+            }
+
+            // Apply them
+            for(Governed drive : changed)
+            {
+                log.info(String.format(Locale.US, "Heap usage at %.0f%%, %s caches scaled to %.0f%% of the contents and %.0f%% of the metadata",
+                        usage * 100, drive.metrics.getDrive(), drive.contentScale * 100, drive.metadataScale * 100));
+                drive.caches.scaleCaches(drive.contentScale, drive.metadataScale);
+            }
+            if (!changed.isEmpty())
+            {
+                lastChange = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Halves the next budget: contents before metadata, idle drives first, guarded by the drives.
+     * @param changed The changed drives.
+     */
+    private void shrink(List<Governed> changed)
+    {
+        List<Governed> idleFirst = sortByIdleTime(true);
+        for(Governed drive : idleFirst)
+        {
+            if (0 < drive.contentScale)
+            {
+                drive.contentScale = MIN_CONTENT_SCALE < drive.contentScale ? drive.contentScale / 2 : 0;
+                drive.shrinks.increment();
+                changed.add(drive);
+                return;
+            }
+        }
+        for(Governed drive : idleFirst)
+        {
+            if (MIN_METADATA_SCALE < drive.metadataScale)
+            {
+                drive.metadataScale = Math.max(MIN_METADATA_SCALE, drive.metadataScale / 2);
+                drive.shrinks.increment();
+                changed.add(drive);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Doubles the next budget back: metadata before contents, active drives first, guarded by the drives.
+     * @param changed The changed drives.
+     */
+    private void grow(List<Governed> changed)
+    {
+        List<Governed> activeFirst = sortByIdleTime(false);
+        for(Governed drive : activeFirst)
+        {
+            if (1 > drive.metadataScale)
+            {
+                drive.metadataScale = Math.min(1, drive.metadataScale * 2);
+                drive.grows.increment();
+                changed.add(drive);
+                return;
+            }
+        }
+        for(Governed drive : activeFirst)
+        {
+            if (1 > drive.contentScale)
+            {
+                drive.contentScale = 0 == drive.contentScale ? MIN_CONTENT_SCALE : Math.min(1, drive.contentScale * 2);
+                drive.grows.increment();
+                changed.add(drive);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sorts the drives by idle time, guarded by the drives.
+     * @param idleFirst true for the most idle drives first, false for the most active ones first.
+     * @return The sorted drives.
+     */
+    private List<Governed> sortByIdleTime(final boolean idleFirst)
+    {
+        List<Governed> sorted = new ArrayList<Governed>(drives.values());
+        final Map<Governed, Long> idleMillis = new IdentityHashMap<Governed, Long>();
+        for(Governed drive : sorted)
+        {
+            idleMillis.put(drive, drive.activity.getIdleMillis());
+        }
+        Collections.sort(sorted, new Comparator<Governed>()
+        {
+            @Override
+            public int compare(Governed first, Governed second)
+            {
+                int order = Long.compare(idleMillis.get(first), idleMillis.get(second));
+                return idleFirst ? -order : order;
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Sets the thresholds of the tenured pools and listens to the memory and garbage collection notifications.
+     */
+    private void start()
+    {
+        for(MemoryPoolMXBean pool : pools)
+        {
+            long max = pool.getUsage().getMax();
+            pool.setUsageThreshold((long) (max * HIGH_USAGE));
+            pool.setCollectionUsageThreshold((long) (max * HIGH_USAGE));
+        }
+        if (pools.isEmpty())
+        {
+            return;
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            if (collector instanceof NotificationEmitter)
+            {
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+            }
+        }
+    }
+
+    /**
+     * Gets the share of the fullest tenured pool.
+     * @param current true for the current usage, false for the usage after the last collection.
+     * @return The share, from 0 to 1.
+     */
+    private double getUsage(boolean current)
+    {
+        double usage = 0;
+        for(MemoryPoolMXBean pool : pools)
+        {
+            MemoryUsage poolUsage = current ? pool.getUsage() : pool.getCollectionUsage();
+            if (null != poolUsage && 0 < poolUsage.getMax())
+            {
+                usage = Math.max(usage, (double) poolUsage.getUsed() / poolUsage.getMax());
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * Gets the tenured heap pools, the ones supporting both usage thresholds with a known maximum size.
+     * @return The pools.
+     */
+    private static List<MemoryPoolMXBean> getTenuredPools()
+    {
+        List<MemoryPoolMXBean> tenuredPools = new ArrayList<MemoryPoolMXBean>();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (MemoryType.HEAP == pool.getType() && pool.isUsageThresholdSupported() && pool.isCollectionUsageThresholdSupported()
+                && 0 < pool.getUsage().getMax())
+            {
+                tenuredPools.add(pool);
+            }
+        }
+        return tenuredPools;
+    }
+
+    /**
+     * The scales of a governed drive, guarded by the drives.
+     */
+    private static class Governed
+    {
+        /**
+         * The drive caches.
+         */
+        private final MemoryReclaimable caches;
+
+        /**
+         * The mounted client.
+         */
+        private final InstrumentedClient activity;
+
+        /**
+         * The drive metrics.
+         */
+        private final DriveMetrics metrics;
+
+        /**
+         * The shrink steps.
+         */
+        private final Counter shrinks;
+
+        /**
+         * The grow steps.
+         */
+        private final Counter grows;
+
+        /**
+         * The share of the content budgets kept.
+         */
+        private double contentScale;
+
+        /**
+         * The share of the metadata budgets kept.
+         */
+        private double metadataScale;
+
+        /**
+         * Initializes a governed drive at its configured budgets.
+         * @param caches The drive caches.
+         * @param activity The mounted client.
+         * @param metrics The drive metrics.
+         */
+        private Governed(MemoryReclaimable caches, InstrumentedClient activity, DriveMetrics metrics)
+        {
+            this.caches = caches;
+            this.activity = activity;
+            this.metrics = metrics;
+            this.shrinks = metrics.counter("cache.shrinks");
+            this.grows = metrics.counter("cache.grows");
+            this.contentScale = 1;
+            this.metadataScale = 1;
+        }
+    }
+}
@@ -24,6 +24,14 @@ package remotedrive.core.exception;
  */
 public class ClientRequestException extends RuntimeException
 {
+    /**
+     * Delegates to the parent constructor.
+     * @param message The message.
+     */
+    public ClientRequestException(String message) {
+        super(message);
+    }
+
     /**
      * Delegates to the parent constructor.
      * @param message The message.
@@ -0,0 +1,623 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.logging;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.AppenderAttachableImpl;
+import org.apache.log4j.helpers.OnlyOnceErrorHandler;
+import org.apache.log4j.spi.AppenderAttachable;
+import org.apache.log4j.spi.ErrorHandler;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.OptionHandler;
+
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appender handing the events to its attached appenders from a single background thread through a bounded ring buffer.
+ * Unlike log4j's AsyncAppender, logging threads never lock nor block: they claim a slot with a compare and set, and
+ * the event is dropped and counted when the buffer is full. Messages, typically LogMessage instances, are rendered
+ * by the background thread. The number of dropped events is logged once the buffer drains.
+ * The target appenders are attached programmatically or with an XML configuration. Since the properties configuration
+ * cannot attach appenders, a console appender is created from the Target and layout properties when none is attached:
+ *     log4j.appender.async=remotedrive.core.logging.AsyncRingAppender
+ *     log4j.appender.async.BufferSize=8192
+ *     log4j.appender.async.Target=System.out
+ *     log4j.appender.async.layout=org.apache.log4j.PatternLayout
+ */
+public class AsyncRingAppender implements Appender, AppenderAttachable, OptionHandler
+{
+    /**
+     * The default number of buffered events.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The longest wait of the background thread before checking the buffer again, in nanoseconds.
+     */
+    private static final long MAX_PARK_NANOS = 100L * 1000 * 1000;
+
+    /**
+     * The attached appenders, only used by the background thread once started.
+     */
+    private final AppenderAttachableImpl appenders;
+
+    /**
+     * The appender name.
+     */
+    private String name;
+
+    /**
+     * The error handler.
+     */
+    private ErrorHandler errorHandler;
+
+    /**
+     * The first filter of the chain.
+     */
+    private Filter headFilter;
+
+    /**
+     * The last filter of the chain.
+     */
+    private Filter tailFilter;
+
+    /**
+     * The layout of the console appender created when none is attached, null if none.
+     */
+    private Layout layout;
+
+    /**
+     * The target of the console appender created when none is attached.
+     */
+    private String target;
+
+    /**
+     * The requested number of buffered events.
+     */
+    private int bufferSize;
+
+    /**
+     * The buffered events.
+     */
+    private volatile AtomicReferenceArray<LoggingEvent> slots;
+
+    /**
+     * The slot index mask.
+     */
+    private int mask;
+
+    /**
+     * The next sequence claimed by a logging thread.
+     */
+    private final AtomicLong producerSequence;
+
+    /**
+     * The next sequence read by the background thread, only written by it.
+     */
+    private volatile long consumerSequence;
+
+    /**
+     * The events dropped since the last report.
+     */
+    private final AtomicLong dropped;
+
+    /**
+     * The background thread.
+     */
+    private volatile Thread dispatcher;
+
+    /**
+     * True while the background thread is parked.
+     */
+    private volatile boolean parked;
+
+    /**
+     * False once closed.
+     */
+    private volatile boolean open;
+
+    /**
+     * Initializes an appender, started by activateOptions.
+     */
+    public AsyncRingAppender()
+    {
+        this.appenders = new AppenderAttachableImpl();
+        this.errorHandler = new OnlyOnceErrorHandler();
+        this.bufferSize = DEFAULT_BUFFER_SIZE;
+        this.target = ConsoleAppender.SYSTEM_OUT;
+        this.producerSequence = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.open = true;
+    }
+
+    /**
+     * Sets the number of buffered events, rounded up to a power of two.
+     * @param bufferSize The number of buffered events.
+     */
+    public void setBufferSize(int bufferSize)
+    {
+        // Check input
+        if (bufferSize < 1)
+        {
+            throw new IllegalArgumentException("The buffer size must be positive.");
+        }
+
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Gets the number of buffered events.
+     * @return The buffer size.
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * Sets the target of the console appender created when none is attached.
+     * @param target System.out or System.err.
+     */
+    public void setTarget(String target)
+    {
+        this.target = target;
+    }
+
+    /**
+     * Gets the target of the console appender created when none is attached.
+     * @return The target.
+     */
+    public String getTarget()
+    {
+        return target;
+    }
+
+    /**
+     * Gets the number of events dropped because the buffer was full and not reported yet.
+     * @return The dropped events.
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Allocates the buffer and starts the background thread.
+     */
+    @Override
+    public synchronized void activateOptions()
+    {
+        if (null != dispatcher)
+        {
+            return;
+        }
+
+        // Fallback to a console appender
+        synchronized (appenders)
+        {
+            Enumeration<?> attached = appenders.getAllAppenders();
+            if (null != layout && (null == attached || !attached.hasMoreElements()))
+            {
+                ConsoleAppender console = new ConsoleAppender(layout, target);
+                console.setName(name + "-console");
+                appenders.addAppender(console);
+            }
+        }
+
+        // Allocate the ring
+        int capacity = Integer.highestOneBit(Math.max(1, bufferSize - 1)) << 1;
+        mask = capacity - 1;
+        slots = new AtomicReferenceArray<LoggingEvent>(capacity);
+
+        // Start dispatching
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                dispatch();
+            }
+        }, "async-logging");
+        thread.setDaemon(true);
+        dispatcher = thread;
+        thread.start();
+    }
+
+    /**
+     * Buffers an event, or drops it if the buffer is full.
+     * @param event The event.
+     */
+    @Override
+    public void doAppend(LoggingEvent event)
+    {
+        if (!open)
+        {
+            return;
+        }
+        if (null == dispatcher)
+        {
+            activateOptions();
+        }
+        if (!accept(event))
+        {
+            return;
+        }
+
+        // Capture the logging thread context, the message is rendered later
+        event.getThreadName();
+        event.getNDC();
+        event.getMDCCopy();
+
+        // Claim a slot unless the buffer is full
+        AtomicReferenceArray<LoggingEvent> buffer = slots;
+        long sequence;
+        do
+        {
+            sequence = producerSequence.get();
+            if (sequence - consumerSequence >= buffer.length())
+            {
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        while (!producerSequence.compareAndSet(sequence, sequence + 1));
+
+        // Publish and wake up the background thread if needed
+        buffer.lazySet((int) sequence & mask, event);
+        if (parked)
+        {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * Hands the buffered events to the attached appenders until closed and drained.
+     */
+    private void dispatch()
+    {
+        AtomicReferenceArray<LoggingEvent> buffer = slots;
+        long sequence = consumerSequence;
+        while (open || sequence != producerSequence.get())
+        {
+            // Take the next event, waiting if nothing is claimed
+            int index = (int) sequence & mask;
+            LoggingEvent event = buffer.get(index);
+            if (null == event)
+            {
+                if (sequence == producerSequence.get())
+                {
+                    reportDropped();
+                    parked = true;
+                    if (open && sequence == producerSequence.get())
+                    {
+                        LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                    }
+                    parked = false;
+                }
+                else
+                {
+                    // Claimed but not published yet
+                    Thread.yield();
+                }
+                continue;
+            }
+            buffer.lazySet(index, null);
+            consumerSequence = ++sequence;
+
+            // Hand it over
+            append(event);
+        }
+        reportDropped();
+    }
+
+    /**
+     * Logs the number of dropped events, if any.
+     */
+    private void reportDropped()
+    {
+        long count = dropped.getAndSet(0);
+        if (0 != count)
+        {
+            Logger logger = Logger.getLogger(AsyncRingAppender.class);
+            append(new LoggingEvent(AsyncRingAppender.class.getName(), logger, Level.WARN,
+                String.format(Locale.US, "%d logging events dropped, the logging buffer of %s is full", count, name), null));
+        }
+    }
+
+    /**
+     * Hands an event to the attached appenders.
+     * @param event The event.
+     */
+    private void append(LoggingEvent event)
+    {
+        try
+        {
+            synchronized (appenders)
+            {
+                appenders.appendLoopOnAppenders(event);
+            }
+        }
+        catch (RuntimeException exception)
+        {
+            errorHandler.error("Unable to append a logging event", exception, 0, event);
+        }
+    }
+
+    /**
+     * Evaluates the filter chain.
+     * @param event The event.
+     * @return true if the event has to be logged, false otherwise.
+     */
+    private boolean accept(LoggingEvent event)
+    {
+        for(Filter filter = headFilter; null != filter; filter = filter.getNext())
+        {
+            switch (filter.decide(event))
+            {
+                case Filter.DENY:
+                    return false;
+                case Filter.ACCEPT:
+                    return true;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drains the buffer, then closes the attached appenders.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (!open)
+            {
+                return;
+            }
+            open = false;
+        }
+
+        // Let the background thread drain the buffer
+        Thread thread = dispatcher;
+        if (null != thread)
+        {
+            LockSupport.unpark(thread);
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Close the attached appenders
+        synchronized (appenders)
+        {
+            Enumeration<?> attached = appenders.getAllAppenders();
+            while (null != attached && attached.hasMoreElements())
+            {
+                ((Appender) attached.nextElement()).close();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAppender(Appender appender)
+    {
+        synchronized (appenders)
+        {
+            appenders.addAppender(appender);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Enumeration getAllAppenders()
+    {
+        synchronized (appenders)
+        {
+            return appenders.getAllAppenders();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Appender getAppender(String appenderName)
+    {
+        synchronized (appenders)
+        {
+            return appenders.getAppender(appenderName);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAttached(Appender appender)
+    {
+        synchronized (appenders)
+        {
+            return appenders.isAttached(appender);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAllAppenders()
+    {
+        synchronized (appenders)
+        {
+            appenders.removeAllAppenders();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAppender(Appender appender)
+    {
+        synchronized (appenders)
+        {
+            appenders.removeAppender(appender);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAppender(String appenderName)
+    {
+        synchronized (appenders)
+        {
+            appenders.removeAppender(appenderName);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addFilter(Filter filter)
+    {
+        if (null == headFilter)
+        {
+            headFilter = filter;
+        }
+        else
+        {
+            tailFilter.setNext(filter);
+        }
+        tailFilter = filter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Filter getFilter()
+    {
+        return headFilter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void clearFilters()
+    {
+        headFilter = null;
+        tailFilter = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ErrorHandler getErrorHandler()
+    {
+        return errorHandler;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setErrorHandler(ErrorHandler errorHandler)
+    {
+        if (null != errorHandler)
+        {
+            this.errorHandler = errorHandler;
+        }
+    }
+
+    /**
+     * Gets the layout of the console appender created when none is attached.
+     * @return The layout, null if none.
+     */
+    @Override
+    public Layout getLayout()
+    {
+        return layout;
+    }
+
+    /**
+     * Sets the layout of the console appender created when none is attached.
+     * @param layout The layout.
+     */
+    @Override
+    public void setLayout(Layout layout)
+    {
+        this.layout = layout;
+    }
+
+    /**
+     * Asks the properties configuration for the layout of the console appender created when none is attached.
+     * @return true.
+     */
+    @Override
+    public boolean requiresLayout()
+    {
+        return true;
+    }
+}
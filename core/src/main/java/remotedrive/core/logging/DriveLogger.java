@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.logging;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import remotedrive.core.Configuration;
+import remotedrive.core.ConfigurationSnapshot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logger of the per operation paths of a drive.
+ * - Debug messages are logged when the drive debug switch is on, whatever the logger level, or when the logger level
+ *   allows them.
+ * - Per operation messages are sampled: only one operation out of the sampling rate is logged.
+ * - All the messages of the drive are rate limited and the suppressed ones are counted in the next logged message.
+ * - Messages are parameterised and only rendered by the appender, see LogMessage.
+ * The switch, the sampling and the rate come from the tuning entries of the drive and can be changed while mounted.
+ * Callers log per operation messages as:
+ *     if (logger.isOperationLogged()) { logger.debug("Read {} at {}", path, offset); }
+ */
+public final class DriveLogger
+{
+    /**
+     * The fully qualified class name reported to log4j.
+     */
+    private static final String FQCN = DriveLogger.class.getName();
+
+    /**
+     * The rate limiting window.
+     */
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The underlying logger.
+     */
+    private final Logger logger;
+
+    /**
+     * The drive name.
+     */
+    private final String drive;
+
+    /**
+     * Is the drive debug switch on.
+     */
+    private volatile boolean debug;
+
+    /**
+     * One operation out of this number is logged.
+     */
+    private volatile int sampling;
+
+    /**
+     * The maximum number of messages per second, 0 for unlimited.
+     */
+    private volatile int rateLimit;
+
+    /**
+     * The operations seen, for sampling.
+     */
+    private final AtomicLong operations;
+
+    /**
+     * The current rate limiting window start.
+     */
+    private final AtomicLong windowStart;
+
+    /**
+     * The messages logged in the current window.
+     */
+    private final AtomicLong windowCount;
+
+    /**
+     * The messages suppressed since the last logged one.
+     */
+    private final AtomicLong suppressed;
+
+    /**
+     * Initializes a drive logger.
+     * @param type The logging class.
+     * @param configuration The drive configuration.
+     */
+    public DriveLogger(Class<?> type, Configuration configuration)
+    {
+        // Check input
+        if (null == type)
+        {
+            throw new IllegalArgumentException("The type cannot be null.");
+        }
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+
+        // Initialize
+        this.logger = Logger.getLogger(type);
+        this.drive = configuration.getSnapshot().getName();
+        this.operations = new AtomicLong();
+        this.windowStart = new AtomicLong(System.nanoTime());
+        this.windowCount = new AtomicLong();
+        this.suppressed = new AtomicLong();
+        tune(configuration);
+    }
+
+    /**
+     * Applies the logging tuning entries of the drive.
+     * @param configuration The drive configuration.
+     */
+    public void tune(Configuration configuration)
+    {
+        ConfigurationSnapshot snapshot = configuration.getSnapshot();
+        this.debug = snapshot.isDebugLogging();
+        this.sampling = snapshot.getLogSampling();
+        this.rateLimit = snapshot.getLogRateLimit();
+    }
+
+    /**
+     * Are the debug messages of the drive logged.
+     * @return true if debug is enabled, false otherwise.
+     */
+    public boolean isDebugEnabled()
+    {
+        return debug || logger.isDebugEnabled();
+    }
+
+    /**
+     * Counts an operation and tells whether its debug messages are logged according to the sampling.
+     * @return true if the operation is logged, false otherwise.
+     */
+    public boolean isOperationLogged()
+    {
+        if (!isDebugEnabled())
+        {
+            return false;
+        }
+        int currentSampling = sampling;
+        return 1 >= currentSampling || 0 == operations.getAndIncrement() % currentSampling;
+    }
+
+    /**
+     * Logs a debug message.
+     * @param pattern The pattern.
+     * @param arguments The arguments.
+     */
+    public void debug(String pattern, Object... arguments)
+    {
+        if (isDebugEnabled())
+        {
+            log(Level.DEBUG, pattern, arguments, null);
+        }
+    }
+
+    /**
+     * Logs an information message.
+     * @param pattern The pattern.
+     * @param arguments The arguments.
+     */
+    public void info(String pattern, Object... arguments)
+    {
+        if (logger.isInfoEnabled())
+        {
+            log(Level.INFO, pattern, arguments, null);
+        }
+    }
+
+    /**
+     * Logs a warning message.
+     * @param pattern The pattern.
+     * @param arguments The arguments.
+     */
+    public void warn(String pattern, Object... arguments)
+    {
+        if (logger.isEnabledFor(Level.WARN))
+        {
+            log(Level.WARN, pattern, arguments, null);
+        }
+    }
+
+    /**
+     * Logs an error message.
+     * @param throwable The error, null if none.
+     * @param pattern The pattern.
+     * @param arguments The arguments.
+     */
+    public void error(Throwable throwable, String pattern, Object... arguments)
+    {
+        if (logger.isEnabledFor(Level.ERROR))
+        {
+            log(Level.ERROR, pattern, arguments, throwable);
+        }
+    }
+
+    /**
+     * Logs a message if the rate limit allows it.
+     * Events go straight to the appenders so that the drive debug switch bypasses the logger level.
+     * @param level The level.
+     * @param pattern The pattern.
+     * @param arguments The arguments.
+     * @param throwable The error, null if none.
+     */
+    private void log(Level level, String pattern, Object[] arguments, Throwable throwable)
+    {
+        if (!acquire())
+        {
+            suppressed.incrementAndGet();
+            return;
+        }
+
+        // Mention the messages suppressed since the last one
+        long suppressedCount = suppressed.getAndSet(0);
+        String effectivePattern = 0 == suppressedCount ? pattern : pattern + " (" + suppressedCount + " messages suppressed)";
+        logger.callAppenders(new LoggingEvent(FQCN, logger, level, new LogMessage(drive, effectivePattern, arguments), throwable));
+    }
+
+    /**
+     * Takes a message out of the current rate limiting window.
+     * @return true if the message can be logged, false otherwise.
+     */
+    private boolean acquire()
+    {
+        int currentRateLimit = rateLimit;
+        if (0 == currentRateLimit)
+        {
+            return true;
+        }
+
+        // Start a new window when the current one is over
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now))
+        {
+            windowCount.set(0);
+        }
+        return windowCount.incrementAndGet() <= currentRateLimit;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.logging;
+
+/**
+ * Parameterised log message, formatted only when rendered.
+ * Each "{}" of the pattern is replaced by the next argument, extra "{}" being kept as is. Log4j renders messages with
+ * toString, which the asynchronous appender calls on its own thread: the logging thread only pays for this object.
+ * Arguments are rendered later, so they have to be immutable or not modified once logged.
+ */
+public final class LogMessage
+{
+    /**
+     * The drive the message relates to, null if none.
+     */
+    private final String drive;
+
+    /**
+     * The pattern.
+     */
+    private final String pattern;
+
+    /**
+     * The arguments.
+     */
+    private final Object[] arguments;
+
+    /**
+     * The rendered message, computed once.
+     */
+    private String rendered;
+
+    /**
+     * Initializes a message.
+     * @param drive The drive the message relates to, null if none.
+     * @param pattern The pattern.
+     * @param arguments The arguments.
+     */
+    LogMessage(String drive, String pattern, Object[] arguments)
+    {
+        this.drive = drive;
+        this.pattern = pattern;
+        this.arguments = null == arguments ? new Object[0] : arguments;
+    }
+
+    /**
+     * Creates a message.
+     * @param pattern The pattern.
+     * @param arguments The arguments.
+     * @return The message.
+     */
+    public static LogMessage format(String pattern, Object... arguments)
+    {
+        return new LogMessage(null, pattern, arguments);
+    }
+
+    /**
+     * Renders the message.
+     * @return The message, prefixed by the drive name if any.
+     */
+    @Override
+    public String toString()
+    {
+        String result = rendered;
+        if (null == result)
+        {
+            result = render();
+            rendered = result;
+        }
+        return result;
+    }
+
+    /**
+     * Substitutes the arguments.
+     * @return The message.
+     */
+    private String render()
+    {
+        StringBuilder builder = new StringBuilder(pattern.length() + 32);
+        if (null != drive)
+        {
+            builder.append('[').append(drive).append("] ");
+        }
+
+        // Copy the pattern, replacing the placeholders
+        int argument = 0;
+        int start = 0;
+        for(int placeholder = pattern.indexOf("{}"); -1 != placeholder && argument < arguments.length; placeholder = pattern.indexOf("{}", start))
+        {
+            builder.append(pattern, start, placeholder).append(arguments[argument++]);
+            start = placeholder + 2;
+        }
+        return builder.append(pattern, start, pattern.length()).toString();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter, cheap to update from many threads.
+ */
+public final class Counter
+{
+    /**
+     * The count.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Adds one.
+     */
+    public void increment()
+    {
+        count.increment();
+    }
+
+    /**
+     * Adds an amount.
+     * @param amount The amount.
+     */
+    public void add(long amount)
+    {
+        count.add(amount);
+    }
+
+    /**
+     * Gets the current count.
+     * @return The count.
+     */
+    public long get()
+    {
+        return count.sum();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Metrics of a drive, by name.
+ * Lookups create the metric on first use. They go through a map so hot paths are expected to resolve their metrics
+ * once and keep them in fields.
+ */
+public final class DriveMetrics
+{
+    /**
+     * The gauge counting the pending background tasks of the drive.
+     */
+    public static final String QUEUE_DEPTH = "queue.depth";
+
+    /**
+     * The drive name.
+     */
+    private final String drive;
+
+    /**
+     * The counters by name.
+     */
+    private final ConcurrentMap<String, Counter> counters;
+
+    /**
+     * The gauges by name.
+     */
+    private final ConcurrentMap<String, Gauge> gauges;
+
+    /**
+     * The operations by name.
+     */
+    private final ConcurrentMap<String, OperationMetrics> operations;
+
+    /**
+     * Initializes the drive metrics.
+     * @param drive The drive name.
+     */
+    DriveMetrics(String drive)
+    {
+        this.drive = drive;
+        this.counters = new ConcurrentHashMap<String, Counter>();
+        this.gauges = new ConcurrentHashMap<String, Gauge>();
+        this.operations = new ConcurrentHashMap<String, OperationMetrics>();
+    }
+
+    /**
+     * Gets the drive name.
+     * @return The drive name.
+     */
+    public String getDrive()
+    {
+        return drive;
+    }
+
+    /**
+     * Gets or creates a counter.
+     * @param name The counter name.
+     * @return The counter.
+     */
+    public Counter counter(String name)
+    {
+        Counter counter = counters.get(name);
+        if (null == counter)
+        {
+            Counter newCounter = new Counter();
+            counter = counters.putIfAbsent(name, newCounter);
+            counter = null == counter ? newCounter : counter;
+        }
+        return counter;
+    }
+
+    /**
+     * Gets or creates a gauge.
+     * @param name The gauge name.
+     * @return The gauge.
+     */
+    public Gauge gauge(String name)
+    {
+        Gauge gauge = gauges.get(name);
+        if (null == gauge)
+        {
+            Gauge newGauge = new Gauge();
+            gauge = gauges.putIfAbsent(name, newGauge);
+            gauge = null == gauge ? newGauge : gauge;
+        }
+        return gauge;
+    }
+
+    /**
+     * Gets or creates an operation metrics.
+     * @param name The operation name.
+     * @return The operation metrics.
+     */
+    public OperationMetrics operation(String name)
+    {
+        OperationMetrics operation = operations.get(name);
+        if (null == operation)
+        {
+            OperationMetrics newOperation = new OperationMetrics();
+            operation = operations.putIfAbsent(name, newOperation);
+            operation = null == operation ? newOperation : operation;
+        }
+        return operation;
+    }
+
+    /**
+     * Gets all the counters.
+     * @return The counters sorted by name.
+     */
+    public Map<String, Counter> getCounters()
+    {
+        return new TreeMap<String, Counter>(counters);
+    }
+
+    /**
+     * Gets all the gauges.
+     * @return The gauges sorted by name.
+     */
+    public Map<String, Gauge> getGauges()
+    {
+        return new TreeMap<String, Gauge>(gauges);
+    }
+
+    /**
+     * Gets all the operations.
+     * @return The operations sorted by name.
+     */
+    public Map<String, OperationMetrics> getOperations()
+    {
+        return new TreeMap<String, OperationMetrics>(operations);
+    }
+}
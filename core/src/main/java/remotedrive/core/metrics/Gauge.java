@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Current value of a quantity going up and down, such as the number of pending background tasks.
+ */
+public final class Gauge
+{
+    /**
+     * The value.
+     */
+    private final AtomicLong value = new AtomicLong();
+
+    /**
+     * Adds an amount, negative to decrease the value.
+     * @param amount The amount.
+     */
+    public void add(long amount)
+    {
+        value.addAndGet(amount);
+    }
+
+    /**
+     * Replaces the value.
+     * @param newValue The value.
+     */
+    public void set(long newValue)
+    {
+        value.set(newValue);
+    }
+
+    /**
+     * Gets the current value.
+     * @return The value.
+     */
+    public long get()
+    {
+        return value.get();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non negative values, typically latencies in nanoseconds, recorded in power of two buckets.
+ * Recording is lock free and allocation free, percentiles are approximated by the upper bound of their bucket.
+ */
+public final class Histogram
+{
+    /**
+     * Number of buckets: bucket i holds the values having i significant bits.
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * The buckets.
+     */
+    private final LongAdder[] buckets;
+
+    /**
+     * The values count.
+     */
+    private final LongAdder count;
+
+    /**
+     * The values sum.
+     */
+    private final LongAdder sum;
+
+    /**
+     * Initializes an empty histogram.
+     */
+    public Histogram()
+    {
+        this.buckets = new LongAdder[BUCKETS];
+        for(int i = 0; i < BUCKETS; ++i)
+        {
+            buckets[i] = new LongAdder();
+        }
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+    }
+
+    /**
+     * Records a value, negative values being recorded as zero.
+     * @param value The value.
+     */
+    public void record(long value)
+    {
+        long positiveValue = Math.max(0, value);
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(positiveValue))].increment();
+        count.increment();
+        sum.add(positiveValue);
+    }
+
+    /**
+     * Gets the number of recorded values.
+     * @return The count.
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of the recorded values.
+     * @return The sum.
+     */
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     * @return The mean, 0 if empty.
+     */
+    public long getMean()
+    {
+        long currentCount = getCount();
+        return 0 == currentCount ? 0 : getSum() / currentCount;
+    }
+
+    /**
+     * Gets an approximation of a percentile.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The upper bound of the bucket holding the percentile, 0 if empty.
+     */
+    public long getPercentile(double percentile)
+    {
+        return percentile(getBuckets(), percentile);
+    }
+
+    /**
+     * Takes a consistent enough copy of the buckets, so that the values recorded between two copies can be obtained
+     * by subtracting them.
+     * @return The number of values of each bucket.
+     */
+    public long[] getBuckets()
+    {
+        long[] counts = new long[BUCKETS];
+        for(int i = 0; i < BUCKETS; ++i)
+        {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Gets an approximation of a percentile from bucket counts.
+     * @param counts The number of values of each bucket, as returned by getBuckets.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The upper bound of the bucket holding the percentile, 0 if empty.
+     */
+    public static long percentile(long[] counts, double percentile)
+    {
+        // Check input
+        if (null == counts)
+        {
+            throw new IllegalArgumentException("The counts cannot be null.");
+        }
+        if (percentile < 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("The percentile has to be between 0 and 100.");
+        }
+
+        // Count the values
+        long total = 0;
+        for(long count : counts)
+        {
+            total += count;
+        }
+        if (0 == total)
+        {
+            return 0;
+        }
+
+        // Find the bucket holding the rank
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < counts.length; ++i)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+            {
+                return 0 == i ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ContentRange;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.spi.AccessObserver;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.RangeReadable;
+import remotedrive.core.spi.Tunable;
+
+/**
+ * Client decorator recording the latency and failures of each call, and the bytes read.
+ * The mount manager decorates every client it creates so implementations are instrumented without any change.
+ */
+public class InstrumentedClient implements Client, RangeReadable, Tunable, AccessObserver
+{
+    /**
+     * The decorated client.
+     */
+    private final Client delegate;
+
+    /**
+     * The authenticate metrics.
+     */
+    private final OperationMetrics authenticate;
+
+    /**
+     * The retrieveDiskInformation metrics.
+     */
+    private final OperationMetrics retrieveDiskInformation;
+
+    /**
+     * The retrieveChildren metrics.
+     */
+    private final OperationMetrics retrieveChildren;
+
+    /**
+     * The retrieveChildrenByTitlePrefix metrics.
+     */
+    private final OperationMetrics retrieveChildrenByTitlePrefix;
+
+    /**
+     * The retrieveDriveFile metrics.
+     */
+    private final OperationMetrics retrieveDriveFile;
+
+    /**
+     * The retrieveDriveFileContent metrics.
+     */
+    private final OperationMetrics retrieveDriveFileContent;
+
+    /**
+     * The ranged retrieveDriveFileContent metrics.
+     */
+    private final OperationMetrics retrieveDriveFileContentRange;
+
+    /**
+     * The bytes read.
+     */
+    private final Counter bytesRead;
+
+    /**
+     * The time of the last access reported by the file system.
+     */
+    private volatile long lastAccess;
+
+    /**
+     * Initializes the decorator.
+     * @param delegate The decorated client.
+     * @param metrics The drive metrics.
+     */
+    public InstrumentedClient(Client delegate, DriveMetrics metrics)
+    {
+        // Check input
+        if (null == delegate)
+        {
+            throw new IllegalArgumentException("The client cannot be null.");
+        }
+        if (null == metrics)
+        {
+            throw new IllegalArgumentException("The metrics cannot be null.");
+        }
+
+        // Initialize
+        this.delegate = delegate;
+        this.authenticate = metrics.operation("client.authenticate");
+        this.retrieveDiskInformation = metrics.operation("client.retrieveDiskInformation");
+        this.retrieveChildren = metrics.operation("client.retrieveChildren");
+        this.retrieveChildrenByTitlePrefix = metrics.operation("client.retrieveChildrenByTitlePrefix");
+        this.retrieveDriveFile = metrics.operation("client.retrieveDriveFile");
+        this.retrieveDriveFileContent = metrics.operation("client.retrieveDriveFileContent");
+        this.retrieveDriveFileContentRange = metrics.operation("client.retrieveDriveFileContentRange");
+        this.bytesRead = metrics.counter("client.bytes-read");
+        this.lastAccess = System.nanoTime();
+    }
+
+    /**
+     * Gets the decorated client.
+     * @return The decorated client.
+     */
+    public Client getDelegate()
+    {
+        return delegate;
+    }
+
+    /**
+     * Gets the time elapsed since the last access reported by the file system, or since the drive was mounted.
+     * @return The idle time in milliseconds.
+     */
+    public long getIdleMillis()
+    {
+        return (System.nanoTime() - lastAccess) / 1000000L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void authenticate(String username, char[] password)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.authenticate(username, password);
+            failed = false;
+        }
+        finally
+        {
+            authenticate.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Drive retrieveDiskInformation()
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            Drive drive = delegate.retrieveDiskInformation();
+            failed = false;
+            return drive;
+        }
+        finally
+        {
+            retrieveDiskInformation.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildren(String parentPath)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            File[] children = delegate.retrieveChildren(parentPath);
+            failed = false;
+            return children;
+        }
+        finally
+        {
+            retrieveChildren.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildrenByTitlePrefix(String parentPath, String titlePrefix)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            File[] children = delegate.retrieveChildrenByTitlePrefix(parentPath, titlePrefix);
+            failed = false;
+            return children;
+        }
+        finally
+        {
+            retrieveChildrenByTitlePrefix.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File retrieveDriveFile(String filePath)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            File file = delegate.retrieveDriveFile(filePath);
+            failed = false;
+            return file;
+        }
+        finally
+        {
+            retrieveDriveFile.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            byte[] content = delegate.retrieveDriveFileContent(filePath);
+            failed = false;
+            if (null != content)
+            {
+                bytesRead.add(content.length);
+            }
+            return content;
+        }
+        finally
+        {
+            retrieveDriveFileContent.record(start, failed);
+        }
+    }
+
+    /**
+     * Retrieves a range of a file content, through a range request if the decorated client supports it.
+     * @param filePath The absolute file.
+     * @param offset The position of the first byte.
+     * @param length The maximum number of bytes.
+     * @return The bytes, null if the file doesn't exist.
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath, long offset, int length)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            byte[] content = ContentRange.read(delegate, filePath, offset, length);
+            failed = false;
+            if (null != content)
+            {
+                bytesRead.add(content.length);
+            }
+            return content;
+        }
+        finally
+        {
+            retrieveDriveFileContentRange.record(start, failed);
+        }
+    }
+
+    /**
+     * Forwards the tuning to the decorated client if it's tunable.
+     * @param configuration The configuration of the mounted drive.
+     */
+    @Override
+    public void tune(Configuration configuration)
+    {
+        if (delegate instanceof Tunable)
+        {
+            ((Tunable) delegate).tune(configuration);
+        }
+    }
+
+    /**
+     * Tracks the user activity and forwards the access to the decorated client if it observes them.
+     * @param path The absolute path.
+     * @param directory true if a folder is enumerated, false if a file is read.
+     */
+    @Override
+    public void onAccess(String path, boolean directory)
+    {
+        lastAccess = System.nanoTime();
+        if (delegate instanceof AccessObserver)
+        {
+            ((AccessObserver) delegate).onAccess(path, directory);
+        }
+    }
+}
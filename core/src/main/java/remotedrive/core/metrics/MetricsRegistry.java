@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+import remotedrive.core.Configuration;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process wide metrics, tagged by drive.
+ * Clients, caches and file system handlers record into the DriveMetrics of their drive so that a slowdown can be
+ * attributed to the remote system, the caches or the file system callbacks.
+ */
+public final class MetricsRegistry
+{
+    /**
+     * The drive name used when the drive is unknown.
+     */
+    public static final String DEFAULT_DRIVE = "default";
+
+    /**
+     * The process wide registry.
+     */
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    /**
+     * The drive metrics by drive name.
+     */
+    private final ConcurrentMap<String, DriveMetrics> drives;
+
+    /**
+     * Initializes an empty registry.
+     */
+    public MetricsRegistry()
+    {
+        this.drives = new ConcurrentHashMap<String, DriveMetrics>();
+    }
+
+    /**
+     * Gets the process wide registry.
+     * @return The registry.
+     */
+    public static MetricsRegistry getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Gets or creates the metrics of a drive.
+     * @param drive The drive name, null for the default drive.
+     * @return The drive metrics.
+     */
+    public DriveMetrics forDrive(String drive)
+    {
+        String name = null == drive ? DEFAULT_DRIVE : drive;
+        DriveMetrics metrics = drives.get(name);
+        if (null == metrics)
+        {
+            DriveMetrics newMetrics = new DriveMetrics(name);
+            metrics = drives.putIfAbsent(name, newMetrics);
+            metrics = null == metrics ? newMetrics : metrics;
+        }
+        return metrics;
+    }
+
+    /**
+     * Gets or creates the metrics of a configured drive.
+     * @param configuration The drive configuration.
+     * @return The drive metrics.
+     */
+    public DriveMetrics forDrive(Configuration configuration)
+    {
+        // Check input
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+
+        return forDrive(configuration.readString("name"));
+    }
+
+    /**
+     * Gets all the drive metrics.
+     * @return The drive metrics sorted by drive name.
+     */
+    public Map<String, DriveMetrics> getDrives()
+    {
+        return new TreeMap<String, DriveMetrics>(drives);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+import java.util.Map;
+
+/**
+ * Immutable activity of a drive over the interval between two samples.
+ */
+public final class MetricsSample
+{
+    /**
+     * The drive name.
+     */
+    private final String drive;
+
+    /**
+     * The file system callbacks per second by callback name, only holding the called ones.
+     */
+    private final Map<String, Double> operationsPerSecond;
+
+    /**
+     * The median callback latency, in nanoseconds.
+     */
+    private final long latencyMedian;
+
+    /**
+     * The 99th percentile of the callback latency, in nanoseconds.
+     */
+    private final long latency99;
+
+    /**
+     * The share of the cache lookups served from the caches.
+     */
+    private final double cacheHitRatio;
+
+    /**
+     * The downloaded bytes per second.
+     */
+    private final double downloadRate;
+
+    /**
+     * The uploaded bytes per second.
+     */
+    private final double uploadRate;
+
+    /**
+     * The pending background tasks.
+     */
+    private final long queueDepth;
+
+    /**
+     * The cached contents bytes per byte of memory they use.
+     */
+    private final double cacheCompressionGain;
+
+    /**
+     * The share of the predicted prefetches which have been accessed.
+     */
+    private final double predictionPrecision;
+
+    /**
+     * The share of the accesses which have been predicted.
+     */
+    private final double predictionRecall;
+
+    /**
+     * Initializes a sample.
+     * @param drive The drive name.
+     * @param operationsPerSecond The file system callbacks per second by callback name.
+     * @param latencyMedian The median callback latency, in nanoseconds.
+     * @param latency99 The 99th percentile of the callback latency, in nanoseconds.
+     * @param cacheHitRatio The share of the cache lookups served from the caches.
+     * @param downloadRate The downloaded bytes per second.
+     * @param uploadRate The uploaded bytes per second.
+     * @param queueDepth The pending background tasks.
+     * @param cacheCompressionGain The cached contents bytes per byte of memory they use.
+     * @param predictionPrecision The share of the predicted prefetches which have been accessed.
+     * @param predictionRecall The share of the accesses which have been predicted.
+     */
+    MetricsSample(String drive, Map<String, Double> operationsPerSecond, long latencyMedian, long latency99,
+                  double cacheHitRatio, double downloadRate, double uploadRate, long queueDepth,
+                  double cacheCompressionGain, double predictionPrecision, double predictionRecall)
+    {
+        this.drive = drive;
+        this.operationsPerSecond = operationsPerSecond;
+        this.latencyMedian = latencyMedian;
+        this.latency99 = latency99;
+        this.cacheHitRatio = cacheHitRatio;
+        this.downloadRate = downloadRate;
+        this.uploadRate = uploadRate;
+        this.queueDepth = queueDepth;
+        this.cacheCompressionGain = cacheCompressionGain;
+        this.predictionPrecision = predictionPrecision;
+        this.predictionRecall = predictionRecall;
+    }
+
+    /**
+     * Gets the drive name.
+     * @return The drive name.
+     */
+    public String getDrive()
+    {
+        return drive;
+    }
+
+    /**
+     * Gets the file system callbacks per second.
+     * @return The rates by callback name, sorted and unmodifiable, only holding the called ones.
+     */
+    public Map<String, Double> getOperationsPerSecond()
+    {
+        return operationsPerSecond;
+    }
+
+    /**
+     * Gets the median callback latency.
+     * @return The latency in nanoseconds, 0 if no callback.
+     */
+    public long getLatencyMedian()
+    {
+        return latencyMedian;
+    }
+
+    /**
+     * Gets the 99th percentile of the callback latency.
+     * @return The latency in nanoseconds, 0 if no callback.
+     */
+    public long getLatency99()
+    {
+        return latency99;
+    }
+
+    /**
+     * Gets the share of the cache lookups served from the caches.
+     * @return The ratio between 0 and 1, NaN if no lookup.
+     */
+    public double getCacheHitRatio()
+    {
+        return cacheHitRatio;
+    }
+
+    /**
+     * Gets the downloaded bytes per second.
+     * @return The download rate.
+     */
+    public double getDownloadRate()
+    {
+        return downloadRate;
+    }
+
+    /**
+     * Gets the uploaded bytes per second.
+     * @return The upload rate.
+     */
+    public double getUploadRate()
+    {
+        return uploadRate;
+    }
+
+    /**
+     * Gets the pending background tasks.
+     * @return The queue depth.
+     */
+    public long getQueueDepth()
+    {
+        return queueDepth;
+    }
+
+    /**
+     * Gets the effective capacity gain of the content cache compression.
+     * @return The cached contents bytes per byte of memory they use, NaN if no content is cached.
+     */
+    public double getCacheCompressionGain()
+    {
+        return cacheCompressionGain;
+    }
+
+    /**
+     * Gets the precision of the access predictions since the drive is mounted.
+     * @return The share of the predicted prefetches which have been accessed, NaN if nothing has been prefetched.
+     */
+    public double getPredictionPrecision()
+    {
+        return predictionPrecision;
+    }
+
+    /**
+     * Gets the recall of the access predictions since the drive is mounted.
+     * @return The share of the accesses which have been predicted, NaN if no access has been reported.
+     */
+    public double getPredictionRecall()
+    {
+        return predictionRecall;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Turns the cumulative metrics of a drive into rates and percentiles over the interval between two samples.
+ * A sampler isn't thread safe and is meant to be called periodically from a single timer thread.
+ */
+public final class MetricsSampler
+{
+    /**
+     * The prefix of the file system callback operations.
+     */
+    public static final String CALLBACK_PREFIX = "dokan.";
+
+    /**
+     * The prefix of the cache counters, each cache having a hits and a misses counter.
+     */
+    public static final String CACHE_PREFIX = "cache.";
+
+    /**
+     * The counter of the bytes downloaded by the client.
+     */
+    public static final String BYTES_DOWNLOADED = "client.bytes-read";
+
+    /**
+     * The counter of the bytes uploaded by the client.
+     */
+    public static final String BYTES_UPLOADED = "client.bytes-written";
+
+    /**
+     * The gauge of the bytes of the cached contents.
+     */
+    public static final String CACHE_RAW_BYTES = "cache.content.raw-bytes";
+
+    /**
+     * The gauge of the bytes held in memory by the cached contents, once compressed.
+     */
+    public static final String CACHE_STORED_BYTES = "cache.content.stored-bytes";
+
+    /**
+     * The counter of the accesses reported to the access predictor.
+     */
+    public static final String PREDICT_ACCESSES = "predict.accesses";
+
+    /**
+     * The counter of the files and folders prefetched by the access predictor.
+     */
+    public static final String PREDICT_PREFETCHED = "predict.prefetched";
+
+    /**
+     * The counter of the prefetched files and folders accessed shortly after.
+     */
+    public static final String PREDICT_HITS = "predict.hits";
+
+    /**
+     * The sampled metrics.
+     */
+    private final DriveMetrics metrics;
+
+    /**
+     * The callback buckets at the previous sample, by operation name.
+     */
+    private final Map<String, long[]> previousBuckets;
+
+    /**
+     * The cache hits at the previous sample.
+     */
+    private long previousHits;
+
+    /**
+     * The cache misses at the previous sample.
+     */
+    private long previousMisses;
+
+    /**
+     * The downloaded bytes at the previous sample.
+     */
+    private long previousDownloaded;
+
+    /**
+     * The uploaded bytes at the previous sample.
+     */
+    private long previousUploaded;
+
+    /**
+     * The System.nanoTime() value of the previous sample.
+     */
+    private long previousTime;
+
+    /**
+     * Initializes a sampler, the first sample covering the interval since its creation.
+     * @param metrics The drive metrics.
+     */
+    public MetricsSampler(DriveMetrics metrics)
+    {
+        // Check input
+        if (null == metrics)
+        {
+            throw new IllegalArgumentException("The metrics cannot be null.");
+        }
+
+        // Initialize and take the baseline
+        this.metrics = metrics;
+        this.previousBuckets = new HashMap<String, long[]>();
+        sample();
+    }
+
+    /**
+     * Gets the sampled metrics.
+     * @return The drive metrics.
+     */
+    public DriveMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Samples the metrics recorded since the previous sample.
+     * @return The sample.
+     */
+    public MetricsSample sample()
+    {
+        long time = System.nanoTime();
+        double seconds = Math.max(1, time - previousTime) / 1e9;
+
+        // Diff the callback latencies
+        Map<String, Double> operationsPerSecond = new TreeMap<String, Double>();
+        long[] latency = null;
+        for(Map.Entry<String, OperationMetrics> operation : metrics.getOperations().entrySet())
+        {
+            String name = operation.getKey();
+            if (!name.startsWith(CALLBACK_PREFIX))
+            {
+                continue;
+            }
+            long[] buckets = operation.getValue().getLatency().getBuckets();
+            long[] previous = previousBuckets.put(name, buckets);
+            if (null == latency)
+            {
+                latency = new long[buckets.length];
+            }
+            long calls = 0;
+            for(int i = 0; i < buckets.length; ++i)
+            {
+                long delta = buckets[i] - (null == previous ? 0 : previous[i]);
+                latency[i] += delta;
+                calls += delta;
+            }
+            if (0 != calls)
+            {
+                operationsPerSecond.put(name.substring(CALLBACK_PREFIX.length()), calls / seconds);
+            }
+        }
+
+        // Sum the cache lookups
+        long hits = 0;
+        long misses = 0;
+        for(Map.Entry<String, Counter> counter : metrics.getCounters().entrySet())
+        {
+            String name = counter.getKey();
+            if (name.startsWith(CACHE_PREFIX) && name.endsWith(".hits"))
+            {
+                hits += counter.getValue().get();
+            }
+            else if (name.startsWith(CACHE_PREFIX) && name.endsWith(".misses"))
+            {
+                misses += counter.getValue().get();
+            }
+        }
+        long lookups = hits - previousHits + misses - previousMisses;
+        double hitRatio = 0 == lookups ? Double.NaN : (double) (hits - previousHits) / lookups;
+
+        // Rate the transfers
+        long downloaded = metrics.counter(BYTES_DOWNLOADED).get();
+        long uploaded = metrics.counter(BYTES_UPLOADED).get();
+        MetricsSample sample = new MetricsSample(
+            metrics.getDrive(),
+            Collections.unmodifiableMap(operationsPerSecond),
+            null == latency ? 0 : Histogram.percentile(latency, 50),
+            null == latency ? 0 : Histogram.percentile(latency, 99),
+            hitRatio,
+            (downloaded - previousDownloaded) / seconds,
+            (uploaded - previousUploaded) / seconds,
+            metrics.gauge(DriveMetrics.QUEUE_DEPTH).get(),
+            compressionGain(metrics.gauge(CACHE_RAW_BYTES).get(), metrics.gauge(CACHE_STORED_BYTES).get()),
+            ratio(metrics.counter(PREDICT_HITS).get(), metrics.counter(PREDICT_PREFETCHED).get()),
+            ratio(metrics.counter(PREDICT_HITS).get(), metrics.counter(PREDICT_ACCESSES).get()));
+
+        // Keep the state for the next sample
+        previousHits = hits;
+        previousMisses = misses;
+        previousDownloaded = downloaded;
+        previousUploaded = uploaded;
+        previousTime = time;
+        return sample;
+    }
+
+    /**
+     * Computes how many more bytes the cached contents hold than the memory they use.
+     * @param rawBytes The bytes of the cached contents.
+     * @param storedBytes The bytes held in memory.
+     * @return The gain, NaN if nothing is cached.
+     */
+    private static double compressionGain(long rawBytes, long storedBytes)
+    {
+        return 0 >= storedBytes ? Double.NaN : (double) rawBytes / storedBytes;
+    }
+
+    /**
+     * Computes a share of cumulative counts, the predictions being scored long after they are made.
+     * @param count The counted events.
+     * @param total The events they are part of.
+     * @return The share, NaN if there is no event.
+     */
+    private static double ratio(long count, long total)
+    {
+        return 0 >= total ? Double.NaN : Math.min(1.0, (double) count / total);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+/**
+ * Latency and failures of an operation.
+ * Callers take System.nanoTime() before the operation and record it once done:
+ *     long start = System.nanoTime();
+ *     boolean failed = true;
+ *     try { ...; failed = false; } finally { metrics.record(start, failed); }
+ */
+public final class OperationMetrics
+{
+    /**
+     * The latency in nanoseconds, its count being the number of calls.
+     */
+    private final Histogram latency;
+
+    /**
+     * The failed calls.
+     */
+    private final Counter errors;
+
+    /**
+     * Initializes the operation metrics.
+     */
+    OperationMetrics()
+    {
+        this.latency = new Histogram();
+        this.errors = new Counter();
+    }
+
+    /**
+     * Records a call.
+     * @param start The System.nanoTime() value taken before the call.
+     * @param failed True if the call failed.
+     */
+    public void record(long start, boolean failed)
+    {
+        latency.record(System.nanoTime() - start);
+        if (failed)
+        {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Gets the latency in nanoseconds.
+     * @return The latency histogram.
+     */
+    public Histogram getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * Gets the failed calls.
+     * @return The errors counter.
+     */
+    public Counter getErrors()
+    {
+        return errors;
+    }
+}
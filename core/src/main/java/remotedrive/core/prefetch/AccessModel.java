@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.prefetch;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.JavaType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * First order Markov model of the accesses of a drive: for each accessed path, how often each other path was accessed
+ * right after it.
+ * Predictions chain the transitions, so that a file usually followed by another one which is usually followed by a
+ * third one predicts both, as long as the probability of the chain stays above the threshold. The model is bounded:
+ * the least recently accessed paths are forgotten, each path keeps its most frequent successors only, and the counts
+ * of a path are halved once they grow large so that the model follows the changing habits.
+ * A model isn't thread safe.
+ */
+class AccessModel
+{
+    /**
+     * Maximum number of paths which successors are kept.
+     */
+    static final int MAX_SOURCES = 4096;
+
+    /**
+     * Maximum number of successors kept per path.
+     */
+    static final int MAX_SUCCESSORS = 16;
+
+    /**
+     * The total count of a path from which its counts are halved.
+     */
+    static final int DECAY_TOTAL = 64;
+
+    /**
+     * The transitions from a path needed before predicting from it.
+     */
+    static final int MIN_SUPPORT = 2;
+
+    /**
+     * The logger.
+     */
+    private static final Logger log = Logger.getLogger(AccessModel.class);
+
+    /**
+     * The JSON mapper.
+     */
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * The successor counts by path, in access order.
+     */
+    private final Map<String, Map<String, Integer>> transitions;
+
+    /**
+     * True when the transitions changed since the last save.
+     */
+    private boolean dirty;
+
+    /**
+     * Initializes an empty model.
+     */
+    AccessModel()
+    {
+        this.transitions = new LinkedHashMap<String, Map<String, Integer>>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Integer>> eldest)
+            {
+                return size() > MAX_SOURCES;
+            }
+        };
+    }
+
+    /**
+     * Loads a model, starting over if the file is missing or unreadable.
+     * @param file The model file.
+     * @return The model.
+     */
+    static AccessModel load(Path file)
+    {
+        AccessModel model = new AccessModel();
+        if (Files.exists(file))
+        {
+            try
+            {
+                JavaType counts = mapper.getTypeFactory().constructMapType(HashMap.class, String.class, Integer.class);
+                JavaType type = mapper.getTypeFactory().constructMapType(LinkedHashMap.class, mapper.getTypeFactory().constructType(String.class), counts);
+                Map<String, Map<String, Integer>> storedTransitions = mapper.readValue(file.toFile(), type);
+                for(Map.Entry<String, Map<String, Integer>> entry : storedTransitions.entrySet())
+                {
+                    model.transitions.put(entry.getKey(), new HashMap<String, Integer>(entry.getValue()));
+                }
+            }
+            catch (IOException exception)
+            {
+                log.warn(String.format(Locale.US, "Ignoring the unreadable access model %s", file), exception);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Writes the model if it changed.
+     * @param file The model file.
+     * @throws IOException If the model can't be written.
+     */
+    void save(Path file) throws IOException
+    {
+        // Serialize the transitions
+        if (!dirty)
+        {
+            return;
+        }
+        byte[] content = mapper.writeValueAsBytes(transitions);
+        dirty = false;
+
+        // Replace the file at once
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try
+        {
+            Files.write(temporary, content);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Records that a path was accessed right after another one.
+     * @param from The previous path.
+     * @param to The next path.
+     */
+    void record(String from, String to)
+    {
+        // Count the transition
+        Map<String, Integer> successors = transitions.get(from);
+        if (null == successors)
+        {
+            successors = new HashMap<String, Integer>();
+            transitions.put(from, successors);
+        }
+        Integer count = successors.get(to);
+        successors.put(to, null == count ? 1 : count + 1);
+        dirty = true;
+
+        // Keep the most frequent successors, the new one being given its chance
+        if (successors.size() > MAX_SUCCESSORS)
+        {
+            String rarest = null;
+            for(Map.Entry<String, Integer> successor : successors.entrySet())
+            {
+                if (!successor.getKey().equals(to) && (null == rarest || successor.getValue() < successors.get(rarest)))
+                {
+                    rarest = successor.getKey();
+                }
+            }
+            successors.remove(rarest);
+        }
+
+        // Age the counts
+        if (total(successors) >= DECAY_TOTAL)
+        {
+            Iterator<Map.Entry<String, Integer>> iterator = successors.entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                Map.Entry<String, Integer> successor = iterator.next();
+                if (1 >= successor.getValue())
+                {
+                    iterator.remove();
+                }
+                else
+                {
+                    successor.setValue(successor.getValue() / 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Predicts the paths likely accessed after a path, following the transitions as long as the probability of the
+     * chain stays above the threshold.
+     * @param from The accessed path.
+     * @param threshold The minimum probability.
+     * @param max The maximum number of paths.
+     * @return The predicted paths, most likely first.
+     */
+    List<String> predict(String from, double threshold, int max)
+    {
+        // Expand the most likely chains first
+        List<String> predictions = new ArrayList<String>();
+        Set<String> visited = new HashSet<String>();
+        visited.add(from);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>();
+        candidates.add(new Candidate(from, 1.0));
+        while (!candidates.isEmpty() && predictions.size() < max)
+        {
+            Candidate candidate = candidates.poll();
+            if (!candidate.path.equals(from))
+            {
+                if (!visited.add(candidate.path))
+                {
+                    continue;
+                }
+                predictions.add(candidate.path);
+            }
+
+            // Queue the likely successors
+            Map<String, Integer> successors = transitions.get(candidate.path);
+            int total = null == successors ? 0 : total(successors);
+            if (total < MIN_SUPPORT)
+            {
+                continue;
+            }
+            for(Map.Entry<String, Integer> successor : successors.entrySet())
+            {
+                double probability = candidate.probability * successor.getValue() / total;
+                if (probability >= threshold && !visited.contains(successor.getKey()))
+                {
+                    candidates.add(new Candidate(successor.getKey(), probability));
+                }
+            }
+        }
+        return predictions;
+    }
+
+    /**
+     * Gets the number of paths which successors are known.
+     * @return The number of paths.
+     */
+    int size()
+    {
+        return transitions.size();
+    }
+
+    /**
+     * Sums the counts of the successors of a path.
+     * @param successors The successor counts.
+     * @return The total.
+     */
+    private static int total(Map<String, Integer> successors)
+    {
+        int total = 0;
+        for(int count : successors.values())
+        {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * A predicted path along with the probability of its chain.
+     */
+    private static class Candidate implements Comparable<Candidate>
+    {
+        /**
+         * The path.
+         */
+        private final String path;
+
+        /**
+         * The probability of the chain.
+         */
+        private final double probability;
+
+        /**
+         * Initializes a candidate.
+         * @param path The path.
+         * @param probability The probability of the chain.
+         */
+        private Candidate(String path, double probability)
+        {
+            this.path = path;
+            this.probability = probability;
+        }
+
+        /**
+         * Orders the most likely candidates first.
+         * @param other The other candidate.
+         * @return The comparison result.
+         */
+        @Override
+        public int compareTo(Candidate other)
+        {
+            return Double.compare(other.probability, probability);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.prefetch;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ConfigurationSnapshot;
+import remotedrive.core.ContentRange;
+import remotedrive.core.DaemonThreadFactory;
+import remotedrive.core.File;
+import remotedrive.core.exception.RequestCancelledException;
+import remotedrive.core.logging.DriveLogger;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.Gauge;
+import remotedrive.core.schedule.RequestPriority;
+import remotedrive.core.schedule.RequestTicket;
+import remotedrive.core.spi.Client;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the header of the files of an enumerated folder ahead of the Explorer thumbnail and property handlers.
+ * These handlers read the first kilobytes of every image, video or document of a folder being displayed, one
+ * synchronous read after the other. The prefetcher reads the same headers in parallel through the client, with
+ * range requests when the client supports them, so that the handlers find them in the client cache.
+ * Only the files with a configured extension are prefetched, up to a number of files per folder, and a file is not
+ * prefetched again while its header is expected to still be cached. Prefetches exceeding the queue capacity are
+ * dropped rather than delaying the next folders, and the prefetches of a folder are cancelled once several other
+ * folders have been enumerated since, Explorer having moved on.
+ */
+public class HeaderPrefetcher implements Closeable
+{
+    /**
+     * Maximum number of queued prefetches.
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * Maximum number of files remembered as recently prefetched.
+     */
+    private static final int RECENT_CAPACITY = 8192;
+
+    /**
+     * Number of most recently enumerated folders which prefetches are kept.
+     */
+    private static final int ACTIVE_FOLDERS = 4;
+
+    /**
+     * The client.
+     */
+    private final Client client;
+
+    /**
+     * The drive logger.
+     */
+    private final DriveLogger log;
+
+    /**
+     * The prefetched files.
+     */
+    private final Counter filesPrefetched;
+
+    /**
+     * The prefetched bytes.
+     */
+    private final Counter bytesPrefetched;
+
+    /**
+     * The prefetches dropped because the queue was full.
+     */
+    private final Counter filesDropped;
+
+    /**
+     * The failed prefetches.
+     */
+    private final Counter failures;
+
+    /**
+     * The pending background tasks of the drive.
+     */
+    private final Gauge queueDepth;
+
+    /**
+     * The prefetch pool.
+     */
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * The time of the last prefetch of each file, from System.nanoTime, in access order, guarded by itself.
+     */
+    private final Map<String, Long> recent;
+
+    /**
+     * The prefetch tickets of the most recently enumerated folders, most recent last, guarded by itself.
+     */
+    private final Deque<RequestTicket> activeFolders;
+
+    /**
+     * The tuning.
+     */
+    private volatile ConfigurationSnapshot tuning;
+
+    /**
+     * Initializes a prefetcher.
+     * @param client The client, caching what it reads.
+     * @param configuration The drive configuration.
+     * @param metrics The drive metrics.
+     */
+    public HeaderPrefetcher(Client client, Configuration configuration, DriveMetrics metrics)
+    {
+        // Check input
+        if (null == client)
+        {
+            throw new IllegalArgumentException("The client cannot be null.");
+        }
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+        if (null == metrics)
+        {
+            throw new IllegalArgumentException("The metrics cannot be null.");
+        }
+
+        // Initialize
+        this.client = client;
+        this.log = new DriveLogger(HeaderPrefetcher.class, configuration);
+        this.filesPrefetched = metrics.counter("prefetch.files");
+        this.bytesPrefetched = metrics.counter("prefetch.bytes");
+        this.filesDropped = metrics.counter("prefetch.files-dropped");
+        this.failures = metrics.counter("prefetch.failures");
+        this.queueDepth = metrics.gauge(DriveMetrics.QUEUE_DEPTH);
+        this.tuning = configuration.getSnapshot();
+        int parallelism = tuning.getPrefetchParallelism();
+        this.pool = new ThreadPoolExecutor(parallelism, parallelism, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new DaemonThreadFactory("prefetch"));
+        this.pool.allowCoreThreadTimeOut(true);
+        this.activeFolders = new ArrayDeque<RequestTicket>();
+        this.recent = new LinkedHashMap<String, Long>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+            {
+                return size() > RECENT_CAPACITY;
+            }
+        };
+    }
+
+    /**
+     * Applies the tuning entries: the next folders use the new header size, extensions and limits, the pool the new
+     * parallelism.
+     * @param configuration The drive configuration.
+     */
+    public void tune(Configuration configuration)
+    {
+        tuning = configuration.getSnapshot();
+        log.tune(configuration);
+        int parallelism = tuning.getPrefetchParallelism();
+        if (parallelism > pool.getMaximumPoolSize())
+        {
+            pool.setMaximumPoolSize(parallelism);
+            pool.setCorePoolSize(parallelism);
+        }
+        else
+        {
+            pool.setCorePoolSize(parallelism);
+            pool.setMaximumPoolSize(parallelism);
+        }
+    }
+
+    /**
+     * Queues the prefetch of the headers of an enumerated folder.
+     * @param children The folder children.
+     */
+    public void prefetch(File[] children)
+    {
+        // Check the prefetching is enabled
+        ConfigurationSnapshot snapshot = tuning;
+        int headerSize = snapshot.getPrefetchHeaderSize() * 1024;
+        if (null == children || 0 == headerSize || pool.isShutdown())
+        {
+            return;
+        }
+
+        // Cancel the prefetches of the folders Explorer moved away from
+        RequestTicket ticket = new RequestTicket(RequestPriority.PREFETCH);
+        synchronized (activeFolders)
+        {
+            activeFolders.addLast(ticket);
+            if (activeFolders.size() > ACTIVE_FOLDERS)
+            {
+                activeFolders.pollFirst().cancel();
+            }
+        }
+
+        // Queue the matching files
+        long now = System.nanoTime();
+        long ttlNanos = TimeUnit.SECONDS.toNanos(snapshot.getContentCacheTtl());
+        int queued = 0;
+        for(File child : children)
+        {
+            if (queued >= snapshot.getPrefetchMaxFiles())
+            {
+                break;
+            }
+            if (child.isDirectory() || 0 == child.getSize() || !hasExtension(child.getTitle(), snapshot.getPrefetchExtensions()))
+            {
+                continue;
+            }
+            String key = child.getAbsolutePath() + "@" + child.getModifiedTime();
+            synchronized (recent)
+            {
+                Long prefetched = recent.get(key);
+                if (null != prefetched && now - prefetched < ttlNanos)
+                {
+                    continue;
+                }
+                recent.put(key, now);
+            }
+            if (!queue(ticket, key, child.getAbsolutePath(), (int) Math.min(headerSize, child.getSize())))
+            {
+                forget(key);
+                break;
+            }
+            ++queued;
+        }
+    }
+
+    /**
+     * Stops the prefetching and drops the queued prefetches.
+     */
+    @Override
+    public void close()
+    {
+        queueDepth.add(-pool.shutdownNow().size());
+        synchronized (activeFolders)
+        {
+            for(RequestTicket ticket : activeFolders)
+            {
+                ticket.cancel();
+            }
+            activeFolders.clear();
+        }
+    }
+
+    /**
+     * Queues the prefetch of a file header.
+     * @param ticket The ticket of the enumerated folder.
+     * @param key The recently prefetched key of the file.
+     * @param filePath The absolute file.
+     * @param length The header length.
+     * @return true if queued, false if the queue is full or the prefetcher closed.
+     */
+    private boolean queue(final RequestTicket ticket, final String key, final String filePath, final int length)
+    {
+        queueDepth.add(1);
+        try
+        {
+            pool.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        read(ticket, key, filePath, length);
+                    }
+                    finally
+                    {
+                        queueDepth.add(-1);
+                    }
+                }
+            });
+            return true;
+        }
+        catch (RejectedExecutionException exception)
+        {
+            queueDepth.add(-1);
+            filesDropped.increment();
+            return false;
+        }
+    }
+
+    /**
+     * Reads a file header through the client, which keeps it cached, unless the folder prefetches are cancelled.
+     * @param ticket The ticket of the enumerated folder.
+     * @param key The recently prefetched key of the file.
+     * @param filePath The absolute file.
+     * @param length The header length.
+     */
+    private void read(RequestTicket ticket, String key, String filePath, int length)
+    {
+        if (ticket.isCancelled())
+        {
+            forget(key);
+            return;
+        }
+        RequestTicket previous = ticket.attach();
+        try
+        {
+            byte[] header = ContentRange.read(client, filePath, 0, length);
+            if (null != header)
+            {
+                filesPrefetched.increment();
+                bytesPrefetched.add(header.length);
+            }
+        }
+        catch (RequestCancelledException exception)
+        {
+            // Explorer moved on meanwhile, prefetch it again if the folder is enumerated again
+            forget(key);
+        }
+        catch (RuntimeException exception)
+        {
+            failures.increment();
+            log.debug("Prefetch of {} failed: {}", filePath, exception.getMessage());
+        }
+        finally
+        {
+            RequestTicket.restore(previous);
+        }
+    }
+
+    /**
+     * Forgets a file which header hasn't been prefetched.
+     * @param key The recently prefetched key of the file.
+     */
+    private void forget(String key)
+    {
+        synchronized (recent)
+        {
+            recent.remove(key);
+        }
+    }
+
+    /**
+     * Checks whether a file name has one of the given extensions.
+     * @param title The file name.
+     * @param extensions The lower cased extensions, without dot.
+     * @return true if the extension matches, false otherwise.
+     */
+    static boolean hasExtension(String title, List<String> extensions)
+    {
+        int dot = title.lastIndexOf('.');
+        return 0 <= dot && extensions.contains(title.substring(dot + 1).toLowerCase(Locale.US));
+    }
+}
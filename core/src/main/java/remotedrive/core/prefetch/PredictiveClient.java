@@ -0,0 +1,569 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.prefetch;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ConfigurationSnapshot;
+import remotedrive.core.ContentRange;
+import remotedrive.core.DaemonThreadFactory;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.exception.RequestCancelledException;
+import remotedrive.core.logging.DriveLogger;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.Gauge;
+import remotedrive.core.metrics.MetricsSampler;
+import remotedrive.core.schedule.RequestPriority;
+import remotedrive.core.schedule.RequestTicket;
+import remotedrive.core.spi.AccessObserver;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.RangeReadable;
+import remotedrive.core.spi.Tunable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client decorator learning the access patterns of a drive and prefetching the likely next files and folders.
+ * The file system reports the files read and the folders enumerated, each access being recorded in a first order
+ * Markov model as the successor of the previous one when they happen close enough. After each access, the paths
+ * predicted above the confidence threshold are loaded in background through the decorated client, which is expected
+ * to cache them, within a per minute byte budget. The model is saved in the drive cache directory when closed.
+ * A prefetched path accessed shortly after is a prediction hit: the hits over the prefetched paths give the precision
+ * of the predictions, the hits over the accesses their recall. The prefetches predicted from an access are read
+ * ahead requests, cancelled if the next access isn't one of them, the user having taken another path.
+ */
+public class PredictiveClient implements Client, RangeReadable, Tunable, AccessObserver, Closeable
+{
+    /**
+     * The longest delay between two accesses recorded as a transition, in milliseconds.
+     */
+    private static final long TRANSITION_MILLIS = 60000;
+
+    /**
+     * The delay after which an unused prefetch is a missed prediction, in milliseconds.
+     */
+    private static final long HIT_MILLIS = 300000;
+
+    /**
+     * Maximum number of prefetched paths awaiting their access.
+     */
+    private static final int PENDING_CAPACITY = 1024;
+
+    /**
+     * Maximum number of queued prefetches.
+     */
+    private static final int QUEUE_CAPACITY = 256;
+
+    /**
+     * The decorated client.
+     */
+    private final Client delegate;
+
+    /**
+     * The model file.
+     */
+    private final Path modelFile;
+
+    /**
+     * The access model, guarded by itself.
+     */
+    private final AccessModel model;
+
+    /**
+     * The drive logger.
+     */
+    private final DriveLogger log;
+
+    /**
+     * The reported accesses.
+     */
+    private final Counter accesses;
+
+    /**
+     * The prefetched files and folders.
+     */
+    private final Counter prefetched;
+
+    /**
+     * The prefetched files and folders accessed shortly after.
+     */
+    private final Counter hits;
+
+    /**
+     * The prefetched bytes.
+     */
+    private final Counter bytesPrefetched;
+
+    /**
+     * The predictions skipped because of the budget.
+     */
+    private final Counter skipped;
+
+    /**
+     * The failed prefetches.
+     */
+    private final Counter failures;
+
+    /**
+     * The pending background tasks of the drive.
+     */
+    private final Gauge queueDepth;
+
+    /**
+     * The prefetch pool.
+     */
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * The time each prefetched path was prefetched, from System.nanoTime, in prefetch order, guarded by the model.
+     */
+    private final Map<String, Long> pending;
+
+    /**
+     * The previous access, guarded by the model.
+     */
+    private String previousAccess;
+
+    /**
+     * The time of the previous access, from System.nanoTime, guarded by the model.
+     */
+    private long previousTime;
+
+    /**
+     * The read ahead ticket of the previous access, guarded by the model.
+     */
+    private RequestTicket previousTicket;
+
+    /**
+     * The paths predicted from the previous access, guarded by the model.
+     */
+    private List<String> previousPredictions;
+
+    /**
+     * The start of the budget window, from System.nanoTime, guarded by the model.
+     */
+    private long budgetWindow;
+
+    /**
+     * The bytes prefetched in the budget window, guarded by the model.
+     */
+    private long budgetUsed;
+
+    /**
+     * The tuning.
+     */
+    private volatile ConfigurationSnapshot tuning;
+
+    /**
+     * Initializes the decorator, loading the model saved by the previous mount if any.
+     * @param delegate The decorated client.
+     * @param modelFile The model file.
+     * @param configuration The drive configuration.
+     * @param metrics The drive metrics.
+     */
+    public PredictiveClient(Client delegate, Path modelFile, Configuration configuration, DriveMetrics metrics)
+    {
+        // Check input
+        if (null == delegate)
+        {
+            throw new IllegalArgumentException("The client cannot be null.");
+        }
+        if (null == modelFile)
+        {
+            throw new IllegalArgumentException("The model file cannot be null.");
+        }
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+        if (null == metrics)
+        {
+            throw new IllegalArgumentException("The metrics cannot be null.");
+        }
+
+        // Initialize
+        this.delegate = delegate;
+        this.modelFile = modelFile;
+        this.model = AccessModel.load(modelFile);
+        this.log = new DriveLogger(PredictiveClient.class, configuration);
+        this.accesses = metrics.counter(MetricsSampler.PREDICT_ACCESSES);
+        this.prefetched = metrics.counter(MetricsSampler.PREDICT_PREFETCHED);
+        this.hits = metrics.counter(MetricsSampler.PREDICT_HITS);
+        this.bytesPrefetched = metrics.counter("predict.bytes");
+        this.skipped = metrics.counter("predict.skipped");
+        this.failures = metrics.counter("predict.failures");
+        this.queueDepth = metrics.gauge(DriveMetrics.QUEUE_DEPTH);
+        this.pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new DaemonThreadFactory("predict"));
+        this.pool.allowCoreThreadTimeOut(true);
+        this.pending = new LinkedHashMap<String, Long>();
+        this.previousPredictions = Collections.emptyList();
+        this.budgetWindow = System.nanoTime();
+        this.tuning = configuration.getSnapshot();
+    }
+
+    /**
+     * Gets the decorated client.
+     * @return The decorated client.
+     */
+    public Client getDelegate()
+    {
+        return delegate;
+    }
+
+    /**
+     * Forwards the access to the decorated client if it observes them, records it and queues the prefetch of the
+     * likely next ones.
+     * @param path The absolute path.
+     * @param directory true if a folder is enumerated, false if a file is read.
+     */
+    @Override
+    public void onAccess(String path, boolean directory)
+    {
+        if (delegate instanceof AccessObserver)
+        {
+            ((AccessObserver) delegate).onAccess(path, directory);
+        }
+        String access = directory ? path + "/" : path;
+        ConfigurationSnapshot snapshot = tuning;
+        List<String> predictions;
+        RequestTicket ticket = new RequestTicket(RequestPriority.READ_AHEAD);
+        synchronized (model)
+        {
+            // Ignore the repeated accesses, such as the successive reads of a file
+            long now = System.nanoTime();
+            if (access.equals(previousAccess))
+            {
+                previousTime = now;
+                return;
+            }
+
+            // Score the previous predictions
+            accesses.increment();
+            Long prefetchTime = pending.remove(access);
+            if (null != prefetchTime && now - prefetchTime < TimeUnit.MILLISECONDS.toNanos(HIT_MILLIS))
+            {
+                hits.increment();
+            }
+
+            // Cancel the read ahead of the path the user didn't take
+            if (null != previousTicket && !previousPredictions.contains(access))
+            {
+                previousTicket.cancel();
+            }
+            previousTicket = ticket;
+            previousPredictions = Collections.emptyList();
+
+            // Learn the transition
+            if (null != previousAccess && now - previousTime < TimeUnit.MILLISECONDS.toNanos(TRANSITION_MILLIS))
+            {
+                model.record(previousAccess, access);
+            }
+            previousAccess = access;
+            previousTime = now;
+
+            // Predict the next accesses not prefetched yet
+            if (0 == snapshot.getPredictBudget())
+            {
+                return;
+            }
+            predictions = model.predict(access, snapshot.getPredictConfidence(), snapshot.getPredictMaxFiles());
+            Iterator<String> iterator = predictions.iterator();
+            while (iterator.hasNext())
+            {
+                String prediction = iterator.next();
+                Long previousPrefetch = pending.get(prediction);
+                if (null != previousPrefetch && now - previousPrefetch < TimeUnit.MILLISECONDS.toNanos(HIT_MILLIS))
+                {
+                    iterator.remove();
+                }
+                else
+                {
+                    pending.remove(prediction);
+                    pending.put(prediction, now);
+                }
+            }
+            while (pending.size() > PENDING_CAPACITY)
+            {
+                pending.remove(pending.keySet().iterator().next());
+            }
+            previousPredictions = predictions;
+        }
+
+        // Queue the prefetches
+        for(String prediction : predictions)
+        {
+            if (!queue(ticket, prediction))
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void authenticate(String username, char[] password)
+    {
+        delegate.authenticate(username, password);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Drive retrieveDiskInformation()
+    {
+        return delegate.retrieveDiskInformation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildren(String parentPath)
+    {
+        return delegate.retrieveChildren(parentPath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildrenByTitlePrefix(String parentPath, String titlePrefix)
+    {
+        return delegate.retrieveChildrenByTitlePrefix(parentPath, titlePrefix);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File retrieveDriveFile(String filePath)
+    {
+        return delegate.retrieveDriveFile(filePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath)
+    {
+        return delegate.retrieveDriveFileContent(filePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath, long offset, int length)
+    {
+        return ContentRange.read(delegate, filePath, offset, length);
+    }
+
+    /**
+     * Forwards the tuning entries to the decorated client and applies the prediction ones.
+     * @param configuration The configuration of the mounted drive.
+     */
+    @Override
+    public void tune(Configuration configuration)
+    {
+        if (delegate instanceof Tunable)
+        {
+            ((Tunable) delegate).tune(configuration);
+        }
+        tuning = configuration.getSnapshot();
+        log.tune(configuration);
+    }
+
+    /**
+     * Stops the prefetching, drops the queued prefetches and saves the model.
+     */
+    @Override
+    public void close()
+    {
+        queueDepth.add(-pool.shutdownNow().size());
+        synchronized (model)
+        {
+            if (null != previousTicket)
+            {
+                previousTicket.cancel();
+            }
+        }
+        try
+        {
+            synchronized (model)
+            {
+                model.save(modelFile);
+            }
+        }
+        catch (IOException exception)
+        {
+            log.error(exception, "Unable to save the access model {}", modelFile);
+        }
+    }
+
+    /**
+     * Queues the prefetch of a predicted path.
+     * @param ticket The read ahead ticket of the access it's predicted from.
+     * @param access The predicted access, folders ending with a slash.
+     * @return true if queued, false if the queue is full or the decorator closed.
+     */
+    private boolean queue(final RequestTicket ticket, final String access)
+    {
+        queueDepth.add(1);
+        try
+        {
+            pool.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        prefetch(ticket, access);
+                    }
+                    finally
+                    {
+                        queueDepth.add(-1);
+                    }
+                }
+            });
+            return true;
+        }
+        catch (RejectedExecutionException exception)
+        {
+            queueDepth.add(-1);
+            return false;
+        }
+    }
+
+    /**
+     * Loads a predicted folder listing or file content through the decorated client, within the budget, unless the
+     * read ahead is cancelled.
+     * @param ticket The read ahead ticket of the access it's predicted from.
+     * @param access The predicted access, folders ending with a slash.
+     */
+    private void prefetch(RequestTicket ticket, String access)
+    {
+        if (ticket.isCancelled())
+        {
+            forget(access);
+            return;
+        }
+        RequestTicket previous = ticket.attach();
+        try
+        {
+            // Folder listings are small, load them right away
+            if (access.endsWith("/"))
+            {
+                if (null != delegate.retrieveChildren(access.substring(0, access.length() - 1)))
+                {
+                    prefetched.increment();
+                }
+                return;
+            }
+
+            // Check the budget before loading a file content
+            File file = delegate.retrieveDriveFile(access);
+            if (null == file || file.isDirectory())
+            {
+                return;
+            }
+            if (!reserve(file.getSize()))
+            {
+                skipped.increment();
+                forget(access);
+                return;
+            }
+            byte[] content = delegate.retrieveDriveFileContent(access);
+            if (null != content)
+            {
+                prefetched.increment();
+                bytesPrefetched.add(content.length);
+            }
+        }
+        catch (RequestCancelledException exception)
+        {
+            forget(access);
+        }
+        catch (RuntimeException exception)
+        {
+            failures.increment();
+            forget(access);
+            log.debug("Prefetch of {} failed: {}", access, exception.getMessage());
+        }
+        finally
+        {
+            RequestTicket.restore(previous);
+        }
+    }
+
+    /**
+     * Forgets a prediction which couldn't be prefetched, so that it's not scored.
+     * @param access The predicted access.
+     */
+    private void forget(String access)
+    {
+        synchronized (model)
+        {
+            pending.remove(access);
+        }
+    }
+
+    /**
+     * Reserves bytes from the budget of the current minute.
+     * @param bytes The bytes.
+     * @return true if the budget allows them, false otherwise.
+     */
+    private boolean reserve(long bytes)
+    {
+        long budget = tuning.getPredictBudget() * 1024L * 1024L;
+        synchronized (model)
+        {
+            long now = System.nanoTime();
+            if (now - budgetWindow >= TimeUnit.MINUTES.toNanos(1))
+            {
+                budgetWindow = now;
+                budgetUsed = 0;
+            }
+            if (budgetUsed + bytes > budget)
+            {
+                return false;
+            }
+            budgetUsed += bytes;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.processor;
+
+import remotedrive.core.ExtensionLoader;
+import remotedrive.core.spi.ClientFactory;
+import remotedrive.core.spi.ClientFactoryDefinition;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generates the client factory index at build time.
+ * Every class annotated with ClientFactoryDefinition is written in the index with its name and icon so that the
+ * application can list the available factories without loading them.
+ * Index format, one factory per line: name TAB class name TAB icon.
+ */
+@SupportedAnnotationTypes("remotedrive.core.spi.ClientFactoryDefinition")
+public class ClientFactoryIndexProcessor extends AbstractProcessor
+{
+    /**
+     * Index lines by factory name.
+     */
+    private final Map<String, String> entries = new TreeMap<String, String>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment)
+    {
+        // Write the index once all the rounds are done
+        if (roundEnvironment.processingOver())
+        {
+            writeIndex();
+            return false;
+        }
+
+        // Collect the annotated factories
+        TypeMirror clientFactoryType = processingEnv.getElementUtils().getTypeElement(ClientFactory.class.getName()).asType();
+        for(Element element : roundEnvironment.getElementsAnnotatedWith(ClientFactoryDefinition.class))
+        {
+            // Only concrete client factories can be indexed
+            if (ElementKind.CLASS != element.getKind()
+                    || element.getModifiers().contains(Modifier.ABSTRACT)
+                    || !processingEnv.getTypeUtils().isAssignable(element.asType(), clientFactoryType))
+            {
+                processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.ERROR,
+                        String.format(Locale.US, "%s has to be a concrete class implementing %s", element, ClientFactory.class.getName()),
+                        element);
+                continue;
+            }
+
+            // Add the index line
+            ClientFactoryDefinition definition = element.getAnnotation(ClientFactoryDefinition.class);
+            String className = processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+            if (entries.containsKey(definition.name()))
+            {
+                processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.ERROR,
+                        String.format(Locale.US, "Client factory name %s is already used", definition.name()),
+                        element);
+                continue;
+            }
+            entries.put(definition.name(), String.format(Locale.US, "%s\t%s\t%s", definition.name(), className, definition.icon()));
+        }
+        return true;
+    }
+
+    /**
+     * Writes the index resource.
+     */
+    private void writeIndex()
+    {
+        if (entries.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ExtensionLoader.CLIENT_FACTORY_INDEX);
+            Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8);
+            try
+            {
+                writer.write("# Generated by " + getClass().getName() + "\n");
+                for(String entry : entries.values())
+                {
+                    writer.write(entry);
+                    writer.write("\n");
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch (IOException exception)
+        {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write the client factory index: " + exception.getMessage());
+        }
+    }
+}
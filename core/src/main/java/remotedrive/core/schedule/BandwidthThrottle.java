@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ConfigurationSnapshot;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shapes the download bandwidth of a drive with token buckets, one for the interactive transfers and one for the
+ * background ones, on top of the buckets shared by all the drives.
+ * Clients report the bytes they transfer through consume, on the thread the throttle is attached to by the scheduled
+ * client, and the traffic class is given by the request ticket of that thread. The limits only apply within the
+ * configured hours.
+ */
+public final class BandwidthThrottle implements Closeable
+{
+    /**
+     * The throttle attached to the current thread.
+     */
+    private static final ThreadLocal<BandwidthThrottle> current = new ThreadLocal<BandwidthThrottle>();
+
+    /**
+     * The bandwidth shared by all the drives.
+     */
+    private final GlobalBandwidth global;
+
+    /**
+     * The interactive transfers of the drive.
+     */
+    private final TokenBucket interactive;
+
+    /**
+     * The background transfers of the drive.
+     */
+    private final TokenBucket background;
+
+    /**
+     * The interactive bytes transferred.
+     */
+    private final Counter interactiveBytes;
+
+    /**
+     * The background bytes transferred.
+     */
+    private final Counter backgroundBytes;
+
+    /**
+     * The time interactive transfers have been held back, in milliseconds.
+     */
+    private final Counter interactiveThrottled;
+
+    /**
+     * The time background transfers have been held back, in milliseconds.
+     */
+    private final Counter backgroundThrottled;
+
+    /**
+     * The tuning.
+     */
+    private volatile ConfigurationSnapshot tuning;
+
+    /**
+     * Initializes a throttle and adds its global limits to the shared bandwidth until closed.
+     * @param configuration The drive configuration.
+     * @param metrics The drive metrics.
+     * @param global The bandwidth shared by all the drives.
+     */
+    public BandwidthThrottle(Configuration configuration, DriveMetrics metrics, GlobalBandwidth global)
+    {
+        // Check input
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+        if (null == metrics)
+        {
+            throw new IllegalArgumentException("The metrics cannot be null.");
+        }
+        if (null == global)
+        {
+            throw new IllegalArgumentException("The global bandwidth cannot be null.");
+        }
+
+        // Initialize
+        this.global = global;
+        this.interactive = new TokenBucket();
+        this.background = new TokenBucket();
+        this.interactiveBytes = metrics.counter("bandwidth.bytes.interactive");
+        this.backgroundBytes = metrics.counter("bandwidth.bytes.background");
+        this.interactiveThrottled = metrics.counter("bandwidth.throttled-millis.interactive");
+        this.backgroundThrottled = metrics.counter("bandwidth.throttled-millis.background");
+        this.tuning = configuration.getSnapshot();
+        applyLimits();
+        global.register(this);
+    }
+
+    /**
+     * Reports bytes transferred by the current thread, waiting if the throttle attached to it is over its limits.
+     * Nothing is done if no throttle is attached.
+     * @param bytes The transferred bytes.
+     */
+    public static void consume(int bytes)
+    {
+        BandwidthThrottle throttle = current.get();
+        if (null != throttle)
+        {
+            throttle.transfer(bytes);
+        }
+    }
+
+    /**
+     * Restores the throttle attached to the current thread before attach.
+     * @param previous The throttle returned by attach.
+     */
+    public static void restore(BandwidthThrottle previous)
+    {
+        if (null == previous)
+        {
+            current.remove();
+        }
+        else
+        {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * Attaches the throttle to the current thread, until restore is called.
+     * @return The previously attached throttle.
+     */
+    public BandwidthThrottle attach()
+    {
+        BandwidthThrottle previous = current.get();
+        current.set(this);
+        return previous;
+    }
+
+    /**
+     * Applies the new limits.
+     * @param configuration The drive configuration.
+     */
+    public void tune(Configuration configuration)
+    {
+        tuning = configuration.getSnapshot();
+        applyLimits();
+        global.update();
+    }
+
+    /**
+     * Removes the global limits of the drive from the shared bandwidth.
+     */
+    @Override
+    public void close()
+    {
+        global.unregister(this);
+    }
+
+    /**
+     * Gets the tuning.
+     * @return The tuning.
+     */
+    ConfigurationSnapshot getTuning()
+    {
+        return tuning;
+    }
+
+    /**
+     * Takes tokens for a transfer of the current thread and waits for the buckets in debt.
+     * @param bytes The transferred bytes.
+     */
+    void transfer(long bytes)
+    {
+        // Count the traffic of its class
+        boolean interactiveTraffic = null == RequestTicket.current();
+        (interactiveTraffic ? interactiveBytes : backgroundBytes).add(bytes);
+        if (!tuning.getBandwidthHours().contains(System.currentTimeMillis()))
+        {
+            return;
+        }
+
+        // Take from the drive and the shared buckets, waiting for the most indebted
+        long now = System.nanoTime();
+        long waitNanos = Math.max(
+                (interactiveTraffic ? interactive : background).reserve(bytes, now),
+                global.getBucket(interactiveTraffic).reserve(bytes, now));
+        if (0 == waitNanos)
+        {
+            return;
+        }
+        try
+        {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+        (interactiveTraffic ? interactiveThrottled : backgroundThrottled).add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - now));
+    }
+
+    /**
+     * Applies the limits of the drive.
+     */
+    private void applyLimits()
+    {
+        interactive.setRate(tuning.getBandwidthInteractiveLimit() * 1024L);
+        background.setRate(tuning.getBandwidthBackgroundLimit() * 1024L);
+    }
+}
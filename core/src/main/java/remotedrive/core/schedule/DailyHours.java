@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Daily time ranges in local time, such as "08:00-18:00", separated by commas.
+ * A range ending before it starts wraps around midnight, and no range at all means the whole day.
+ */
+public final class DailyHours
+{
+    /**
+     * The whole day.
+     */
+    public static final DailyHours ALWAYS = new DailyHours(new int[0], new int[0]);
+
+    /**
+     * The number of minutes in a day.
+     */
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * The first minute of each range.
+     */
+    private final int[] starts;
+
+    /**
+     * The minute following each range.
+     */
+    private final int[] ends;
+
+    /**
+     * Initializes the hours.
+     * @param starts The first minute of each range.
+     * @param ends The minute following each range.
+     */
+    private DailyHours(int[] starts, int[] ends)
+    {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * Parses time ranges.
+     * @param value The ranges, such as "08:00-12:00,13:30-18:00".
+     * @return The hours, the whole day if no range is given.
+     * @throws IllegalArgumentException If a range is malformed or empty.
+     */
+    public static DailyHours parse(String value)
+    {
+        // Check input
+        if (null == value)
+        {
+            throw new IllegalArgumentException("The value cannot be null.");
+        }
+
+        // Parse every range
+        List<int[]> ranges = new ArrayList<int[]>();
+        for(String range : value.split(","))
+        {
+            String trimmedRange = range.trim();
+            if (0 == trimmedRange.length())
+            {
+                continue;
+            }
+            String[] bounds = trimmedRange.split("-");
+            if (2 != bounds.length)
+            {
+                throw new IllegalArgumentException(String.format(Locale.US, "Invalid time range %s.", trimmedRange));
+            }
+            int start = parseMinute(bounds[0]);
+            int end = parseMinute(bounds[1]);
+            if (start == end || MINUTES_PER_DAY == start)
+            {
+                throw new IllegalArgumentException(String.format(Locale.US, "Invalid time range %s.", trimmedRange));
+            }
+            ranges.add(new int[] { start, end });
+        }
+        if (ranges.isEmpty())
+        {
+            return ALWAYS;
+        }
+
+        // Keep the bounds apart
+        int[] starts = new int[ranges.size()];
+        int[] ends = new int[ranges.size()];
+        for(int i = 0; i < ranges.size(); ++i)
+        {
+            starts[i] = ranges.get(i)[0];
+            ends[i] = ranges.get(i)[1];
+        }
+        return new DailyHours(starts, ends);
+    }
+
+    /**
+     * Is the whole day covered without any range.
+     * @return true if no range is given, false otherwise.
+     */
+    public boolean isAlways()
+    {
+        return 0 == starts.length;
+    }
+
+    /**
+     * Checks whether a minute of the day falls within the hours.
+     * @param minuteOfDay The minute of the day, from 0 to 1439.
+     * @return true if within the hours, false otherwise.
+     */
+    public boolean contains(int minuteOfDay)
+    {
+        if (isAlways())
+        {
+            return true;
+        }
+        for(int i = 0; i < starts.length; ++i)
+        {
+            boolean within = starts[i] < ends[i]
+                    ? starts[i] <= minuteOfDay && minuteOfDay < ends[i]
+                    : starts[i] <= minuteOfDay || minuteOfDay < ends[i];
+            if (within)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether an instant falls within the hours, in the default time zone.
+     * @param millis The instant, in milliseconds since the epoch.
+     * @return true if within the hours, false otherwise.
+     */
+    public boolean contains(long millis)
+    {
+        if (isAlways())
+        {
+            return true;
+        }
+        long localMillis = millis + TimeZone.getDefault().getOffset(millis);
+        return contains((int) ((localMillis / 60000) % MINUTES_PER_DAY));
+    }
+
+    /**
+     * Parses a time of day.
+     * @param value The time, such as "08:30", "24:00" standing for the end of the day.
+     * @return The minute of the day.
+     * @throws IllegalArgumentException If the time is malformed.
+     */
+    private static int parseMinute(String value)
+    {
+        String[] fields = value.trim().split(":");
+        try
+        {
+            int hours = Integer.parseInt(fields[0]);
+            int minutes = 2 == fields.length ? Integer.parseInt(fields[1]) : 0;
+            int minuteOfDay = hours * 60 + minutes;
+            if (2 < fields.length || 0 > hours || 0 > minutes || 59 < minutes || MINUTES_PER_DAY < minuteOfDay)
+            {
+                throw new IllegalArgumentException(String.format(Locale.US, "Invalid time %s.", value.trim()));
+            }
+            return minuteOfDay;
+        }
+        catch (NumberFormatException exception)
+        {
+            throw new IllegalArgumentException(String.format(Locale.US, "Invalid time %s.", value.trim()));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof DailyHours))
+        {
+            return false;
+        }
+        DailyHours other = (DailyHours) o;
+        return Arrays.equals(starts, other.starts) && Arrays.equals(ends, other.ends);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return 31 * Arrays.hashCode(starts) + Arrays.hashCode(ends);
+    }
+
+    /**
+     * Formats the hours into their persisted form.
+     * @return The ranges, empty for the whole day.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < starts.length; ++i)
+        {
+            if (0 != builder.length())
+            {
+                builder.append(',');
+            }
+            builder.append(String.format(Locale.US, "%02d:%02d-%02d:%02d", starts[i] / 60, starts[i] % 60, ends[i] / 60, ends[i] % 60));
+        }
+        return builder.toString();
+    }
+}
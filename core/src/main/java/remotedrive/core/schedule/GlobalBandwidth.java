@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+import remotedrive.core.ConfigurationSnapshot;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Shapes the bandwidth shared by all the mounted drives.
+ * Each drive configures the global limits as well, and the strictest limit among the mounted drives applies, so that a
+ * single drive can't lift the limit another one relies on.
+ */
+public final class GlobalBandwidth
+{
+    /**
+     * The process wide bandwidth.
+     */
+    private static final GlobalBandwidth instance = new GlobalBandwidth();
+
+    /**
+     * The interactive transfers of all the drives.
+     */
+    private final TokenBucket interactive;
+
+    /**
+     * The background transfers of all the drives.
+     */
+    private final TokenBucket background;
+
+    /**
+     * The throttles of the mounted drives, guarded by the set.
+     */
+    private final Set<BandwidthThrottle> throttles;
+
+    /**
+     * Initializes an unlimited bandwidth.
+     */
+    public GlobalBandwidth()
+    {
+        this.interactive = new TokenBucket();
+        this.background = new TokenBucket();
+        this.throttles = Collections.newSetFromMap(new IdentityHashMap<BandwidthThrottle, Boolean>());
+    }
+
+    /**
+     * Gets the process wide bandwidth.
+     * @return The bandwidth.
+     */
+    public static GlobalBandwidth getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Gets the bucket of a traffic class.
+     * @param interactiveTraffic Is the traffic interactive.
+     * @return The bucket.
+     */
+    TokenBucket getBucket(boolean interactiveTraffic)
+    {
+        return interactiveTraffic ? interactive : background;
+    }
+
+    /**
+     * Adds the limits of a drive.
+     * @param throttle The drive throttle.
+     */
+    void register(BandwidthThrottle throttle)
+    {
+        synchronized (throttles)
+        {
+            throttles.add(throttle);
+            update();
+        }
+    }
+
+    /**
+     * Removes the limits of a drive.
+     * @param throttle The drive throttle.
+     */
+    void unregister(BandwidthThrottle throttle)
+    {
+        synchronized (throttles)
+        {
+            throttles.remove(throttle);
+            update();
+        }
+    }
+
+    /**
+     * Applies the strictest limits among the drives.
+     */
+    void update()
+    {
+        synchronized (throttles)
+        {
+            int interactiveLimit = 0;
+            int backgroundLimit = 0;
+            for(BandwidthThrottle throttle : throttles)
+            {
+                ConfigurationSnapshot tuning = throttle.getTuning();
+                interactiveLimit = strictest(interactiveLimit, tuning.getBandwidthGlobalInteractiveLimit());
+                backgroundLimit = strictest(backgroundLimit, tuning.getBandwidthGlobalBackgroundLimit());
+            }
+            interactive.setRate(interactiveLimit * 1024L);
+            background.setRate(backgroundLimit * 1024L);
+        }
+    }
+
+    /**
+     * Gets the strictest of two limits.
+     * @param limit A limit, 0 for unlimited.
+     * @param otherLimit The other limit, 0 for unlimited.
+     * @return The strictest limit.
+     */
+    private static int strictest(int limit, int otherLimit)
+    {
+        if (0 == limit)
+        {
+            return otherLimit;
+        }
+        return 0 == otherLimit ? limit : Math.min(limit, otherLimit);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+import java.util.Locale;
+
+/**
+ * The priority classes of the backend requests, from the most to the least urgent.
+ */
+public enum RequestPriority
+{
+    /**
+     * A file system callback the user is waiting for.
+     */
+    INTERACTIVE,
+
+    /**
+     * A read of the files the user is likely to access next.
+     */
+    READ_AHEAD,
+
+    /**
+     * A read of file headers ahead of the shell handlers.
+     */
+    PREFETCH,
+
+    /**
+     * A synchronisation of the pinned folders.
+     */
+    SYNC,
+
+    /**
+     * A housekeeping request.
+     */
+    MAINTENANCE;
+
+    /**
+     * Gets the name of the priority in the metrics and the configuration entries.
+     * @return The lower cased, dash separated name.
+     */
+    public String getKey()
+    {
+        return name().toLowerCase(Locale.US).replace('_', '-');
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ConfigurationSnapshot;
+import remotedrive.core.exception.ClientRequestException;
+import remotedrive.core.exception.RequestCancelledException;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.OperationMetrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Admits the backend requests of a drive by priority class.
+ * Interactive requests are never queued: they only count against the drive concurrency, so that background requests
+ * yield to them. Background requests wait for a slot, granted to the most urgent class first and in arrival order
+ * within a class, as long as their class is below its own concurrency limit, the background requests leave the
+ * interactive reserve free, and the drive concurrency isn't reached. A waiting request whose ticket is cancelled
+ * gives up its place. A call can also be opened without a slot, the slot being only acquired once the call reaches the
+ * backend so that the calls served from a cache are never queued.
+ */
+public final class RequestScheduler
+{
+    /**
+     * The longest wait before checking the ticket of a waiting request again, in milliseconds.
+     */
+    private static final long CANCEL_POLL_MILLIS = 50;
+
+    /**
+     * The priority classes.
+     */
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    /**
+     * The admission of the call in progress on the current thread.
+     */
+    private static final ThreadLocal<Admission> current = new ThreadLocal<Admission>();
+
+    /**
+     * The requests in progress by priority class, guarded by the waiting queues.
+     */
+    private final int[] running;
+
+    /**
+     * The waiting background requests by priority class.
+     */
+    private final List<Deque<Waiter>> waiting;
+
+    /**
+     * The wait time by priority class.
+     */
+    private final List<OperationMetrics> waits;
+
+    /**
+     * The cancelled requests.
+     */
+    private final Counter cancelled;
+
+    /**
+     * The tuning, guarded by the waiting queues.
+     */
+    private ConfigurationSnapshot tuning;
+
+    /**
+     * Initializes a scheduler.
+     * @param configuration The drive configuration.
+     * @param metrics The drive metrics.
+     */
+    public RequestScheduler(Configuration configuration, DriveMetrics metrics)
+    {
+        // Check input
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+        if (null == metrics)
+        {
+            throw new IllegalArgumentException("The metrics cannot be null.");
+        }
+
+        // Initialize
+        this.running = new int[PRIORITIES.length];
+        this.waiting = new ArrayList<Deque<Waiter>>();
+        this.waits = new ArrayList<OperationMetrics>();
+        for(RequestPriority priority : PRIORITIES)
+        {
+            waiting.add(new ArrayDeque<Waiter>());
+            waits.add(metrics.operation(String.format(Locale.US, "scheduler.wait.%s", priority.getKey())));
+        }
+        this.cancelled = metrics.counter("scheduler.cancelled");
+        this.tuning = configuration.getSnapshot();
+    }
+
+    /**
+     * Applies the new concurrency limits, granting the slots they free.
+     * @param configuration The drive configuration.
+     */
+    public void tune(Configuration configuration)
+    {
+        synchronized (waiting)
+        {
+            tuning = configuration.getSnapshot();
+            grant();
+        }
+    }
+
+    /**
+     * Waits for a request slot.
+     * @param ticket The ticket of the background work, null for an interactive request.
+     * @throws RequestCancelledException If the ticket is cancelled.
+     * @throws ClientRequestException If interrupted.
+     */
+    public void acquire(RequestTicket ticket)
+    {
+        // Interactive requests only count
+        RequestPriority priority = null == ticket ? RequestPriority.INTERACTIVE : ticket.getPriority();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            synchronized (waiting)
+            {
+                if (RequestPriority.INTERACTIVE == priority)
+                {
+                    ++running[priority.ordinal()];
+                    failed = false;
+                    return;
+                }
+
+                // Queue the background ones until granted
+                checkCancelled(ticket);
+                Waiter waiter = new Waiter();
+                waiting.get(priority.ordinal()).addLast(waiter);
+                grant();
+                try
+                {
+                    while (!waiter.granted)
+                    {
+                        if (ticket.isCancelled())
+                        {
+                            waiting.get(priority.ordinal()).remove(waiter);
+                            checkCancelled(ticket);
+                        }
+                        waiting.wait(CANCEL_POLL_MILLIS);
+                    }
+                }
+                catch (InterruptedException exception)
+                {
+                    if (waiter.granted)
+                    {
+                        release(ticket);
+                    }
+                    else
+                    {
+                        waiting.get(priority.ordinal()).remove(waiter);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new ClientRequestException("Interrupted while waiting for a request slot", exception);
+                }
+                failed = false;
+            }
+        }
+        finally
+        {
+            waits.get(priority.ordinal()).record(start, failed);
+        }
+    }
+
+    /**
+     * Opens the admission of a call on the current thread without acquiring its slot, see admit.
+     * @param ticket The ticket of the background work, null for an interactive request.
+     * @return The admission, to close once the call is done.
+     */
+    public Admission open(RequestTicket ticket)
+    {
+        Admission admission = new Admission(this, ticket, current.get());
+        current.set(admission);
+        return admission;
+    }
+
+    /**
+     * Acquires the slot of the call opened on the current thread, unless already acquired.
+     * Does nothing outside of an opened call.
+     * @throws RequestCancelledException If the ticket is cancelled.
+     * @throws ClientRequestException If interrupted.
+     */
+    public static void admit()
+    {
+        Admission admission = current.get();
+        if (null != admission && !admission.acquired)
+        {
+            admission.scheduler.acquire(admission.ticket);
+            admission.acquired = true;
+        }
+    }
+
+    /**
+     * Frees a request slot.
+     * @param ticket The ticket given to acquire.
+     */
+    public void release(RequestTicket ticket)
+    {
+        RequestPriority priority = null == ticket ? RequestPriority.INTERACTIVE : ticket.getPriority();
+        synchronized (waiting)
+        {
+            --running[priority.ordinal()];
+            grant();
+        }
+    }
+
+    /**
+     * Gets the concurrency limit of a background priority class.
+     * @param snapshot The tuning.
+     * @param priority The background priority class.
+     * @return The maximum number of requests in progress.
+     */
+    static int getLimit(ConfigurationSnapshot snapshot, RequestPriority priority)
+    {
+        switch (priority)
+        {
+            case READ_AHEAD:
+                return snapshot.getIoReadAheadLimit();
+            case PREFETCH:
+                return snapshot.getIoPrefetchLimit();
+            case SYNC:
+                return snapshot.getIoSyncLimit();
+            default:
+                return snapshot.getIoMaintenanceLimit();
+        }
+    }
+
+    /**
+     * Grants the free slots to the waiting requests, guarded by the waiting queues.
+     */
+    private void grant()
+    {
+        // Count the background requests in progress
+        int background = 0;
+        for(int i = 1; i < PRIORITIES.length; ++i)
+        {
+            background += running[i];
+        }
+        int backgroundLimit = Math.max(1, tuning.getIoConcurrency() - tuning.getIoInteractiveReserve());
+
+        // Grant the most urgent classes first
+        boolean granted = false;
+        for(int i = 1; i < PRIORITIES.length; ++i)
+        {
+            Deque<Waiter> queue = waiting.get(i);
+            int limit = getLimit(tuning, PRIORITIES[i]);
+            while (!queue.isEmpty() && running[i] < limit && background < backgroundLimit
+                && background + running[RequestPriority.INTERACTIVE.ordinal()] < tuning.getIoConcurrency())
+            {
+                queue.pollFirst().granted = true;
+                ++running[i];
+                ++background;
+                granted = true;
+            }
+        }
+        if (granted)
+        {
+            waiting.notifyAll();
+        }
+    }
+
+    /**
+     * Fails a request if its ticket is cancelled.
+     * @param ticket The ticket.
+     * @throws RequestCancelledException If the ticket is cancelled.
+     */
+    private void checkCancelled(RequestTicket ticket)
+    {
+        if (ticket.isCancelled())
+        {
+            cancelled.increment();
+            throw new RequestCancelledException(String.format(Locale.US, "The %s request has been cancelled", ticket.getPriority().getKey()));
+        }
+    }
+
+    /**
+     * A waiting background request.
+     */
+    private static class Waiter
+    {
+        /**
+         * True once granted a slot, guarded by the waiting queues.
+         */
+        private boolean granted;
+    }
+
+    /**
+     * The admission of a call, which slot is acquired on demand.
+     */
+    public static final class Admission
+    {
+        /**
+         * The scheduler.
+         */
+        private final RequestScheduler scheduler;
+
+        /**
+         * The ticket of the background work, null for an interactive request.
+         */
+        private final RequestTicket ticket;
+
+        /**
+         * The admission of the enclosing call, null if none.
+         */
+        private final Admission previous;
+
+        /**
+         * True once the slot is acquired.
+         */
+        private boolean acquired;
+
+        /**
+         * Initializes an admission.
+         * @param scheduler The scheduler.
+         * @param ticket The ticket of the background work, null for an interactive request.
+         * @param previous The admission of the enclosing call, null if none.
+         */
+        private Admission(RequestScheduler scheduler, RequestTicket ticket, Admission previous)
+        {
+            this.scheduler = scheduler;
+            this.ticket = ticket;
+            this.previous = previous;
+        }
+
+        /**
+         * Is the slot acquired.
+         * @return true if the call reached the backend, false otherwise.
+         */
+        public boolean isAcquired()
+        {
+            return acquired;
+        }
+
+        /**
+         * Frees the slot if acquired and restores the admission of the enclosing call.
+         */
+        public void close()
+        {
+            if (null == previous)
+            {
+                current.remove();
+            }
+            else
+            {
+                current.set(previous);
+            }
+            if (acquired)
+            {
+                scheduler.release(ticket);
+            }
+        }
+    }
+}
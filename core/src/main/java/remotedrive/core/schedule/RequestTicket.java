@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+/**
+ * Identifies a background work to the request scheduler: its priority class, and whether its consumer has gone away.
+ * A worker attaches the ticket to its thread around the client calls it makes, the calls made without ticket being
+ * interactive. Cancelling the ticket fails the requests of the work still waiting for a slot, and the following ones.
+ */
+public final class RequestTicket
+{
+    /**
+     * The ticket attached to the current thread.
+     */
+    private static final ThreadLocal<RequestTicket> current = new ThreadLocal<RequestTicket>();
+
+    /**
+     * The priority class.
+     */
+    private final RequestPriority priority;
+
+    /**
+     * True once the consumer has gone away.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Initializes a ticket.
+     * @param priority The priority class.
+     */
+    public RequestTicket(RequestPriority priority)
+    {
+        // Check input
+        if (null == priority)
+        {
+            throw new IllegalArgumentException("The priority cannot be null.");
+        }
+
+        // Initialize
+        this.priority = priority;
+    }
+
+    /**
+     * Gets the ticket attached to the current thread.
+     * @return The ticket, null for interactive requests.
+     */
+    public static RequestTicket current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Restores the ticket attached to the current thread before attach.
+     * @param previous The ticket returned by attach.
+     */
+    public static void restore(RequestTicket previous)
+    {
+        if (null == previous)
+        {
+            current.remove();
+        }
+        else
+        {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * Attaches the ticket to the current thread, until restore is called.
+     * @return The previously attached ticket.
+     */
+    public RequestTicket attach()
+    {
+        RequestTicket previous = current.get();
+        current.set(this);
+        return previous;
+    }
+
+    /**
+     * Gets the priority class.
+     * @return The priority class.
+     */
+    public RequestPriority getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * Cancels the work, its consumer having gone away.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Is the work cancelled.
+     * @return true if cancelled, false otherwise.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ContentRange;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.RangeReadable;
+import remotedrive.core.spi.SelfAdmitting;
+import remotedrive.core.spi.Tunable;
+
+/**
+ * Client decorator admitting each call through the request scheduler of the drive, with the priority of the ticket
+ * attached to the calling thread, interactive if none. A self admitting client is only admitted once a call reaches
+ * its backend, so that its cache hits don't take a slot. The bandwidth throttle of the drive is attached to the thread
+ * during the call so that the decorated client can report the bytes it transfers.
+ */
+public class ScheduledClient implements Client, RangeReadable, Tunable
+{
+    /**
+     * The decorated client.
+     */
+    private final Client delegate;
+
+    /**
+     * The request scheduler.
+     */
+    private final RequestScheduler scheduler;
+
+    /**
+     * The bandwidth throttle.
+     */
+    private final BandwidthThrottle throttle;
+
+    /**
+     * Is the decorated client admitted only when it reaches its backend.
+     */
+    private final boolean selfAdmitting;
+
+    /**
+     * Initializes the decorator.
+     * @param delegate The decorated client.
+     * @param scheduler The request scheduler.
+     * @param throttle The bandwidth throttle.
+     */
+    public ScheduledClient(Client delegate, RequestScheduler scheduler, BandwidthThrottle throttle)
+    {
+        // Check input
+        if (null == delegate)
+        {
+            throw new IllegalArgumentException("The client cannot be null.");
+        }
+        if (null == scheduler)
+        {
+            throw new IllegalArgumentException("The scheduler cannot be null.");
+        }
+        if (null == throttle)
+        {
+            throw new IllegalArgumentException("The throttle cannot be null.");
+        }
+
+        // Initialize
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.throttle = throttle;
+        this.selfAdmitting = delegate instanceof SelfAdmitting;
+    }
+
+    /**
+     * Gets the decorated client.
+     * @return The decorated client.
+     */
+    public Client getDelegate()
+    {
+        return delegate;
+    }
+
+    /**
+     * Authenticates without scheduling, prior to any other call.
+     * @param username The username.
+     * @param password The password.
+     */
+    @Override
+    public void authenticate(String username, char[] password)
+    {
+        delegate.authenticate(username, password);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Drive retrieveDiskInformation()
+    {
+        RequestScheduler.Admission admission = open();
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return delegate.retrieveDiskInformation();
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+            admission.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildren(String parentPath)
+    {
+        RequestScheduler.Admission admission = open();
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return delegate.retrieveChildren(parentPath);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+            admission.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildrenByTitlePrefix(String parentPath, String titlePrefix)
+    {
+        RequestScheduler.Admission admission = open();
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return delegate.retrieveChildrenByTitlePrefix(parentPath, titlePrefix);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+            admission.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File retrieveDriveFile(String filePath)
+    {
+        RequestScheduler.Admission admission = open();
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return delegate.retrieveDriveFile(filePath);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+            admission.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath)
+    {
+        RequestScheduler.Admission admission = open();
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return delegate.retrieveDriveFileContent(filePath);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+            admission.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath, long offset, int length)
+    {
+        RequestScheduler.Admission admission = open();
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return ContentRange.read(delegate, filePath, offset, length);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+            admission.close();
+        }
+    }
+
+    /**
+     * Forwards the tuning entries to the decorated client and applies the concurrency and bandwidth limits.
+     * @param configuration The configuration of the mounted drive.
+     */
+    @Override
+    public void tune(Configuration configuration)
+    {
+        if (delegate instanceof Tunable)
+        {
+            ((Tunable) delegate).tune(configuration);
+        }
+        scheduler.tune(configuration);
+        throttle.tune(configuration);
+    }
+
+    /**
+     * Opens the admission of a call, acquiring its slot right away unless the decorated client admits itself.
+     * @return The admission.
+     */
+    private RequestScheduler.Admission open()
+    {
+        RequestScheduler.Admission admission = scheduler.open(RequestTicket.current());
+        if (!selfAdmitting)
+        {
+            try
+            {
+                RequestScheduler.admit();
+            }
+            catch (RuntimeException exception)
+            {
+                admission.close();
+                throw exception;
+            }
+        }
+        return admission;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ContentRange;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.RangeReadable;
+import remotedrive.core.spi.Tunable;
+
+/**
+ * Client decorator attaching the bandwidth throttle of the drive to the calling thread during each call, for the drives
+ * which don't need their requests to be scheduled. The global limits then still shape the drive, and raising its own
+ * limits at runtime takes effect.
+ */
+public class ThrottledClient implements Client, RangeReadable, Tunable
+{
+    /**
+     * The decorated client.
+     */
+    private final Client delegate;
+
+    /**
+     * The bandwidth throttle.
+     */
+    private final BandwidthThrottle throttle;
+
+    /**
+     * Initializes the decorator.
+     * @param delegate The decorated client.
+     * @param throttle The bandwidth throttle.
+     */
+    public ThrottledClient(Client delegate, BandwidthThrottle throttle)
+    {
+        // Check input
+        if (null == delegate)
+        {
+            throw new IllegalArgumentException("The client cannot be null.");
+        }
+        if (null == throttle)
+        {
+            throw new IllegalArgumentException("The throttle cannot be null.");
+        }
+
+        // Initialize
+        this.delegate = delegate;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Gets the decorated client.
+     * @return The decorated client.
+     */
+    public Client getDelegate()
+    {
+        return delegate;
+    }
+
+    /**
+     * Authenticates without throttling, prior to any other call.
+     * @param username The username.
+     * @param password The password.
+     */
+    @Override
+    public void authenticate(String username, char[] password)
+    {
+        delegate.authenticate(username, password);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Drive retrieveDiskInformation()
+    {
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return delegate.retrieveDiskInformation();
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildren(String parentPath)
+    {
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return delegate.retrieveChildren(parentPath);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildrenByTitlePrefix(String parentPath, String titlePrefix)
+    {
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return delegate.retrieveChildrenByTitlePrefix(parentPath, titlePrefix);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File retrieveDriveFile(String filePath)
+    {
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return delegate.retrieveDriveFile(filePath);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath)
+    {
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return delegate.retrieveDriveFileContent(filePath);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath, long offset, int length)
+    {
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            return ContentRange.read(delegate, filePath, offset, length);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+        }
+    }
+
+    /**
+     * Forwards the tuning entries to the decorated client and applies the bandwidth limits.
+     * @param configuration The configuration of the mounted drive.
+     */
+    @Override
+    public void tune(Configuration configuration)
+    {
+        if (delegate instanceof Tunable)
+        {
+            ((Tunable) delegate).tune(configuration);
+        }
+        throttle.tune(configuration);
+    }
+}
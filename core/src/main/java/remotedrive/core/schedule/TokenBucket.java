@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+/**
+ * Token bucket shaping a byte rate, holding at most one second of tokens.
+ * Transfers reserve their bytes up front and may leave the bucket in debt: the caller then waits for the debt to be
+ * paid back, so a transfer larger than the bucket is still shaped to the rate on average.
+ */
+final class TokenBucket
+{
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1000000000d;
+
+    /**
+     * The rate in bytes per second, 0 for unlimited, guarded by the bucket.
+     */
+    private long rate;
+
+    /**
+     * The available bytes, negative when in debt, guarded by the bucket.
+     */
+    private double available;
+
+    /**
+     * The time of the last refill, guarded by the bucket.
+     */
+    private long refillNanos;
+
+    /**
+     * Initializes an unlimited bucket.
+     */
+    TokenBucket()
+    {
+        this.refillNanos = System.nanoTime();
+    }
+
+    /**
+     * Changes the rate, dropping the tokens above the new capacity.
+     * @param rate The rate in bytes per second, 0 for unlimited.
+     */
+    synchronized void setRate(long rate)
+    {
+        refill(System.nanoTime());
+        if (0 >= this.rate)
+        {
+            available = rate;
+        }
+        this.rate = rate;
+        available = Math.min(available, rate);
+    }
+
+    /**
+     * Gets the rate.
+     * @return The rate in bytes per second, 0 for unlimited.
+     */
+    synchronized long getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * Takes tokens for a transfer.
+     * @param bytes The transferred bytes.
+     * @param nowNanos The current time.
+     * @return The time to wait before the transfer goes on, in nanoseconds.
+     */
+    synchronized long reserve(long bytes, long nowNanos)
+    {
+        if (0 >= rate)
+        {
+            return 0;
+        }
+        refill(nowNanos);
+        available -= bytes;
+        return 0 <= available ? 0 : (long) Math.ceil(-available * NANOS_PER_SECOND / rate);
+    }
+
+    /**
+     * Adds the tokens earned since the last refill, guarded by the bucket.
+     * @param nowNanos The current time.
+     */
+    private void refill(long nowNanos)
+    {
+        if (0 < rate && nowNanos > refillNanos)
+        {
+            available = Math.min(rate, available + (nowNanos - refillNanos) * rate / NANOS_PER_SECOND);
+        }
+        refillNanos = Math.max(refillNanos, nowNanos);
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.spi;
+
+/**
+ * Optional capability of clients which learn from the accesses made through the file system.
+ * File system handlers report the files read and the folders enumerated on behalf of the user, leaving out the
+ * accesses they make on their own such as prefetching.
+ */
+public interface AccessObserver
+{
+    /**
+     * Reports an access.
+     * @param path The absolute path.
+     * @param directory true if a folder is enumerated, false if a file is read.
+     */
+    void onAccess(String path, boolean directory);
+}
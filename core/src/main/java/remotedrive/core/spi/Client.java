@@ -22,6 +22,9 @@ package remotedrive.core.spi;
 import remotedrive.core.Drive;
 import remotedrive.core.File;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Defines client capabilities.
  */
@@ -47,6 +50,34 @@ public interface Client {
      */
     File[] retrieveChildren(final String parentPath);
 
+    /**
+     * Retrieves the children which title starts with a given prefix.
+     * The prefix matching is case insensitive and may be loose depending on the remote system so callers have to
+     * filter the returned children again. By default the whole listing is filtered, clients able to query the
+     * matching children only should override it.
+     * @param parentPath The parent file.
+     * @param titlePrefix The title prefix.
+     * @return The matching children.
+     */
+    default File[] retrieveChildrenByTitlePrefix(final String parentPath, final String titlePrefix)
+    {
+        // Filter the whole listing
+        File[] children = retrieveChildren(parentPath);
+        if (null == children)
+        {
+            return null;
+        }
+        List<File> matchingChildren = new ArrayList<File>();
+        for(File child : children)
+        {
+            if (child.getTitle().regionMatches(true, 0, titlePrefix, 0, titlePrefix.length()))
+            {
+                matchingChildren.add(child);
+            }
+        }
+        return matchingChildren.toArray(new File[matchingChildren.size()]);
+    }
+
     /**
      * Retrieves file from absolute path.
      * @param filePath The absolute path.
@@ -37,7 +37,9 @@ public interface FileSystemHandler
     String[] getAvailableMountingPoints();
 
     /**
-     * Mounts a drive from a given client
+     * Mounts a drive from a given client.
+     * The client is already authenticated. Many drives can be mounted at the same time so the implementation has to
+     * return once the drive is mounted instead of blocking for the drive lifetime.
      * @param client The client.
      * @param configuration The configuration.
      */
@@ -45,6 +47,7 @@ public interface FileSystemHandler
 
     /**
      * Unmounts a drive.
+     * @param configuration The configuration of the drive to unmount.
      */
-    void umount();
+    void umount(Configuration configuration);
 }
\ No newline at end of file
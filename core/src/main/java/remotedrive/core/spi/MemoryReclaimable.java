@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.spi;
+
+/**
+ * Optional capability of clients which can shrink their caches below the configured budgets when the heap runs low.
+ * The memory governor scales the budgets down under pressure and back up once the pressure eases, the configured
+ * budgets still applying on top of the scales.
+ */
+public interface MemoryReclaimable
+{
+    /**
+     * Scales the cache budgets.
+     * @param contentScale The share of the configured content budgets kept, from 0 to drop the contents to 1.
+     * @param metadataScale The share of the configured metadata budgets kept, from 0 to 1.
+     */
+    void scaleCaches(double contentScale, double metadataScale);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.spi;
+
+/**
+ * Optional capability of clients which can retrieve a range of a file content without retrieving the whole content.
+ * File system handlers read through ranges when the client supports them, and the header prefetcher only reads the
+ * first bytes of the files.
+ */
+public interface RangeReadable
+{
+    /**
+     * Retrieves a range of a file content.
+     * @param filePath The absolute file.
+     * @param offset The position of the first byte.
+     * @param length The maximum number of bytes.
+     * @return The bytes, fewer than requested at the end of the content, none past it, null if the file doesn't exist.
+     */
+    byte[] retrieveDriveFileContent(String filePath, long offset, int length);
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.spi;
+
+import remotedrive.core.Configuration;
+
+/**
+ * Optional capability of clients and file system handlers which can apply tuning entries to a mounted drive.
+ * Tuning entries are the ones of the ConfigurationSchema.TUNING_SCOPE scope, such as cache budgets and time to live.
+ */
+public interface Tunable
+{
+    /**
+     * Applies the tuning entries of a mounted drive configuration.
+     * The configuration snapshot already holds the new values, implementations only have to read it.
+     * @param configuration The configuration of the mounted drive.
+     */
+    void tune(Configuration configuration);
+}
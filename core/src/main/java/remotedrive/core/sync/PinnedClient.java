@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.sync;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ContentRange;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.spi.AccessObserver;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.RangeReadable;
+import remotedrive.core.spi.Tunable;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Client decorator serving the pinned folders from the pinned store and keeping them synchronised in background.
+ * Metadata, listings and contents found in the store are returned without any remote call, everything else is
+ * delegated. The time of the last access reported by the file system is tracked so that the synchronisation only
+ * downloads while the drive is idle, background reads such as prefetching not counting as activity.
+ */
+public class PinnedClient implements Client, RangeReadable, Tunable, AccessObserver, Closeable
+{
+    /**
+     * The decorated client.
+     */
+    private final Client delegate;
+
+    /**
+     * The pinned store.
+     */
+    private final PinnedStore store;
+
+    /**
+     * The synchronisation.
+     */
+    private final PinnedSync sync;
+
+    /**
+     * The calls served from the store.
+     */
+    private final Counter hits;
+
+    /**
+     * The time of the last file system access, from System.nanoTime.
+     */
+    private volatile long lastActivity;
+
+    /**
+     * Initializes the decorator, the synchronisation is started by start.
+     * @param delegate The decorated client.
+     * @param store The pinned store.
+     * @param configuration The drive configuration.
+     * @param metrics The drive metrics.
+     */
+    public PinnedClient(Client delegate, PinnedStore store, Configuration configuration, DriveMetrics metrics)
+    {
+        // Check input
+        if (null == delegate)
+        {
+            throw new IllegalArgumentException("The client cannot be null.");
+        }
+        if (null == store)
+        {
+            throw new IllegalArgumentException("The store cannot be null.");
+        }
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+        if (null == metrics)
+        {
+            throw new IllegalArgumentException("The metrics cannot be null.");
+        }
+
+        // Initialize
+        this.delegate = delegate;
+        this.store = store;
+        this.hits = metrics.counter("pinned.hits");
+        this.lastActivity = System.nanoTime();
+        this.sync = new PinnedSync(delegate, store, configuration, metrics, this);
+    }
+
+    /**
+     * Gets the decorated client.
+     * @return The decorated client.
+     */
+    public Client getDelegate()
+    {
+        return delegate;
+    }
+
+    /**
+     * Starts the synchronisation of the pinned folders.
+     */
+    public void start()
+    {
+        sync.start();
+    }
+
+    /**
+     * Gets the time elapsed since the last file system access.
+     * @return The idle time in milliseconds.
+     */
+    public long getIdleMillis()
+    {
+        return (System.nanoTime() - lastActivity) / 1000000L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void authenticate(String username, char[] password)
+    {
+        delegate.authenticate(username, password);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Drive retrieveDiskInformation()
+    {
+        return delegate.retrieveDiskInformation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File[] retrieveChildren(String parentPath)
+    {
+        File[] children = store.getChildren(parentPath);
+        if (null != children)
+        {
+            hits.increment();
+            return children;
+        }
+        return delegate.retrieveChildren(parentPath);
+    }
+
+    /**
+     * Filters the stored listing when the folder is pinned, otherwise delegates.
+     * @param parentPath The parent file.
+     * @param titlePrefix The title prefix.
+     * @return The matching children.
+     */
+    @Override
+    public File[] retrieveChildrenByTitlePrefix(String parentPath, String titlePrefix)
+    {
+        File[] children = store.getChildren(parentPath);
+        if (null == children)
+        {
+            return delegate.retrieveChildrenByTitlePrefix(parentPath, titlePrefix);
+        }
+        hits.increment();
+        List<File> matchingChildren = new ArrayList<File>();
+        for(File child : children)
+        {
+            if (child.getTitle().regionMatches(true, 0, titlePrefix, 0, titlePrefix.length()))
+            {
+                matchingChildren.add(child);
+            }
+        }
+        return matchingChildren.toArray(new File[matchingChildren.size()]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File retrieveDriveFile(String filePath)
+    {
+        File file = store.getFile(filePath);
+        if (null != file)
+        {
+            hits.increment();
+            return file;
+        }
+        return delegate.retrieveDriveFile(filePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath)
+    {
+        byte[] content = store.getContent(filePath);
+        if (null != content)
+        {
+            hits.increment();
+            return content;
+        }
+        return delegate.retrieveDriveFileContent(filePath);
+    }
+
+    /**
+     * Retrieves a range of a file content, read from the store if the file is pinned.
+     * @param filePath The absolute file.
+     * @param offset The position of the first byte.
+     * @param length The maximum number of bytes.
+     * @return The bytes, null if the file doesn't exist.
+     */
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath, long offset, int length)
+    {
+        byte[] content = store.readContent(filePath, offset, length);
+        if (null != content)
+        {
+            hits.increment();
+            return content;
+        }
+        return ContentRange.read(delegate, filePath, offset, length);
+    }
+
+    /**
+     * Tracks the file system activity and forwards the access to the decorated client if it observes them.
+     * @param path The absolute path.
+     * @param directory true if a folder is enumerated, false if a file is read.
+     */
+    @Override
+    public void onAccess(String path, boolean directory)
+    {
+        lastActivity = System.nanoTime();
+        if (delegate instanceof AccessObserver)
+        {
+            ((AccessObserver) delegate).onAccess(path, directory);
+        }
+    }
+
+    /**
+     * Forwards the tuning entries to the decorated client and to the synchronisation.
+     * @param configuration The configuration of the mounted drive.
+     */
+    @Override
+    public void tune(Configuration configuration)
+    {
+        if (delegate instanceof Tunable)
+        {
+            ((Tunable) delegate).tune(configuration);
+        }
+        sync.tune(configuration);
+    }
+
+    /**
+     * Stops the synchronisation and saves the store index.
+     */
+    @Override
+    public void close()
+    {
+        sync.close();
+    }
+}
@@ -0,0 +1,566 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.sync;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.JavaType;
+import remotedrive.core.File;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local disk copy of the pinned folders of a drive: the metadata, the folder listings and the file contents.
+ * The metadata is kept in memory and persisted in an index file, the contents are stored one file each.
+ * Entries are only removed by the synchronisation, never evicted.
+ * Contents are addressed by their MD5 checksum when known so that copies, renamed and moved files share a single
+ * content file, deleted once no entry references it anymore.
+ */
+public class PinnedStore
+{
+    /**
+     * Logger.
+     */
+    private static Logger log = Logger.getLogger(PinnedStore.class);
+
+    /**
+     * The index file name.
+     */
+    private static final String INDEX_FILE = "index.json";
+
+    /**
+     * The contents directory name.
+     */
+    private static final String CONTENT_DIRECTORY = "content";
+
+    /**
+     * The index mapper.
+     */
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * The store directory.
+     */
+    private final Path directory;
+
+    /**
+     * The contents directory.
+     */
+    private final Path contentDirectory;
+
+    /**
+     * The entries by path, guarded by this.
+     */
+    private final Map<String, StoredFile> entries;
+
+    /**
+     * The converted folder listings by path, handing out the same array until the listing changes, guarded by this.
+     */
+    private final Map<String, File[]> listings;
+
+    /**
+     * The number of entries referencing each content file, guarded by this.
+     */
+    private final Map<String, Integer> references;
+
+    /**
+     * True if the entries changed since the index was saved, guarded by this.
+     */
+    private boolean dirty;
+
+    /**
+     * Opens a store, loading its index if any.
+     * @param directory The store directory, created if needed.
+     * @throws IOException If the directory can't be created.
+     */
+    public PinnedStore(Path directory) throws IOException
+    {
+        // Check input
+        if (null == directory)
+        {
+            throw new IllegalArgumentException("The directory cannot be null.");
+        }
+
+        // Initialize
+        this.directory = directory;
+        this.contentDirectory = directory.resolve(CONTENT_DIRECTORY);
+        this.entries = new HashMap<String, StoredFile>();
+        this.listings = new HashMap<String, File[]>();
+        this.references = new HashMap<String, Integer>();
+        Files.createDirectories(contentDirectory);
+
+        // Load the index, starting over if it's unreadable
+        Path index = directory.resolve(INDEX_FILE);
+        if (Files.exists(index))
+        {
+            try
+            {
+                JavaType type = mapper.getTypeFactory().constructMapType(HashMap.class, String.class, StoredFile.class);
+                Map<String, StoredFile> storedEntries = mapper.readValue(index.toFile(), type);
+                entries.putAll(storedEntries);
+                for(StoredFile entry : entries.values())
+                {
+                    reference(entry.content);
+                }
+            }
+            catch (IOException exception)
+            {
+                log.warn(String.format(Locale.US, "Ignoring the unreadable pinned store index %s", index), exception);
+            }
+        }
+    }
+
+    /**
+     * Gets the metadata of a stored file.
+     * @param path The file path.
+     * @return The file, null if not stored.
+     */
+    public synchronized File getFile(String path)
+    {
+        StoredFile entry = entries.get(path);
+        return null == entry ? null : entry.toFile();
+    }
+
+    /**
+     * Gets a stored folder listing.
+     * The same array is returned until the listing changes, it must not be modified.
+     * @param path The folder path.
+     * @return The children, null if the listing isn't stored.
+     */
+    public synchronized File[] getChildren(String path)
+    {
+        File[] listing = listings.get(path);
+        if (null != listing)
+        {
+            return listing;
+        }
+
+        // Convert the listing if complete
+        StoredFile entry = entries.get(path);
+        if (null == entry || null == entry.children)
+        {
+            return null;
+        }
+        listing = new File[entry.children.size()];
+        for(int i = 0; i < listing.length; ++i)
+        {
+            StoredFile child = entries.get(entry.children.get(i));
+            if (null == child)
+            {
+                return null;
+            }
+            listing[i] = child.toFile();
+        }
+        listings.put(path, listing);
+        return listing;
+    }
+
+    /**
+     * Gets a stored file content.
+     * @param path The file path.
+     * @return The content, null if not stored.
+     */
+    public byte[] getContent(String path)
+    {
+        // Lookup the content file
+        String content;
+        synchronized (this)
+        {
+            StoredFile entry = entries.get(path);
+            content = null == entry ? null : entry.content;
+        }
+        if (null == content)
+        {
+            return null;
+        }
+
+        // Read it outside of the lock
+        try
+        {
+            return Files.readAllBytes(contentDirectory.resolve(content));
+        }
+        catch (NoSuchFileException exception)
+        {
+            return null;
+        }
+        catch (IOException exception)
+        {
+            log.warn(String.format(Locale.US, "Unable to read the pinned content of %s", path), exception);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a range of a stored file content, without reading the rest of the content.
+     * @param path The file path.
+     * @param offset The position of the first byte.
+     * @param length The maximum number of bytes.
+     * @return The bytes, shorter than the length at the end of the content, null if not stored.
+     */
+    public byte[] readContent(String path, long offset, int length)
+    {
+        // Lookup the content file
+        String content;
+        synchronized (this)
+        {
+            StoredFile entry = entries.get(path);
+            content = null == entry ? null : entry.content;
+        }
+        if (null == content)
+        {
+            return null;
+        }
+
+        // Read the range outside of the lock
+        try (FileChannel channel = FileChannel.open(contentDirectory.resolve(content), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, size - offset)));
+            while (buffer.hasRemaining())
+            {
+                if (-1 == channel.read(buffer, offset + buffer.position()))
+                {
+                    break;
+                }
+            }
+            return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+        }
+        catch (NoSuchFileException exception)
+        {
+            return null;
+        }
+        catch (IOException exception)
+        {
+            log.warn(String.format(Locale.US, "Unable to read the pinned content of %s", path), exception);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the content of a file is stored for its current revision.
+     * @param file The file.
+     * @return true if the stored content is up to date, false otherwise.
+     */
+    public synchronized boolean hasContent(File file)
+    {
+        StoredFile entry = entries.get(file.getAbsolutePath());
+        return null != entry && null != entry.content && entry.isSameRevision(file);
+    }
+
+    /**
+     * Stores the metadata of a file, dropping its stored content if the revision changed.
+     * @param file The file.
+     */
+    public synchronized void putFile(File file)
+    {
+        update(file);
+    }
+
+    /**
+     * Stores a folder listing and the metadata of its children.
+     * @param folder The folder path.
+     * @param children The children.
+     */
+    public synchronized void putChildren(String folder, File[] children)
+    {
+        // Update the children
+        List<String> paths = new ArrayList<String>(children.length);
+        for(File child : children)
+        {
+            paths.add(child.getAbsolutePath());
+            update(child);
+        }
+
+        // Update the listing
+        StoredFile entry = entries.get(folder);
+        if (null == entry)
+        {
+            entry = new StoredFile();
+            entry.absolutePath = folder;
+            entry.directory = true;
+            entries.put(folder, entry);
+        }
+        if (!paths.equals(entry.children))
+        {
+            entry.children = paths;
+            listings.remove(folder);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Stores the content of a file along with its metadata.
+     * @param file The file.
+     * @param content The content.
+     * @throws IOException If the content can't be written.
+     */
+    public void putContent(File file, byte[] content) throws IOException
+    {
+        // Write the content next to its final name
+        String name = contentName(file);
+        Path temporary = Files.createTempFile(contentDirectory, name, ".tmp");
+        try
+        {
+            Files.write(temporary, content);
+
+            // Move it in place unless an identical content is already shared, then reference it
+            synchronized (this)
+            {
+                update(file);
+                if (!references.containsKey(name))
+                {
+                    Files.move(temporary, contentDirectory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                setContent(entries.get(file.getAbsolutePath()), name);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Points a file at an already stored content with the same checksum, along with its metadata.
+     * @param file The file.
+     * @return true if the content was already stored, false if it has to be downloaded.
+     */
+    public synchronized boolean linkContent(File file)
+    {
+        if (null == file.getMd5Checksum())
+        {
+            return false;
+        }
+        String name = contentName(file);
+        if (!references.containsKey(name))
+        {
+            return false;
+        }
+        update(file);
+        setContent(entries.get(file.getAbsolutePath()), name);
+        return true;
+    }
+
+    /**
+     * Removes the entries which path isn't in a set, along with their contents.
+     * @param paths The paths to keep.
+     */
+    public synchronized void retainAll(Set<String> paths)
+    {
+        Iterator<Map.Entry<String, StoredFile>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            Map.Entry<String, StoredFile> entry = iterator.next();
+            if (!paths.contains(entry.getKey()))
+            {
+                release(entry.getValue().content);
+                iterator.remove();
+                listings.remove(entry.getKey());
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Gets the stored paths.
+     * @return A copy of the stored paths.
+     */
+    public synchronized Collection<String> getPaths()
+    {
+        return new HashSet<String>(entries.keySet());
+    }
+
+    /**
+     * Writes the index if the entries changed.
+     * @throws IOException If the index can't be written.
+     */
+    public void save() throws IOException
+    {
+        // Serialize a consistent view
+        byte[] index;
+        synchronized (this)
+        {
+            if (!dirty)
+            {
+                return;
+            }
+            index = mapper.writeValueAsBytes(entries);
+            dirty = false;
+        }
+
+        // Replace the index at once
+        Path temporary = Files.createTempFile(directory, INDEX_FILE, ".tmp");
+        try
+        {
+            Files.write(temporary, index);
+            Files.move(temporary, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Updates the metadata of an entry, releasing its content if the revision changed, guarded by this.
+     * @param file The file.
+     */
+    private void update(File file)
+    {
+        String path = file.getAbsolutePath();
+        StoredFile entry = entries.get(path);
+        if (null != entry && entry.isSameRevision(file) && (null == entry.title ? null == file.getTitle() : entry.title.equals(file.getTitle())))
+        {
+            return;
+        }
+
+        // Keep the listing but drop the outdated content
+        StoredFile newEntry = new StoredFile(file);
+        if (null != entry)
+        {
+            newEntry.children = entry.children;
+            if (entry.isSameRevision(file))
+            {
+                newEntry.content = entry.content;
+            }
+            else
+            {
+                release(entry.content);
+            }
+        }
+        entries.put(path, newEntry);
+        invalidateParentListing(path);
+        dirty = true;
+    }
+
+    /**
+     * Points an entry at a content, releasing its previous one, guarded by this.
+     * @param entry The entry.
+     * @param content The content name.
+     */
+    private void setContent(StoredFile entry, String content)
+    {
+        if (content.equals(entry.content))
+        {
+            return;
+        }
+        reference(content);
+        release(entry.content);
+        entry.content = content;
+        dirty = true;
+    }
+
+    /**
+     * Counts a reference to a content, guarded by this.
+     * @param content The content name, null for none.
+     */
+    private void reference(String content)
+    {
+        if (null != content)
+        {
+            Integer count = references.get(content);
+            references.put(content, null == count ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Drops the converted listing of the parent of a path, guarded by this.
+     * @param path The path.
+     */
+    private void invalidateParentListing(String path)
+    {
+        int separator = path.lastIndexOf('/');
+        listings.remove(-1 == separator ? "" : path.substring(0, separator));
+    }
+
+    /**
+     * Releases a reference to a content, deleting its file once unreferenced, guarded by this.
+     * @param content The content name, null for none.
+     */
+    private void release(String content)
+    {
+        Integer count = null == content ? null : references.get(content);
+        if (null == count)
+        {
+            return;
+        }
+        if (count > 1)
+        {
+            references.put(content, count - 1);
+            return;
+        }
+        references.remove(content);
+        try
+        {
+            Files.deleteIfExists(contentDirectory.resolve(content));
+        }
+        catch (IOException exception)
+        {
+            log.warn(String.format(Locale.US, "Unable to delete the pinned content %s", content), exception);
+        }
+    }
+
+    /**
+     * Names the content file of a file.
+     * @param file The file.
+     * @return The lower cased MD5 checksum if known, otherwise the hexadecimal SHA-1 of the path.
+     */
+    private static String contentName(File file)
+    {
+        if (null != file.getMd5Checksum())
+        {
+            return file.getMd5Checksum().toLowerCase(Locale.US);
+        }
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for(byte value : digest)
+            {
+                builder.append(String.format(Locale.US, "%02x", value & 0xff));
+            }
+            return builder.toString();
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.sync;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.ConfigurationSnapshot;
+import remotedrive.core.DaemonThreadFactory;
+import remotedrive.core.File;
+import remotedrive.core.exception.RequestCancelledException;
+import remotedrive.core.logging.DriveLogger;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.Gauge;
+import remotedrive.core.metrics.OperationMetrics;
+import remotedrive.core.schedule.RequestPriority;
+import remotedrive.core.schedule.RequestTicket;
+import remotedrive.core.spi.Client;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the pinned folders of a drive in its pinned store.
+ * A pass walks the pinned folders, stores their listings and metadata, and downloads the files which revision isn't
+ * stored yet, on a bounded pool and only once the drive has been idle for a while. A file which content is already
+ * stored under the same checksum is linked instead, and identical files met during a pass are only downloaded
+ * once. Entries which are no longer
+ * pinned or no longer exist remotely are removed once a pass completes. Passes repeat at the configured interval.
+ * The remote calls are synchronisation requests, cancelled when the synchronisation is closed.
+ */
+class PinnedSync
+{
+    /**
+     * The longest sleep while waiting for the drive to be idle, in milliseconds.
+     */
+    private static final long IDLE_POLL_MILLIS = 250;
+
+    /**
+     * The remote client.
+     */
+    private final Client remote;
+
+    /**
+     * The pinned store.
+     */
+    private final PinnedStore store;
+
+    /**
+     * The drive configuration.
+     */
+    private final Configuration configuration;
+
+    /**
+     * The client tracking the file system activity.
+     */
+    private final PinnedClient activity;
+
+    /**
+     * The drive logger.
+     */
+    private final DriveLogger log;
+
+    /**
+     * The passes.
+     */
+    private final OperationMetrics passes;
+
+    /**
+     * The downloaded files.
+     */
+    private final Counter filesDownloaded;
+
+    /**
+     * The files linked to an already stored content instead of being downloaded.
+     */
+    private final Counter filesDeduplicated;
+
+    /**
+     * The downloaded bytes.
+     */
+    private final Counter bytesDownloaded;
+
+    /**
+     * The pending background tasks of the drive.
+     */
+    private final Gauge queueDepth;
+
+    /**
+     * The passes scheduler.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The downloads pool.
+     */
+    private final ThreadPoolExecutor downloads;
+
+    /**
+     * The ticket of the remote calls, cancelled when closed.
+     */
+    private final RequestTicket ticket;
+
+    /**
+     * False once closed.
+     */
+    private volatile boolean open;
+
+    /**
+     * Initializes the synchronisation, started by start.
+     * @param remote The remote client.
+     * @param store The pinned store.
+     * @param configuration The drive configuration.
+     * @param metrics The drive metrics.
+     * @param activity The client tracking the file system activity.
+     */
+    PinnedSync(Client remote, PinnedStore store, Configuration configuration, DriveMetrics metrics, PinnedClient activity)
+    {
+        this.remote = remote;
+        this.store = store;
+        this.configuration = configuration;
+        this.activity = activity;
+        this.log = new DriveLogger(PinnedSync.class, configuration);
+        this.passes = metrics.operation("sync.pass");
+        this.filesDownloaded = metrics.counter("sync.files-downloaded");
+        this.filesDeduplicated = metrics.counter("sync.files-deduplicated");
+        this.bytesDownloaded = metrics.counter("sync.bytes-downloaded");
+        this.queueDepth = metrics.gauge(DriveMetrics.QUEUE_DEPTH);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("sync"));
+        int parallelism = configuration.getSnapshot().getSyncParallelism();
+        this.downloads = new ThreadPoolExecutor(parallelism, parallelism, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("sync-download"));
+        this.downloads.allowCoreThreadTimeOut(true);
+        this.ticket = new RequestTicket(RequestPriority.SYNC);
+        this.open = true;
+    }
+
+    /**
+     * Starts the first pass right away.
+     */
+    void start()
+    {
+        schedule(0);
+    }
+
+    /**
+     * Applies the tuning entries: the next pass uses the new interval, the pool the new parallelism.
+     * @param configuration The drive configuration.
+     */
+    void tune(Configuration configuration)
+    {
+        log.tune(configuration);
+        int parallelism = configuration.getSnapshot().getSyncParallelism();
+        if (parallelism > downloads.getMaximumPoolSize())
+        {
+            downloads.setMaximumPoolSize(parallelism);
+            downloads.setCorePoolSize(parallelism);
+        }
+        else
+        {
+            downloads.setCorePoolSize(parallelism);
+            downloads.setMaximumPoolSize(parallelism);
+        }
+    }
+
+    /**
+     * Stops the passes and drops the queued downloads, then saves the store index.
+     */
+    void close()
+    {
+        open = false;
+        ticket.cancel();
+        scheduler.shutdownNow();
+        queueDepth.add(-downloads.shutdownNow().size());
+        try
+        {
+            store.save();
+        }
+        catch (IOException exception)
+        {
+            log.error(exception, "Unable to save the pinned store");
+        }
+    }
+
+    /**
+     * Schedules a pass.
+     * @param delaySeconds The delay before the pass, in seconds.
+     */
+    private void schedule(long delaySeconds)
+    {
+        if (!open)
+        {
+            return;
+        }
+        try
+        {
+            scheduler.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    long start = System.nanoTime();
+                    boolean failed = true;
+                    try
+                    {
+                        failed = !pass();
+                    }
+                    catch (RuntimeException exception)
+                    {
+                        log.error(exception, "Unable to synchronise the pinned folders");
+                    }
+                    catch (InterruptedException exception)
+                    {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    finally
+                    {
+                        passes.record(start, failed);
+                    }
+                    schedule(configuration.getSnapshot().getSyncInterval());
+                }
+            }, delaySeconds, TimeUnit.SECONDS);
+        }
+        catch (RejectedExecutionException exception)
+        {
+            // Closed meanwhile
+        }
+    }
+
+    /**
+     * Synchronises the pinned folders once.
+     * @return true if every pinned folder has been synchronised, false otherwise.
+     * @throws InterruptedException If closed meanwhile.
+     */
+    boolean pass() throws InterruptedException
+    {
+        RequestTicket previous = ticket.attach();
+        try
+        {
+            return walkPinnedFolders();
+        }
+        finally
+        {
+            RequestTicket.restore(previous);
+        }
+    }
+
+    /**
+     * Synchronises the pinned folders once, from the thread the ticket is attached to.
+     * @return true if every pinned folder has been synchronised, false otherwise.
+     * @throws InterruptedException If closed meanwhile.
+     */
+    private boolean walkPinnedFolders() throws InterruptedException
+    {
+        ConfigurationSnapshot snapshot = configuration.getSnapshot();
+        Set<String> seen = new HashSet<String>();
+        List<Future<?>> pending = new ArrayList<Future<?>>();
+        Set<String> checksums = new HashSet<String>();
+        List<File> duplicates = new ArrayList<File>();
+        boolean complete = true;
+
+        // Walk the pinned folders, queueing the downloads
+        for(String pinnedFolder : snapshot.getPinnedFolders())
+        {
+            try
+            {
+                File root = remote.retrieveDriveFile(pinnedFolder);
+                if (null == root || !root.isDirectory())
+                {
+                    log.warn("Pinned folder {} not found", pinnedFolder);
+                    continue;
+                }
+                store.putFile(root);
+                seen.add(pinnedFolder);
+                walk(pinnedFolder, seen, pending, checksums, duplicates);
+            }
+            catch (RequestCancelledException exception)
+            {
+                complete = false;
+            }
+            catch (RuntimeException exception)
+            {
+                complete = false;
+                log.error(exception, "Unable to synchronise the pinned folder {}", pinnedFolder);
+            }
+        }
+
+        // Wait for the downloads
+        for(Future<?> download : pending)
+        {
+            try
+            {
+                download.get();
+            }
+            catch (ExecutionException exception)
+            {
+                complete = false;
+                if (!(exception.getCause() instanceof RequestCancelledException))
+                {
+                    log.error(exception.getCause(), "Unable to download a pinned file");
+                }
+            }
+        }
+
+        // Link the duplicates to the downloaded contents
+        for(File duplicate : duplicates)
+        {
+            if (store.linkContent(duplicate))
+            {
+                filesDeduplicated.increment();
+            }
+            else
+            {
+                complete = false;
+            }
+        }
+
+        // Forget what isn't pinned or remote anymore, only if everything has been seen
+        if (complete && open)
+        {
+            store.retainAll(seen);
+        }
+        try
+        {
+            store.save();
+        }
+        catch (IOException exception)
+        {
+            log.error(exception, "Unable to save the pinned store");
+        }
+        return complete;
+    }
+
+    /**
+     * Stores the listings of a pinned folder tree and queues the downloads of its outdated files.
+     * @param pinnedFolder The pinned folder path.
+     * @param seen The paths seen remotely.
+     * @param pending The queued downloads.
+     * @param checksums The checksums of the queued downloads.
+     * @param duplicates The files to link once the queued file with the same checksum is downloaded.
+     */
+    private void walk(String pinnedFolder, Set<String> seen, List<Future<?>> pending, Set<String> checksums, List<File> duplicates)
+    {
+        Deque<String> folders = new ArrayDeque<String>();
+        folders.push(pinnedFolder);
+        while (open && !folders.isEmpty())
+        {
+            String folder = folders.pop();
+            File[] children = remote.retrieveChildren(folder);
+            if (null == children)
+            {
+                throw new IllegalStateException(String.format("Unable to list %s", folder));
+            }
+            store.putChildren(folder, children);
+            for(File child : children)
+            {
+                seen.add(child.getAbsolutePath());
+                if (child.isDirectory())
+                {
+                    folders.push(child.getAbsolutePath());
+                    continue;
+                }
+
+                // Skip the up to date files, link the already stored contents
+                if (store.hasContent(child))
+                {
+                    continue;
+                }
+                if (store.linkContent(child))
+                {
+                    filesDeduplicated.increment();
+                    continue;
+                }
+
+                // Download each checksum once
+                String checksum = child.getMd5Checksum();
+                if (null != checksum && !checksums.add(checksum.toLowerCase(Locale.US)))
+                {
+                    duplicates.add(child);
+                    continue;
+                }
+                pending.add(queueDownload(child));
+            }
+        }
+    }
+
+    /**
+     * Queues the download of a file.
+     * @param file The file.
+     * @return The download result.
+     */
+    private Future<?> queueDownload(final File file)
+    {
+        queueDepth.add(1);
+        try
+        {
+            return downloads.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    RequestTicket previous = ticket.attach();
+                    try
+                    {
+                        download(file);
+                    }
+                    finally
+                    {
+                        RequestTicket.restore(previous);
+                        queueDepth.add(-1);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException exception)
+        {
+            queueDepth.add(-1);
+            throw exception;
+        }
+    }
+
+    /**
+     * Downloads a file into the store once the drive is idle.
+     * @param file The file.
+     */
+    private void download(File file)
+    {
+        // Leave the bandwidth to the user
+        if (!awaitIdle())
+        {
+            return;
+        }
+
+        // Download and store
+        byte[] content = remote.retrieveDriveFileContent(file.getAbsolutePath());
+        if (null == content)
+        {
+            return;
+        }
+        try
+        {
+            store.putContent(file, content);
+        }
+        catch (IOException exception)
+        {
+            throw new IllegalStateException(String.format("Unable to store %s", file.getAbsolutePath()), exception);
+        }
+        filesDownloaded.increment();
+        bytesDownloaded.add(content.length);
+    }
+
+    /**
+     * Waits until the drive has been idle for the configured delay.
+     * @return true once idle, false if closed or interrupted meanwhile.
+     */
+    private boolean awaitIdle()
+    {
+        while (open)
+        {
+            long remainingMillis = configuration.getSnapshot().getSyncIdleDelay() - activity.getIdleMillis();
+            if (remainingMillis <= 0)
+            {
+                return true;
+            }
+            try
+            {
+                Thread.sleep(Math.min(remainingMillis, IDLE_POLL_MILLIS));
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+}
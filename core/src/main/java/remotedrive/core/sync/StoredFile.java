@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.sync;
+
+import remotedrive.core.File;
+
+import java.util.List;
+
+/**
+ * A file or folder of the pinned store, as persisted in its index.
+ */
+public class StoredFile
+{
+    /**
+     * File id.
+     */
+    public String id;
+
+    /**
+     * File title.
+     */
+    public String title;
+
+    /**
+     * File absolute path.
+     */
+    public String absolutePath;
+
+    /**
+     * File is directory.
+     */
+    public boolean directory;
+
+    /**
+     * File size.
+     */
+    public long size;
+
+    /**
+     * File creation time.
+     */
+    public long creationTime;
+
+    /**
+     * File last modification time.
+     */
+    public long modifiedTime;
+
+    /**
+     * File content MD5 checksum, null if unknown.
+     */
+    public String md5Checksum;
+
+    /**
+     * File content revision, null if unknown.
+     */
+    public String revision;
+
+    /**
+     * The paths of the folder children, null if the listing isn't stored.
+     */
+    public List<String> children;
+
+    /**
+     * The name of the content file, null if the content isn't stored.
+     */
+    public String content;
+
+    /**
+     * Initializes an empty entry, for deserialization.
+     */
+    public StoredFile()
+    {
+    }
+
+    /**
+     * Initializes an entry from a file.
+     * @param file The file.
+     */
+    public StoredFile(File file)
+    {
+        this.id = file.getId();
+        this.title = file.getTitle();
+        this.absolutePath = file.getAbsolutePath();
+        this.directory = file.isDirectory();
+        this.size = file.getSize();
+        this.creationTime = file.getCreationTime();
+        this.modifiedTime = file.getModifiedTime();
+        this.md5Checksum = file.getMd5Checksum();
+        this.revision = file.getRevision();
+    }
+
+    /**
+     * Checks whether the entry describes the same revision of a file.
+     * @param file The file.
+     * @return true if the stored content is still the file content, false otherwise.
+     */
+    public boolean isSameRevision(File file)
+    {
+        return toFile().isSameRevision(file);
+    }
+
+    /**
+     * Converts the entry into a file.
+     * @return The file.
+     */
+    public File toFile()
+    {
+        return new File(id, title, absolutePath, directory, size, null, creationTime, modifiedTime, md5Checksum, revision);
+    }
+}
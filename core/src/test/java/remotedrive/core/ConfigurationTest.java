@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import remotedrive.core.exception.ConfigurationException;
+
+import java.util.function.BiFunction;
+
+/**
+ * Tests the configuration snapshots.
+ */
+public class ConfigurationTest
+{
+    @Test
+    public void snapshot_values()
+    {
+        Configuration configuration = new Configuration();
+        configuration.writeString("name", "Drive name");
+        configuration.writeString("mounting-point", "j");
+        configuration.writeString("factory-name", "GoogleDrive");
+        configuration.writeBoolean("caching", true);
+
+        ConfigurationSnapshot snapshot = configuration.getSnapshot();
+        TestCase.assertEquals("Drive name", snapshot.getName());
+        TestCase.assertEquals("J", snapshot.getMountingPoint());
+        TestCase.assertEquals("GoogleDrive", snapshot.getFactoryName());
+        TestCase.assertNull(snapshot.getUsername());
+        TestCase.assertTrue(snapshot.isCaching());
+        TestCase.assertFalse(snapshot.isEnabled());
+        TestCase.assertSame(snapshot, configuration.getSnapshot());
+    }
+
+    @Test
+    public void snapshot_swappedOnWrite()
+    {
+        Configuration configuration = new Configuration();
+        configuration.writeBoolean("enabled", false);
+        ConfigurationSnapshot snapshot = configuration.getSnapshot();
+
+        configuration.writeBoolean("enabled", true);
+        TestCase.assertFalse(snapshot.isEnabled());
+        TestCase.assertNotSame(snapshot, configuration.getSnapshot());
+        TestCase.assertTrue(configuration.getSnapshot().isEnabled());
+    }
+
+    @Test
+    public void snapshot_swappedOnMapChange()
+    {
+        Configuration configuration = new Configuration();
+        configuration.putIfAbsent("[global]name", "First");
+        TestCase.assertEquals("First", configuration.getSnapshot().getName());
+
+        configuration.replace("[global]name", "Second");
+        TestCase.assertEquals("Second", configuration.getSnapshot().getName());
+
+        configuration.merge("[global]name", " drive", new BiFunction<String, String, String>()
+        {
+            @Override
+            public String apply(String current, String value)
+            {
+                return current + value;
+            }
+        });
+        TestCase.assertEquals("Second drive", configuration.getSnapshot().getName());
+
+        configuration.remove("[global]name", "Second drive");
+        TestCase.assertNull(configuration.getSnapshot().getName());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshot_readOnlyEntries()
+    {
+        Configuration configuration = new Configuration();
+        configuration.writeString("name", "Drive name");
+        configuration.entrySet().iterator().next().setValue("Other name");
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void snapshot_invalidBoolean()
+    {
+        Configuration configuration = new Configuration();
+        configuration.writeString("enabled", "yes");
+        configuration.getSnapshot();
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void snapshot_invalidMountingPoint()
+    {
+        Configuration configuration = new Configuration();
+        configuration.writeString("mounting-point", "J:");
+        configuration.getSnapshot();
+    }
+}
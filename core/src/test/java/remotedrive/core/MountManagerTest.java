@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import remotedrive.core.impl.TestClient;
+import remotedrive.core.impl.TestClientFactory;
+import remotedrive.core.impl.TestFileSystemHandler;
+import remotedrive.core.metrics.InstrumentedClient;
+import remotedrive.core.metrics.MetricsRegistry;
+import remotedrive.core.schedule.ThrottledClient;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.ClientFactory;
+import remotedrive.core.spi.FileSystemHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the mount manager.
+ */
+public class MountManagerTest
+{
+    public RemoteDriveBootstrap remoteDriveBootstrap;
+    public Path configurationPath;
+
+    @Before
+    public void setup() throws IOException
+    {
+        configurationPath = Files.createTempFile("", "");
+        Files.delete(configurationPath);
+
+        ExtensionLoader loader = mock(ExtensionLoader.class);
+        when(loader.load(FileSystemHandler.class)).thenReturn(Arrays.<FileSystemHandler>asList(new TestFileSystemHandler()).iterator());
+        when(loader.load(ClientFactory.class)).thenReturn(Arrays.<ClientFactory>asList(new TestClientFactory("Fast", 0), new TestClientFactory("Slow", 300), new TestClientFactory("Stuck", 10000)).iterator());
+        remoteDriveBootstrap = new RemoteDriveBootstrap(loader, configurationPath);
+        remoteDriveBootstrap.load();
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        Files.deleteIfExists(configurationPath);
+    }
+
+    @Test
+    public void mountAll_concurrent() throws Exception
+    {
+        List<Configuration> configurations = Arrays.asList(
+                createConfiguration("Slow", "user1", true),
+                createConfiguration("Slow", "user2", true),
+                createConfiguration("Slow", "user3", true),
+                createConfiguration("Slow", "user4", true),
+                createConfiguration("Fast", "user5", false));
+        MountManager mountManager = new MountManager(remoteDriveBootstrap);
+
+        long start = System.nanoTime();
+        List<Future<Client>> futures = mountManager.mountAll(configurations);
+        for(Future<Client> future : futures)
+        {
+            TestCase.assertEquals(((TestClient) ((ThrottledClient) ((InstrumentedClient) future.get()).getDelegate()).getDelegate()).getUsername().startsWith("user"), true);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        TestCase.assertEquals(4, futures.size());
+        TestCase.assertEquals(true, elapsed < 4 * 300);
+        TestCase.assertEquals(MountState.MOUNTED, mountManager.getState(configurations.get(0)));
+        TestCase.assertEquals(MountState.UNMOUNTED, mountManager.getState(configurations.get(4)));
+
+        mountManager.unmount(configurations.get(0));
+        TestCase.assertEquals(MountState.UNMOUNTED, mountManager.getState(configurations.get(0)));
+        mountManager.shutdown();
+    }
+
+    @Test
+    public void mount_timeout() throws Exception
+    {
+        final CountDownLatch timedOut = new CountDownLatch(1);
+        Configuration configuration = createConfiguration("Stuck", "user", true);
+        MountManager mountManager = new MountManager(remoteDriveBootstrap, 100, TimeUnit.MILLISECONDS);
+        mountManager.addMountListener(new MountListener()
+        {
+            @Override
+            public void onMountStateChanged(Configuration configuration, MountState state, Throwable error)
+            {
+                if (MountState.TIMED_OUT == state)
+                {
+                    timedOut.countDown();
+                }
+            }
+        });
+
+        Future<Client> future = mountManager.mount(configuration);
+
+        TestCase.assertEquals(true, timedOut.await(5, TimeUnit.SECONDS));
+        TestCase.assertEquals(true, future.isCancelled());
+        TestCase.assertEquals(MountState.TIMED_OUT, mountManager.getState(configuration));
+        mountManager.shutdown();
+    }
+
+    @Test
+    public void mount_unknownFactory() throws Exception
+    {
+        Configuration configuration = createConfiguration("Unknown", "user", true);
+        MountManager mountManager = new MountManager(remoteDriveBootstrap);
+
+        try
+        {
+            mountManager.mount(configuration).get();
+            TestCase.fail();
+        }
+        catch (Exception exception)
+        {
+            TestCase.assertEquals("No client factory found for Unknown.", exception.getCause().getMessage());
+        }
+        TestCase.assertEquals(MountState.FAILED, mountManager.getState(configuration));
+        mountManager.shutdown();
+    }
+
+    @Test
+    public void tune_mountedDrive() throws Exception
+    {
+        Configuration configuration = createConfiguration("Fast", "user", true);
+        configuration.writeString("mounting-point", "J");
+        remoteDriveBootstrap.getConfigurations().add(configuration);
+        TestClient client = (TestClient) ((ThrottledClient) ((InstrumentedClient) remoteDriveBootstrap.getMountManager().mount(configuration).get()).getDelegate()).getDelegate();
+
+        Configuration loadedConfiguration = new Configuration();
+        loadedConfiguration.putAll(configuration);
+        loadedConfiguration.writeString("name", "renamed");
+        loadedConfiguration.writeString(ConfigurationSchema.TUNING_SCOPE, "content-cache-size", "10");
+        remoteDriveBootstrap.applyConfigurationChanges(Arrays.asList(loadedConfiguration));
+
+        TestCase.assertEquals(1, client.getTuneCount());
+        TestCase.assertEquals(10, configuration.getSnapshot().getContentCacheSize());
+        TestCase.assertEquals("user", configuration.getSnapshot().getName());
+
+        loadedConfiguration.writeString(ConfigurationSchema.TUNING_SCOPE, "content-cache-size", "-1");
+        remoteDriveBootstrap.applyConfigurationChanges(Arrays.asList(loadedConfiguration));
+
+        TestCase.assertEquals(1, client.getTuneCount());
+        TestCase.assertEquals(10, configuration.getSnapshot().getContentCacheSize());
+        remoteDriveBootstrap.shutdown();
+    }
+
+    @Test
+    public void mount_instrumented() throws Exception
+    {
+        Configuration configuration = createConfiguration("Fast", "instrumented-user", true);
+        MountManager mountManager = new MountManager(remoteDriveBootstrap);
+
+        Client client = mountManager.mount(configuration).get();
+        client.retrieveChildren("");
+        client.retrieveChildren("");
+
+        TestCase.assertEquals(1, MetricsRegistry.getInstance().forDrive("instrumented-user").operation("client.authenticate").getLatency().getCount());
+        TestCase.assertEquals(2, MetricsRegistry.getInstance().forDrive("instrumented-user").operation("client.retrieveChildren").getLatency().getCount());
+        TestCase.assertEquals(0, MetricsRegistry.getInstance().forDrive("instrumented-user").operation("client.retrieveChildren").getErrors().get());
+        mountManager.shutdown();
+    }
+
+    @Test
+    public void unmountInBackground_remount() throws Exception
+    {
+        Configuration configuration = createConfiguration("Slow", "remount-user", true);
+        MountManager mountManager = new MountManager(remoteDriveBootstrap);
+
+        // Cancel the mount in progress, then mount again right away
+        Future<Client> cancelled = mountManager.mount(configuration);
+        Future<?> unmount = mountManager.unmountInBackground(configuration);
+        Future<Client> mounted = mountManager.mount(configuration);
+
+        TestCase.assertNotSame(cancelled, mounted);
+        TestCase.assertNotNull(mounted.get(5, TimeUnit.SECONDS));
+        TestCase.assertEquals(true, unmount.isDone());
+        TestCase.assertEquals(true, cancelled.isCancelled());
+        TestCase.assertEquals(MountState.MOUNTED, mountManager.getState(configuration));
+        mountManager.shutdown();
+    }
+
+    private Configuration createConfiguration(String factoryName, String username, boolean enabled)
+    {
+        Configuration configuration = new Configuration();
+        configuration.writeString("factory-name", factoryName);
+        configuration.writeString("username", username);
+        configuration.writeString("name", username);
+        configuration.writeBoolean("enabled", enabled);
+        return configuration;
+    }
+}
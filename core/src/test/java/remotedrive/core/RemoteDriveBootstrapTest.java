@@ -26,6 +26,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import remotedrive.core.impl.TestClientFactory;
 import remotedrive.core.impl.TestFileSystemHandler;
+import remotedrive.core.impl.TestIndexedClientFactory;
 import remotedrive.core.exception.BootstrapException;
 import remotedrive.core.spi.ClientFactory;
 import remotedrive.core.spi.FileSystemHandler;
@@ -37,9 +38,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Scanner;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -63,6 +67,7 @@ public class RemoteDriveBootstrapTest
         configurationPath = Paths.get(getClass().getResource("/test-configuration.json").toURI());
         invalidConfigurationPath = Paths.get(getClass().getResource("/invalid.json").toURI());
         expectedConfigurationPath = Paths.get(getClass().getResource("/expected.json").toURI());
+        TestIndexedClientFactory.instances.set(0);
     }
 
     @Test
@@ -128,6 +133,47 @@ public class RemoteDriveBootstrapTest
         TestCase.assertEquals(true, remoteDriveBootstrap.availableClientFactories().contains("B"));
     }
 
+    @Test
+    public void load_clientsIndexed() throws IOException
+    {
+        List<ClientFactoryDescriptor> index = new ExtensionLoader().loadClientFactoryIndex();
+        when(loader.loadClientFactoryIndex()).thenReturn(index);
+        RemoteDriveBootstrap remoteDriveBootstrap = new RemoteDriveBootstrap(loader, configurationPath);
+        remoteDriveBootstrap.loadClients();
+
+        TestCase.assertEquals(1, remoteDriveBootstrap.availableClientFactories().size());
+        TestCase.assertEquals(true, remoteDriveBootstrap.availableClientFactories().contains("Indexed"));
+        TestCase.assertEquals(TestIndexedClientFactory.class.getName(), remoteDriveBootstrap.lookupClientFactoryDescriptor("Indexed").getClassName());
+        TestCase.assertEquals(true, null != remoteDriveBootstrap.lookupClientFactoryDescriptor("Indexed").getImageAsStream());
+        TestCase.assertEquals(false, remoteDriveBootstrap.lookupClientFactoryDescriptor("Indexed").isLoaded());
+        TestCase.assertEquals(0, TestIndexedClientFactory.instances.get());
+
+        TestCase.assertEquals(TestIndexedClientFactory.class, remoteDriveBootstrap.lookupClientFactory("Indexed").getClass());
+        TestCase.assertEquals(TestIndexedClientFactory.class, remoteDriveBootstrap.lookupClientFactory("Indexed").getClass());
+        TestCase.assertEquals(1, TestIndexedClientFactory.instances.get());
+        verify(loader, never()).load(ClientFactory.class);
+    }
+
+    @Test
+    public void load_clientsIndexedAndLoaded() throws IOException
+    {
+        List<ClientFactoryDescriptor> index = new ExtensionLoader().loadClientFactoryIndex();
+        when(loader.loadClientFactoryIndex()).thenReturn(index);
+        when(loader.loadServiceClassNames(ClientFactory.class)).thenReturn(Arrays.asList(TestIndexedClientFactory.class.getName(), TestClientFactory.class.getName()));
+        when(loader.loadClientFactory(TestClientFactory.class.getName())).thenReturn(new ClientFactoryDescriptor(new TestClientFactory("A")));
+        RemoteDriveBootstrap remoteDriveBootstrap = new RemoteDriveBootstrap(loader, configurationPath);
+        remoteDriveBootstrap.loadClients();
+
+        TestCase.assertEquals(2, remoteDriveBootstrap.availableClientFactories().size());
+        TestCase.assertEquals(true, remoteDriveBootstrap.availableClientFactories().contains("A"));
+        TestCase.assertEquals(TestClientFactory.class.getName(), remoteDriveBootstrap.lookupClientFactoryDescriptor("A").getClassName());
+        TestCase.assertEquals(TestIndexedClientFactory.class.getName(), remoteDriveBootstrap.lookupClientFactoryDescriptor("Indexed").getClassName());
+        TestCase.assertEquals(false, remoteDriveBootstrap.lookupClientFactoryDescriptor("Indexed").isLoaded());
+        TestCase.assertEquals(0, TestIndexedClientFactory.instances.get());
+        verify(loader, never()).load(ClientFactory.class);
+        verify(loader, never()).loadClientFactory(TestIndexedClientFactory.class.getName());
+    }
+
     @Test
     public void init_existingConfiguration() throws IOException
     {
@@ -219,4 +265,28 @@ public class RemoteDriveBootstrapTest
 
         TestCase.assertEquals(new Scanner(expectedConfigurationPath.toFile()).nextLine(), new Scanner(tmpPath.toFile()).nextLine());
     }
+
+    @Test
+    public void scheduleConfigurationSave() throws IOException
+    {
+        Path tmpPath = Files.createTempFile("", "");
+        Files.delete(tmpPath);
+
+        when(loader.load(FileSystemHandler.class)).thenReturn(Arrays.<FileSystemHandler>asList(new TestFileSystemHandler()).iterator());
+        when(loader.load(ClientFactory.class)).thenReturn(Arrays.<ClientFactory>asList(new TestClientFactory("A")).iterator());
+        RemoteDriveBootstrap remoteDriveBootstrap = new RemoteDriveBootstrap(loader, tmpPath);
+        remoteDriveBootstrap.load();
+
+        Configuration configuration = new Configuration();
+        remoteDriveBootstrap.getConfigurations().add(configuration);
+        remoteDriveBootstrap.scheduleConfigurationSave();
+        configuration.writeString("string-default-scope", "string1");
+        configuration.writeString("scope1", "string-scope", "string2");
+        configuration.writeBoolean("boolean-default-scope", true);
+        configuration.writeBoolean("scope2", "boolean-scope", false);
+        remoteDriveBootstrap.scheduleConfigurationSave();
+        remoteDriveBootstrap.shutdown();
+
+        TestCase.assertEquals(new Scanner(expectedConfigurationPath.toFile()).nextLine(), new Scanner(tmpPath.toFile()).nextLine());
+    }
 }
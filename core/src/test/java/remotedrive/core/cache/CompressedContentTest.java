@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.cache;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the compressed contents.
+ */
+public class CompressedContentTest
+{
+    @Test
+    public void compress_text()
+    {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; builder.length() < 5 * CompressedContent.BLOCK_SIZE / 2; ++i)
+        {
+            builder.append(i).append(",2014-06-01,remote-drive,").append(i % 7).append('\n');
+        }
+        byte[] text = builder.toString().getBytes(StandardCharsets.US_ASCII);
+        CompressedContent content = CompressedContent.compress(text);
+
+        TestCase.assertTrue(content.isCompressed());
+        TestCase.assertTrue(content.getStoredSize() * 3 < text.length);
+        TestCase.assertTrue(Arrays.equals(text, content.toByteArray()));
+
+        // Ranges spanning partial and whole blocks
+        byte[] buffer = new byte[CompressedContent.BLOCK_SIZE + 200];
+        int read = content.read(CompressedContent.BLOCK_SIZE - 100, buffer, 0, buffer.length);
+        TestCase.assertEquals(buffer.length, read);
+        TestCase.assertTrue(Arrays.equals(Arrays.copyOfRange(text, CompressedContent.BLOCK_SIZE - 100, CompressedContent.BLOCK_SIZE + 100 + CompressedContent.BLOCK_SIZE), buffer));
+        read = content.read(text.length - 10, buffer, 5, 100);
+        TestCase.assertEquals(10, read);
+        TestCase.assertTrue(Arrays.equals(Arrays.copyOfRange(text, text.length - 10, text.length), Arrays.copyOfRange(buffer, 5, 15)));
+        TestCase.assertEquals(0, content.read(text.length, buffer, 0, 1));
+    }
+
+    @Test
+    public void compress_incompressible()
+    {
+        byte[] media = new byte[3 * CompressedContent.BLOCK_SIZE];
+        new Random(42).nextBytes(media);
+        CompressedContent content = CompressedContent.compress(media);
+
+        TestCase.assertFalse(content.isCompressed());
+        TestCase.assertEquals(media.length, content.getStoredSize());
+        TestCase.assertSame(media, content.toByteArray());
+    }
+}
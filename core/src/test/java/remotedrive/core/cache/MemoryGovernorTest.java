@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.cache;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import remotedrive.core.impl.TestClient;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.InstrumentedClient;
+import remotedrive.core.metrics.MetricsRegistry;
+import remotedrive.core.spi.MemoryReclaimable;
+
+import java.lang.management.MemoryPoolMXBean;
+import java.util.Collections;
+
+/**
+ * Tests the memory governor.
+ */
+public class MemoryGovernorTest
+{
+    @Test
+    public void evaluate_shrinksContentsOfIdleDrivesFirst() throws Exception
+    {
+        MemoryGovernor governor = new MemoryGovernor(Collections.<MemoryPoolMXBean>emptyList());
+        MetricsRegistry registry = new MetricsRegistry();
+        DriveMetrics idleMetrics = registry.forDrive("idle");
+        InstrumentedClient idleClient = new InstrumentedClient(new TestClient(0), idleMetrics);
+        Thread.sleep(20);
+        InstrumentedClient activeClient = new InstrumentedClient(new TestClient(0), registry.forDrive("active"));
+        activeClient.onAccess("/file", false);
+        ScaledCaches idle = new ScaledCaches();
+        ScaledCaches active = new ScaledCaches();
+        governor.register(idle, idleClient, idleMetrics);
+        governor.register(active, activeClient, registry.forDrive("active"));
+
+        // The idle drive gives up its contents before the active one
+        governor.evaluate(MemoryGovernor.HIGH_USAGE);
+        TestCase.assertEquals(0.5, idle.contentScale);
+        TestCase.assertEquals(1.0, active.contentScale);
+
+        // Above the critical usage every content is dropped, then the metadata shrink
+        governor.evaluate(MemoryGovernor.CRITICAL_USAGE);
+        TestCase.assertEquals(0.0, idle.contentScale);
+        TestCase.assertEquals(0.0, active.contentScale);
+        TestCase.assertEquals(1.0, idle.metadataScale);
+        governor.evaluate(MemoryGovernor.CRITICAL_USAGE);
+        TestCase.assertEquals(0.5, idle.metadataScale);
+        TestCase.assertEquals(1.0, active.metadataScale);
+        TestCase.assertEquals(3, idleMetrics.counter("cache.shrinks").get());
+
+        // Nothing grows back right after a shrink
+        governor.evaluate(0);
+        TestCase.assertEquals(0.5, idle.metadataScale);
+        governor.unregister(idle);
+        governor.unregister(active);
+    }
+
+    /**
+     * Records the scales it's given.
+     */
+    private static class ScaledCaches implements MemoryReclaimable
+    {
+        private double contentScale = 1;
+        private double metadataScale = 1;
+
+        @Override
+        public void scaleCaches(double contentScale, double metadataScale)
+        {
+            this.contentScale = contentScale;
+            this.metadataScale = metadataScale;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.impl;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.Tunable;
+
+/**
+ * Very simple Client for testing purpose only.
+ */
+public class TestClient implements Client, Tunable
+{
+    private long authenticationDelay;
+    private String username;
+    private int tuneCount;
+
+    public TestClient(long authenticationDelay)
+    {
+        this.authenticationDelay = authenticationDelay;
+    }
+
+    public String getUsername()
+    {
+        return username;
+    }
+
+    public int getTuneCount()
+    {
+        return tuneCount;
+    }
+
+    @Override
+    public void tune(Configuration configuration)
+    {
+        ++tuneCount;
+    }
+
+    @Override
+    public void authenticate(String username, char[] password)
+    {
+        try
+        {
+            Thread.sleep(authenticationDelay);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        this.username = username;
+    }
+
+    @Override
+    public Drive retrieveDiskInformation()
+    {
+        return new Drive(0, 0);
+    }
+
+    @Override
+    public File[] retrieveChildren(String parentPath)
+    {
+        return new File[0];
+    }
+
+    @Override
+    public File retrieveDriveFile(String filePath)
+    {
+        return null;
+    }
+
+    @Override
+    public byte[] retrieveDriveFileContent(String filePath)
+    {
+        return null;
+    }
+}
@@ -31,10 +31,17 @@ import java.io.InputStream;
 public class TestClientFactory implements ClientFactory
 {
     private String name;
+    private long authenticationDelay;
 
     public TestClientFactory(String name)
+    {
+        this(name, 0);
+    }
+
+    public TestClientFactory(String name, long authenticationDelay)
     {
         this.name = name;
+        this.authenticationDelay = authenticationDelay;
     }
 
     @Override
@@ -52,6 +59,6 @@ public class TestClientFactory implements ClientFactory
     @Override
     public Client createClient(Configuration configuration)
     {
-        return null;
+        return new TestClient(authenticationDelay);
     }
 }
@@ -40,7 +40,7 @@ public class TestFileSystemHandler implements FileSystemHandler
     }
 
     @Override
-    public void umount()
+    public void umount(Configuration configuration)
     {
     }
 }
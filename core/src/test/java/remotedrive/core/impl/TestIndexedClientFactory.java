@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.impl;
+
+import remotedrive.core.Configuration;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.ClientFactory;
+import remotedrive.core.spi.ClientFactoryDefinition;
+
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Indexed ClientFactory for testing purpose only.
+ */
+@ClientFactoryDefinition(name = "Indexed", icon = "/test-configuration.json")
+public class TestIndexedClientFactory implements ClientFactory
+{
+    public static final AtomicInteger instances = new AtomicInteger();
+
+    public TestIndexedClientFactory()
+    {
+        instances.incrementAndGet();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Indexed";
+    }
+
+    @Override
+    public InputStream getImageAsStream()
+    {
+        return getClass().getResourceAsStream("/test-configuration.json");
+    }
+
+    @Override
+    public Client createClient(Configuration configuration)
+    {
+        return new TestClient(0);
+    }
+}
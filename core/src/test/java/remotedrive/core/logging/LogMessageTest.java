@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.logging;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Tests the lazily formatted log messages.
+ */
+public class LogMessageTest
+{
+    @Test
+    public void format_arguments()
+    {
+        TestCase.assertEquals("Read a.txt at 42", LogMessage.format("Read {} at {}", "a.txt", 42).toString());
+        TestCase.assertEquals("[Drive] Read null", new LogMessage("Drive", "Read {}", new Object[] {null}).toString());
+    }
+
+    @Test
+    public void format_placeholdersMismatch()
+    {
+        TestCase.assertEquals("Read a.txt at {}", LogMessage.format("Read {} at {}", "a.txt").toString());
+        TestCase.assertEquals("Read", LogMessage.format("Read", "a.txt").toString());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Tests the histogram.
+ */
+public class HistogramTest
+{
+    @Test
+    public void record_percentiles()
+    {
+        Histogram histogram = new Histogram();
+        for(int i = 1; i <= 100; ++i)
+        {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+
+        TestCase.assertEquals(101, histogram.getCount());
+        TestCase.assertEquals(5050, histogram.getSum());
+        TestCase.assertEquals(0, histogram.getPercentile(0));
+        TestCase.assertEquals(63, histogram.getPercentile(50));
+        TestCase.assertEquals(127, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void record_empty()
+    {
+        Histogram histogram = new Histogram();
+
+        TestCase.assertEquals(0, histogram.getCount());
+        TestCase.assertEquals(0, histogram.getMean());
+        TestCase.assertEquals(0, histogram.getPercentile(99));
+    }
+}
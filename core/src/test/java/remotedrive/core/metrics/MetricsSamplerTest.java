@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.metrics;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Tests the metrics sampler.
+ */
+public class MetricsSamplerTest
+{
+    @Test
+    public void sample_interval()
+    {
+        DriveMetrics metrics = new MetricsRegistry().forDrive("sampled");
+        metrics.operation("dokan.onReadFile").getLatency().record(1000);
+        metrics.counter("cache.content.hits").add(5);
+        MetricsSampler sampler = new MetricsSampler(metrics);
+
+        // Only the activity since the previous sample is reported
+        for(int i = 0; i < 99; ++i)
+        {
+            metrics.operation("dokan.onReadFile").getLatency().record(100);
+        }
+        metrics.operation("dokan.onFindFiles").getLatency().record(100000);
+        metrics.operation("client.retrieveChildren").getLatency().record(100000000);
+        metrics.counter("cache.content.hits").add(3);
+        metrics.counter("cache.content.misses").add(1);
+        metrics.gauge(DriveMetrics.QUEUE_DEPTH).add(2);
+        MetricsSample sample = sampler.sample();
+
+        TestCase.assertEquals(2, sample.getOperationsPerSecond().size());
+        TestCase.assertTrue(sample.getOperationsPerSecond().containsKey("onReadFile"));
+        TestCase.assertEquals(127, sample.getLatencyMedian());
+        TestCase.assertEquals(127, sample.getLatency99());
+        TestCase.assertEquals(0.75, sample.getCacheHitRatio(), 0.0001);
+        TestCase.assertEquals(2, sample.getQueueDepth());
+        TestCase.assertTrue(Double.isNaN(sample.getCacheCompressionGain()));
+
+        // An idle interval
+        metrics.gauge(MetricsSampler.CACHE_RAW_BYTES).add(3000);
+        metrics.gauge(MetricsSampler.CACHE_STORED_BYTES).add(1000);
+        sample = sampler.sample();
+        TestCase.assertEquals(3.0, sample.getCacheCompressionGain(), 0.0001);
+        TestCase.assertTrue(sample.getOperationsPerSecond().isEmpty());
+        TestCase.assertEquals(0, sample.getLatency99());
+        TestCase.assertTrue(Double.isNaN(sample.getCacheHitRatio()));
+    }
+}
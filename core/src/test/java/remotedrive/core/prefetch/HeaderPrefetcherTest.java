@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.prefetch;
+
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+import remotedrive.core.Configuration;
+import remotedrive.core.ContentRange;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.MetricsRegistry;
+import remotedrive.core.spi.Client;
+import remotedrive.core.spi.RangeReadable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the header prefetching.
+ */
+public class HeaderPrefetcherTest
+{
+    public Configuration configuration;
+    public DriveMetrics metrics;
+
+    @Before
+    public void setup()
+    {
+        configuration = new Configuration();
+        configuration.writeString("name", "prefetch");
+        configuration.writeString("tuning", "prefetch-header-size", "1");
+        configuration.writeString("tuning", "prefetch-extensions", "JPG, .mp4");
+        metrics = new MetricsRegistry().forDrive("prefetch");
+    }
+
+    @Test
+    public void prefetch_readsMatchingHeaders() throws Exception
+    {
+        RangedClient client = new RangedClient(2);
+        HeaderPrefetcher prefetcher = new HeaderPrefetcher(client, configuration, metrics);
+        File[] children = new File[] {
+            new File("1", "photo.JPG", "Photos/photo.JPG", false, 5000, null, 0),
+            new File("2", "Trip", "Photos/Trip", true, 0, null, 0),
+            new File("3", "notes.txt", "Photos/notes.txt", false, 5000, null, 0),
+            new File("4", "clip.mp4", "Photos/clip.mp4", false, 100, null, 0)
+        };
+        prefetcher.prefetch(children);
+        TestCase.assertTrue(client.latch.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (2 != metrics.counter("prefetch.files").get() && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+
+        // Only the images and videos are read, up to the header size
+        prefetcher.close();
+        List<String> reads = client.getReads();
+        Collections.sort(reads);
+        TestCase.assertEquals(Arrays.asList("Photos/clip.mp4:0+100", "Photos/photo.JPG:0+1024"), reads);
+        TestCase.assertEquals(2, metrics.counter("prefetch.files").get());
+        TestCase.assertEquals(1124, metrics.counter("prefetch.bytes").get());
+    }
+
+    @Test
+    public void prefetch_skipsRecentAndLimitsFiles() throws Exception
+    {
+        configuration.writeString("tuning", "prefetch-max-files", "2");
+        RangedClient client = new RangedClient(2);
+        HeaderPrefetcher prefetcher = new HeaderPrefetcher(client, configuration, metrics);
+        File[] children = new File[3];
+        for(int i = 0; i < children.length; ++i)
+        {
+            children[i] = new File(String.valueOf(i), i + ".jpg", "Photos/" + i + ".jpg", false, 10, null, 0);
+        }
+        prefetcher.prefetch(children);
+        TestCase.assertTrue(client.latch.await(5, TimeUnit.SECONDS));
+
+        // Enumerating the folder again doesn't read the same headers
+        prefetcher.prefetch(new File[] {children[0], children[1]});
+        prefetcher.close();
+        TestCase.assertEquals(2, client.getReads().size());
+    }
+
+    @Test
+    public void hasExtension()
+    {
+        List<String> extensions = Arrays.asList("jpg", "docx");
+        TestCase.assertTrue(HeaderPrefetcher.hasExtension("a.b.DOCX", extensions));
+        TestCase.assertFalse(HeaderPrefetcher.hasExtension("jpg", extensions));
+        TestCase.assertFalse(HeaderPrefetcher.hasExtension("a.jpeg", extensions));
+    }
+
+    @Test
+    public void slice()
+    {
+        byte[] content = "header".getBytes();
+        TestCase.assertSame(content, ContentRange.slice(content, 0, 10));
+        TestCase.assertEquals("ade", new String(ContentRange.slice(content, 2, 3)));
+        TestCase.assertEquals("er", new String(ContentRange.slice(content, 4, 3)));
+        TestCase.assertEquals(0, ContentRange.slice(content, 10, 3).length);
+        TestCase.assertNull(ContentRange.slice(null, 0, 3));
+    }
+
+    public static class RangedClient implements Client, RangeReadable
+    {
+        public final CountDownLatch latch;
+        public final List<String> reads = new ArrayList<String>();
+
+        public RangedClient(int expectedReads)
+        {
+            latch = new CountDownLatch(expectedReads);
+        }
+
+        public synchronized List<String> getReads()
+        {
+            return new ArrayList<String>(reads);
+        }
+
+        @Override
+        public void authenticate(String username, char[] password)
+        {
+        }
+
+        @Override
+        public Drive retrieveDiskInformation()
+        {
+            return new Drive(0, 0);
+        }
+
+        @Override
+        public File[] retrieveChildren(String parentPath)
+        {
+            return new File[0];
+        }
+
+        @Override
+        public File retrieveDriveFile(String filePath)
+        {
+            return null;
+        }
+
+        @Override
+        public byte[] retrieveDriveFileContent(String filePath)
+        {
+            throw new IllegalStateException("Whole content read of " + filePath);
+        }
+
+        @Override
+        public byte[] retrieveDriveFileContent(String filePath, long offset, int length)
+        {
+            synchronized (this)
+            {
+                reads.add(filePath + ":" + offset + "+" + length);
+            }
+            latch.countDown();
+            return new byte[length];
+        }
+    }
+}
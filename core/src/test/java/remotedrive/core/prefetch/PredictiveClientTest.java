@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.prefetch;
+
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+import remotedrive.core.Configuration;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.MetricsRegistry;
+import remotedrive.core.spi.Client;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the access prediction.
+ */
+public class PredictiveClientTest
+{
+    public Path modelFile;
+    public Configuration configuration;
+    public DriveMetrics metrics;
+
+    @Before
+    public void setup() throws Exception
+    {
+        modelFile = Files.createTempDirectory("predict").resolve("access-model.json");
+        configuration = new Configuration();
+        configuration.writeString("name", "predict");
+        metrics = new MetricsRegistry().forDrive("predict");
+    }
+
+    @Test
+    public void predict_chainsLikelyTransitions() throws Exception
+    {
+        AccessModel model = new AccessModel();
+        for(int i = 0; i < 3; ++i)
+        {
+            model.record("Project/", "Project/plan.txt");
+            model.record("Project/plan.txt", "Project/specs.txt");
+        }
+        model.record("Project/plan.txt", "Project/old.txt");
+
+        // The unlikely successor is left out, the chain is followed
+        TestCase.assertEquals(Arrays.asList("Project/plan.txt", "Project/specs.txt"), model.predict("Project/", 0.5, 10));
+        TestCase.assertEquals(Arrays.asList("Project/plan.txt"), model.predict("Project/", 0.5, 1));
+        TestCase.assertTrue(model.predict("Project/specs.txt", 0.5, 10).isEmpty());
+
+        // The model survives a restart
+        model.save(modelFile);
+        List<String> predictions = AccessModel.load(modelFile).predict("Project/", 0.5, 10);
+        TestCase.assertEquals(Arrays.asList("Project/plan.txt", "Project/specs.txt"), predictions);
+        Files.delete(modelFile);
+        Files.delete(modelFile.getParent());
+    }
+
+    @Test
+    public void onAccess_prefetchesAndScoresPredictions() throws Exception
+    {
+        ContentClient remote = new ContentClient();
+        PredictiveClient client = new PredictiveClient(remote, modelFile, configuration, metrics);
+        for(int round = 0; round < 4; ++round)
+        {
+            client.onAccess("Project", true);
+            client.onAccess("Project/plan.txt", false);
+            client.onAccess("Project/plan.txt", false);
+            client.onAccess("Project/specs.txt", false);
+            client.onAccess("Music", true);
+            awaitIdle();
+        }
+        client.close();
+
+        // Repeated reads of a file are a single access, the last rounds are predicted
+        TestCase.assertEquals(16, metrics.counter("predict.accesses").get());
+        TestCase.assertTrue(0 < metrics.counter("predict.prefetched").get());
+        TestCase.assertTrue(0 < metrics.counter("predict.hits").get());
+        TestCase.assertTrue(metrics.counter("predict.hits").get() <= metrics.counter("predict.prefetched").get());
+        TestCase.assertTrue(0 < remote.contentReads.get());
+        TestCase.assertTrue(Files.exists(modelFile));
+
+        // No prefetch without budget
+        configuration.writeString("tuning", "predict-budget", "0");
+        client = new PredictiveClient(remote, modelFile, configuration, metrics);
+        long prefetched = metrics.counter("predict.prefetched").get();
+        client.onAccess("Project", true);
+        awaitIdle();
+        client.close();
+        TestCase.assertEquals(prefetched, metrics.counter("predict.prefetched").get());
+        Files.delete(modelFile);
+        Files.delete(modelFile.getParent());
+    }
+
+    private void awaitIdle() throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (0 != metrics.gauge(DriveMetrics.QUEUE_DEPTH).get() && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    public static class ContentClient implements Client
+    {
+        public final AtomicInteger contentReads = new AtomicInteger();
+
+        @Override
+        public void authenticate(String username, char[] password)
+        {
+        }
+
+        @Override
+        public Drive retrieveDiskInformation()
+        {
+            return new Drive(0, 0);
+        }
+
+        @Override
+        public File[] retrieveChildren(String parentPath)
+        {
+            return new File[0];
+        }
+
+        @Override
+        public File retrieveDriveFile(String filePath)
+        {
+            return new File(filePath, filePath.substring(filePath.lastIndexOf('/') + 1), filePath, false, 4, null, 0);
+        }
+
+        @Override
+        public byte[] retrieveDriveFileContent(String filePath)
+        {
+            contentReads.incrementAndGet();
+            return "data".getBytes();
+        }
+    }
+}
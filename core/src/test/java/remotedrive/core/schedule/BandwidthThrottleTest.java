@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+import remotedrive.core.Configuration;
+import remotedrive.core.exception.ConfigurationException;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.MetricsRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the bandwidth throttling.
+ */
+public class BandwidthThrottleTest
+{
+    public Configuration configuration;
+    public DriveMetrics metrics;
+
+    @Before
+    public void setup()
+    {
+        configuration = new Configuration();
+        configuration.writeString("name", "bandwidth");
+        configuration.writeString("tuning", "bandwidth-background-limit", "4096");
+        metrics = new MetricsRegistry().forDrive("bandwidth");
+    }
+
+    @Test
+    public void consume_throttlesBackgroundOnly() throws Exception
+    {
+        BandwidthThrottle throttle = new BandwidthThrottle(configuration, metrics, new GlobalBandwidth());
+        BandwidthThrottle previous = throttle.attach();
+        try
+        {
+            // Interactive transfers aren't limited
+            long start = System.nanoTime();
+            transfer(6 * 1024 * 1024);
+            TestCase.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 400);
+
+            // Background transfers are shaped once the burst is spent
+            RequestTicket ticket = new RequestTicket(RequestPriority.PREFETCH);
+            RequestTicket previousTicket = ticket.attach();
+            start = System.nanoTime();
+            try
+            {
+                transfer(6 * 1024 * 1024);
+            }
+            finally
+            {
+                RequestTicket.restore(previousTicket);
+            }
+            TestCase.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 400);
+        }
+        finally
+        {
+            BandwidthThrottle.restore(previous);
+            throttle.close();
+        }
+        TestCase.assertEquals(6 * 1024 * 1024, metrics.counter("bandwidth.bytes.interactive").get());
+        TestCase.assertEquals(6 * 1024 * 1024, metrics.counter("bandwidth.bytes.background").get());
+        TestCase.assertEquals(0, metrics.counter("bandwidth.throttled-millis.interactive").get());
+        TestCase.assertTrue(metrics.counter("bandwidth.throttled-millis.background").get() >= 400);
+    }
+
+    @Test
+    public void tune_strictestGlobalLimitApplies() throws Exception
+    {
+        GlobalBandwidth global = new GlobalBandwidth();
+        configuration.writeString("tuning", "bandwidth-global-interactive-limit", "2048");
+        BandwidthThrottle throttle = new BandwidthThrottle(configuration, metrics, global);
+        Configuration otherConfiguration = new Configuration();
+        otherConfiguration.writeString("tuning", "bandwidth-global-interactive-limit", "1024");
+        BandwidthThrottle otherThrottle = new BandwidthThrottle(otherConfiguration, metrics, global);
+        TestCase.assertEquals(1024 * 1024, global.getBucket(true).getRate());
+        TestCase.assertEquals(0, global.getBucket(false).getRate());
+
+        // Lifted once the strictest drive is gone or retuned
+        otherThrottle.close();
+        TestCase.assertEquals(2048 * 1024, global.getBucket(true).getRate());
+        configuration.writeString("tuning", "bandwidth-global-interactive-limit", "0");
+        throttle.tune(configuration);
+        TestCase.assertEquals(0, global.getBucket(true).getRate());
+        throttle.close();
+    }
+
+    @Test
+    public void hours_parseAndWrapAroundMidnight() throws Exception
+    {
+        DailyHours hours = DailyHours.parse("08:00-12:00, 22:30-06:00");
+        TestCase.assertEquals("08:00-12:00,22:30-06:00", hours.toString());
+        TestCase.assertTrue(hours.contains(8 * 60));
+        TestCase.assertFalse(hours.contains(12 * 60));
+        TestCase.assertTrue(hours.contains(23 * 60));
+        TestCase.assertTrue(hours.contains(5 * 60 + 59));
+        TestCase.assertFalse(hours.contains(7 * 60));
+        TestCase.assertTrue(DailyHours.parse(" ").isAlways());
+
+        // Invalid ranges are configuration errors
+        configuration.writeString("tuning", "bandwidth-hours", "08:00-25:00");
+        try
+        {
+            configuration.getSnapshot();
+            TestCase.fail();
+        }
+        catch (ConfigurationException exception)
+        {
+            TestCase.assertTrue(exception.getMessage().contains("bandwidth-hours"));
+        }
+    }
+
+    private static void transfer(int bytes)
+    {
+        for(int remaining = bytes; 0 < remaining; remaining -= 8192)
+        {
+            BandwidthThrottle.consume(Math.min(8192, remaining));
+        }
+    }
+}
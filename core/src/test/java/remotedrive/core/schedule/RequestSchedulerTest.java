@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.schedule;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import remotedrive.core.Configuration;
+import remotedrive.core.exception.RequestCancelledException;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests the request scheduler.
+ */
+public class RequestSchedulerTest
+{
+    @Test
+    public void acquire_interactiveOvertakesBackground() throws Exception
+    {
+        Configuration configuration = new Configuration();
+        configuration.writeString("tuning", "io-concurrency", "2");
+        configuration.writeString("tuning", "io-interactive-reserve", "1");
+        DriveMetrics metrics = new MetricsRegistry().forDrive("schedule");
+        final RequestScheduler scheduler = new RequestScheduler(configuration, metrics);
+        final List<RequestPriority> granted = Collections.synchronizedList(new ArrayList<RequestPriority>());
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        // A single background slot, taken by a prefetch
+        RequestTicket prefetch = new RequestTicket(RequestPriority.PREFETCH);
+        scheduler.acquire(prefetch);
+        RequestTicket sync = new RequestTicket(RequestPriority.SYNC);
+        Future<?> syncRequest = executor.submit(acquire(scheduler, sync, granted));
+        Thread.sleep(100);
+        RequestTicket readAhead = new RequestTicket(RequestPriority.READ_AHEAD);
+        Future<?> readAheadRequest = executor.submit(acquire(scheduler, readAhead, granted));
+        Thread.sleep(100);
+
+        // Interactive requests are never queued
+        scheduler.acquire(null);
+        scheduler.acquire(null);
+        scheduler.release(null);
+        scheduler.release(null);
+
+        // The freed slot goes to the most urgent waiting class
+        scheduler.release(prefetch);
+        readAheadRequest.get(5, TimeUnit.SECONDS);
+        try
+        {
+            syncRequest.get(200, TimeUnit.MILLISECONDS);
+            TestCase.fail();
+        }
+        catch (TimeoutException exception)
+        {
+            TestCase.assertEquals(Collections.singletonList(RequestPriority.READ_AHEAD), granted);
+        }
+
+        // A cancelled request gives up its place
+        sync.cancel();
+        try
+        {
+            syncRequest.get(5, TimeUnit.SECONDS);
+            TestCase.fail();
+        }
+        catch (ExecutionException exception)
+        {
+            TestCase.assertTrue(exception.getCause() instanceof RequestCancelledException);
+        }
+        TestCase.assertEquals(1, metrics.counter("scheduler.cancelled").get());
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void open_slotAcquiredOnAdmitOnly() throws Exception
+    {
+        Configuration configuration = new Configuration();
+        configuration.writeString("tuning", "io-concurrency", "2");
+        configuration.writeString("tuning", "io-interactive-reserve", "1");
+        final RequestScheduler scheduler = new RequestScheduler(configuration, new MetricsRegistry().forDrive("schedule"));
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        // The single background slot is taken
+        RequestTicket prefetch = new RequestTicket(RequestPriority.PREFETCH);
+        scheduler.acquire(prefetch);
+
+        // A call served without reaching the backend is not queued
+        final RequestTicket sync = new RequestTicket(RequestPriority.SYNC);
+        Boolean acquired = executor.submit(open(scheduler, sync, false)).get(5, TimeUnit.SECONDS);
+        TestCase.assertFalse(acquired);
+
+        // A call reaching the backend waits for a slot
+        Future<Boolean> backendCall = executor.submit(open(scheduler, sync, true));
+        try
+        {
+            backendCall.get(200, TimeUnit.MILLISECONDS);
+            TestCase.fail();
+        }
+        catch (TimeoutException exception)
+        {
+            // Expected
+        }
+        scheduler.release(prefetch);
+        TestCase.assertTrue(backendCall.get(5, TimeUnit.SECONDS));
+
+        // The slot has been freed on close
+        scheduler.acquire(prefetch);
+        scheduler.release(prefetch);
+
+        // Admitting outside of an opened call does nothing
+        RequestScheduler.admit();
+        executor.shutdownNow();
+    }
+
+    private static Callable<Boolean> open(final RequestScheduler scheduler, final RequestTicket ticket, final boolean admit)
+    {
+        return new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                RequestScheduler.Admission admission = scheduler.open(ticket);
+                try
+                {
+                    if (admit)
+                    {
+                        RequestScheduler.admit();
+                        RequestScheduler.admit();
+                    }
+                    return admission.isAcquired();
+                }
+                finally
+                {
+                    admission.close();
+                }
+            }
+        };
+    }
+
+    private static Callable<Void> acquire(final RequestScheduler scheduler, final RequestTicket ticket, final List<RequestPriority> granted)
+    {
+        return new Callable<Void>()
+        {
+            @Override
+            public Void call()
+            {
+                scheduler.acquire(ticket);
+                granted.add(ticket.getPriority());
+                return null;
+            }
+        };
+    }
+}
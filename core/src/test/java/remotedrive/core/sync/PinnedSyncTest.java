@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.sync;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import remotedrive.core.Configuration;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.MetricsRegistry;
+import remotedrive.core.spi.Client;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the pinned folders synchronisation.
+ */
+public class PinnedSyncTest
+{
+    public Path directory;
+    public RemoteTree remote;
+    public Configuration configuration;
+    public DriveMetrics metrics;
+
+    @Before
+    public void setup() throws IOException
+    {
+        directory = Files.createTempDirectory("pinned");
+        remote = new RemoteTree();
+        remote.put(new File("1", "Projects", "Projects", true, 0, null, 0), null);
+        remote.put(new File("2", "plan.txt", "Projects/plan.txt", false, 4, null, 0), "plan".getBytes());
+        remote.put(new File("3", "Archive", "Projects/Archive", true, 0, null, 0), null);
+        remote.put(new File("4", "old.txt", "Projects/Archive/old.txt", false, 3, null, 0), "old".getBytes());
+        remote.put(new File("5", "Music", "Music", true, 0, null, 0), null);
+        remote.put(new File("6", "song.mp3", "Music/song.mp3", false, 4, null, 0), "song".getBytes());
+
+        configuration = new Configuration();
+        configuration.writeString("name", "pinned");
+        configuration.writeString("pinned-folders", "Projects");
+        configuration.writeString("tuning", "sync-idle-delay", "0");
+        metrics = new MetricsRegistry().forDrive("pinned");
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException
+            {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path folder, IOException exception) throws IOException
+            {
+                Files.delete(folder);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void pass_servesPinnedFoldersLocally() throws Exception
+    {
+        PinnedClient client = new PinnedClient(remote, new PinnedStore(directory), configuration, metrics);
+        PinnedSync sync = new PinnedSync(remote, new PinnedStore(directory), configuration, metrics, client);
+        TestCase.assertTrue(sync.pass());
+        sync.close();
+        TestCase.assertEquals(2, metrics.counter("sync.files-downloaded").get());
+        TestCase.assertEquals(7, metrics.counter("sync.bytes-downloaded").get());
+
+        // Pinned folders are served from a reopened store without any remote call
+        client = new PinnedClient(remote, new PinnedStore(directory), configuration, metrics);
+        remote.calls = 0;
+        TestCase.assertEquals(2, client.retrieveChildren("Projects").length);
+        TestCase.assertEquals(1, client.retrieveChildrenByTitlePrefix("Projects", "PL").length);
+        TestCase.assertEquals("plan.txt", client.retrieveDriveFile("Projects/plan.txt").getTitle());
+        TestCase.assertEquals("old", new String(client.retrieveDriveFileContent("Projects/Archive/old.txt")));
+        TestCase.assertEquals("ld", new String(client.retrieveDriveFileContent("Projects/Archive/old.txt", 1, 2)));
+        TestCase.assertEquals("d", new String(client.retrieveDriveFileContent("Projects/Archive/old.txt", 2, 10)));
+        TestCase.assertEquals(0, remote.calls);
+
+        // Other folders are delegated
+        TestCase.assertEquals("song", new String(client.retrieveDriveFileContent("Music/song.mp3")));
+        TestCase.assertEquals(1, remote.calls);
+        client.close();
+    }
+
+    @Test
+    public void pass_incremental() throws Exception
+    {
+        PinnedStore store = new PinnedStore(directory);
+        PinnedClient client = new PinnedClient(remote, store, configuration, metrics);
+        PinnedSync sync = new PinnedSync(remote, store, configuration, metrics, client);
+        TestCase.assertTrue(sync.pass());
+
+        // Only the changed file is downloaded again, the removed one is forgotten
+        remote.put(new File("2", "plan.txt", "Projects/plan.txt", false, 5, null, 0), "plan2".getBytes());
+        remote.remove("Projects/Archive/old.txt");
+        TestCase.assertTrue(sync.pass());
+        sync.close();
+        TestCase.assertEquals(3, metrics.counter("sync.files-downloaded").get());
+        TestCase.assertEquals("plan2", new String(client.retrieveDriveFileContent("Projects/plan.txt")));
+        TestCase.assertNull(store.getFile("Projects/Archive/old.txt"));
+        TestCase.assertEquals(0, client.retrieveChildren("Projects/Archive").length);
+    }
+
+    @Test
+    public void pass_deduplicatesByChecksum() throws Exception
+    {
+        remote.put(new File("7", "setup.exe", "Projects/setup.exe", false, 5, null, 0, 0, "0123456789abcdef0123456789abcdef", null), "setup".getBytes());
+        remote.put(new File("8", "setup-copy.exe", "Projects/Archive/setup-copy.exe", false, 5, null, 0, 0, "0123456789ABCDEF0123456789ABCDEF", null), "setup".getBytes());
+        PinnedStore store = new PinnedStore(directory);
+        PinnedClient client = new PinnedClient(remote, store, configuration, metrics);
+        PinnedSync sync = new PinnedSync(remote, store, configuration, metrics, client);
+        TestCase.assertTrue(sync.pass());
+        TestCase.assertEquals(3, metrics.counter("sync.files-downloaded").get());
+        TestCase.assertEquals(1, metrics.counter("sync.files-deduplicated").get());
+        TestCase.assertEquals("setup", new String(client.retrieveDriveFileContent("Projects/Archive/setup-copy.exe")));
+
+        // A copy moved elsewhere is linked, the shared content survives the removal of the original
+        remote.remove("Projects/setup.exe");
+        remote.put(new File("9", "setup.exe", "Projects/Archive/setup.exe", false, 5, null, 0, 0, "0123456789abcdef0123456789abcdef", null), "setup".getBytes());
+        TestCase.assertTrue(sync.pass());
+        sync.close();
+        TestCase.assertEquals(3, metrics.counter("sync.files-downloaded").get());
+        TestCase.assertEquals(2, metrics.counter("sync.files-deduplicated").get());
+        TestCase.assertEquals("setup", new String(client.retrieveDriveFileContent("Projects/Archive/setup.exe")));
+        TestCase.assertTrue(Files.exists(directory.resolve("content").resolve("0123456789abcdef0123456789abcdef")));
+    }
+
+    /**
+     * In memory remote tree counting the calls.
+     */
+    public static class RemoteTree implements Client
+    {
+        public final Map<String, File> files = new LinkedHashMap<String, File>();
+        public final Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+        public volatile int calls;
+
+        public synchronized void put(File file, byte[] content)
+        {
+            files.put(file.getAbsolutePath(), file);
+            contents.put(file.getAbsolutePath(), content);
+        }
+
+        public synchronized void remove(String path)
+        {
+            files.remove(path);
+            contents.remove(path);
+        }
+
+        @Override
+        public void authenticate(String username, char[] password)
+        {
+        }
+
+        @Override
+        public Drive retrieveDiskInformation()
+        {
+            return new Drive(0, 0);
+        }
+
+        @Override
+        public synchronized File[] retrieveChildren(String parentPath)
+        {
+            ++calls;
+            List<File> children = new ArrayList<File>();
+            for(File file : files.values())
+            {
+                String path = file.getAbsolutePath();
+                if (path.startsWith(parentPath + "/") && path.indexOf('/', parentPath.length() + 1) < 0)
+                {
+                    children.add(file);
+                }
+            }
+            return children.toArray(new File[children.size()]);
+        }
+
+        @Override
+        public synchronized File retrieveDriveFile(String filePath)
+        {
+            ++calls;
+            return files.get(filePath);
+        }
+
+        @Override
+        public synchronized byte[] retrieveDriveFileContent(String filePath)
+        {
+            ++calls;
+            return contents.get(filePath);
+        }
+    }
+}
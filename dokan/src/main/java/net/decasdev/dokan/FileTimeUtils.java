@@ -36,7 +36,14 @@ public class FileTimeUtils {
     private static final long DIFF = 11644473600000L;
     
 	public static long toFileTime(Date date) {
-		return (date.getTime() + DIFF) * 10000;
+		return toFileTime(date.getTime());
+	}
+
+	/**
+	 * Converts milliseconds since the epoch without allocating a Date.
+	 */
+	public static long toFileTime(long millis) {
+		return (millis + DIFF) * 10000;
 	}
 
 	public static Date toDate(long fileTime) {
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs;
+
+import net.decasdev.dokan.ByHandleFileInformation;
+import net.decasdev.dokan.Dokan;
+import net.decasdev.dokan.DokanDiskFreeSpace;
+import net.decasdev.dokan.DokanFileInfo;
+import net.decasdev.dokan.DokanOperationException;
+import net.decasdev.dokan.DokanOperations;
+import net.decasdev.dokan.DokanVolumeInformation;
+import net.decasdev.dokan.FileAttribute;
+import net.decasdev.dokan.FileTimeUtils;
+import net.decasdev.dokan.Win32FindData;
+import remotedrive.core.Configuration;
+import remotedrive.core.ContentRange;
+import remotedrive.core.Drive;
+import remotedrive.core.File;
+import remotedrive.core.logging.DriveLogger;
+import remotedrive.core.metrics.MetricsRegistry;
+import remotedrive.core.prefetch.HeaderPrefetcher;
+import remotedrive.core.spi.AccessObserver;
+import remotedrive.core.spi.Client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dokan callbacks serving a mounted drive from a client.
+ */
+public class DriveOperations implements DokanOperations
+{
+    /**
+     * The client.
+     */
+    private final Client client;
+
+    /**
+     * The drive configuration.
+     */
+    private final Configuration configuration;
+
+    /**
+     * The converted folder listings.
+     */
+    private final FindDataCache findDataCache;
+
+    /**
+     * The logger of the drive, sampling the callbacks.
+     */
+    private final DriveLogger log;
+
+    /**
+     * The header prefetcher, null if the client doesn't cache what it reads.
+     */
+    private final HeaderPrefetcher prefetcher;
+
+    /**
+     * Initializes the drive callbacks.
+     * @param client The client.
+     * @param configuration The configuration.
+     */
+    public DriveOperations(Client client, Configuration configuration)
+    {
+        // Check input
+        if (null == client)
+        {
+            throw new IllegalArgumentException("The client cannot be null.");
+        }
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+
+        // Initialize
+        this.client = client;
+        this.configuration = configuration;
+        this.findDataCache = new FindDataCache(configuration.getSnapshot().getFindDataCacheSize());
+        this.log = new DriveLogger(DriveOperations.class, configuration);
+        this.prefetcher = configuration.getSnapshot().isCaching()
+            ? new HeaderPrefetcher(client, configuration, MetricsRegistry.getInstance().forDrive(configuration))
+            : null;
+    }
+
+    /**
+     * Applies the tuning entries of the drive configuration.
+     */
+    void tune()
+    {
+        findDataCache.setCapacity(configuration.getSnapshot().getFindDataCacheSize());
+        log.tune(configuration);
+        if (null != prefetcher)
+        {
+            prefetcher.tune(configuration);
+        }
+    }
+
+    /**
+     * Stops the background work of the callbacks once the drive is unmounted.
+     */
+    void close()
+    {
+        if (null != prefetcher)
+        {
+            prefetcher.close();
+        }
+    }
+
+    @Override
+    public long onCreateFile(String fileName, int desiredAccess, int shareMode, int creationDisposition, int flagsAndAttributes, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        return 0;
+    }
+
+    @Override
+    public long onOpenDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        return 0;
+    }
+
+    @Override
+    public void onCreateDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public void onCleanup(String fileName, DokanFileInfo fileInfo)
+    {
+    }
+
+    @Override
+    public void onCloseFile(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public int onReadFile(String fileName, ByteBuffer buffer, long offset, DokanFileInfo fileInfo)
+    {
+        if (log.isOperationLogged())
+        {
+            log.debug("Read {} at {} ({} bytes, process {})", fileName, offset, buffer.remaining(), processId(fileInfo));
+        }
+        String path = toClientPath(fileName);
+        observe(path, false);
+        byte[] content = ContentRange.read(client, path, offset, buffer.remaining());
+        if (null == content)
+        {
+            return 0;
+        }
+
+        buffer.put(content);
+        return content.length;
+    }
+
+    @Override
+    public int onWriteFile(String fileName, ByteBuffer buffer, long offset, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        return 0;
+    }
+
+    @Override
+    public void onFlushFileBuffers(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public ByHandleFileInformation onGetFileInformation(String fileName, DokanFileInfo fileInfo) throws DokanOperationException, IOException
+    {
+        if (log.isOperationLogged())
+        {
+            log.debug("Get information of {} (process {})", fileName, processId(fileInfo));
+        }
+        File diskFile = client.retrieveDriveFile(toClientPath(fileName));
+        if (null == diskFile)
+        {
+            return null;
+        }
+
+        long creationTime = FileTimeUtils.toFileTime(diskFile.getCreationTime());
+        long modifiedTime = FileTimeUtils.toFileTime(diskFile.getModifiedTime());
+        ByHandleFileInformation fileInformation = new ByHandleFileInformation(
+                diskFile.isDirectory() ? FileAttribute.FILE_ATTRIBUTE_DIRECTORY : FileAttribute.FILE_ATTRIBUTE_NORMAL,
+                creationTime,
+                modifiedTime,
+                modifiedTime,
+                0,
+                diskFile.getSize(),
+                0,
+                0
+        );
+
+        return fileInformation;
+    }
+
+    @Override
+    public Win32FindData[] onFindFiles(String pathName, DokanFileInfo fileInfo) throws DokanOperationException, IOException
+    {
+        if (log.isOperationLogged())
+        {
+            log.debug("List {} (process {})", pathName, processId(fileInfo));
+        }
+        String path = toClientPath(pathName);
+        observe(path, true);
+        File[] diskFiles = client.retrieveChildren(path);
+        if (null == diskFiles)
+        {
+            findDataCache.invalidate(path);
+            return null;
+        }
+
+        // Read the file headers ahead of the thumbnail and property handlers
+        if (null != prefetcher)
+        {
+            prefetcher.prefetch(diskFiles);
+        }
+        return findDataCache.get(path, diskFiles);
+    }
+
+    /**
+     * Enumerates the files matching a DOS wildcard expression.
+     * Expressions with a literal prefix only retrieve the children starting with this prefix, which the client can
+     * either filter from its cache or turn into a remote query, so that "dir *.log" style lookups in huge folders
+     * doesn't require the whole listing.
+     * @param pathName The folder path.
+     * @param searchPattern The DOS wildcard expression.
+     * @param fileInfo The file info.
+     * @return The matching files.
+     * @throws DokanOperationException If the operation fails.
+     */
+    @Override
+    public Win32FindData[] onFindFilesWithPattern(String pathName, String searchPattern, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        if (log.isOperationLogged())
+        {
+            log.debug("List {} matching {} (process {})", pathName, searchPattern, processId(fileInfo));
+        }
+        // Compile (or reuse) the expression
+        WildcardExpression expression = WildcardExpression.compile(null == searchPattern ? "*" : searchPattern);
+        String parentPath = toClientPath(pathName);
+        observe(parentPath, true);
+
+        // Without literal prefix, filter the whole converted listing
+        if (expression.matchesAll() || 0 == expression.getLiteralPrefix().length())
+        {
+            File[] diskFiles = client.retrieveChildren(parentPath);
+            if (null == diskFiles)
+            {
+                findDataCache.invalidate(parentPath);
+                return null;
+            }
+
+            Win32FindData[] findData = findDataCache.get(parentPath, diskFiles);
+            if (expression.matchesAll())
+            {
+                return findData;
+            }
+            List<Win32FindData> matchingFindData = new ArrayList<Win32FindData>();
+            for(Win32FindData candidate : findData)
+            {
+                if (expression.matches(candidate.fileName))
+                {
+                    matchingFindData.add(candidate);
+                }
+            }
+            return matchingFindData.toArray(new Win32FindData[matchingFindData.size()]);
+        }
+
+        // Otherwise only retrieve the children starting with the literal prefix
+        File[] diskFiles = client.retrieveChildrenByTitlePrefix(parentPath, expression.getLiteralPrefix());
+        if (null == diskFiles)
+        {
+            return null;
+        }
+        List<Win32FindData> matchingFindData = new ArrayList<Win32FindData>();
+        for(File candidate : diskFiles)
+        {
+            if (expression.matches(candidate.getTitle()))
+            {
+                matchingFindData.add(FindDataCache.convert(candidate));
+            }
+        }
+        return matchingFindData.toArray(new Win32FindData[matchingFindData.size()]);
+    }
+
+    @Override
+    public void onSetFileAttributes(String fileName, int fileAttributes, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public void onSetFileTime(String fileName, long creationTime, long lastAccessTime, long lastWriteTime, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public void onDeleteFile(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public void onDeleteDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public void onMoveFile(String existingFileName, String newFileName, boolean replaceExisiting, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public void onSetEndOfFile(String fileName, long length, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public void onLockFile(String fileName, long byteOffset, long length, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public void onUnlockFile(String fileName, long byteOffset, long length, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+    }
+
+    @Override
+    public DokanDiskFreeSpace onGetDiskFreeSpace(DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        DokanDiskFreeSpace diskFreeSpace = new DokanDiskFreeSpace();
+        Drive diskInformation = client.retrieveDiskInformation();
+        diskFreeSpace.freeBytesAvailable = diskInformation.getBytesTotal() - diskInformation.getBytesUsed();
+        diskFreeSpace.totalNumberOfBytes = diskInformation.getBytesTotal();
+        diskFreeSpace.totalNumberOfFreeBytes = diskInformation.getBytesTotal() - diskInformation.getBytesUsed();
+        return diskFreeSpace;
+    }
+
+    @Override
+    public DokanVolumeInformation onGetVolumeInformation(String volumeName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        String name = configuration.getSnapshot().getName();
+        DokanVolumeInformation volumeInformation = new DokanVolumeInformation();
+        volumeInformation.fileSystemName = name;
+        volumeInformation.volumeName = name;
+        return volumeInformation;
+    }
+
+    @Override
+    public void onUnmount(DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        Dokan.removeMountPoint(configuration.getSnapshot().getMountingPoint());
+    }
+
+    /**
+     * Reports an access made on behalf of the user to the client if it learns from them.
+     * @param path The client path.
+     * @param directory true if a folder is enumerated, false if a file is read.
+     */
+    private void observe(String path, boolean directory)
+    {
+        if (client instanceof AccessObserver)
+        {
+            ((AccessObserver) client).onAccess(path, directory);
+        }
+    }
+
+    /**
+     * Gets the requesting process id of a callback.
+     * @param fileInfo The file info, may be null.
+     * @return The process id, 0 if unknown.
+     */
+    private static int processId(DokanFileInfo fileInfo)
+    {
+        return null == fileInfo ? 0 : fileInfo.processId;
+    }
+
+    /**
+     * Converts a Dokan path into a client path.
+     * @param fileName The Dokan path.
+     * @return The client path.
+     */
+    public static String toClientPath(String fileName)
+    {
+        fileName = fileName.replace("\\", "/");
+        if (fileName.startsWith("/"))
+        {
+            fileName = fileName.substring(1);
+        }
+        return fileName;
+    }
+}
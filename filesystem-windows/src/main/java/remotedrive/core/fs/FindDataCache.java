@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs;
+
+import net.decasdev.dokan.FileAttribute;
+import net.decasdev.dokan.FileTimeUtils;
+import net.decasdev.dokan.Win32FindData;
+import remotedrive.core.File;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the Win32FindData conversion of the last listing of each folder.
+ * The listing array returned by the client is used as the listing version: a caching client hands out the same array
+ * as long as the listing doesn't change, and any refresh produces a new array. The conversion is then only done once
+ * per listing version while Explorer enumerates the same folder again and again.
+ * The converted arrays are shared between callers and must not be modified.
+ */
+class FindDataCache
+{
+    /**
+     * Maximum number of folders kept.
+     */
+    private static final int DEFAULT_CAPACITY = 512;
+
+    /**
+     * Maximum number of folders kept, guarded by the entries lock.
+     */
+    private int capacity;
+
+    /**
+     * Converted listings by folder path, in access order.
+     */
+    private final Map<String, Entry> entries;
+
+    /**
+     * Initializes the cache with the default capacity.
+     */
+    FindDataCache()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes the cache.
+     * @param capacity The maximum number of folders kept.
+     */
+    FindDataCache(int capacity)
+    {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > FindDataCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Changes the maximum number of folders kept, dropping the least recently used ones if needed.
+     * @param capacity The maximum number of folders kept.
+     */
+    void setCapacity(int capacity)
+    {
+        synchronized (entries)
+        {
+            this.capacity = capacity;
+            Iterator<String> iterator = entries.keySet().iterator();
+            while (entries.size() > capacity && iterator.hasNext())
+            {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the conversion of a folder listing, converting it only if this listing version isn't known yet.
+     * @param path The folder path.
+     * @param listing The folder listing.
+     * @return The converted listing.
+     */
+    Win32FindData[] get(String path, File[] listing)
+    {
+        // Lookup the converted listing and check that it matches the listing version
+        Entry entry;
+        synchronized (entries)
+        {
+            entry = entries.get(path);
+        }
+        if (null != entry && entry.listing.get() == listing)
+        {
+            return entry.findData;
+        }
+
+        // Convert outside of the lock and publish the new version
+        Win32FindData[] findData = convert(listing);
+        synchronized (entries)
+        {
+            entries.put(path, new Entry(listing, findData));
+        }
+        return findData;
+    }
+
+    /**
+     * Drops the conversion of a folder listing.
+     * @param path The folder path.
+     */
+    void invalidate(String path)
+    {
+        synchronized (entries)
+        {
+            entries.remove(path);
+        }
+    }
+
+    /**
+     * Converts files into Dokan find data.
+     * @param files The files.
+     * @return The find data.
+     */
+    static Win32FindData[] convert(File[] files)
+    {
+        Win32FindData[] findData = new Win32FindData[files.length];
+        for(int i = 0; i < files.length; ++i)
+        {
+            findData[i] = convert(files[i]);
+        }
+        return findData;
+    }
+
+    /**
+     * Converts a file into Dokan find data.
+     * @param file The file.
+     * @return The find data.
+     */
+    static Win32FindData convert(File file)
+    {
+        Win32FindData findData = new Win32FindData();
+        findData.creationTime = FileTimeUtils.toFileTime(file.getCreationTime());
+        findData.lastWriteTime = FileTimeUtils.toFileTime(file.getModifiedTime());
+        findData.lastAccessTime = findData.lastWriteTime;
+        findData.fileName = file.getTitle();
+        findData.fileSize = file.getSize();
+        findData.fileAttributes = file.isDirectory() ? FileAttribute.FILE_ATTRIBUTE_DIRECTORY : FileAttribute.FILE_ATTRIBUTE_NORMAL;
+        return findData;
+    }
+
+    /**
+     * A converted listing tagged with its listing version.
+     * The listing is weakly referenced so that the cache never retains listings the client already evicted.
+     */
+    private static class Entry
+    {
+        /**
+         * The listing version.
+         */
+        private final WeakReference<File[]> listing;
+
+        /**
+         * The converted listing.
+         */
+        private final Win32FindData[] findData;
+
+        /**
+         * Initializes an entry.
+         * @param listing The listing.
+         * @param findData The converted listing.
+         */
+        private Entry(File[] listing, Win32FindData[] findData)
+        {
+            this.listing = new WeakReference<File[]>(listing);
+            this.findData = findData;
+        }
+    }
+}
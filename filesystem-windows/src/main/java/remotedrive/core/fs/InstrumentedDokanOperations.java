@@ -0,0 +1,633 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs;
+
+import net.decasdev.dokan.ByHandleFileInformation;
+import net.decasdev.dokan.DokanDiskFreeSpace;
+import net.decasdev.dokan.DokanFileInfo;
+import net.decasdev.dokan.DokanOperationException;
+import net.decasdev.dokan.DokanOperations;
+import net.decasdev.dokan.DokanVolumeInformation;
+import net.decasdev.dokan.Win32FindData;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.OperationMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Dokan callbacks decorator recording the latency and failures of each callback, and the bytes read.
+ * Metrics are resolved once at construction so that a callback only updates adders.
+ */
+public class InstrumentedDokanOperations implements DokanOperations
+{
+    /**
+     * The decorated callbacks.
+     */
+    private final DokanOperations delegate;
+
+    /**
+     * The bytes read.
+     */
+    private final Counter bytesRead;
+
+    /**
+     * The onCreateFile metrics.
+     */
+    private final OperationMetrics onCreateFile;
+
+    /**
+     * The onOpenDirectory metrics.
+     */
+    private final OperationMetrics onOpenDirectory;
+
+    /**
+     * The onCreateDirectory metrics.
+     */
+    private final OperationMetrics onCreateDirectory;
+
+    /**
+     * The onCleanup metrics.
+     */
+    private final OperationMetrics onCleanup;
+
+    /**
+     * The onCloseFile metrics.
+     */
+    private final OperationMetrics onCloseFile;
+
+    /**
+     * The onReadFile metrics.
+     */
+    private final OperationMetrics onReadFile;
+
+    /**
+     * The onWriteFile metrics.
+     */
+    private final OperationMetrics onWriteFile;
+
+    /**
+     * The onFlushFileBuffers metrics.
+     */
+    private final OperationMetrics onFlushFileBuffers;
+
+    /**
+     * The onGetFileInformation metrics.
+     */
+    private final OperationMetrics onGetFileInformation;
+
+    /**
+     * The onFindFiles metrics.
+     */
+    private final OperationMetrics onFindFiles;
+
+    /**
+     * The onFindFilesWithPattern metrics.
+     */
+    private final OperationMetrics onFindFilesWithPattern;
+
+    /**
+     * The onSetFileAttributes metrics.
+     */
+    private final OperationMetrics onSetFileAttributes;
+
+    /**
+     * The onSetFileTime metrics.
+     */
+    private final OperationMetrics onSetFileTime;
+
+    /**
+     * The onDeleteFile metrics.
+     */
+    private final OperationMetrics onDeleteFile;
+
+    /**
+     * The onDeleteDirectory metrics.
+     */
+    private final OperationMetrics onDeleteDirectory;
+
+    /**
+     * The onMoveFile metrics.
+     */
+    private final OperationMetrics onMoveFile;
+
+    /**
+     * The onSetEndOfFile metrics.
+     */
+    private final OperationMetrics onSetEndOfFile;
+
+    /**
+     * The onLockFile metrics.
+     */
+    private final OperationMetrics onLockFile;
+
+    /**
+     * The onUnlockFile metrics.
+     */
+    private final OperationMetrics onUnlockFile;
+
+    /**
+     * The onGetDiskFreeSpace metrics.
+     */
+    private final OperationMetrics onGetDiskFreeSpace;
+
+    /**
+     * The onGetVolumeInformation metrics.
+     */
+    private final OperationMetrics onGetVolumeInformation;
+
+    /**
+     * The onUnmount metrics.
+     */
+    private final OperationMetrics onUnmount;
+
+    /**
+     * Initializes the decorator.
+     * @param delegate The decorated callbacks.
+     * @param metrics The drive metrics.
+     */
+    public InstrumentedDokanOperations(DokanOperations delegate, DriveMetrics metrics)
+    {
+        // Check input
+        if (null == delegate)
+        {
+            throw new IllegalArgumentException("The operations cannot be null.");
+        }
+        if (null == metrics)
+        {
+            throw new IllegalArgumentException("The metrics cannot be null.");
+        }
+
+        // Initialize
+        this.delegate = delegate;
+        this.bytesRead = metrics.counter("dokan.bytes-read");
+        this.onCreateFile = metrics.operation("dokan.onCreateFile");
+        this.onOpenDirectory = metrics.operation("dokan.onOpenDirectory");
+        this.onCreateDirectory = metrics.operation("dokan.onCreateDirectory");
+        this.onCleanup = metrics.operation("dokan.onCleanup");
+        this.onCloseFile = metrics.operation("dokan.onCloseFile");
+        this.onReadFile = metrics.operation("dokan.onReadFile");
+        this.onWriteFile = metrics.operation("dokan.onWriteFile");
+        this.onFlushFileBuffers = metrics.operation("dokan.onFlushFileBuffers");
+        this.onGetFileInformation = metrics.operation("dokan.onGetFileInformation");
+        this.onFindFiles = metrics.operation("dokan.onFindFiles");
+        this.onFindFilesWithPattern = metrics.operation("dokan.onFindFilesWithPattern");
+        this.onSetFileAttributes = metrics.operation("dokan.onSetFileAttributes");
+        this.onSetFileTime = metrics.operation("dokan.onSetFileTime");
+        this.onDeleteFile = metrics.operation("dokan.onDeleteFile");
+        this.onDeleteDirectory = metrics.operation("dokan.onDeleteDirectory");
+        this.onMoveFile = metrics.operation("dokan.onMoveFile");
+        this.onSetEndOfFile = metrics.operation("dokan.onSetEndOfFile");
+        this.onLockFile = metrics.operation("dokan.onLockFile");
+        this.onUnlockFile = metrics.operation("dokan.onUnlockFile");
+        this.onGetDiskFreeSpace = metrics.operation("dokan.onGetDiskFreeSpace");
+        this.onGetVolumeInformation = metrics.operation("dokan.onGetVolumeInformation");
+        this.onUnmount = metrics.operation("dokan.onUnmount");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long onCreateFile(String fileName, int desiredAccess, int shareMode, int creationDisposition, int flagsAndAttributes, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            long result = delegate.onCreateFile(fileName, desiredAccess, shareMode, creationDisposition, flagsAndAttributes, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            onCreateFile.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long onOpenDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            long result = delegate.onOpenDirectory(fileName, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            onOpenDirectory.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreateDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onCreateDirectory(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onCreateDirectory.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCleanup(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onCleanup(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onCleanup.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCloseFile(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onCloseFile(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onCloseFile.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int onReadFile(String fileName, ByteBuffer buffer, long offset, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            int result = delegate.onReadFile(fileName, buffer, offset, fileInfo);
+            failed = false;
+            bytesRead.add(Math.max(0, result));
+            return result;
+        }
+        finally
+        {
+            onReadFile.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int onWriteFile(String fileName, ByteBuffer buffer, long offset, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            int result = delegate.onWriteFile(fileName, buffer, offset, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            onWriteFile.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onFlushFileBuffers(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onFlushFileBuffers(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onFlushFileBuffers.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByHandleFileInformation onGetFileInformation(String fileName, DokanFileInfo fileInfo) throws DokanOperationException, IOException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            ByHandleFileInformation result = delegate.onGetFileInformation(fileName, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            onGetFileInformation.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Win32FindData[] onFindFiles(String pathName, DokanFileInfo fileInfo) throws DokanOperationException, IOException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            Win32FindData[] result = delegate.onFindFiles(pathName, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            onFindFiles.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Win32FindData[] onFindFilesWithPattern(String pathName, String searchPattern, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            Win32FindData[] result = delegate.onFindFilesWithPattern(pathName, searchPattern, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            onFindFilesWithPattern.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSetFileAttributes(String fileName, int fileAttributes, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onSetFileAttributes(fileName, fileAttributes, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onSetFileAttributes.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSetFileTime(String fileName, long creationTime, long lastAccessTime, long lastWriteTime, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onSetFileTime(fileName, creationTime, lastAccessTime, lastWriteTime, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onSetFileTime.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDeleteFile(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onDeleteFile(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onDeleteFile.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDeleteDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onDeleteDirectory(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onDeleteDirectory.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onMoveFile(String existingFileName, String newFileName, boolean replaceExisiting, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onMoveFile(existingFileName, newFileName, replaceExisiting, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onMoveFile.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSetEndOfFile(String fileName, long length, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onSetEndOfFile(fileName, length, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onSetEndOfFile.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onLockFile(String fileName, long byteOffset, long length, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onLockFile(fileName, byteOffset, length, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onLockFile.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onUnlockFile(String fileName, long byteOffset, long length, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onUnlockFile(fileName, byteOffset, length, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onUnlockFile.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DokanDiskFreeSpace onGetDiskFreeSpace(DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            DokanDiskFreeSpace result = delegate.onGetDiskFreeSpace(fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            onGetDiskFreeSpace.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DokanVolumeInformation onGetVolumeInformation(String volumeName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            DokanVolumeInformation result = delegate.onGetVolumeInformation(volumeName, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            onGetVolumeInformation.record(start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onUnmount(DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onUnmount(fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            onUnmount.record(start, failed);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiled DOS wildcard expression.
+ * Pure java equivalent of Dokan.isNameInExpression (FsRtlIsNameInExpression) that avoids a JNI call per name.
+ * Supported wildcards:
+ * - '*' matches zero or more characters
+ * - '?' matches exactly one character
+ * - '<' (DOS_STAR) matches zero or more characters until the last '.' of the name
+ * - '>' (DOS_QM) matches one character, or nothing before a '.' or at the end of the name
+ * - '"' (DOS_DOT) matches a '.' or nothing at the end of the name
+ * Matching is always case insensitive.
+ * Expressions are immutable and compiled instances are cached since Explorer sends the same few patterns again and again.
+ */
+public final class WildcardExpression
+{
+    /**
+     * Maximum number of cached compiled expressions.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    /**
+     * Compiled expressions cache.
+     */
+    private static final ConcurrentMap<String, WildcardExpression> cache = new ConcurrentHashMap<String, WildcardExpression>();
+
+    /**
+     * Matches zero or more characters.
+     */
+    private static final char STAR = '*';
+
+    /**
+     * Matches exactly one character.
+     */
+    private static final char QM = '?';
+
+    /**
+     * Matches zero or more characters until the last '.' of the name.
+     */
+    private static final char DOS_STAR = '<';
+
+    /**
+     * Matches one character, or nothing before a '.' or at the end of the name.
+     */
+    private static final char DOS_QM = '>';
+
+    /**
+     * Matches a '.', or nothing at the end of the name.
+     */
+    private static final char DOS_DOT = '"';
+
+    /**
+     * Matching strategies, from the cheapest to the most expensive.
+     */
+    private static final int MATCH_ALL = 0;
+    private static final int MATCH_LITERAL = 1;
+    private static final int MATCH_PREFIX = 2;
+    private static final int MATCH_SUFFIX = 3;
+    private static final int MATCH_GENERIC = 4;
+
+    /**
+     * The source expression.
+     */
+    private final String expression;
+
+    /**
+     * The upper cased tokens.
+     */
+    private final char[] tokens;
+
+    /**
+     * True for tokens that are wildcards, false for literal characters.
+     */
+    private final boolean[] wildcards;
+
+    /**
+     * The literal characters preceding the first wildcard.
+     */
+    private final String literalPrefix;
+
+    /**
+     * The literal characters following the last wildcard when the expression is a simple "*suffix".
+     */
+    private final String literalSuffix;
+
+    /**
+     * The matching strategy.
+     */
+    private final int strategy;
+
+    /**
+     * Compiles an expression.
+     * @param expression The expression.
+     */
+    private WildcardExpression(String expression)
+    {
+        this.expression = expression;
+        this.tokens = new char[expression.length()];
+        this.wildcards = new boolean[expression.length()];
+
+        // Tokenize and collect the expression shape
+        int firstWildcard = -1;
+        int wildcardCount = 0;
+        boolean onlyStars = true;
+        for(int i = 0; i < tokens.length; ++i)
+        {
+            char c = expression.charAt(i);
+            wildcards[i] = STAR == c || QM == c || DOS_STAR == c || DOS_QM == c || DOS_DOT == c;
+            tokens[i] = wildcards[i] ? c : Character.toUpperCase(c);
+            if (wildcards[i])
+            {
+                firstWildcard = -1 == firstWildcard ? i : firstWildcard;
+                onlyStars &= STAR == c;
+                ++wildcardCount;
+            }
+        }
+        this.literalPrefix = -1 == firstWildcard ? expression : expression.substring(0, firstWildcard);
+
+        // Pick the cheapest strategy able to evaluate this expression
+        if (0 == tokens.length || (onlyStars && wildcardCount == tokens.length))
+        {
+            strategy = MATCH_ALL;
+            literalSuffix = null;
+        }
+        else if (0 == wildcardCount)
+        {
+            strategy = MATCH_LITERAL;
+            literalSuffix = null;
+        }
+        else if (1 == wildcardCount && STAR == tokens[tokens.length - 1])
+        {
+            strategy = MATCH_PREFIX;
+            literalSuffix = null;
+        }
+        else if (1 == wildcardCount && STAR == tokens[0])
+        {
+            strategy = MATCH_SUFFIX;
+            literalSuffix = expression.substring(1);
+        }
+        else
+        {
+            strategy = MATCH_GENERIC;
+            literalSuffix = null;
+        }
+    }
+
+    /**
+     * Compiles an expression or returns the cached compiled instance.
+     * @param expression The expression.
+     * @return The compiled expression.
+     */
+    public static WildcardExpression compile(String expression)
+    {
+        // Check input
+        if (null == expression)
+        {
+            throw new IllegalArgumentException("The expression cannot be null.");
+        }
+
+        // Lookup the cache first
+        WildcardExpression compiled = cache.get(expression);
+        if (null != compiled)
+        {
+            return compiled;
+        }
+
+        // Keep the cache bounded, patterns are usually a handful so a rough reset is enough
+        if (cache.size() >= CACHE_SIZE)
+        {
+            cache.clear();
+        }
+        compiled = new WildcardExpression(expression);
+        WildcardExpression existing = cache.putIfAbsent(expression, compiled);
+        return null != existing ? existing : compiled;
+    }
+
+    /**
+     * Gets the source expression.
+     * @return The source expression.
+     */
+    public String getExpression()
+    {
+        return expression;
+    }
+
+    /**
+     * Gets the literal characters preceding the first wildcard.
+     * @return The literal prefix, empty if the expression starts with a wildcard.
+     */
+    public String getLiteralPrefix()
+    {
+        return literalPrefix;
+    }
+
+    /**
+     * Is the expression matching any name.
+     * @return true if any name matches, false otherwise.
+     */
+    public boolean matchesAll()
+    {
+        return MATCH_ALL == strategy;
+    }
+
+    /**
+     * Is the expression free of wildcards.
+     * @return true if the expression only matches one name, false otherwise.
+     */
+    public boolean isLiteral()
+    {
+        return MATCH_LITERAL == strategy;
+    }
+
+    /**
+     * Checks whether a name matches the expression.
+     * @param name The name.
+     * @return true if the name matches, false otherwise.
+     */
+    public boolean matches(String name)
+    {
+        if (null == name)
+        {
+            return false;
+        }
+
+        switch (strategy)
+        {
+            case MATCH_ALL:
+                return true;
+            case MATCH_LITERAL:
+                return expression.equalsIgnoreCase(name);
+            case MATCH_PREFIX:
+                return name.regionMatches(true, 0, literalPrefix, 0, literalPrefix.length());
+            case MATCH_SUFFIX:
+                return name.length() >= literalSuffix.length()
+                        && name.regionMatches(true, name.length() - literalSuffix.length(), literalSuffix, 0, literalSuffix.length());
+            default:
+                return matchesGeneric(name);
+        }
+    }
+
+    /**
+     * Evaluates the expression as a non deterministic automaton where each state is a token position.
+     * @param name The name.
+     * @return true if the name matches, false otherwise.
+     */
+    private boolean matchesGeneric(String name)
+    {
+        int lastDot = name.lastIndexOf('.');
+        BitSet states = new BitSet(tokens.length + 1);
+        BitSet next = new BitSet(tokens.length + 1);
+        states.set(0);
+
+        for(int position = 0; position < name.length() && !states.isEmpty(); ++position)
+        {
+            char c = name.charAt(position);
+            closure(states, c, false);
+
+            // Consume the current character from every active state
+            next.clear();
+            char upper = Character.toUpperCase(c);
+            for(int state = states.nextSetBit(0); state >= 0 && state < tokens.length; state = states.nextSetBit(state + 1))
+            {
+                char token = tokens[state];
+                if (!wildcards[state])
+                {
+                    if (token == upper)
+                    {
+                        next.set(state + 1);
+                    }
+                    continue;
+                }
+                switch (token)
+                {
+                    case STAR:
+                        next.set(state);
+                        break;
+                    case QM:
+                        next.set(state + 1);
+                        break;
+                    case DOS_STAR:
+                        if (-1 == lastDot || position < lastDot)
+                        {
+                            next.set(state);
+                        }
+                        break;
+                    case DOS_QM:
+                        if ('.' != c)
+                        {
+                            next.set(state + 1);
+                        }
+                        break;
+                    case DOS_DOT:
+                        if ('.' == c)
+                        {
+                            next.set(state + 1);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            // Swap the state sets
+            BitSet swap = states;
+            states = next;
+            next = swap;
+        }
+
+        // Apply the end of name transitions and check the final state
+        closure(states, (char) 0, true);
+        return states.get(tokens.length);
+    }
+
+    /**
+     * Applies the transitions that do not consume any character.
+     * @param states The active states, updated in place.
+     * @param lookahead The next name character.
+     * @param end True if the end of the name is reached.
+     */
+    private void closure(BitSet states, char lookahead, boolean end)
+    {
+        for(int state = states.nextSetBit(0); state >= 0 && state < tokens.length; state = states.nextSetBit(state + 1))
+        {
+            if (!wildcards[state])
+            {
+                continue;
+            }
+            char token = tokens[state];
+            if (STAR == token
+                    || DOS_STAR == token
+                    || (DOS_QM == token && (end || '.' == lookahead))
+                    || (DOS_DOT == token && end))
+            {
+                states.set(state + 1);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return expression;
+    }
+}
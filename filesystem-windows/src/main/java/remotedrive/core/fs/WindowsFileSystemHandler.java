@@ -19,34 +19,62 @@
 
 package remotedrive.core.fs;
 
-import net.decasdev.dokan.ByHandleFileInformation;
 import net.decasdev.dokan.Dokan;
-import net.decasdev.dokan.DokanDiskFreeSpace;
-import net.decasdev.dokan.DokanFileInfo;
-import net.decasdev.dokan.DokanOperationException;
 import net.decasdev.dokan.DokanOperations;
 import net.decasdev.dokan.DokanOptions;
-import net.decasdev.dokan.DokanVolumeInformation;
-import net.decasdev.dokan.FileAttribute;
-import net.decasdev.dokan.Win32FindData;
+import org.apache.log4j.Logger;
 import remotedrive.core.Configuration;
-import remotedrive.core.Drive;
-import remotedrive.core.File;
+import remotedrive.core.ConfigurationSnapshot;
+import remotedrive.core.fs.trace.TraceRecorder;
+import remotedrive.core.fs.trace.TraceWriter;
+import remotedrive.core.metrics.MetricsRegistry;
 import remotedrive.core.spi.Client;
 import remotedrive.core.spi.FileSystemHandler;
+import remotedrive.core.spi.Tunable;
 
+import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Defines Windows file system handler.
  */
-public class WindowsFileSystemHandler implements FileSystemHandler
+public class WindowsFileSystemHandler implements FileSystemHandler, Tunable
 {
+    /**
+     * Logger.
+     */
+    private static Logger log = Logger.getLogger(WindowsFileSystemHandler.class);
+
+    /**
+     * The maximum time to wait for a drive root to show up, in milliseconds.
+     */
+    private static final long MOUNT_WAIT_MILLIS = 5000;
+
+    /**
+     * The delay between two checks of a drive root, in milliseconds.
+     */
+    private static final long MOUNT_POLL_MILLIS = 50;
+
+    /**
+     * The Dokan loop threads by mounting point.
+     */
+    private final ConcurrentMap<String, Thread> mountedDrives = new ConcurrentHashMap<String, Thread>();
+
+    /**
+     * The Dokan callbacks by mounting point.
+     */
+    private final ConcurrentMap<String, DriveOperations> mountedOperations = new ConcurrentHashMap<String, DriveOperations>();
+
     /**
      * {@inheritDoc}
      */
@@ -70,203 +98,182 @@ public class WindowsFileSystemHandler implements FileSystemHandler
     }
 
     /**
-     * {@inheritDoc}
+     * Mounts the drive in its own Dokan loop thread.
+     * Dokan.mount blocks for the drive lifetime so each mounted drive gets a dedicated thread. The method returns once
+     * the drive root shows up, and fails if the Dokan loop ends before, typically on a mount error.
+     * The callbacks are recorded in a trace while mounted when the configuration names a trace file.
+     * @param client The authenticated client.
+     * @param configuration The configuration.
      */
     @Override
     public void mount(final Client client, final Configuration configuration)
     {
-        System.out.println("mounting " + configuration.readString("name"));
-        /*client.authenticate("***", null);
-
-        DokanOptions options = new DokanOptions(configuration.readString("mounting-point"), 10, DokanOptions.DOKAN_OPTION_REMOVABLE);
-        Dokan.mount(options, new DokanOperations() {
-            @Override
-            public long onCreateFile(String fileName, int desiredAccess, int shareMode, int creationDisposition, int flagsAndAttributes, DokanFileInfo fileInfo) throws DokanOperationException {
-                return 0;
-            }
-
-            @Override
-            public long onOpenDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException {
-                return 0;
-            }
-
-            @Override
-            public void onCreateDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException {
-
-            }
-
-            @Override
-            public void onCleanup(String fileName, DokanFileInfo fileInfo) {
-            }
-
-            @Override
-            public void onCloseFile(String fileName, DokanFileInfo fileInfo) throws DokanOperationException {
-
-            }
-
+        final ConfigurationSnapshot snapshot = configuration.getSnapshot();
+        log.info(String.format(Locale.US, "Mounting %s", snapshot.getName()));
+
+        final String mountingPoint = snapshot.getMountingPoint();
+        final DokanOptions options = new DokanOptions(mountingPoint, 10, DokanOptions.DOKAN_OPTION_REMOVABLE);
+        final DriveOperations operations = new DriveOperations(client, configuration);
+        final TraceRecorder recorder = openTrace(operations, snapshot);
+        final DokanOperations callbacks = new InstrumentedDokanOperations(
+            null == recorder ? operations : recorder,
+            MetricsRegistry.getInstance().forDrive(snapshot.getName()));
+        final AtomicInteger mountResult = new AtomicInteger(Dokan.DOKAN_SUCCESS);
+        final CountDownLatch loopEnded = new CountDownLatch(1);
+        Thread dokanThread = new Thread(new Runnable()
+        {
             @Override
-            public int onReadFile(String fileName, ByteBuffer buffer, long offset, DokanFileInfo fileInfo)
+            public void run()
             {
-                fileName = fileName.replace("\\", "/");
-                if (fileName.startsWith("/"))
+                try
                 {
-                    fileName = fileName.substring(1);
+                    int result = Dokan.mount(options, callbacks);
+                    mountResult.set(result);
+                    if (Dokan.DOKAN_SUCCESS != result)
+                    {
+                        log.error(String.format(Locale.US, "Unable to mount %s on %s: error %d", snapshot.getName(), mountingPoint, result));
+                    }
                 }
-                byte[] content = client.retrieveDriveFileContent(fileName);
-                if (null == content)
+                finally
                 {
-                    return 0;
+                    mountedDrives.remove(mountingPoint, Thread.currentThread());
+                    mountedOperations.remove(mountingPoint, operations);
+                    operations.close();
+                    closeTrace(recorder, snapshot);
+                    loopEnded.countDown();
                 }
-
-                int copySize = Math.min(content.length, buffer.capacity());
-
-                byte[] buffer2 = Arrays.copyOfRange(content, (int) offset, (int) offset + copySize);
-
-                buffer.put(buffer2, 0, copySize);
-                return copySize;
-            }
-
-            @Override
-            public int onWriteFile(String fileName, ByteBuffer buffer, long offset, DokanFileInfo fileInfo) throws DokanOperationException {
-                return 0;
-            }
-
-            @Override
-            public void onFlushFileBuffers(String fileName, DokanFileInfo fileInfo) throws DokanOperationException {
-
             }
+        }, String.format(Locale.US, "dokan-%s", mountingPoint));
+        dokanThread.setDaemon(true);
 
-            @Override
-            public ByHandleFileInformation onGetFileInformation(String fileName, DokanFileInfo fileInfo) throws DokanOperationException, IOException {
-                fileName = fileName.replace("\\", "/");
-                if (fileName.startsWith("/"))
-                {
-                    fileName = fileName.substring(1);
-                }
-
-                File diskFile = client.retrieveDriveFile(fileName);
-                if (null == diskFile)
-                {
-                    return null;
-                }
-
-                ByHandleFileInformation fileInformation = new ByHandleFileInformation(
-                        diskFile.isDirectory() ? FileAttribute.FILE_ATTRIBUTE_DIRECTORY : FileAttribute.FILE_ATTRIBUTE_NORMAL,
-                        diskFile.getCreationTime(),
-                        diskFile.getCreationTime(),
-                        diskFile.getCreationTime(),
-                        0,
-                        diskFile.getSize(),
-                        0,
-                        0
-                );
-
-                return fileInformation;
-            }
+        // Only one drive per mounting point, release what the rejected drive opened
+        if (null != mountedDrives.putIfAbsent(mountingPoint, dokanThread))
+        {
+            operations.close();
+            closeTrace(recorder, snapshot);
+            throw new IllegalStateException(String.format(Locale.US, "A drive is already mounted on %s.", mountingPoint));
+        }
+        mountedOperations.put(mountingPoint, operations);
+        dokanThread.start();
 
-            @Override
-            public Win32FindData[] onFindFiles(String pathName, DokanFileInfo fileInfo) throws DokanOperationException, IOException {
-                pathName = pathName.replace("\\", "/");
-                if (pathName.startsWith("/"))
-                {
-                    pathName = pathName.substring(1);
-                }
+        // Wait for the drive root or the early end of the Dokan loop
+        if (awaitMount(mountingPoint, loopEnded))
+        {
+            throw new IllegalStateException(String.format(Locale.US, "Unable to mount %s on %s: error %d.", snapshot.getName(), mountingPoint, mountResult.get()));
+        }
+    }
 
-                File[] diskFiles = client.retrieveChildren(pathName);
-                if (null == diskFiles)
+    /**
+     * Waits for a drive root to show up.
+     * Dokan has no mounted notification so the root is polled, and the drive is assumed mounted after a while
+     * without failure.
+     * @param mountingPoint The mounting point.
+     * @param loopEnded Released when the Dokan loop of the drive ends.
+     * @return true if the Dokan loop ended before the drive showed up, false otherwise.
+     */
+    private static boolean awaitMount(String mountingPoint, CountDownLatch loopEnded)
+    {
+        File root = Paths.get(mountingPoint + ":\\").toFile();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MOUNT_WAIT_MILLIS);
+        try
+        {
+            while (System.nanoTime() < deadline)
+            {
+                if (loopEnded.await(MOUNT_POLL_MILLIS, TimeUnit.MILLISECONDS))
                 {
-                    return null;
+                    return true;
                 }
-
-                Win32FindData[] win32FindData = new Win32FindData[diskFiles.length];
-                for(int i = 0; i < win32FindData.length; ++i)
+                if (root.exists())
                 {
-                    Win32FindData newData = new Win32FindData();
-                    File matchingFile = diskFiles[i];
-                    newData.creationTime = matchingFile.getCreationTime();
-                    newData.fileName = matchingFile.getTitle();
-                    newData.fileSize = matchingFile.getSize();
-                    newData.fileAttributes = matchingFile.isDirectory() ? FileAttribute.FILE_ATTRIBUTE_DIRECTORY : FileAttribute.FILE_ATTRIBUTE_NORMAL;
-                    win32FindData[i] = newData;
+                    return false;
                 }
-                return win32FindData;
             }
+        }
+        catch (InterruptedException e)
+        {
+            // The caller gives up the mount and checks its state
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
 
-            @Override
-            public Win32FindData[] onFindFilesWithPattern(String pathName, String searchPattern, DokanFileInfo fileInfo) throws DokanOperationException {
-                return new Win32FindData[0];
-            }
-
-            @Override
-            public void onSetFileAttributes(String fileName, int fileAttributes, DokanFileInfo fileInfo) throws DokanOperationException {
-
-            }
-
-            @Override
-            public void onSetFileTime(String fileName, long creationTime, long lastAccessTime, long lastWriteTime, DokanFileInfo fileInfo) throws DokanOperationException {
-
-            }
-
-            @Override
-            public void onDeleteFile(String fileName, DokanFileInfo fileInfo) throws DokanOperationException {
-
-            }
-
-            @Override
-            public void onDeleteDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException {
-
-            }
-
-            @Override
-            public void onMoveFile(String existingFileName, String newFileName, boolean replaceExisiting, DokanFileInfo fileInfo) throws DokanOperationException {
-
-            }
-
-            @Override
-            public void onSetEndOfFile(String fileName, long length, DokanFileInfo fileInfo) throws DokanOperationException {
-
-            }
-
-            @Override
-            public void onLockFile(String fileName, long byteOffset, long length, DokanFileInfo fileInfo) throws DokanOperationException {
-
-            }
-
-            @Override
-            public void onUnlockFile(String fileName, long byteOffset, long length, DokanFileInfo fileInfo) throws DokanOperationException {
-
-            }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void umount(Configuration configuration)
+    {
+        String mountingPoint = configuration.getSnapshot().getMountingPoint();
+        DriveOperations operations = mountedOperations.remove(mountingPoint);
+        if (null != operations)
+        {
+            operations.close();
+        }
+        if (null != mountedDrives.remove(mountingPoint))
+        {
+            Dokan.unmount(mountingPoint.charAt(0));
+        }
+    }
 
-            @Override
-            public DokanDiskFreeSpace onGetDiskFreeSpace(DokanFileInfo fileInfo) throws DokanOperationException {
-                DokanDiskFreeSpace diskFreeSpace = new DokanDiskFreeSpace();
-                Drive diskInformation = client.retrieveDiskInformation();
-                diskFreeSpace.freeBytesAvailable = diskInformation.getBytesTotal() - diskInformation.getBytesUsed();
-                diskFreeSpace.totalNumberOfBytes = diskInformation.getBytesTotal();
-                diskFreeSpace.totalNumberOfFreeBytes = diskInformation.getBytesTotal() - diskInformation.getBytesUsed();
-                return diskFreeSpace;
-            }
+    /**
+     * Applies the tuning entries to the callbacks of the mounted drive.
+     * @param configuration The configuration of the mounted drive.
+     */
+    @Override
+    public void tune(Configuration configuration)
+    {
+        DriveOperations operations = mountedOperations.get(configuration.getSnapshot().getMountingPoint());
+        if (null != operations)
+        {
+            operations.tune();
+        }
+    }
 
-            @Override
-            public DokanVolumeInformation onGetVolumeInformation(String volumeName, DokanFileInfo fileInfo) throws DokanOperationException {
-                DokanVolumeInformation volumeInformation = new DokanVolumeInformation();
-                volumeInformation.fileSystemName = configuration.readString("name");
-                volumeInformation.volumeName = configuration.readString("name");
-                return volumeInformation;
-            }
+    /**
+     * Opens the trace recorder of a drive.
+     * @param operations The recorded callbacks.
+     * @param snapshot The drive configuration.
+     * @return The recorder, null if no trace is configured or the trace file cannot be created.
+     */
+    private static TraceRecorder openTrace(DriveOperations operations, ConfigurationSnapshot snapshot)
+    {
+        String traceFile = snapshot.getTraceFile();
+        if (null == traceFile)
+        {
+            return null;
+        }
 
-            @Override
-            public void onUnmount(DokanFileInfo fileInfo) throws DokanOperationException {
-                Dokan.removeMountPoint("Z");
-            }
-        });*/
+        try
+        {
+            log.info(String.format(Locale.US, "Recording the %s trace in %s", snapshot.getName(), traceFile));
+            return new TraceRecorder(operations, new TraceWriter(Files.newOutputStream(Paths.get(traceFile)), snapshot.isTraceAnonymized()));
+        }
+        catch (IOException e)
+        {
+            log.error(String.format(Locale.US, "Unable to create the trace %s, %s is mounted without trace", traceFile, snapshot.getName()), e);
+            return null;
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * Closes the trace recorder of a drive.
+     * @param recorder The recorder, null if none.
+     * @param snapshot The drive configuration.
      */
-    @Override
-    public void umount()
+    private static void closeTrace(TraceRecorder recorder, ConfigurationSnapshot snapshot)
     {
+        if (null == recorder)
+        {
+            return;
+        }
+
+        try
+        {
+            recorder.close();
+        }
+        catch (IOException e)
+        {
+            log.error(String.format(Locale.US, "Unable to close the trace %s", snapshot.getTraceFile()), e);
+        }
     }
 }
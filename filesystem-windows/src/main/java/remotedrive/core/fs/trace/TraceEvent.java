@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+/**
+ * A recorded Dokan callback.
+ */
+public final class TraceEvent
+{
+    /**
+     * The callback.
+     */
+    private final TraceOperation operation;
+
+    /**
+     * The client path, with hashed segments if the trace is anonymized.
+     */
+    private final String path;
+
+    /**
+     * The offset of read, write and lock callbacks.
+     */
+    private final long offset;
+
+    /**
+     * The length of read, write, lock and end of file callbacks.
+     */
+    private final long length;
+
+    /**
+     * The requesting process id.
+     */
+    private final int processId;
+
+    /**
+     * The recording thread index, in order of appearance.
+     */
+    private final int thread;
+
+    /**
+     * The call start, in microseconds since the trace start.
+     */
+    private final long startMicros;
+
+    /**
+     * The call duration in microseconds.
+     */
+    private final long durationMicros;
+
+    /**
+     * True if the callback threw.
+     */
+    private final boolean failed;
+
+    /**
+     * Initializes an event.
+     * @param operation The callback.
+     * @param path The client path.
+     * @param offset The offset.
+     * @param length The length.
+     * @param processId The requesting process id.
+     * @param thread The recording thread index.
+     * @param startMicros The call start since the trace start.
+     * @param durationMicros The call duration.
+     * @param failed True if the callback threw.
+     */
+    public TraceEvent(TraceOperation operation, String path, long offset, long length, int processId, int thread, long startMicros, long durationMicros, boolean failed)
+    {
+        // Check input
+        if (null == operation)
+        {
+            throw new IllegalArgumentException("The operation cannot be null.");
+        }
+        if (null == path)
+        {
+            throw new IllegalArgumentException("The path cannot be null.");
+        }
+
+        // Initialize
+        this.operation = operation;
+        this.path = path;
+        this.offset = offset;
+        this.length = length;
+        this.processId = processId;
+        this.thread = thread;
+        this.startMicros = startMicros;
+        this.durationMicros = durationMicros;
+        this.failed = failed;
+    }
+
+    /**
+     * Gets the callback.
+     * @return The callback.
+     */
+    public TraceOperation getOperation()
+    {
+        return operation;
+    }
+
+    /**
+     * Gets the client path.
+     * @return The client path, with hashed segments if the trace is anonymized.
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Gets the offset of read, write and lock callbacks.
+     * @return The offset.
+     */
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * Gets the length of read, write, lock and end of file callbacks.
+     * @return The length.
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Gets the requesting process id.
+     * @return The process id.
+     */
+    public int getProcessId()
+    {
+        return processId;
+    }
+
+    /**
+     * Gets the recording thread index.
+     * @return The thread index, in order of appearance in the trace.
+     */
+    public int getThread()
+    {
+        return thread;
+    }
+
+    /**
+     * Gets the call start.
+     * @return The start in microseconds since the trace start.
+     */
+    public long getStartMicros()
+    {
+        return startMicros;
+    }
+
+    /**
+     * Gets the call duration.
+     * @return The duration in microseconds.
+     */
+    public long getDurationMicros()
+    {
+        return durationMicros;
+    }
+
+    /**
+     * Did the callback throw.
+     * @return true if the callback failed, false otherwise.
+     */
+    public boolean isFailed()
+    {
+        return failed;
+    }
+}
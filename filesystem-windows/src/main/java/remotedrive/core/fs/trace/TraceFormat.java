@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary trace layout, shared by the writer and the reader.
+ * A trace is a header followed by records, each one starting with its type:
+ * - header: magic, version, recording start as epoch milliseconds
+ * - path: id, parent id, segment; a path is always defined before its first use and the root has the id 0
+ * - event: operation, path id, offset, length, process id, thread index, start and duration in microseconds, flags
+ * Integers are written as unsigned LEB128 variable length values so that most events take a dozen bytes.
+ */
+final class TraceFormat
+{
+    /**
+     * The trace magic, "RDTR".
+     */
+    static final int MAGIC = 0x52445452;
+
+    /**
+     * The trace format version.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The path record type.
+     */
+    static final int PATH_RECORD = 1;
+
+    /**
+     * The event record type.
+     */
+    static final int EVENT_RECORD = 2;
+
+    /**
+     * The root path id.
+     */
+    static final int ROOT_ID = 0;
+
+    /**
+     * The event flag set when the callback failed.
+     */
+    static final int FAILED_FLAG = 1;
+
+    /**
+     * Not instantiable.
+     */
+    private TraceFormat()
+    {
+    }
+
+    /**
+     * Writes an unsigned variable length value.
+     * @param output The output.
+     * @param value The value, negative values taking ten bytes.
+     * @throws IOException If the write fails.
+     */
+    static void writeVarLong(DataOutput output, long value) throws IOException
+    {
+        while (0 != (value & ~0x7FL))
+        {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    /**
+     * Reads an unsigned variable length value.
+     * @param input The input.
+     * @return The value.
+     * @throws IOException If the read fails or the value is malformed.
+     */
+    static long readVarLong(DataInput input) throws IOException
+    {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7)
+        {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (0 == (b & 0x80))
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length value");
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+/**
+ * The Dokan callbacks recorded in a trace.
+ * The ordinal is the persisted operation code so constants may only be appended.
+ */
+public enum TraceOperation
+{
+    /**
+     * onCreateFile.
+     */
+    CREATE_FILE,
+
+    /**
+     * onOpenDirectory.
+     */
+    OPEN_DIRECTORY,
+
+    /**
+     * onCreateDirectory.
+     */
+    CREATE_DIRECTORY,
+
+    /**
+     * onCleanup.
+     */
+    CLEANUP,
+
+    /**
+     * onCloseFile.
+     */
+    CLOSE_FILE,
+
+    /**
+     * onReadFile.
+     */
+    READ_FILE,
+
+    /**
+     * onWriteFile.
+     */
+    WRITE_FILE,
+
+    /**
+     * onFlushFileBuffers.
+     */
+    FLUSH_FILE_BUFFERS,
+
+    /**
+     * onGetFileInformation.
+     */
+    GET_FILE_INFORMATION,
+
+    /**
+     * onFindFiles.
+     */
+    FIND_FILES,
+
+    /**
+     * onFindFilesWithPattern.
+     */
+    FIND_FILES_WITH_PATTERN,
+
+    /**
+     * onSetFileAttributes.
+     */
+    SET_FILE_ATTRIBUTES,
+
+    /**
+     * onSetFileTime.
+     */
+    SET_FILE_TIME,
+
+    /**
+     * onDeleteFile.
+     */
+    DELETE_FILE,
+
+    /**
+     * onDeleteDirectory.
+     */
+    DELETE_DIRECTORY,
+
+    /**
+     * onMoveFile.
+     */
+    MOVE_FILE,
+
+    /**
+     * onSetEndOfFile.
+     */
+    SET_END_OF_FILE,
+
+    /**
+     * onLockFile.
+     */
+    LOCK_FILE,
+
+    /**
+     * onUnlockFile.
+     */
+    UNLOCK_FILE,
+
+    /**
+     * onGetDiskFreeSpace.
+     */
+    GET_DISK_FREE_SPACE,
+
+    /**
+     * onGetVolumeInformation.
+     */
+    GET_VOLUME_INFORMATION,
+
+    /**
+     * onUnmount.
+     */
+    UNMOUNT;
+
+    /**
+     * The operations by code.
+     */
+    private static final TraceOperation[] values = values();
+
+    /**
+     * Gets the persisted operation code.
+     * @return The code.
+     */
+    public int getCode()
+    {
+        return ordinal();
+    }
+
+    /**
+     * Gets an operation from its persisted code.
+     * @param code The code.
+     * @return The operation, null if unknown.
+     */
+    public static TraceOperation fromCode(int code)
+    {
+        return 0 <= code && code < values.length ? values[code] : null;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+/**
+ * Maps the paths of a trace onto the tree a trace is replayed against.
+ */
+public interface TracePathMapping
+{
+    /**
+     * Replays the recorded paths as is, for traces recorded without anonymization against the same tree.
+     */
+    TracePathMapping IDENTITY = new TracePathMapping()
+    {
+        @Override
+        public String map(String path, boolean directory)
+        {
+            return path;
+        }
+    };
+
+    /**
+     * Maps a recorded path.
+     * @param path The recorded client path.
+     * @param directory True if the trace uses the path as a folder.
+     * @return The client path to replay.
+     */
+    String map(String path, boolean directory);
+}
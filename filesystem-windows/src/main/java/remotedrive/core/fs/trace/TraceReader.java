@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the events of a binary trace, see TraceFormat.
+ * A trace cut by a crash is read up to its last complete record.
+ */
+public class TraceReader implements Closeable
+{
+    /**
+     * The trace input.
+     */
+    private final DataInputStream input;
+
+    /**
+     * The recording start as epoch milliseconds.
+     */
+    private final long startTime;
+
+    /**
+     * The client paths by id.
+     */
+    private final List<String> paths;
+
+    /**
+     * Initializes a reader and reads the trace header.
+     * @param stream The trace stream, closed with the reader.
+     * @throws IOException If the stream isn't a supported trace.
+     */
+    public TraceReader(InputStream stream) throws IOException
+    {
+        // Check input
+        if (null == stream)
+        {
+            throw new IllegalArgumentException("The stream cannot be null.");
+        }
+
+        // Initialize
+        this.input = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        this.paths = new ArrayList<String>();
+        this.paths.add("");
+
+        // Check the header
+        if (TraceFormat.MAGIC != input.readInt())
+        {
+            throw new IOException("Not a trace");
+        }
+        int version = input.readUnsignedByte();
+        if (TraceFormat.VERSION != version)
+        {
+            throw new IOException(String.format(Locale.US, "Unsupported trace version %d", version));
+        }
+        this.startTime = input.readLong();
+    }
+
+    /**
+     * Reads all the events of a trace file.
+     * @param file The trace file.
+     * @return The events.
+     * @throws IOException If the file cannot be read.
+     */
+    public static List<TraceEvent> readAll(Path file) throws IOException
+    {
+        TraceReader reader = new TraceReader(Files.newInputStream(file));
+        try
+        {
+            List<TraceEvent> events = new ArrayList<TraceEvent>();
+            for(TraceEvent event = reader.next(); null != event; event = reader.next())
+            {
+                events.add(event);
+            }
+            return events;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Gets the recording start.
+     * @return The start as epoch milliseconds.
+     */
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    /**
+     * Reads the next event.
+     * @return The event, null at the end of the trace.
+     * @throws IOException If the trace is malformed.
+     */
+    public TraceEvent next() throws IOException
+    {
+        try
+        {
+            while (true)
+            {
+                int type = input.read();
+                if (-1 == type)
+                {
+                    return null;
+                }
+
+                // Define a path
+                if (TraceFormat.PATH_RECORD == type)
+                {
+                    int id = (int) TraceFormat.readVarLong(input);
+                    String parent = path(TraceFormat.readVarLong(input));
+                    String segment = input.readUTF();
+                    if (id != paths.size())
+                    {
+                        throw new IOException(String.format(Locale.US, "Unexpected path id %d", id));
+                    }
+                    paths.add(0 == parent.length() ? segment : parent + "/" + segment);
+                    continue;
+                }
+
+                // Read an event
+                if (TraceFormat.EVENT_RECORD == type)
+                {
+                    int code = input.readUnsignedByte();
+                    TraceOperation operation = TraceOperation.fromCode(code);
+                    if (null == operation)
+                    {
+                        throw new IOException(String.format(Locale.US, "Unknown operation %d", code));
+                    }
+                    String path = path(TraceFormat.readVarLong(input));
+                    long offset = TraceFormat.readVarLong(input);
+                    long length = TraceFormat.readVarLong(input);
+                    int processId = (int) TraceFormat.readVarLong(input);
+                    int thread = (int) TraceFormat.readVarLong(input);
+                    long startMicros = TraceFormat.readVarLong(input);
+                    long durationMicros = TraceFormat.readVarLong(input);
+                    boolean failed = 0 != (input.readUnsignedByte() & TraceFormat.FAILED_FLAG);
+                    return new TraceEvent(operation, path, offset, length, processId, thread, startMicros, durationMicros, failed);
+                }
+
+                throw new IOException(String.format(Locale.US, "Unknown record type %d", type));
+            }
+        }
+
+        // Stop at a truncated last record
+        catch (EOFException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Closes the trace.
+     * @throws IOException If the close fails.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        input.close();
+    }
+
+    /**
+     * Resolves a path id.
+     * @param id The path id.
+     * @return The client path.
+     * @throws IOException If the id isn't defined.
+     */
+    private String path(long id) throws IOException
+    {
+        if (id < 0 || id >= paths.size())
+        {
+            throw new IOException(String.format(Locale.US, "Undefined path id %d", id));
+        }
+        return paths.get((int) id);
+    }
+}
@@ -0,0 +1,553 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+import net.decasdev.dokan.ByHandleFileInformation;
+import net.decasdev.dokan.DokanDiskFreeSpace;
+import net.decasdev.dokan.DokanFileInfo;
+import net.decasdev.dokan.DokanOperationException;
+import net.decasdev.dokan.DokanOperations;
+import net.decasdev.dokan.DokanVolumeInformation;
+import net.decasdev.dokan.Win32FindData;
+import org.apache.log4j.Logger;
+import remotedrive.core.fs.DriveOperations;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Dokan callbacks decorator recording every callback in a trace, see TraceWriter.
+ * A trace write failure stops the recording but never fails the callback.
+ */
+public class TraceRecorder implements DokanOperations, Closeable
+{
+    /**
+     * Logger.
+     */
+    private static Logger log = Logger.getLogger(TraceRecorder.class);
+
+    /**
+     * The decorated callbacks.
+     */
+    private final DokanOperations delegate;
+
+    /**
+     * The trace writer.
+     */
+    private final TraceWriter writer;
+
+    /**
+     * False once a trace write failed.
+     */
+    private volatile boolean recording;
+
+    /**
+     * Initializes the decorator.
+     * @param delegate The decorated callbacks.
+     * @param writer The trace writer, closed with the decorator.
+     */
+    public TraceRecorder(DokanOperations delegate, TraceWriter writer)
+    {
+        // Check input
+        if (null == delegate)
+        {
+            throw new IllegalArgumentException("The operations cannot be null.");
+        }
+        if (null == writer)
+        {
+            throw new IllegalArgumentException("The writer cannot be null.");
+        }
+
+        // Initialize
+        this.delegate = delegate;
+        this.writer = writer;
+        this.recording = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long onCreateFile(String fileName, int desiredAccess, int shareMode, int creationDisposition, int flagsAndAttributes, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            long result = delegate.onCreateFile(fileName, desiredAccess, shareMode, creationDisposition, flagsAndAttributes, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            record(TraceOperation.CREATE_FILE, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long onOpenDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            long result = delegate.onOpenDirectory(fileName, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            record(TraceOperation.OPEN_DIRECTORY, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreateDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onCreateDirectory(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.CREATE_DIRECTORY, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCleanup(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onCleanup(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.CLEANUP, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCloseFile(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onCloseFile(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.CLOSE_FILE, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int onReadFile(String fileName, ByteBuffer buffer, long offset, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        int requested = buffer.remaining();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            int result = delegate.onReadFile(fileName, buffer, offset, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            record(TraceOperation.READ_FILE, fileName, offset, requested, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int onWriteFile(String fileName, ByteBuffer buffer, long offset, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        int requested = buffer.remaining();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            int result = delegate.onWriteFile(fileName, buffer, offset, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            record(TraceOperation.WRITE_FILE, fileName, offset, requested, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onFlushFileBuffers(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onFlushFileBuffers(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.FLUSH_FILE_BUFFERS, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByHandleFileInformation onGetFileInformation(String fileName, DokanFileInfo fileInfo) throws DokanOperationException, IOException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            ByHandleFileInformation result = delegate.onGetFileInformation(fileName, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            record(TraceOperation.GET_FILE_INFORMATION, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Win32FindData[] onFindFiles(String pathName, DokanFileInfo fileInfo) throws DokanOperationException, IOException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            Win32FindData[] result = delegate.onFindFiles(pathName, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            record(TraceOperation.FIND_FILES, pathName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Win32FindData[] onFindFilesWithPattern(String pathName, String searchPattern, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            Win32FindData[] result = delegate.onFindFilesWithPattern(pathName, searchPattern, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            record(TraceOperation.FIND_FILES_WITH_PATTERN, pathName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSetFileAttributes(String fileName, int fileAttributes, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onSetFileAttributes(fileName, fileAttributes, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.SET_FILE_ATTRIBUTES, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSetFileTime(String fileName, long creationTime, long lastAccessTime, long lastWriteTime, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onSetFileTime(fileName, creationTime, lastAccessTime, lastWriteTime, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.SET_FILE_TIME, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDeleteFile(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onDeleteFile(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.DELETE_FILE, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDeleteDirectory(String fileName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onDeleteDirectory(fileName, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.DELETE_DIRECTORY, fileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onMoveFile(String existingFileName, String newFileName, boolean replaceExisiting, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onMoveFile(existingFileName, newFileName, replaceExisiting, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.MOVE_FILE, existingFileName, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSetEndOfFile(String fileName, long length, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onSetEndOfFile(fileName, length, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.SET_END_OF_FILE, fileName, 0, length, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onLockFile(String fileName, long byteOffset, long length, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onLockFile(fileName, byteOffset, length, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.LOCK_FILE, fileName, byteOffset, length, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onUnlockFile(String fileName, long byteOffset, long length, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onUnlockFile(fileName, byteOffset, length, fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.UNLOCK_FILE, fileName, byteOffset, length, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DokanDiskFreeSpace onGetDiskFreeSpace(DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            DokanDiskFreeSpace result = delegate.onGetDiskFreeSpace(fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            record(TraceOperation.GET_DISK_FREE_SPACE, null, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DokanVolumeInformation onGetVolumeInformation(String volumeName, DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            DokanVolumeInformation result = delegate.onGetVolumeInformation(volumeName, fileInfo);
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            record(TraceOperation.GET_VOLUME_INFORMATION, null, 0, 0, fileInfo, start, failed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onUnmount(DokanFileInfo fileInfo) throws DokanOperationException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try
+        {
+            delegate.onUnmount(fileInfo);
+            failed = false;
+        }
+        finally
+        {
+            record(TraceOperation.UNMOUNT, null, 0, 0, fileInfo, start, failed);
+        }
+    }
+    /**
+     * Flushes and closes the trace.
+     * @throws IOException If the trace cannot be written.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        recording = false;
+        writer.close();
+    }
+
+    /**
+     * Records a callback.
+     * @param operation The callback.
+     * @param fileName The Dokan path, null for volume wide callbacks.
+     * @param offset The offset.
+     * @param length The length.
+     * @param fileInfo The file info.
+     * @param start The System.nanoTime() value taken before the call.
+     * @param failed True if the callback threw.
+     */
+    private void record(TraceOperation operation, String fileName, long offset, long length, DokanFileInfo fileInfo, long start, boolean failed)
+    {
+        if (!recording)
+        {
+            return;
+        }
+
+        long end = System.nanoTime();
+        try
+        {
+            String path = null == fileName ? "" : DriveOperations.toClientPath(fileName);
+            writer.write(operation, path, offset, length, null == fileInfo ? 0 : fileInfo.processId, start, end, failed);
+        }
+        catch (IOException e)
+        {
+            recording = false;
+            log.error("Unable to write the trace, recording stopped", e);
+        }
+    }
+}
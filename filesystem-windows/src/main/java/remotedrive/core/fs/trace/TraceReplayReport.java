@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.Histogram;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Outcome of a trace replay: the latency distribution and the failures of each replayed callback, and the requests
+ * the replayed callbacks caused on the backend.
+ */
+public final class TraceReplayReport
+{
+    /**
+     * The replayed events.
+     */
+    private final long events;
+
+    /**
+     * The replay duration in nanoseconds.
+     */
+    private final long durationNanos;
+
+    /**
+     * The latency in nanoseconds by callback.
+     */
+    private final Map<TraceOperation, Histogram> latencies;
+
+    /**
+     * The failures by callback.
+     */
+    private final Map<TraceOperation, Counter> failures;
+
+    /**
+     * The backend requests by backend operation name.
+     */
+    private final Map<String, Long> backendRequests;
+
+    /**
+     * Initializes a report.
+     * @param events The replayed events.
+     * @param durationNanos The replay duration.
+     * @param latencies The latency by callback.
+     * @param failures The failures by callback.
+     * @param backendRequests The backend requests by backend operation name.
+     */
+    TraceReplayReport(long events, long durationNanos, Map<TraceOperation, Histogram> latencies, Map<TraceOperation, Counter> failures, Map<String, Long> backendRequests)
+    {
+        this.events = events;
+        this.durationNanos = durationNanos;
+        this.latencies = Collections.unmodifiableMap(latencies);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.backendRequests = Collections.unmodifiableMap(backendRequests);
+    }
+
+    /**
+     * Gets the number of replayed events.
+     * @return The replayed events.
+     */
+    public long getEvents()
+    {
+        return events;
+    }
+
+    /**
+     * Gets the replay duration.
+     * @return The duration in nanoseconds.
+     */
+    public long getDurationNanos()
+    {
+        return durationNanos;
+    }
+
+    /**
+     * Gets the latency of the replayed callbacks.
+     * @return The latency in nanoseconds by callback.
+     */
+    public Map<TraceOperation, Histogram> getLatencies()
+    {
+        return latencies;
+    }
+
+    /**
+     * Gets the failures of the replayed callbacks.
+     * @return The failures by callback.
+     */
+    public Map<TraceOperation, Counter> getFailures()
+    {
+        return failures;
+    }
+
+    /**
+     * Gets the requests the replay caused on the backend.
+     * @return The requests by backend operation name, sorted by name.
+     */
+    public Map<String, Long> getBackendRequests()
+    {
+        return backendRequests;
+    }
+
+    /**
+     * Formats the report as a table.
+     * @return The report.
+     */
+    public String format()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "Replayed %d events in %.3f s%n", events, durationNanos / 1e9));
+
+        // One line per replayed callback, in microseconds
+        builder.append(String.format(Locale.US, "%-32s %10s %10s %10s %10s %10s %10s%n", "callback", "count", "failures", "mean us", "p50 us", "p90 us", "p99 us"));
+        for(Map.Entry<TraceOperation, Histogram> entry : latencies.entrySet())
+        {
+            Histogram latency = entry.getValue();
+            if (0 == latency.getCount())
+            {
+                continue;
+            }
+            builder.append(String.format(Locale.US, "%-32s %10d %10d %10d %10d %10d %10d%n",
+                entry.getKey(),
+                latency.getCount(),
+                failures.get(entry.getKey()).get(),
+                latency.getMean() / 1000,
+                latency.getPercentile(50) / 1000,
+                latency.getPercentile(90) / 1000,
+                latency.getPercentile(99) / 1000));
+        }
+
+        // Then the backend requests
+        builder.append(String.format(Locale.US, "%-32s %10s%n", "backend request", "count"));
+        for(Map.Entry<String, Long> entry : backendRequests.entrySet())
+        {
+            builder.append(String.format(Locale.US, "%-32s %10d%n", entry.getKey(), entry.getValue()));
+        }
+        return builder.toString();
+    }
+}
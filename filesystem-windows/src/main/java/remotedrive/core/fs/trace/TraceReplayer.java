@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+import net.decasdev.dokan.DokanFileInfo;
+import net.decasdev.dokan.DokanOperations;
+import remotedrive.core.metrics.Counter;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.Histogram;
+import remotedrive.core.metrics.OperationMetrics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives recorded events against Dokan callbacks, typically DriveOperations on top of the client stack to evaluate.
+ * Each recorded thread is replayed by its own thread so that the recorded concurrency is kept, either at the recorded
+ * pace or as fast as possible. Parameters the trace doesn't keep are replaced by neutral values: search patterns
+ * by "*" and move targets by the source path. Unmount events are skipped.
+ */
+public class TraceReplayer
+{
+    /**
+     * The replayed callbacks.
+     */
+    private final DokanOperations operations;
+
+    /**
+     * The path mapping.
+     */
+    private final TracePathMapping mapping;
+
+    /**
+     * The backend metrics, null if not reported.
+     */
+    private final DriveMetrics backend;
+
+    /**
+     * Initializes a replayer.
+     * @param operations The replayed callbacks.
+     * @param mapping The path mapping.
+     * @param backend The metrics of the backend, such as the ones of an InstrumentedClient, or null.
+     */
+    public TraceReplayer(DokanOperations operations, TracePathMapping mapping, DriveMetrics backend)
+    {
+        // Check input
+        if (null == operations)
+        {
+            throw new IllegalArgumentException("The operations cannot be null.");
+        }
+        if (null == mapping)
+        {
+            throw new IllegalArgumentException("The mapping cannot be null.");
+        }
+
+        // Initialize
+        this.operations = operations;
+        this.mapping = mapping;
+        this.backend = backend;
+    }
+
+    /**
+     * Replays events.
+     * @param events The events, in recording order.
+     * @param originalPace True to keep the recorded pace, false to replay as fast as possible.
+     * @return The report.
+     * @throws InterruptedException If interrupted while waiting for the replay threads.
+     */
+    public TraceReplayReport replay(List<TraceEvent> events, boolean originalPace) throws InterruptedException
+    {
+        // Check input
+        if (null == events)
+        {
+            throw new IllegalArgumentException("The events cannot be null.");
+        }
+
+        // Map every recorded path once, knowing which ones are folders
+        Set<String> directories = directories(events);
+        Map<String, String> dokanPaths = new HashMap<String, String>();
+        for(TraceEvent event : events)
+        {
+            if (!dokanPaths.containsKey(event.getPath()))
+            {
+                String mappedPath = mapping.map(event.getPath(), directories.contains(event.getPath()));
+                dokanPaths.put(event.getPath(), "\\" + mappedPath.replace('/', '\\'));
+            }
+        }
+
+        // Split the events by recorded thread
+        Map<Integer, List<TraceEvent>> threads = new LinkedHashMap<Integer, List<TraceEvent>>();
+        long firstStart = Long.MAX_VALUE;
+        for(TraceEvent event : events)
+        {
+            List<TraceEvent> threadEvents = threads.get(event.getThread());
+            if (null == threadEvents)
+            {
+                threadEvents = new ArrayList<TraceEvent>();
+                threads.put(event.getThread(), threadEvents);
+            }
+            threadEvents.add(event);
+            firstStart = Math.min(firstStart, event.getStartMicros());
+        }
+
+        // Prepare the report
+        Map<TraceOperation, Histogram> latencies = new EnumMap<TraceOperation, Histogram>(TraceOperation.class);
+        Map<TraceOperation, Counter> failures = new EnumMap<TraceOperation, Counter>(TraceOperation.class);
+        for(TraceOperation operation : TraceOperation.values())
+        {
+            latencies.put(operation, new Histogram());
+            failures.put(operation, new Counter());
+        }
+        Map<String, Long> backendBefore = backendRequests();
+
+        // Replay each recorded thread
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>();
+        ReplayClock clock = new ReplayClock(firstStart, originalPace);
+        for(Map.Entry<Integer, List<TraceEvent>> entry : threads.entrySet())
+        {
+            Thread worker = new Thread(
+                new Worker(entry.getValue(), dokanPaths, directories, clock, startSignal, latencies, failures),
+                String.format(Locale.US, "trace-replay-%d", entry.getKey()));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        clock.start();
+        startSignal.countDown();
+        for(Thread worker : workers)
+        {
+            worker.join();
+        }
+        long durationNanos = System.nanoTime() - clock.startNanos;
+
+        // Report the backend requests caused by the replay
+        Map<String, Long> backendAfter = backendRequests();
+        Map<String, Long> backendDelta = new TreeMap<String, Long>();
+        for(Map.Entry<String, Long> entry : backendAfter.entrySet())
+        {
+            Long before = backendBefore.get(entry.getKey());
+            long delta = entry.getValue() - (null == before ? 0 : before);
+            if (0 != delta)
+            {
+                backendDelta.put(entry.getKey(), delta);
+            }
+        }
+        return new TraceReplayReport(events.size(), durationNanos, latencies, failures, backendDelta);
+    }
+
+    /**
+     * Collects the recorded paths used as folders: the parents of other paths and the listed paths.
+     * @param events The events.
+     * @return The folder paths.
+     */
+    private static Set<String> directories(List<TraceEvent> events)
+    {
+        Set<String> directories = new HashSet<String>();
+        directories.add("");
+        for(TraceEvent event : events)
+        {
+            String path = event.getPath();
+            TraceOperation operation = event.getOperation();
+            if (TraceOperation.FIND_FILES == operation || TraceOperation.FIND_FILES_WITH_PATTERN == operation || TraceOperation.OPEN_DIRECTORY == operation)
+            {
+                directories.add(path);
+            }
+            for(int separator = path.lastIndexOf('/'); -1 != separator; separator = path.lastIndexOf('/', separator - 1))
+            {
+                if (!directories.add(path.substring(0, separator)))
+                {
+                    break;
+                }
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Takes the call counts of the backend operations.
+     * @return The call counts by backend operation name.
+     */
+    private Map<String, Long> backendRequests()
+    {
+        Map<String, Long> requests = new HashMap<String, Long>();
+        if (null != backend)
+        {
+            for(Map.Entry<String, OperationMetrics> entry : backend.getOperations().entrySet())
+            {
+                requests.put(entry.getKey(), entry.getValue().getLatency().getCount());
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * Schedules the events at their recorded pace.
+     */
+    private static final class ReplayClock
+    {
+        /**
+         * The start of the first event, in trace microseconds.
+         */
+        private final long firstStartMicros;
+
+        /**
+         * True to keep the recorded pace.
+         */
+        private final boolean originalPace;
+
+        /**
+         * The replay start, in System.nanoTime() time.
+         */
+        private volatile long startNanos;
+
+        /**
+         * Initializes a clock.
+         * @param firstStartMicros The start of the first event.
+         * @param originalPace True to keep the recorded pace.
+         */
+        private ReplayClock(long firstStartMicros, boolean originalPace)
+        {
+            this.firstStartMicros = firstStartMicros;
+            this.originalPace = originalPace;
+        }
+
+        /**
+         * Starts the replay.
+         */
+        private void start()
+        {
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * Waits until an event is due.
+         * @param event The event.
+         * @throws InterruptedException If interrupted.
+         */
+        private void await(TraceEvent event) throws InterruptedException
+        {
+            if (originalPace)
+            {
+                long dueNanos = startNanos + TimeUnit.MICROSECONDS.toNanos(event.getStartMicros() - firstStartMicros);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (0 < waitNanos)
+                {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the events of one recorded thread.
+     */
+    private final class Worker implements Runnable
+    {
+        /**
+         * The events of the recorded thread.
+         */
+        private final List<TraceEvent> events;
+
+        /**
+         * The Dokan paths by recorded path.
+         */
+        private final Map<String, String> dokanPaths;
+
+        /**
+         * The recorded folder paths.
+         */
+        private final Set<String> directories;
+
+        /**
+         * The replay clock.
+         */
+        private final ReplayClock clock;
+
+        /**
+         * The replay start signal.
+         */
+        private final CountDownLatch startSignal;
+
+        /**
+         * The latency by callback.
+         */
+        private final Map<TraceOperation, Histogram> latencies;
+
+        /**
+         * The failures by callback.
+         */
+        private final Map<TraceOperation, Counter> failures;
+
+        /**
+         * The read and write buffer, reused while the length doesn't change.
+         */
+        private ByteBuffer buffer;
+
+        /**
+         * Initializes a worker.
+         * @param events The events of the recorded thread.
+         * @param dokanPaths The Dokan paths by recorded path.
+         * @param directories The recorded folder paths.
+         * @param clock The replay clock.
+         * @param startSignal The replay start signal.
+         * @param latencies The latency by callback.
+         * @param failures The failures by callback.
+         */
+        private Worker(List<TraceEvent> events, Map<String, String> dokanPaths, Set<String> directories, ReplayClock clock, CountDownLatch startSignal,
+                       Map<TraceOperation, Histogram> latencies, Map<TraceOperation, Counter> failures)
+        {
+            this.events = events;
+            this.dokanPaths = dokanPaths;
+            this.directories = directories;
+            this.clock = clock;
+            this.startSignal = startSignal;
+            this.latencies = latencies;
+            this.failures = failures;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run()
+        {
+            try
+            {
+                startSignal.await();
+                for(TraceEvent event : events)
+                {
+                    if (TraceOperation.UNMOUNT == event.getOperation())
+                    {
+                        continue;
+                    }
+                    clock.await(event);
+
+                    // Execute and measure the callback
+                    long start = System.nanoTime();
+                    boolean failed = true;
+                    try
+                    {
+                        execute(event);
+                        failed = false;
+                    }
+                    catch (Exception e)
+                    {
+                        // Counted as a failure below
+                    }
+                    finally
+                    {
+                        latencies.get(event.getOperation()).record(System.nanoTime() - start);
+                        if (failed)
+                        {
+                            failures.get(event.getOperation()).increment();
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Calls the callback of an event.
+         * @param event The event.
+         * @throws Exception If the callback fails.
+         */
+        private void execute(TraceEvent event) throws Exception
+        {
+            String path = dokanPaths.get(event.getPath());
+            DokanFileInfo fileInfo = new DokanFileInfo(0, event.getProcessId(), directories.contains(event.getPath()));
+            switch (event.getOperation())
+            {
+                case CREATE_FILE:
+                    operations.onCreateFile(path, 0, 0, 0, 0, fileInfo);
+                    break;
+                case OPEN_DIRECTORY:
+                    operations.onOpenDirectory(path, fileInfo);
+                    break;
+                case CREATE_DIRECTORY:
+                    operations.onCreateDirectory(path, fileInfo);
+                    break;
+                case CLEANUP:
+                    operations.onCleanup(path, fileInfo);
+                    break;
+                case CLOSE_FILE:
+                    operations.onCloseFile(path, fileInfo);
+                    break;
+                case READ_FILE:
+                    operations.onReadFile(path, buffer(event.getLength()), event.getOffset(), fileInfo);
+                    break;
+                case WRITE_FILE:
+                    operations.onWriteFile(path, buffer(event.getLength()), event.getOffset(), fileInfo);
+                    break;
+                case FLUSH_FILE_BUFFERS:
+                    operations.onFlushFileBuffers(path, fileInfo);
+                    break;
+                case GET_FILE_INFORMATION:
+                    operations.onGetFileInformation(path, fileInfo);
+                    break;
+                case FIND_FILES:
+                    operations.onFindFiles(path, fileInfo);
+                    break;
+                case FIND_FILES_WITH_PATTERN:
+                    operations.onFindFilesWithPattern(path, "*", fileInfo);
+                    break;
+                case SET_FILE_ATTRIBUTES:
+                    operations.onSetFileAttributes(path, 0, fileInfo);
+                    break;
+                case SET_FILE_TIME:
+                    operations.onSetFileTime(path, 0, 0, 0, fileInfo);
+                    break;
+                case DELETE_FILE:
+                    operations.onDeleteFile(path, fileInfo);
+                    break;
+                case DELETE_DIRECTORY:
+                    operations.onDeleteDirectory(path, fileInfo);
+                    break;
+                case MOVE_FILE:
+                    operations.onMoveFile(path, path, false, fileInfo);
+                    break;
+                case SET_END_OF_FILE:
+                    operations.onSetEndOfFile(path, event.getLength(), fileInfo);
+                    break;
+                case LOCK_FILE:
+                    operations.onLockFile(path, event.getOffset(), event.getLength(), fileInfo);
+                    break;
+                case UNLOCK_FILE:
+                    operations.onUnlockFile(path, event.getOffset(), event.getLength(), fileInfo);
+                    break;
+                case GET_DISK_FREE_SPACE:
+                    operations.onGetDiskFreeSpace(fileInfo);
+                    break;
+                case GET_VOLUME_INFORMATION:
+                    operations.onGetVolumeInformation(path, fileInfo);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Gets a cleared buffer of a given capacity.
+         * @param length The capacity.
+         * @return The buffer.
+         */
+        private ByteBuffer buffer(long length)
+        {
+            int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(0, length));
+            if (null == buffer || buffer.capacity() != capacity)
+            {
+                buffer = ByteBuffer.allocate(capacity);
+            }
+            buffer.clear();
+            return buffer;
+        }
+    }
+}
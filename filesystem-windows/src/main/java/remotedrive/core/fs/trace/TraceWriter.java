@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Appends events to a binary trace, see TraceFormat.
+ * Paths are written once in a path table and events only refer to their id. When anonymized, every path segment is
+ * replaced by a salted hash keeping the extension: the tree shape and the file types are preserved while the names
+ * cannot be recovered, the salt being drawn for each trace and never written.
+ * Writes are serialized and buffered, the caller is expected to be a recording decorator.
+ */
+public class TraceWriter implements Closeable
+{
+    /**
+     * The trace output.
+     */
+    private final DataOutputStream output;
+
+    /**
+     * Are the path segments hashed.
+     */
+    private final boolean anonymized;
+
+    /**
+     * The segment hash salt.
+     */
+    private final long salt;
+
+    /**
+     * The recording start, in System.nanoTime() time.
+     */
+    private final long startNanos;
+
+    /**
+     * The path ids by client path, guarded by this.
+     */
+    private final Map<String, Integer> pathIds;
+
+    /**
+     * The thread indexes by thread id, guarded by this.
+     */
+    private final Map<Long, Integer> threadIndexes;
+
+    /**
+     * True once closed, guarded by this.
+     */
+    private boolean closed;
+
+    /**
+     * Initializes a writer and writes the trace header.
+     * @param stream The trace stream, closed with the writer.
+     * @param anonymized Are the path segments hashed.
+     * @throws IOException If the header cannot be written.
+     */
+    public TraceWriter(OutputStream stream, boolean anonymized) throws IOException
+    {
+        // Check input
+        if (null == stream)
+        {
+            throw new IllegalArgumentException("The stream cannot be null.");
+        }
+
+        // Initialize
+        this.output = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+        this.anonymized = anonymized;
+        this.salt = new SecureRandom().nextLong();
+        this.startNanos = System.nanoTime();
+        this.pathIds = new HashMap<String, Integer>();
+        this.threadIndexes = new HashMap<Long, Integer>();
+        this.pathIds.put("", TraceFormat.ROOT_ID);
+
+        // Write the header
+        output.writeInt(TraceFormat.MAGIC);
+        output.writeByte(TraceFormat.VERSION);
+        output.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Appends an event, ignored once closed.
+     * @param operation The callback.
+     * @param path The client path.
+     * @param offset The offset.
+     * @param length The length.
+     * @param processId The requesting process id.
+     * @param start The System.nanoTime() value taken before the call.
+     * @param end The System.nanoTime() value taken after the call.
+     * @param failed True if the callback threw.
+     * @throws IOException If the write fails.
+     */
+    public synchronized void write(TraceOperation operation, String path, long offset, long length, int processId, long start, long end, boolean failed) throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        // Resolve the path and the thread, defining them first if needed
+        int pathId = pathId(path);
+        int thread = threadIndex(Thread.currentThread().getId());
+
+        // Write the event
+        output.writeByte(TraceFormat.EVENT_RECORD);
+        output.writeByte(operation.getCode());
+        TraceFormat.writeVarLong(output, pathId);
+        TraceFormat.writeVarLong(output, offset);
+        TraceFormat.writeVarLong(output, length);
+        TraceFormat.writeVarLong(output, processId & 0xFFFFFFFFL);
+        TraceFormat.writeVarLong(output, thread);
+        TraceFormat.writeVarLong(output, Math.max(0, (start - startNanos) / 1000));
+        TraceFormat.writeVarLong(output, Math.max(0, (end - start) / 1000));
+        output.writeByte(failed ? TraceFormat.FAILED_FLAG : 0);
+    }
+
+    /**
+     * Flushes the buffered records.
+     * @throws IOException If the write fails.
+     */
+    public synchronized void flush() throws IOException
+    {
+        if (!closed)
+        {
+            output.flush();
+        }
+    }
+
+    /**
+     * Flushes the buffered records and closes the trace.
+     * @throws IOException If the write fails.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (!closed)
+        {
+            closed = true;
+            output.close();
+        }
+    }
+
+    /**
+     * Resolves the id of a path, writing the path record and the ones of its parents if needed.
+     * @param path The client path.
+     * @return The path id.
+     * @throws IOException If the write fails.
+     */
+    private int pathId(String path) throws IOException
+    {
+        Integer id = pathIds.get(path);
+        if (null != id)
+        {
+            return id;
+        }
+
+        // Define the parent first
+        int separator = path.lastIndexOf('/');
+        int parentId = pathId(-1 == separator ? "" : path.substring(0, separator));
+        String segment = path.substring(separator + 1);
+
+        // Then the path itself
+        id = pathIds.size();
+        pathIds.put(path, id);
+        output.writeByte(TraceFormat.PATH_RECORD);
+        TraceFormat.writeVarLong(output, id);
+        TraceFormat.writeVarLong(output, parentId);
+        output.writeUTF(anonymized ? anonymize(segment) : segment);
+        return id;
+    }
+
+    /**
+     * Resolves the index of a thread.
+     * @param threadId The thread id.
+     * @return The thread index.
+     */
+    private int threadIndex(long threadId)
+    {
+        Integer index = threadIndexes.get(threadId);
+        if (null == index)
+        {
+            index = threadIndexes.size();
+            threadIndexes.put(threadId, index);
+        }
+        return index;
+    }
+
+    /**
+     * Hashes a path segment, keeping short alphanumeric extensions.
+     * @param segment The segment.
+     * @return The anonymized segment.
+     */
+    private String anonymize(String segment)
+    {
+        // Salted FNV-1a with a final avalanche, case insensitive as the file system is
+        long hash = 0xCBF29CE484222325L ^ salt;
+        String lowerSegment = segment.toLowerCase(Locale.US);
+        for(int i = 0; i < lowerSegment.length(); ++i)
+        {
+            hash ^= lowerSegment.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        String anonymizedSegment = String.format(Locale.US, "%016x", hash ^ (hash >>> 33));
+
+        // Keep the extension
+        int dot = lowerSegment.lastIndexOf('.');
+        if (0 < dot && lowerSegment.length() - dot <= 9)
+        {
+            String extension = lowerSegment.substring(dot + 1);
+            for(int i = 0; i < extension.length(); ++i)
+            {
+                if (!Character.isLetterOrDigit(extension.charAt(i)))
+                {
+                    return anonymizedSegment;
+                }
+            }
+            return anonymizedSegment + "." + extension;
+        }
+        return anonymizedSegment;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+import remotedrive.core.File;
+import remotedrive.core.spi.Client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps the paths of an anonymized trace onto an existing tree, preserving the trace shape.
+ * Each recorded segment is mapped to a child of the mapped parent picked from the segment hash: a folder for recorded
+ * folders, a file with the same extension when possible for recorded files. Distinct recorded siblings get distinct
+ * children as long as the target folder has enough of them.
+ * The target tree is listed through the given client, which should not be the measured stack so that the mapping
+ * doesn't warm its caches.
+ */
+public class TreePathMapping implements TracePathMapping
+{
+    /**
+     * The client listing the target tree.
+     */
+    private final Client client;
+
+    /**
+     * The mapped paths by recorded path and kind.
+     */
+    private final Map<String, String> mappedPaths;
+
+    /**
+     * The target children by target folder.
+     */
+    private final Map<String, File[]> listings;
+
+    /**
+     * The target paths already used.
+     */
+    private final Set<String> usedPaths;
+
+    /**
+     * Initializes a mapping.
+     * @param client The authenticated client listing the target tree.
+     */
+    public TreePathMapping(Client client)
+    {
+        // Check input
+        if (null == client)
+        {
+            throw new IllegalArgumentException("The client cannot be null.");
+        }
+
+        // Initialize
+        this.client = client;
+        this.mappedPaths = new HashMap<String, String>();
+        this.listings = new HashMap<String, File[]>();
+        this.usedPaths = new HashSet<String>();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String map(String path, boolean directory)
+    {
+        // The root is the root
+        if (0 == path.length())
+        {
+            return path;
+        }
+
+        // Lookup the known mappings
+        String key = (directory ? "d:" : "f:") + path;
+        String mappedPath = mappedPaths.get(key);
+        if (null != mappedPath)
+        {
+            return mappedPath;
+        }
+
+        // Map the parent then pick a child
+        int separator = path.lastIndexOf('/');
+        String mappedParent = map(-1 == separator ? "" : path.substring(0, separator), true);
+        String segment = path.substring(separator + 1);
+        mappedPath = pick(mappedParent, segment, directory);
+        mappedPaths.put(key, mappedPath);
+        return mappedPath;
+    }
+
+    /**
+     * Picks the target child of a recorded segment.
+     * @param mappedParent The target folder.
+     * @param segment The recorded segment.
+     * @param directory True if the segment is a folder.
+     * @return The target path, the recorded segment under the target folder if no child fits.
+     */
+    private String pick(String mappedParent, String segment, boolean directory)
+    {
+        // Collect the candidates, preferring the same extension for files
+        File[] children = listing(mappedParent);
+        String extension = extension(segment);
+        List<File> candidates = new ArrayList<File>();
+        List<File> sameExtension = new ArrayList<File>();
+        for(File child : children)
+        {
+            if (child.isDirectory() == directory)
+            {
+                candidates.add(child);
+                if (!directory && null != extension && extension.equals(extension(child.getTitle())))
+                {
+                    sameExtension.add(child);
+                }
+            }
+        }
+        if (!sameExtension.isEmpty())
+        {
+            candidates = sameExtension;
+        }
+        if (candidates.isEmpty())
+        {
+            return 0 == mappedParent.length() ? segment : mappedParent + "/" + segment;
+        }
+
+        // Probe from the hashed slot for a child not used yet
+        int slot = (segment.hashCode() & Integer.MAX_VALUE) % candidates.size();
+        for(int i = 0; i < candidates.size(); ++i)
+        {
+            String candidate = candidates.get((slot + i) % candidates.size()).getAbsolutePath();
+            if (usedPaths.add(candidate))
+            {
+                return candidate;
+            }
+        }
+        return candidates.get(slot).getAbsolutePath();
+    }
+
+    /**
+     * Lists a target folder once.
+     * @param path The target folder.
+     * @return The children, empty if the folder doesn't exist.
+     */
+    private File[] listing(String path)
+    {
+        File[] children = listings.get(path);
+        if (null == children)
+        {
+            children = client.retrieveChildren(path);
+            children = null == children ? new File[0] : children;
+            listings.put(path, children);
+        }
+        return children;
+    }
+
+    /**
+     * Gets the extension of a title.
+     * @param title The title.
+     * @return The lower cased extension, null if none.
+     */
+    private static String extension(String title)
+    {
+        int dot = title.lastIndexOf('.');
+        return 0 < dot ? title.substring(dot + 1).toLowerCase(Locale.US) : null;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Tests the wildcard expressions against the FsRtlIsNameInExpression semantics.
+ */
+public class WildcardExpressionTest
+{
+    @Test
+    public void compile_cached()
+    {
+        TestCase.assertSame(WildcardExpression.compile("*.txt"), WildcardExpression.compile("*.txt"));
+        TestCase.assertEquals("*.txt", WildcardExpression.compile("*.txt").getExpression());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compile_null()
+    {
+        WildcardExpression.compile(null);
+    }
+
+    @Test
+    public void matches_all()
+    {
+        TestCase.assertTrue(WildcardExpression.compile("*").matchesAll());
+        TestCase.assertTrue(WildcardExpression.compile("**").matchesAll());
+        TestCase.assertTrue(WildcardExpression.compile("").matchesAll());
+        TestCase.assertTrue(WildcardExpression.compile("*").matches("noextension"));
+        TestCase.assertFalse(WildcardExpression.compile("*").matches(null));
+    }
+
+    @Test
+    public void matches_literal()
+    {
+        WildcardExpression expression = WildcardExpression.compile("Readme.md");
+        TestCase.assertTrue(expression.isLiteral());
+        TestCase.assertEquals("Readme.md", expression.getLiteralPrefix());
+        TestCase.assertTrue(expression.matches("README.MD"));
+        TestCase.assertFalse(expression.matches("Readme.md.bak"));
+    }
+
+    @Test
+    public void matches_prefixAndSuffix()
+    {
+        WildcardExpression prefix = WildcardExpression.compile("rep*");
+        TestCase.assertEquals("rep", prefix.getLiteralPrefix());
+        TestCase.assertTrue(prefix.matches("Report.doc"));
+        TestCase.assertTrue(prefix.matches("rep"));
+        TestCase.assertFalse(prefix.matches("re"));
+
+        WildcardExpression suffix = WildcardExpression.compile("*.TXT");
+        TestCase.assertEquals("", suffix.getLiteralPrefix());
+        TestCase.assertTrue(suffix.matches("notes.txt"));
+        TestCase.assertTrue(suffix.matches(".txt"));
+        TestCase.assertFalse(suffix.matches("txt"));
+    }
+
+    @Test
+    public void matches_starDotStar()
+    {
+        // Unlike the Win32 layer, FsRtlIsNameInExpression requires a dot for *.*
+        WildcardExpression expression = WildcardExpression.compile("*.*");
+        TestCase.assertTrue(expression.matches("a.b"));
+        TestCase.assertTrue(expression.matches("archive.tar.gz"));
+        TestCase.assertTrue(expression.matches(".profile"));
+        TestCase.assertTrue(expression.matches("trailing."));
+        TestCase.assertFalse(expression.matches("noextension"));
+    }
+
+    @Test
+    public void matches_questionMark()
+    {
+        TestCase.assertTrue(WildcardExpression.compile("??.txt").matches("ab.txt"));
+        TestCase.assertFalse(WildcardExpression.compile("??.txt").matches("a.txt"));
+        TestCase.assertFalse(WildcardExpression.compile("??.txt").matches("abc.txt"));
+        TestCase.assertTrue(WildcardExpression.compile("a?c").matches("a.c"));
+    }
+
+    @Test
+    public void matches_genericStars()
+    {
+        WildcardExpression expression = WildcardExpression.compile("a*b*c");
+        TestCase.assertTrue(expression.matches("abc"));
+        TestCase.assertTrue(expression.matches("aXbYc"));
+        TestCase.assertTrue(expression.matches("ABBBC"));
+        TestCase.assertFalse(expression.matches("acb"));
+        TestCase.assertFalse(expression.matches("abcd"));
+    }
+
+    @Test
+    public void matches_dosStar()
+    {
+        // The DOS star stops at the last dot of the name
+        WildcardExpression expression = WildcardExpression.compile("<.txt");
+        TestCase.assertTrue(expression.matches("notes.txt"));
+        TestCase.assertTrue(expression.matches("notes.backup.txt"));
+        TestCase.assertTrue(expression.matches(".txt"));
+        TestCase.assertFalse(expression.matches("notes.txt.bak"));
+        TestCase.assertFalse(expression.matches("notestxt"));
+
+        // Without dot in the name it eats the whole name
+        TestCase.assertTrue(WildcardExpression.compile("a<").matches("abc"));
+        TestCase.assertTrue(WildcardExpression.compile("<c").matches("abc"));
+        TestCase.assertFalse(WildcardExpression.compile("<c").matches("a.c"));
+        TestCase.assertTrue(WildcardExpression.compile("<.c").matches("a.b.c"));
+    }
+
+    @Test
+    public void matches_dosQuestionMark()
+    {
+        // Each DOS question mark matches one character or collapses before the dot
+        WildcardExpression expression = WildcardExpression.compile("foo>>>.txt");
+        TestCase.assertTrue(expression.matches("foo.txt"));
+        TestCase.assertTrue(expression.matches("foo1.txt"));
+        TestCase.assertTrue(expression.matches("foo12.txt"));
+        TestCase.assertTrue(expression.matches("foo123.txt"));
+        TestCase.assertFalse(expression.matches("foo1234.txt"));
+        TestCase.assertFalse(expression.matches("foo.1.txt"));
+
+        // Or at the end of the name
+        WildcardExpression end = WildcardExpression.compile("foo>>>");
+        TestCase.assertTrue(end.matches("foo"));
+        TestCase.assertTrue(end.matches("foo1"));
+        TestCase.assertTrue(end.matches("foo123"));
+        TestCase.assertFalse(end.matches("foo1234"));
+        TestCase.assertFalse(end.matches("foo.a"));
+
+        // But not before another character
+        TestCase.assertFalse(WildcardExpression.compile("a>c").matches("ac"));
+        TestCase.assertTrue(WildcardExpression.compile("a>c").matches("abc"));
+    }
+
+    @Test
+    public void matches_dosDot()
+    {
+        // The DOS dot matches a dot, or nothing at the end of the name
+        WildcardExpression expression = WildcardExpression.compile("a\"");
+        TestCase.assertTrue(expression.matches("a"));
+        TestCase.assertTrue(expression.matches("a."));
+        TestCase.assertFalse(expression.matches("ab"));
+        TestCase.assertFalse(expression.matches("a.b"));
+
+        WildcardExpression middle = WildcardExpression.compile("a\"b");
+        TestCase.assertTrue(middle.matches("a.b"));
+        TestCase.assertFalse(middle.matches("ab"));
+
+        // Names without extension as sent for "*." by the Win32 layer
+        WildcardExpression noExtension = WildcardExpression.compile("<\"*");
+        TestCase.assertTrue(noExtension.matches("Makefile"));
+        TestCase.assertTrue(noExtension.matches("trailing."));
+    }
+
+    @Test
+    public void matches_caseFolding()
+    {
+        TestCase.assertTrue(WildcardExpression.compile("r?ADME.*").matches("readme.txt"));
+        TestCase.assertTrue(WildcardExpression.compile("<.TXT").matches("Notes.txt"));
+        TestCase.assertTrue(WildcardExpression.compile("\u00c9T\u00c9*").matches("\u00e9t\u00e9.jpg"));
+        TestCase.assertTrue(WildcardExpression.compile("*\u00c9.JPG").matches("\u00e9t\u00e9.jpg"));
+        TestCase.assertTrue(WildcardExpression.compile("\u00c9t\u00e9>.jpg").matches("\u00e9T\u00c92.JPG"));
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.core.fs.trace;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tests the binary trace format round trip.
+ */
+public class TraceFormatTest
+{
+    @Test
+    public void varLong_roundTrip() throws IOException
+    {
+        long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, 0xFFFFFFFFL, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        for(long value : values)
+        {
+            TraceFormat.writeVarLong(output, value);
+        }
+        TestCase.assertEquals(1 + 1 + 1 + 2 + 2 + 3 + 5 + 5 + 9 + 10 + 10, bytes.size());
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for(long value : values)
+        {
+            TestCase.assertEquals(value, TraceFormat.readVarLong(input));
+        }
+    }
+
+    @Test
+    public void trace_roundTrip() throws Exception
+    {
+        // Write events from two threads
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long beforeMillis = System.currentTimeMillis();
+        long beforeNanos = System.nanoTime();
+        final TraceWriter writer = new TraceWriter(bytes, false);
+        long afterNanos = System.nanoTime();
+        long afterMillis = System.currentTimeMillis();
+        final long start = afterNanos + 5000000000L;
+        writer.write(TraceOperation.READ_FILE, "Music/Album/song.mp3", 4096, 65536, 1234, start, start + 1500000, false);
+        writer.write(TraceOperation.FIND_FILES, "Music/Album", 0, 0, -2, start + 2000000, start + 2999000, true);
+        Thread other = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    writer.write(TraceOperation.GET_FILE_INFORMATION, "Documents", Long.MAX_VALUE, -1, 0, start + 3000000, start + 3000000, false);
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        other.start();
+        other.join();
+        writer.write(TraceOperation.UNMOUNT, "", 0, 0, 0, start, start - 1000, false);
+        writer.close();
+        writer.write(TraceOperation.CLOSE_FILE, "Ignored", 0, 0, 0, start, start, false);
+
+        // Read them back
+        TraceReader reader = new TraceReader(new ByteArrayInputStream(bytes.toByteArray()));
+        TestCase.assertTrue(beforeMillis <= reader.getStartTime() && reader.getStartTime() <= afterMillis);
+        List<TraceEvent> events = new ArrayList<TraceEvent>();
+        for(TraceEvent event = reader.next(); null != event; event = reader.next())
+        {
+            events.add(event);
+        }
+        reader.close();
+        TestCase.assertEquals(4, events.size());
+
+        TraceEvent read = events.get(0);
+        TestCase.assertEquals(TraceOperation.READ_FILE, read.getOperation());
+        TestCase.assertEquals("Music/Album/song.mp3", read.getPath());
+        TestCase.assertEquals(4096, read.getOffset());
+        TestCase.assertEquals(65536, read.getLength());
+        TestCase.assertEquals(1234, read.getProcessId());
+        TestCase.assertEquals(0, read.getThread());
+        TestCase.assertTrue((start - afterNanos) / 1000 <= read.getStartMicros() && read.getStartMicros() <= (start - beforeNanos) / 1000);
+        TestCase.assertEquals(1500, read.getDurationMicros());
+        TestCase.assertFalse(read.isFailed());
+
+        TraceEvent find = events.get(1);
+        TestCase.assertEquals(TraceOperation.FIND_FILES, find.getOperation());
+        TestCase.assertEquals("Music/Album", find.getPath());
+        TestCase.assertEquals(0, find.getOffset());
+        TestCase.assertEquals(0, find.getLength());
+        TestCase.assertEquals(-2, find.getProcessId());
+        TestCase.assertEquals(0, find.getThread());
+        TestCase.assertEquals(2000, find.getStartMicros() - read.getStartMicros());
+        TestCase.assertEquals(999, find.getDurationMicros());
+        TestCase.assertTrue(find.isFailed());
+
+        TraceEvent information = events.get(2);
+        TestCase.assertEquals(TraceOperation.GET_FILE_INFORMATION, information.getOperation());
+        TestCase.assertEquals("Documents", information.getPath());
+        TestCase.assertEquals(Long.MAX_VALUE, information.getOffset());
+        TestCase.assertEquals(-1, information.getLength());
+        TestCase.assertEquals(0, information.getProcessId());
+        TestCase.assertEquals(1, information.getThread());
+        TestCase.assertEquals(0, information.getDurationMicros());
+        TestCase.assertFalse(information.isFailed());
+
+        // Negative durations are clamped
+        TraceEvent unmount = events.get(3);
+        TestCase.assertEquals(TraceOperation.UNMOUNT, unmount.getOperation());
+        TestCase.assertEquals("", unmount.getPath());
+        TestCase.assertEquals(0, unmount.getThread());
+        TestCase.assertEquals(0, unmount.getDurationMicros());
+    }
+
+    @Test
+    public void trace_pathTable() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(bytes, false);
+        writer.write(TraceOperation.READ_FILE, "a/b/c.txt", 0, 1, 0, 0, 0, false);
+        writer.write(TraceOperation.FIND_FILES, "a/b", 0, 0, 0, 0, 0, false);
+        writer.write(TraceOperation.READ_FILE, "d", 0, 1, 0, 0, 0, false);
+        writer.write(TraceOperation.READ_FILE, "a/e", 0, 1, 0, 0, 0, false);
+        writer.close();
+
+        // Each path is defined once, after its parent, and events refer to its id
+        List<String> records = records(bytes.toByteArray());
+        TestCase.assertEquals(Arrays.asList(
+            "path 1 0 a", "path 2 1 b", "path 3 2 c.txt", "event 3",
+            "event 2",
+            "path 4 0 d", "event 4",
+            "path 5 1 e", "event 5"), records);
+    }
+
+    @Test
+    public void trace_anonymized() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(bytes, true);
+        writer.write(TraceOperation.READ_FILE, "Private/Secret.DOCX", 0, 1, 0, 0, 0, false);
+        writer.write(TraceOperation.READ_FILE, "private/notes", 0, 1, 0, 0, 0, false);
+        writer.write(TraceOperation.READ_FILE, "Private/archive.tar.gz~", 0, 1, 0, 0, 0, false);
+        writer.close();
+
+        // The tree shape and the extensions are kept, the names are hashed case insensitively
+        List<TraceEvent> events = readAll(bytes.toByteArray());
+        String[] secret = events.get(0).getPath().split("/");
+        String[] notes = events.get(1).getPath().split("/");
+        String[] archive = events.get(2).getPath().split("/");
+        TestCase.assertEquals(2, secret.length);
+        TestCase.assertEquals(secret[0], notes[0]);
+        TestCase.assertEquals(secret[0], archive[0]);
+        TestCase.assertFalse(secret[0].toLowerCase(Locale.US).contains("private"));
+        TestCase.assertTrue(secret[1].matches("[0-9a-f]{16}\\.docx"));
+        TestCase.assertTrue(notes[1].matches("[0-9a-f]{16}"));
+        TestCase.assertTrue(archive[1].matches("[0-9a-f]{16}"));
+        TestCase.assertEquals(8, records(bytes.toByteArray()).size());
+    }
+
+    @Test
+    public void trace_truncated() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(bytes, false);
+        writer.write(TraceOperation.READ_FILE, "a", 0, 1, 0, 0, 0, false);
+        writer.write(TraceOperation.READ_FILE, "b", 0, 1, 0, 0, 0, false);
+        writer.close();
+
+        // A trace cut in its last record is read up to the previous one
+        byte[] trace = bytes.toByteArray();
+        List<TraceEvent> events = readAll(Arrays.copyOf(trace, trace.length - 1));
+        TestCase.assertEquals(1, events.size());
+        TestCase.assertEquals("a", events.get(0).getPath());
+    }
+
+    @Test(expected = IOException.class)
+    public void trace_notATrace() throws IOException
+    {
+        new TraceReader(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13}));
+    }
+
+    /**
+     * Reads all the events of a trace.
+     * @param trace The trace bytes.
+     * @return The events.
+     * @throws IOException If the trace is malformed.
+     */
+    private static List<TraceEvent> readAll(byte[] trace) throws IOException
+    {
+        TraceReader reader = new TraceReader(new ByteArrayInputStream(trace));
+        List<TraceEvent> events = new ArrayList<TraceEvent>();
+        for(TraceEvent event = reader.next(); null != event; event = reader.next())
+        {
+            events.add(event);
+        }
+        reader.close();
+        return events;
+    }
+
+    /**
+     * Decodes the raw records of a trace.
+     * @param trace The trace bytes.
+     * @return The path records as "path id parent segment" and the events as "event path id".
+     * @throws IOException If the trace is malformed.
+     */
+    private static List<String> records(byte[] trace) throws IOException
+    {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(trace));
+        TestCase.assertEquals(TraceFormat.MAGIC, input.readInt());
+        TestCase.assertEquals(TraceFormat.VERSION, input.readUnsignedByte());
+        input.readLong();
+
+        List<String> records = new ArrayList<String>();
+        for(int type = input.read(); -1 != type; type = input.read())
+        {
+            if (TraceFormat.PATH_RECORD == type)
+            {
+                long id = TraceFormat.readVarLong(input);
+                long parentId = TraceFormat.readVarLong(input);
+                records.add("path " + id + " " + parentId + " " + input.readUTF());
+                continue;
+            }
+            TestCase.assertEquals(TraceFormat.EVENT_RECORD, type);
+            input.readUnsignedByte();
+            records.add("event " + TraceFormat.readVarLong(input));
+            for(int i = 0; i < 6; ++i)
+            {
+                TraceFormat.readVarLong(input);
+            }
+            input.readUnsignedByte();
+        }
+        return records;
+    }
+}
@@ -30,6 +30,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Controller factory.
@@ -44,6 +46,11 @@ public class ControllerFactory implements Callback<Class<?>, Object>
      */
     private static Logger log = Logger.getLogger(ControllerFactory.class);
 
+    /**
+     * The constructors already looked up, by controller class followed by the constructor parameter types.
+     */
+    private static final ConcurrentMap<List<Class<?>>, Constructor<?>> constructors = new ConcurrentHashMap<List<Class<?>>, Constructor<?>>();
+
     /**
      * Core bootstrap allowing the control the core features.
      */
@@ -148,11 +155,18 @@ public class ControllerFactory implements Callback<Class<?>, Object>
 
         try
         {
-            // Try to find a matching constructor and call it
-            Constructor constructor = controllerClass.getConstructor(classes.toArray(new Class[classes.size()]));
-            Object newInstance = constructor.newInstance(parameters.toArray(new Object[parameters.size()]));
-            log.info(String.format(Locale.US, "GUI Controller created: %s", controllerClass));
-            return newInstance;
+            // Try to find a matching constructor, once per signature, and call it
+            List<Class<?>> signature = new ArrayList<Class<?>>(classes.size() + 1);
+            signature.add(controllerClass);
+            signature.addAll(classes);
+            Constructor<?> constructor = constructors.get(signature);
+            if (null == constructor)
+            {
+                constructor = controllerClass.getConstructor(classes.toArray(new Class[classes.size()]));
+                constructors.putIfAbsent(signature, constructor);
+                log.info(String.format(Locale.US, "GUI Controller constructor found: %s", constructor));
+            }
+            return constructor.newInstance(parameters.toArray(new Object[parameters.size()]));
         }
         catch (Exception exception)
         {
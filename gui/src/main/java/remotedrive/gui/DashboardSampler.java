@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.gui;
+
+import javafx.application.Platform;
+import org.apache.log4j.Logger;
+import remotedrive.core.DaemonThreadFactory;
+import remotedrive.core.metrics.DriveMetrics;
+import remotedrive.core.metrics.MetricsSample;
+import remotedrive.core.metrics.MetricsSampler;
+import remotedrive.gui.component.DriveDashboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Samples the metrics of the active dashboards on a background timer.
+ * The samples of a tick are handed to the FX thread at once, and a tick is skipped while the previous batch hasn't
+ * been shown yet, so that a busy FX thread never accumulates updates.
+ */
+public class DashboardSampler
+{
+    /**
+     * Logger.
+     */
+    private static Logger log = Logger.getLogger(DashboardSampler.class);
+
+    /**
+     * The sampling period, in milliseconds.
+     */
+    public static final long PERIOD_MILLIS = 1000;
+
+    /**
+     * The registered dashboards.
+     */
+    private final List<Registration> registrations;
+
+    /**
+     * The timer.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * True while a batch waits for the FX thread.
+     */
+    private final AtomicBoolean pending;
+
+    /**
+     * Initializes the sampler and starts its timer.
+     */
+    public DashboardSampler()
+    {
+        this.registrations = new CopyOnWriteArrayList<Registration>();
+        this.pending = new AtomicBoolean();
+        this.timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("dashboard"));
+        this.timer.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                tick();
+            }
+        }, PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Feeds a dashboard with the samples of drive metrics, registering it again replacing its metrics.
+     * @param metrics The drive metrics.
+     * @param dashboard The dashboard.
+     */
+    public void register(DriveMetrics metrics, DriveDashboard dashboard)
+    {
+        // Check input
+        if (null == metrics)
+        {
+            throw new IllegalArgumentException("The metrics cannot be null.");
+        }
+        if (null == dashboard)
+        {
+            throw new IllegalArgumentException("The dashboard cannot be null.");
+        }
+
+        unregister(dashboard);
+        registrations.add(new Registration(new MetricsSampler(metrics), dashboard));
+    }
+
+    /**
+     * Stops feeding a dashboard.
+     * @param dashboard The dashboard.
+     */
+    public void unregister(DriveDashboard dashboard)
+    {
+        for(Registration registration : registrations)
+        {
+            if (registration.dashboard == dashboard)
+            {
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    /**
+     * Stops the timer.
+     */
+    public void shutdown()
+    {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Samples the active dashboards and hands the batch to the FX thread.
+     */
+    private void tick()
+    {
+        try
+        {
+            // Skip the tick if the FX thread is late, the next samples cover the skipped interval
+            if (!pending.compareAndSet(false, true))
+            {
+                return;
+            }
+
+            // Sample off the FX thread
+            final List<Registration> sampled = new ArrayList<Registration>();
+            final List<MetricsSample> samples = new ArrayList<MetricsSample>();
+            for(Registration registration : registrations)
+            {
+                boolean active = registration.dashboard.isActive();
+                if (active)
+                {
+                    // The first sample after an inactive period only resets the interval
+                    MetricsSample sample = registration.sampler.sample();
+                    if (registration.sampling)
+                    {
+                        sampled.add(registration);
+                        samples.add(sample);
+                    }
+                }
+                registration.sampling = active;
+            }
+            if (sampled.isEmpty())
+            {
+                pending.set(false);
+                return;
+            }
+
+            // Show the whole batch at once
+            Platform.runLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    pending.set(false);
+                    for(int i = 0; i < sampled.size(); ++i)
+                    {
+                        sampled.get(i).dashboard.update(samples.get(i));
+                    }
+                }
+            });
+        }
+        catch (RuntimeException exception)
+        {
+            // Keep the timer alive
+            pending.set(false);
+            log.error("Unable to sample the drive metrics", exception);
+        }
+    }
+
+    /**
+     * A dashboard and the sampler of its drive metrics.
+     */
+    private static class Registration
+    {
+        /**
+         * The sampler.
+         */
+        private final MetricsSampler sampler;
+
+        /**
+         * The dashboard.
+         */
+        private final DriveDashboard dashboard;
+
+        /**
+         * True if the dashboard was active at the previous tick, only used by the timer thread.
+         */
+        private boolean sampling;
+
+        /**
+         * Initializes a registration.
+         * @param sampler The sampler.
+         * @param dashboard The dashboard.
+         */
+        private Registration(MetricsSampler sampler, DriveDashboard dashboard)
+        {
+            this.sampler = sampler;
+            this.dashboard = dashboard;
+        }
+    }
+}
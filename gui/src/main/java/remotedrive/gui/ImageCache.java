@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.gui;
+
+import javafx.scene.image.Image;
+import remotedrive.core.ClientFactoryDescriptor;
+import remotedrive.core.RemoteDriveBootstrap;
+
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decodes the application images once.
+ * Images are immutable and can be shared by any number of image views, so list cells don't decode the same icons
+ * again and again.
+ */
+public class ImageCache
+{
+    /**
+     * The bootstrap providing the client factory images.
+     */
+    private final RemoteDriveBootstrap remoteDriveBootstrap;
+
+    /**
+     * The classpath images by resource path.
+     */
+    private final ConcurrentMap<String, Image> resources;
+
+    /**
+     * The client factory images by factory name.
+     */
+    private final ConcurrentMap<String, Image> factoryImages;
+
+    /**
+     * Initializes the cache.
+     * @param remoteDriveBootstrap The remote drive application.
+     */
+    public ImageCache(RemoteDriveBootstrap remoteDriveBootstrap)
+    {
+        // Check input
+        if (null == remoteDriveBootstrap)
+        {
+            throw new IllegalArgumentException("The remote drive application cannot be null.");
+        }
+
+        // Initialize
+        this.remoteDriveBootstrap = remoteDriveBootstrap;
+        this.resources = new ConcurrentHashMap<String, Image>();
+        this.factoryImages = new ConcurrentHashMap<String, Image>();
+    }
+
+    /**
+     * Gets a classpath image.
+     * @param path The resource path.
+     * @return The image.
+     */
+    public Image getResource(String path)
+    {
+        // Check input
+        if (null == path)
+        {
+            throw new IllegalArgumentException("The path cannot be null.");
+        }
+
+        Image image = resources.get(path);
+        if (null == image)
+        {
+            image = new Image(getClass().getResourceAsStream(path));
+            Image existingImage = resources.putIfAbsent(path, image);
+            image = null == existingImage ? image : existingImage;
+        }
+        return image;
+    }
+
+    /**
+     * Gets the image of a client factory.
+     * @param factoryName The client factory name.
+     * @return The image, null if the factory is unknown or has no image.
+     */
+    public Image getClientFactoryImage(String factoryName)
+    {
+        if (null == factoryName)
+        {
+            return null;
+        }
+
+        Image image = factoryImages.get(factoryName);
+        if (null == image)
+        {
+            // Decode the image provided by the factory descriptor
+            ClientFactoryDescriptor descriptor = remoteDriveBootstrap.lookupClientFactoryDescriptor(factoryName);
+            InputStream stream = null == descriptor ? null : descriptor.getImageAsStream();
+            if (null == stream)
+            {
+                return null;
+            }
+            image = new Image(stream);
+            Image existingImage = factoryImages.putIfAbsent(factoryName, image);
+            image = null == existingImage ? image : existingImage;
+        }
+        return image;
+    }
+}
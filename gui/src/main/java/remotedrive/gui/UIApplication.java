@@ -23,8 +23,8 @@ import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
-import javafx.scene.image.Image;
 import javafx.stage.Stage;
+import org.apache.log4j.LogManager;
 import remotedrive.core.RemoteDriveBootstrap;
 
 import java.io.File;
@@ -57,6 +57,16 @@ public class UIApplication extends Application
      */
     private ResourceBundle resourceBundle;
 
+    /**
+     * The sampler of the drive dashboards.
+     */
+    private DashboardSampler dashboardSampler;
+
+    /**
+     * The decoded images.
+     */
+    private ImageCache imageCache;
+
     /**
      * JavaFX bootstrap.
      * @param stage The stage.
@@ -69,10 +79,14 @@ public class UIApplication extends Application
         Path path = Paths.get(String.format(Locale.US, "%s%s.remotedrive", userHome, File.separator));
         remoteDriveApplication = new RemoteDriveBootstrap(path);
         remoteDriveApplication.load();
+        imageCache = new ImageCache(remoteDriveApplication);
+
+        // Sample the drive dashboards in background
+        dashboardSampler = new DashboardSampler();
 
         // Load resources
         resourceBundle = ResourceBundle.getBundle("i18n.main");
-        stage.getIcons().add(new Image(getClass().getResourceAsStream("/icon/remote-drive.png")));
+        stage.getIcons().add(imageCache.getResource("/icon/remote-drive.png"));
         Parent root = createLoader(getClass().getResource("/template/main.fxml")).load();
 
         // Initialize the scene
@@ -80,6 +94,52 @@ public class UIApplication extends Application
         stage.setTitle(resourceBundle.getString("window.main.title"));
         stage.setScene(scene);
         stage.show();
+
+        // Mount the enabled drives in background
+        remoteDriveApplication.getMountManager().mountAll(remoteDriveApplication.getConfigurations());
+
+        // Apply the tuning edited in the configuration file while running
+        remoteDriveApplication.watchConfiguration();
+    }
+
+    /**
+     * JavaFX shutdown.
+     */
+    @Override
+    public void stop()
+    {
+        // Stop sampling the drive dashboards
+        if (null != dashboardSampler)
+        {
+            dashboardSampler.shutdown();
+        }
+
+        // Unmount all the drives and write the pending configuration changes
+        if (null != remoteDriveApplication)
+        {
+            remoteDriveApplication.shutdown();
+        }
+
+        // Flush the asynchronously written log messages
+        LogManager.shutdown();
+    }
+
+    /**
+     * Gets the sampler of the drive dashboards.
+     * @return The dashboard sampler.
+     */
+    public DashboardSampler getDashboardSampler()
+    {
+        return dashboardSampler;
+    }
+
+    /**
+     * Gets the decoded images.
+     * @return The image cache.
+     */
+    public ImageCache getImageCache()
+    {
+        return imageCache;
     }
 
     /**
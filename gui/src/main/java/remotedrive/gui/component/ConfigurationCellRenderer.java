@@ -26,6 +26,7 @@ import org.apache.log4j.Logger;
 import remotedrive.core.Configuration;
 import remotedrive.core.RemoteDriveBootstrap;
 import remotedrive.gui.UIApplication;
+import remotedrive.gui.controller.DriveItemController;
 
 import java.util.ResourceBundle;
 
@@ -54,6 +55,16 @@ public class ConfigurationCellRenderer extends ListCell<Configuration>
      */
     protected ResourceBundle resourceBundle;
 
+    /**
+     * The drive item, loaded once and kept while the cell is reused for other drives or emptied.
+     */
+    private Node itemGraphic;
+
+    /**
+     * The drive item controller.
+     */
+    private DriveItemController itemController;
+
     /**
      * Initializes the cell renderer.
      * @param uiApplication The gui application.
@@ -82,23 +93,31 @@ public class ConfigurationCellRenderer extends ListCell<Configuration>
         super.updateItem(configuration, empty);
 
         // Render the cell only if it's not an empty one
-        if (!empty)
+        if (!empty && null != configuration)
         {
-            // If the configuration is set and the UI component is not generated yet
-            if (null != configuration && null == getGraphic())
+            // Load the drive item once, then only bind it to the shown configuration
+            if (null == itemGraphic)
             {
                 try
                 {
                     FXMLLoader loader = uiApplication.createLoader(getClass().getResource("/template/drive-item.fxml"), configuration);
-                    Node graphic = loader.load();
-                    setGraphic(graphic);
+                    itemGraphic = loader.load();
+                    itemController = loader.getController();
                 }
                 catch (Exception exception)
                 {
                     log.error(exception.getMessage(), exception);
+                    return;
                 }
             }
-
+            else
+            {
+                itemController.setConfiguration(configuration);
+            }
+            if (itemGraphic != getGraphic())
+            {
+                setGraphic(itemGraphic);
+            }
         }
         else
         {
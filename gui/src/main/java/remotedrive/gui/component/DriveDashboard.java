@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2014, Alain Defrance. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package remotedrive.gui.component;
+
+import javafx.scene.control.Label;
+import javafx.scene.layout.GridPane;
+import remotedrive.core.metrics.MetricsSample;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+/**
+ * Shows the live activity of a drive: the callbacks per second, the callback latency, the cache hit ratio, the
+ * transfer rates and the pending background tasks.
+ * Samples are taken by the DashboardSampler, only while the dashboard is active.
+ */
+public class DriveDashboard extends GridPane
+{
+    /**
+     * The application resource bundle.
+     */
+    private final ResourceBundle resourceBundle;
+
+    /**
+     * The callbacks per second.
+     */
+    private final Label operationsLabel;
+
+    /**
+     * The callback latency percentiles.
+     */
+    private final Label latencyLabel;
+
+    /**
+     * The cache hit ratio.
+     */
+    private final Label cacheLabel;
+
+    /**
+     * The download rate.
+     */
+    private final Label downloadLabel;
+
+    /**
+     * The upload rate.
+     */
+    private final Label uploadLabel;
+
+    /**
+     * The pending background tasks.
+     */
+    private final Label queueLabel;
+
+    /**
+     * The access prediction precision and recall.
+     */
+    private final Label predictionLabel;
+
+    /**
+     * Is the dashboard shown and waiting for samples.
+     */
+    private volatile boolean active;
+
+    /**
+     * Initializes the dashboard.
+     * @param resourceBundle The application resource bundle.
+     */
+    public DriveDashboard(ResourceBundle resourceBundle)
+    {
+        // Check input
+        if (null == resourceBundle)
+        {
+            throw new IllegalArgumentException("The resource bundle cannot be null.");
+        }
+
+        // Initialize the rows
+        this.resourceBundle = resourceBundle;
+        this.operationsLabel = addRow(0, "dashboard.operations");
+        this.latencyLabel = addRow(1, "dashboard.latency");
+        this.cacheLabel = addRow(2, "dashboard.cache");
+        this.downloadLabel = addRow(3, "dashboard.download");
+        this.uploadLabel = addRow(4, "dashboard.upload");
+        this.queueLabel = addRow(5, "dashboard.queue");
+        this.predictionLabel = addRow(6, "dashboard.prediction");
+        getStyleClass().add("dashboard");
+        operationsLabel.setWrapText(true);
+    }
+
+    /**
+     * Adds a row.
+     * @param row The row index.
+     * @param key The resource key of the row title.
+     * @return The value label.
+     */
+    private Label addRow(int row, String key)
+    {
+        Label title = new Label(resourceBundle.getString(key));
+        title.getStyleClass().add("dashboard-title");
+        Label value = new Label("-");
+        add(title, 0, row);
+        add(value, 1, row);
+        return value;
+    }
+
+    /**
+     * Is the dashboard shown and waiting for samples.
+     * @return true if active, false otherwise.
+     */
+    public boolean isActive()
+    {
+        return active;
+    }
+
+    /**
+     * Enables or disables the sampling.
+     * @param active True to receive samples.
+     */
+    public void setActive(boolean active)
+    {
+        this.active = active;
+    }
+
+    /**
+     * Clears the rows until the next sample, from the FX thread.
+     */
+    public void clear()
+    {
+        for(Label label : new Label[] {operationsLabel, latencyLabel, cacheLabel, downloadLabel, uploadLabel, queueLabel, predictionLabel})
+        {
+            label.setText("-");
+        }
+    }
+
+    /**
+     * Shows a sample, from the FX thread.
+     * @param sample The sample.
+     */
+    public void update(MetricsSample sample)
+    {
+        // Callbacks, by name
+        StringBuilder operations = new StringBuilder();
+        for(Map.Entry<String, Double> operation : sample.getOperationsPerSecond().entrySet())
+        {
+            if (0 != operations.length())
+            {
+                operations.append(", ");
+            }
+            operations.append(operation.getKey()).append(' ').append(String.format(Locale.US, "%.1f/s", operation.getValue()));
+        }
+        operationsLabel.setText(0 == operations.length() ? resourceBundle.getString("dashboard.idle") : operations.toString());
+
+        // Other rows
+        latencyLabel.setText(formatDuration(sample.getLatencyMedian()) + " / " + formatDuration(sample.getLatency99()));
+        String hitRatio = Double.isNaN(sample.getCacheHitRatio()) ? "-" : String.format(Locale.US, "%.0f %%", sample.getCacheHitRatio() * 100);
+        cacheLabel.setText(Double.isNaN(sample.getCacheCompressionGain()) ? hitRatio : String.format(Locale.US, "%s (x%.1f)", hitRatio, sample.getCacheCompressionGain()));
+        downloadLabel.setText(formatRate(sample.getDownloadRate()));
+        uploadLabel.setText(formatRate(sample.getUploadRate()));
+        queueLabel.setText(String.valueOf(sample.getQueueDepth()));
+        predictionLabel.setText(formatShare(sample.getPredictionPrecision()) + " / " + formatShare(sample.getPredictionRecall()));
+    }
+
+    /**
+     * Formats a share.
+     * @param share The share, NaN if unknown.
+     * @return The formatted percentage.
+     */
+    private static String formatShare(double share)
+    {
+        return Double.isNaN(share) ? "-" : String.format(Locale.US, "%.0f %%", share * 100);
+    }
+
+    /**
+     * Formats a latency.
+     * @param nanos The latency in nanoseconds.
+     * @return The formatted latency.
+     */
+    private static String formatDuration(long nanos)
+    {
+        if (nanos < 1000000)
+        {
+            return String.format(Locale.US, "%d \u00b5s", nanos / 1000);
+        }
+        return String.format(Locale.US, "%.1f ms", nanos / 1e6);
+    }
+
+    /**
+     * Formats a transfer rate.
+     * @param bytesPerSecond The bytes per second.
+     * @return The formatted rate.
+     */
+    private static String formatRate(double bytesPerSecond)
+    {
+        if (bytesPerSecond < 1024)
+        {
+            return String.format(Locale.US, "%.0f B/s", bytesPerSecond);
+        }
+        if (bytesPerSecond < 1024 * 1024)
+        {
+            return String.format(Locale.US, "%.1f KiB/s", bytesPerSecond / 1024);
+        }
+        return String.format(Locale.US, "%.1f MiB/s", bytesPerSecond / (1024 * 1024));
+    }
+}
@@ -19,17 +19,28 @@
 
 package remotedrive.gui.controller;
 
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
+import javafx.scene.Scene;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TitledPane;
 import javafx.scene.control.ToggleButton;
-import javafx.scene.image.Image;
+import javafx.scene.control.Tooltip;
 import javafx.scene.image.ImageView;
 import remotedrive.core.Configuration;
+import remotedrive.core.MountListener;
+import remotedrive.core.MountManager;
+import remotedrive.core.MountState;
 import remotedrive.core.RemoteDriveBootstrap;
+import remotedrive.core.metrics.MetricsRegistry;
 import remotedrive.gui.UIApplication;
+import remotedrive.gui.component.DriveDashboard;
 
 import java.net.URL;
 import java.util.ResourceBundle;
@@ -70,9 +81,35 @@ public class DriveItemController extends AbstractController implements Initializ
     private Button configureButton;
 
     /**
-     * The configuration.
+     * The dashboard pane, sampling the drive metrics while expanded.
      */
-    private Configuration configuration;
+    @FXML
+    private TitledPane dashboardPane;
+
+    /**
+     * The configuration, changed when the list cell showing the item is reused for another drive.
+     */
+    private volatile Configuration configuration;
+
+    /**
+     * The dashboard.
+     */
+    private DriveDashboard dashboard;
+
+    /**
+     * The toggle graphic while mounting or unmounting.
+     */
+    private final ProgressIndicator progressIndicator;
+
+    /**
+     * Refreshes the toggle on the mount state changes of the drive.
+     */
+    private final MountListener mountListener;
+
+    /**
+     * True from an unmount request until the drive is unmounted, only used from the FX thread.
+     */
+    private boolean unmounting;
 
     /**
      * Initializes a new instance of main controller.
@@ -89,6 +126,31 @@ public class DriveItemController extends AbstractController implements Initializ
     {
         super(uiApplication, remoteDriveApplication, resourceBundle);
         this.configuration = configuration;
+        this.progressIndicator = new ProgressIndicator();
+        this.progressIndicator.setPrefSize(16, 16);
+        this.mountListener = new MountListener()
+        {
+            @Override
+            public void onMountStateChanged(Configuration changedConfiguration, final MountState state, final Throwable error)
+            {
+                if (DriveItemController.this.configuration != changedConfiguration)
+                {
+                    return;
+                }
+                Platform.runLater(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (MountState.UNMOUNTED == state)
+                        {
+                            unmounting = false;
+                        }
+                        refreshToggle(error);
+                    }
+                });
+            }
+        };
     }
 
     /**
@@ -99,20 +161,123 @@ public class DriveItemController extends AbstractController implements Initializ
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         this.resourceBundle = resources;
-        configureButton.setGraphic(new ImageView(new Image(getClass().getResourceAsStream("/icon/configure.png"))));
+        configureButton.setGraphic(new ImageView(uiApplication.getImageCache().getResource("/icon/configure.png")));
+        dashboard = initializeDashboard();
+        refreshItem();
+
+        // Only listen while the item belongs to a scene, list cells dropping their graphic when emptied
+        dashboardPane.sceneProperty().addListener(new ChangeListener<Scene>()
+        {
+            @Override
+            public void changed(ObservableValue<? extends Scene> observable, Scene oldValue, Scene newValue)
+            {
+                MountManager mountManager = remoteDriveBootstrap.getMountManager();
+                if (null == newValue)
+                {
+                    mountManager.removeMountListener(mountListener);
+                    uiApplication.getDashboardSampler().unregister(dashboard);
+                }
+                else
+                {
+                    mountManager.addMountListener(mountListener);
+                    uiApplication.getDashboardSampler().register(MetricsRegistry.getInstance().forDrive(configuration), dashboard);
+                    refreshToggle(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the configuration.
+     * @return The configuration.
+     */
+    public Configuration getConfiguration()
+    {
+        return configuration;
+    }
+
+    /**
+     * Shows another drive, reusing the item components.
+     * @param configuration The configuration.
+     */
+    public void setConfiguration(Configuration configuration)
+    {
+        // Check input
+        if (null == configuration)
+        {
+            throw new IllegalArgumentException("The configuration cannot be null.");
+        }
+        if (this.configuration == configuration)
+        {
+            return;
+        }
+
+        // Switch the drive and its metrics
+        this.configuration = configuration;
+        unmounting = false;
+        dashboard.clear();
+        if (null != dashboardPane.getScene())
+        {
+            uiApplication.getDashboardSampler().register(MetricsRegistry.getInstance().forDrive(configuration), dashboard);
+        }
+        refreshItem();
+    }
+
+    /**
+     * Refreshes the components showing the configuration.
+     */
+    private void refreshItem()
+    {
         configurationMountingPointLabel.setText(String.format("(%s:)", configuration.readString("mounting-point")));
         configurationNameLabel.setText(configuration.readString("name"));
-        configurationIcon.setImage(new Image(this.remoteDriveBootstrap.lookupClientFactory(this.configuration.readString("factory-name")).getImageAsStream()));
+        configurationIcon.setImage(uiApplication.getImageCache().getClientFactoryImage(configuration.readString("factory-name")));
         connectToggleButton.setSelected(configuration.readBoolean("enabled"));
-        refreshToggle(true);
+        refreshToggle(null);
     }
 
     /**
-     * Initializes the on toggle event.
+     * Initializes the dashboard, fed while its pane is expanded.
+     * @return The dashboard.
+     */
+    private DriveDashboard initializeDashboard()
+    {
+        final DriveDashboard dashboard = new DriveDashboard(resourceBundle);
+        dashboardPane.setContent(dashboard);
+        dashboardPane.expandedProperty().addListener(new ChangeListener<Boolean>()
+        {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue)
+            {
+                dashboard.setActive(newValue);
+            }
+        });
+        dashboard.setActive(dashboardPane.isExpanded());
+        return dashboard;
+    }
+
+    /**
+     * Mounts or unmounts the drive in background, turning the toggle off while mounting cancels the mount.
      * @param event The event.
      */
     @FXML protected void onToggle(ActionEvent event) {
-        refreshToggle(false);
+        // Change the configuration value
+        boolean enabled = connectToggleButton.isSelected();
+        this.configuration.writeBoolean("enabled", enabled);
+        remoteDriveBootstrap.scheduleConfigurationSave();
+
+        // Mount or unmount without blocking the FX thread, the listener refreshes the toggle on progress
+        MountManager mountManager = remoteDriveBootstrap.getMountManager();
+        if (enabled)
+        {
+            mountManager.mount(configuration);
+        }
+        else
+        {
+            MountState state = mountManager.getState(configuration);
+            unmounting = MountState.PENDING == state || MountState.AUTHENTICATING == state || MountState.MOUNTING == state || MountState.MOUNTED == state;
+            mountManager.unmountInBackground(configuration);
+        }
+        refreshToggle(null);
     }
 
     /**
@@ -125,25 +290,63 @@ public class DriveItemController extends AbstractController implements Initializ
     }
 
     /**
-     * Refreshes the toggle component after action.
-     * @param initialize True if initialization.
+     * Refreshes the toggle component from the mount state of the drive.
+     * @param error The failure cause of the last mount if any.
      */
-    private void refreshToggle(boolean initialize) {
-        // Change the configuration value if not initialize only.
-        if(!initialize)
+    private void refreshToggle(Throwable error) {
+        MountState state = remoteDriveBootstrap.getMountManager().getState(configuration);
+        String key;
+        boolean inProgress = true;
+        if (unmounting)
         {
-            this.configuration.writeBoolean("enabled", connectToggleButton.isSelected());
-            remoteDriveBootstrap.saveConfiguration();
+            key = "list.unmounting";
         }
-
-        // Change the text depending on the status
-        if(connectToggleButton.isSelected())
+        else if (MountState.PENDING == state)
+        {
+            key = "list.pending";
+        }
+        else if (MountState.AUTHENTICATING == state)
+        {
+            key = "list.authenticating";
+        }
+        else if (MountState.MOUNTING == state)
         {
-            connectToggleButton.setText(resourceBundle.getString("list.enabled"));
+            key = "list.mounting";
         }
         else
         {
-            connectToggleButton.setText(resourceBundle.getString("list.disabled"));
+            inProgress = false;
+            if (MountState.FAILED == state)
+            {
+                key = "list.failed";
+            }
+            else if (MountState.TIMED_OUT == state)
+            {
+                key = "list.timedout";
+            }
+            else
+            {
+                // Mounted, or unmounted and mounted later on if enabled
+                key = connectToggleButton.isSelected() ? "list.enabled" : "list.disabled";
+            }
+        }
+
+        // Change the text, the graphic and the tooltip depending on the status
+        boolean failed = MountState.FAILED == state || MountState.TIMED_OUT == state;
+        connectToggleButton.setText(resourceBundle.getString(key));
+        connectToggleButton.setGraphic(inProgress ? progressIndicator : null);
+        connectToggleButton.getStyleClass().remove("failed");
+        if (failed)
+        {
+            connectToggleButton.getStyleClass().add("failed");
+        }
+        if (failed && null != error)
+        {
+            connectToggleButton.setTooltip(new Tooltip(error.getMessage()));
+        }
+        else if (!failed)
+        {
+            connectToggleButton.setTooltip(null);
         }
     }
 }
@@ -105,10 +105,16 @@ public class MainController extends AbstractController implements Initializable
         {
             // Add the configuration in the application
             remoteDriveBootstrap.getConfigurations().add(configuration);
-            remoteDriveBootstrap.saveConfiguration();
+            remoteDriveBootstrap.scheduleConfigurationSave();
 
             // Add the configuration in the UI
             configurations.add(configuration);
+
+            // Mount it in background if enabled
+            if (configuration.readBoolean("enabled"))
+            {
+                remoteDriveBootstrap.getMountManager().mount(configuration);
+            }
         }
     }
 
@@ -118,9 +124,10 @@ public class MainController extends AbstractController implements Initializable
      */
     @FXML protected void onDeleteDrive(ActionEvent event) {
         int removedConfigurationIndex = configurationListView.getSelectionModel().getSelectedIndex();
-        remoteDriveBootstrap.getConfigurations().remove(removedConfigurationIndex);
+        Configuration removedConfiguration = remoteDriveBootstrap.getConfigurations().remove(removedConfigurationIndex);
         configurations.remove(removedConfigurationIndex);
+        remoteDriveBootstrap.getMountManager().unmountInBackground(removedConfiguration);
         configurationListView.getSelectionModel().clearSelection();
-        remoteDriveBootstrap.saveConfiguration();
+        remoteDriveBootstrap.scheduleConfigurationSave();
     }
 }